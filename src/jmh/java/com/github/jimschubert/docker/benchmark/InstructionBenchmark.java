@@ -0,0 +1,43 @@
+package com.github.jimschubert.docker.benchmark;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.parser.DockerfileParser;
+import com.github.jimschubert.docker.parser.ParserError;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing of each instruction type in isolation, using a file of {@link #LINES} identical instructions.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InstructionBenchmark {
+    static final int LINES = 1000;
+
+    @Param({"ADD", "ARG", "CMD", "COPY", "ENTRYPOINT", "ENV", "EXPOSE", "FROM", "HEALTHCHECK", "LABEL", "MAINTAINER", "ONBUILD", "RUN", "SHELL", "STOPSIGNAL", "USER", "VOLUME", "WORKDIR"})
+    public String instruction;
+
+    @Param({"false", "true"})
+    public boolean expandVariables;
+
+    private byte[] dockerfile;
+
+    @Setup
+    public void setup() {
+        dockerfile = SyntheticDockerfiles.repeat(instruction, LINES).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<DockerInstruction> parse() throws IOException, ParserError {
+        return new DockerfileParser(expandVariables).parseDockerfile(new ByteArrayInputStream(dockerfile));
+    }
+}
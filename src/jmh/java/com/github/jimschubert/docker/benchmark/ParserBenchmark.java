@@ -0,0 +1,44 @@
+package com.github.jimschubert.docker.benchmark;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.parser.DockerfileParser;
+import com.github.jimschubert.docker.parser.ParserError;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DockerfileParser#parseDockerfile} over whole Dockerfiles.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+    @Param({"hugo", "large"})
+    public String input;
+
+    @Param({"false", "true"})
+    public boolean expandVariables;
+
+    @Param({"false", "true"})
+    public boolean lazyArguments;
+
+    private byte[] dockerfile;
+
+    @Setup
+    public void setup() {
+        dockerfile = SyntheticDockerfiles.named(input).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<DockerInstruction> parse() throws IOException, ParserError {
+        return new DockerfileParser(expandVariables, lazyArguments).parseDockerfile(new ByteArrayInputStream(dockerfile));
+    }
+}
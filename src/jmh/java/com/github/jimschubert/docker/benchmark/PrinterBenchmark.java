@@ -0,0 +1,55 @@
+package com.github.jimschubert.docker.benchmark;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.parser.DockerfileParser;
+import com.github.jimschubert.docker.parser.ParserError;
+import com.github.jimschubert.docker.printer.ASTPrinter;
+import com.github.jimschubert.docker.printer.DockerfilePrinter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DockerfilePrinter#print()}, {@link DockerfilePrinter#print(Appendable)} and {@link ASTPrinter#toASTString(Object)} over parsed Dockerfiles.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrinterBenchmark {
+    @Param({"hugo", "large"})
+    public String input;
+
+    private List<DockerInstruction> instructions;
+
+    @Setup
+    public void setup() throws IOException, ParserError {
+        byte[] dockerfile = SyntheticDockerfiles.named(input).getBytes(StandardCharsets.UTF_8);
+        instructions = new DockerfileParser().parseDockerfile(new ByteArrayInputStream(dockerfile));
+    }
+
+    @Benchmark
+    public String printDockerfile() {
+        return new DockerfilePrinter(instructions).print();
+    }
+
+    @Benchmark
+    public void printDockerfileToWriter() throws IOException {
+        new DockerfilePrinter(instructions).print(Writer.nullWriter());
+    }
+
+    @Benchmark
+    public void printAST(Blackhole blackhole) {
+        for (DockerInstruction instruction : instructions) {
+            blackhole.consume(ASTPrinter.toASTString(instruction));
+        }
+    }
+}
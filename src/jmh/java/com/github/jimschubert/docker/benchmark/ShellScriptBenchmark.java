@@ -0,0 +1,50 @@
+package com.github.jimschubert.docker.benchmark;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.ast.RunInstruction;
+import com.github.jimschubert.docker.ast.ShellScript;
+import com.github.jimschubert.docker.parser.DockerfileParser;
+import com.github.jimschubert.docker.parser.ParserError;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures tokenizing the commands of every RUN instruction in a Dockerfile with {@link ShellScript#parse}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShellScriptBenchmark {
+    @Param({"hugo", "large"})
+    public String input;
+
+    private List<String> commands;
+
+    @Setup
+    public void setup() throws IOException, ParserError {
+        byte[] dockerfile = SyntheticDockerfiles.named(input).getBytes(StandardCharsets.UTF_8);
+        commands = new ArrayList<>();
+        for (DockerInstruction instruction : new DockerfileParser().parseDockerfile(new ByteArrayInputStream(dockerfile))) {
+            if (instruction instanceof RunInstruction run) {
+                commands.add(String.join(" ", run.getCommands()));
+            }
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (String command : commands) {
+            blackhole.consume(ShellScript.parse(command));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.github.jimschubert.docker.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds Dockerfile inputs for the benchmarks.
+ */
+final class SyntheticDockerfiles {
+    /**
+     * The instruction keywords with a sample, in a stable order.
+     */
+    static final List<String> INSTRUCTIONS = List.of("ADD", "ARG", "CMD", "COPY", "ENTRYPOINT", "ENV", "EXPOSE", "FROM",
+            "HEALTHCHECK", "LABEL", "MAINTAINER", "ONBUILD", "RUN", "SHELL", "STOPSIGNAL", "USER", "VOLUME", "WORKDIR");
+
+    /**
+     * A representative line for each instruction type, keyed by keyword.
+     */
+    static final Map<String, String> SAMPLES = Map.ofEntries(
+            Map.entry("ADD", "ADD --chown=1001:1001 --link https://example.com/releases/${VERSION}/app-${VERSION}.tar.gz /opt/app/"),
+            Map.entry("ARG", "ARG VERSION=\"1.2.3\""),
+            Map.entry("CMD", "CMD [\"java\", \"-jar\", \"/opt/app/app.jar\"]"),
+            Map.entry("COPY", "COPY --from=build --chown=1001:1001 --exclude=*.md /src/target/app.jar /opt/app/app.jar"),
+            Map.entry("ENTRYPOINT", "ENTRYPOINT [\"/entrypoint.sh\", \"--verbose\"]"),
+            Map.entry("ENV", "ENV PATH=\"${APP_HOME}/bin:${PATH}\""),
+            Map.entry("EXPOSE", "EXPOSE 8080/tcp 8443 9090/udp"),
+            Map.entry("FROM", "FROM --platform=$BUILDPLATFORM golang:${GO_VERSION}-alpine${ALPINE_VERSION}@sha256:0123456789abcdef AS build"),
+            Map.entry("HEALTHCHECK", "HEALTHCHECK --interval=30s --timeout=5s --retries=3 CMD curl -f http://localhost:8080/health"),
+            Map.entry("LABEL", "LABEL org.opencontainers.image.title=\"app\" org.opencontainers.image.version=1.2.3"),
+            Map.entry("MAINTAINER", "MAINTAINER Jane Doe <jane@example.com>"),
+            Map.entry("ONBUILD", "ONBUILD COPY --chown=1001:1001 . /opt/app/src"),
+            Map.entry("RUN", "RUN --mount=type=cache,target=/root/.cache/go-build,id=go-build --network=none go build -o /usr/bin/app ./cmd/app && rm -rf /tmp/*"),
+            Map.entry("SHELL", "SHELL [\"/bin/bash\", \"-o\", \"pipefail\", \"-c\"]"),
+            Map.entry("STOPSIGNAL", "STOPSIGNAL SIGTERM"),
+            Map.entry("USER", "USER app:app"),
+            Map.entry("VOLUME", "VOLUME /var/lib/app"),
+            Map.entry("WORKDIR", "WORKDIR /opt/app")
+    );
+
+    private SyntheticDockerfiles() {
+    }
+
+    /**
+     * Repeats the sample line for a single instruction type.
+     *
+     * @param instruction The instruction keyword.
+     * @param count       The number of lines to generate.
+     * @return The Dockerfile contents.
+     */
+    static String repeat(String instruction, int count) {
+        String line = SAMPLES.get(instruction);
+        if (line == null) {
+            throw new IllegalArgumentException("No sample for instruction " + instruction);
+        }
+        StringBuilder sb = new StringBuilder((line.length() + 1) * count + 64);
+        sb.append("ENV APP_HOME=/opt/app\n");
+        for (int i = 0; i < count; i++) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Generates a large multi-stage Dockerfile mixing every instruction type, comments and continuation lines.
+     *
+     * @param stages The number of build stages.
+     * @return The Dockerfile contents.
+     */
+    static String multiStage(int stages) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# syntax=docker/dockerfile:1\n");
+        sb.append("ARG GO_VERSION=\"1.23.2\"\n");
+        sb.append("ARG ALPINE_VERSION=\"3.20\"\n\n");
+        for (int stage = 0; stage < stages; stage++) {
+            sb.append("# Stage ").append(stage).append('\n');
+            sb.append("# builds component ").append(stage).append('\n');
+            sb.append("FROM golang:${GO_VERSION}-alpine${ALPINE_VERSION} AS stage").append(stage).append('\n');
+            sb.append("ENV APP_HOME=/opt/app").append(stage).append('\n');
+            sb.append("WORKDIR ${APP_HOME}\n");
+            for (String instruction : INSTRUCTIONS) {
+                if (!"FROM".equals(instruction)) {
+                    sb.append(SAMPLES.get(instruction)).append('\n');
+                }
+            }
+            sb.append("RUN apk add --no-cache \\\n")
+                    .append("    git \\\n")
+                    .append("    curl \\\n")
+                    .append("    ca-certificates\n");
+            if (stage > 0) {
+                sb.append("COPY --from=stage").append(stage - 1).append(" /opt/app /opt/previous\n");
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads a Dockerfile from the benchmark classpath.
+     *
+     * @param resourcePath The resource path, such as {@code examples/hugo/Dockerfile}.
+     * @return The Dockerfile contents.
+     */
+    static String resource(String resourcePath) {
+        try (InputStream inputStream = SyntheticDockerfiles.class.getClassLoader().getResourceAsStream(resourcePath)) {
+            if (inputStream == null) {
+                throw new IllegalArgumentException("Dockerfile resource not found: " + resourcePath);
+            }
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Resolves a named benchmark input.
+     *
+     * @param name Either {@code hugo} for the example Dockerfile or {@code large} for a generated multi-stage file.
+     * @return The Dockerfile contents.
+     */
+    static String named(String name) {
+        return switch (name) {
+            case "hugo" -> resource("examples/hugo/Dockerfile");
+            case "large" -> multiStage(500);
+            default -> throw new IllegalArgumentException("Unknown benchmark input " + name);
+        };
+    }
+}
@@ -1,19 +1,36 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Supplier;
 
-public class AddInstruction extends DockerInstruction {
-    private final List<String> sources;
-    private final String destination;
-    private final Boolean keepGitDir;
-    private final String checksum;
-    private final String chown;
-    private final String chmod;
-    private final Boolean link;
-    private final List<String> exclude;
+public final class AddInstruction extends DockerInstruction {
+    private List<String> sources;
+    private String destination;
+    private Boolean keepGitDir;
+    private String checksum;
+    private String chown;
+    private String chmod;
+    private Boolean link;
+    private List<String> exclude;
+    private List<Heredoc> heredocs;
 
-    public AddInstruction(List<String> sources, String destination, Boolean keepGitDir, String checksum, String chown, String chmod, Boolean link, List<String> exclude) {
-        super("ADD");
+    /**
+     * Creates a new instance of AddInstruction.
+     *
+     * @param sources The sources to add.
+     * @param destination The destination to add to.
+     * @param keepGitDir Whether to keep the .git directory of a Git repository source.
+     * @param checksum The checksum a remote source must have.
+     * @param chown The user or user:group to change ownership to.
+     * @param chmod The permissions to set.
+     * @param link Whether to create a hard link.
+     * @param exclude The paths to exclude.
+     * @param heredocs The heredocs, whose {@code <<name} words are among the sources.
+     */
+    public AddInstruction(List<String> sources, String destination, Boolean keepGitDir, String checksum, String chown, String chmod, Boolean link, List<String> exclude, List<Heredoc> heredocs) {
+        super("ADD", InstructionKind.ADD);
         this.sources = sources;
         this.destination = destination;
         this.keepGitDir = keepGitDir;
@@ -22,70 +39,118 @@ public class AddInstruction extends DockerInstruction {
         this.chmod = chmod;
         this.link = link;
         this.exclude = exclude;
+        this.heredocs = heredocs;
+    }
+
+    public AddInstruction(List<String> sources, String destination, Boolean keepGitDir, String checksum, String chown, String chmod, Boolean link, List<String> exclude) {
+        this(sources, destination, keepGitDir, checksum, chown, chmod, link, exclude, Collections.emptyList());
+    }
+
+    /**
+     * Creates an ADD instruction whose fields are decoded when first accessed.
+     *
+     * @param decoder Supplies an equivalent instruction with all fields decoded.
+     * @return The instruction.
+     */
+    public static AddInstruction deferred(Supplier<AddInstruction> decoder) {
+        AddInstruction instruction = new AddInstruction(null, null, null, null, null, null, null, null);
+        instruction.deferDecoding(() -> {
+            AddInstruction decoded = decoder.get();
+            instruction.sources = decoded.sources;
+            instruction.destination = decoded.destination;
+            instruction.keepGitDir = decoded.keepGitDir;
+            instruction.checksum = decoded.checksum;
+            instruction.chown = decoded.chown;
+            instruction.chmod = decoded.chmod;
+            instruction.link = decoded.link;
+            instruction.exclude = decoded.exclude;
+            instruction.heredocs = decoded.heredocs;
+        });
+        return instruction;
     }
 
     public List<String> getSources() {
+        decode();
         return sources;
     }
 
     public String getDestination() {
+        decode();
         return destination;
     }
 
     public Boolean getKeepGitDir() {
+        decode();
         return keepGitDir;
     }
 
     public String getChecksum() {
+        decode();
         return checksum;
     }
 
     public String getChown() {
+        decode();
         return chown;
     }
 
     public String getChmod() {
+        decode();
         return chmod;
     }
 
     public Boolean getLink() {
+        decode();
         return link;
     }
 
     public List<String> getExclude() {
+        decode();
         return exclude;
     }
 
+    public List<Heredoc> getHeredocs() {
+        decode();
+        return heredocs;
+    }
+
+    @Override
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitAdd(this);
+    }
+
     @Override
-    public String toCanonicalForm() {
-        StringBuilder sb = new StringBuilder(getInstruction());
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        decode();
+        out.append(getInstruction());
 
         if (keepGitDir != null) {
-            sb.append(" --keep-git-dir=").append(keepGitDir);
+            out.append(" --keep-git-dir=").append(String.valueOf(keepGitDir));
         }
         if (checksum != null) {
-            sb.append(" --checksum=").append(checksum);
+            out.append(" --checksum=").append(checksum);
         }
         if (chown != null) {
-            sb.append(" --chown=").append(chown);
+            out.append(" --chown=").append(chown);
         }
         if (chmod != null) {
-            sb.append(" --chmod=").append(chmod);
+            out.append(" --chmod=").append(chmod);
         }
         if (link != null) {
-            sb.append(" --link=").append(link);
+            out.append(" --link=").append(String.valueOf(link));
         }
         if (exclude != null && !exclude.isEmpty()) {
             for (String path : exclude) {
-                sb.append(" --exclude=").append(path);
+                out.append(" --exclude=").append(path);
             }
         }
 
         for (String source : sources) {
-            sb.append(" ").append(source);
+            out.append(" ").append(source);
+        }
+        out.append(" ").append(destination);
+        for (Heredoc heredoc : heredocs) {
+            heredoc.appendCanonicalForm(out);
         }
-        sb.append(" ").append(destination);
-
-        return sb.toString();
     }
 }
\ No newline at end of file
@@ -1,11 +1,12 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Represents an ARG instruction in a Dockerfile.
  */
-public class ArgInstruction extends DockerInstruction {
+public final class ArgInstruction extends DockerInstruction {
     private List<KeyValuePair> args;
 
     /**
@@ -14,7 +15,7 @@ public class ArgInstruction extends DockerInstruction {
      * @param args The arguments to set.
      */
     public ArgInstruction(List<KeyValuePair> args) {
-        super("ARG");
+        super("ARG", InstructionKind.ARG);
         this.args = args;
     }
 
@@ -24,22 +25,27 @@ public class ArgInstruction extends DockerInstruction {
 
     public void setArgs(List<KeyValuePair> args) {
         this.args = args;
+        markModified();
     }
 
     @Override
-    public String toCanonicalForm() {
-        StringBuilder sb = new StringBuilder(getInstruction());
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitArg(this);
+    }
+
+    @Override
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        out.append(getInstruction());
         for (KeyValuePair arg : args) {
-            sb.append(" ").append(arg.getKey());
+            out.append(" ").append(arg.getKey());
             if (arg.hasEquals()) {
-                sb.append("=");
+                out.append("=");
             }
             switch (arg.getQuoting()) {
-                case SINGLE_QUOTED -> sb.append("'").append(arg.getValue()).append("'");
-                case DOUBLE_QUOTED -> sb.append("\"").append(arg.getValue()).append("\"");
-                default -> sb.append(arg.getValue());
+                case SINGLE_QUOTED -> out.append("'").append(arg.getValue()).append("'");
+                case DOUBLE_QUOTED -> out.append("\"").append(arg.getValue()).append("\"");
+                default -> out.append(arg.getValue());
             };
         }
-        return sb.toString();
     }
 }
\ No newline at end of file
@@ -5,17 +5,22 @@ import java.util.List;
 /**
  * Represents a CMD instruction.
  */
-public class CmdInstruction extends CommandInstruction {
+public final class CmdInstruction extends CommandInstruction {
     /**
      * Creates a new instance of CmdInstruction.
      */
     public CmdInstruction() {
-        super("CMD");
+        super(InstructionKind.CMD);
     }
 
     public CmdInstruction(Form form, List<String> commands) {
-        super("CMD");
+        super(InstructionKind.CMD);
         setForm(form);
         setCommand(commands);
     }
-}
\ No newline at end of file
+
+    @Override
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitCmd(this);
+    }
+}
@@ -1,11 +1,12 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Represents a command instruction in a Dockerfile.
  */
-public abstract class CommandInstruction extends DockerInstruction {
+public abstract sealed class CommandInstruction extends DockerInstruction permits CmdInstruction, EntrypointInstruction, VolumeInstruction {
     public enum Form {
         SHELL,
         EXEC
@@ -13,14 +14,16 @@ public abstract class CommandInstruction extends DockerInstruction {
 
     private Form form;
     private List<String> command;
+    private String commandText;
+    private transient volatile ShellScript shellScript;
 
     /**
      * Creates a new instance of CommandInstruction.
      *
-     * @param instruction The instruction to set.
+     * @param kind The kind of instruction, which is also its keyword.
      */
-    public CommandInstruction(String instruction) {
-        super(instruction);
+    CommandInstruction(InstructionKind kind) {
+        super(kind.name(), kind);
     }
 
     public Form getForm() {
@@ -29,6 +32,8 @@ public abstract class CommandInstruction extends DockerInstruction {
 
     public void setForm(Form form) {
         this.form = form;
+        this.shellScript = null;
+        markModified();
     }
 
     public List<String> getCommand() {
@@ -36,23 +41,59 @@ public abstract class CommandInstruction extends DockerInstruction {
     }
 
     public void setCommand(List<String> command) {
+        setCommand(command, null);
+    }
+
+    /**
+     * Sets the command along with the text it was split from.
+     *
+     * @param command The command.
+     * @param text    The shell form command as written, which {@link #getShellScript()} tokenizes so that whitespace
+     *                within quotes is kept, or {@code null} to tokenize the words of the command joined by spaces.
+     */
+    public void setCommand(List<String> command, String text) {
         this.command = command;
+        this.commandText = text;
+        this.shellScript = null;
+        markModified();
+    }
+
+    /**
+     * @return The shell form command as written, or {@code null} if it wasn't given when the command was set.
+     */
+    public String getCommandText() {
+        return commandText;
+    }
+
+    /**
+     * Parses the shell form command as a shell script on the first call, and returns the same script on later calls
+     * until the command or form is set.
+     *
+     * @return The script, or {@code null} if the command is in exec form.
+     */
+    public ShellScript getShellScript() {
+        ShellScript script = shellScript;
+        if (script == null && form == Form.SHELL && command != null) {
+            script = ShellScript.parse(commandText != null ? commandText : String.join(" ", command));
+            shellScript = script;
+        }
+        return script;
     }
 
     @Override
-    public String toCanonicalForm() {
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        out.append(getInstruction());
         if (form == Form.EXEC) {
-            StringBuilder sb = new StringBuilder(getInstruction() + " [");
+            out.append(" [");
             for (int i = 0; i < command.size(); i++) {
-                sb.append("\"").append(command.get(i)).append("\"");
+                out.append("\"").append(command.get(i)).append("\"");
                 if (i < command.size() - 1) {
-                    sb.append(", ");
+                    out.append(", ");
                 }
             }
-            sb.append("]");
-            return sb.toString();
+            out.append("]");
         } else {
-            return getInstruction() + " " + String.join(" ", command);
+            out.append(" ").append(String.join(" ", command));
         }
     }
 }
\ No newline at end of file
@@ -1,9 +1,11 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
+
 /**
  * Represents a COMMENT instruction.
  */
-public class CommentInstruction extends DockerInstruction {
+public final class CommentInstruction extends DockerInstruction {
     private String comment;
 
     /**
@@ -12,7 +14,7 @@ public class CommentInstruction extends DockerInstruction {
      * @param comment The comment to set.
      */
     public CommentInstruction(String comment) {
-        super("COMMENT");
+        super("COMMENT", InstructionKind.COMMENT);
         this.comment = comment;
     }
 
@@ -22,10 +24,23 @@ public class CommentInstruction extends DockerInstruction {
 
     public void setComment(String comment) {
         this.comment = comment;
+        markModified();
+    }
+
+    @Override
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitComment(this);
     }
 
     @Override
-    public String toCanonicalForm() {
-        return "# " + comment.replace("\n", "\n# ");
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        out.append("# ");
+        int start = 0;
+        int newLine;
+        while ((newLine = comment.indexOf('\n', start)) >= 0) {
+            out.append(comment, start, newLine).append("\n# ");
+            start = newLine + 1;
+        }
+        out.append(comment, start, comment.length());
     }
 }
\ No newline at end of file
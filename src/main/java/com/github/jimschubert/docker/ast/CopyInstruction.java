@@ -1,11 +1,14 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Represents a COPY instruction.
  */
-public class CopyInstruction extends DockerInstruction {
+public final class CopyInstruction extends DockerInstruction {
     private List<String> sources;
     private String destination;
     private String from;
@@ -14,6 +17,7 @@ public class CopyInstruction extends DockerInstruction {
     private Boolean link;
     private Boolean parents;
     private List<String> exclude;
+    private List<Heredoc> heredocs;
 
     /**
      * Creates a new instance of CopyInstruction.
@@ -26,9 +30,10 @@ public class CopyInstruction extends DockerInstruction {
      * @param link Whether to create a hard link.
      * @param parents Whether to create parent directories.
      * @param exclude The paths to exclude.
+     * @param heredocs The heredocs, whose {@code <<name} words are among the sources.
      */
-    public CopyInstruction(List<String> sources, String destination, String from, String chown, String chmod, Boolean link, Boolean parents, List<String> exclude) {
-        super("COPY");
+    public CopyInstruction(List<String> sources, String destination, String from, String chown, String chmod, Boolean link, Boolean parents, List<String> exclude, List<Heredoc> heredocs) {
+        super("COPY", InstructionKind.COPY);
         this.sources = sources;
         this.destination = destination;
         this.from = from;
@@ -37,106 +42,188 @@ public class CopyInstruction extends DockerInstruction {
         this.link = link;
         this.parents = parents;
         this.exclude = exclude;
+        this.heredocs = heredocs;
+    }
+
+    /**
+     * Creates a new instance of CopyInstruction without heredocs.
+     *
+     * @param sources The sources to copy.
+     * @param destination The destination to copy to.
+     * @param from The source image, stage, or context.
+     * @param chown The user or user:group to change ownership to.
+     * @param chmod The permissions to set.
+     * @param link Whether to create a hard link.
+     * @param parents Whether to create parent directories.
+     * @param exclude The paths to exclude.
+     */
+    public CopyInstruction(List<String> sources, String destination, String from, String chown, String chmod, Boolean link, Boolean parents, List<String> exclude) {
+        this(sources, destination, from, chown, chmod, link, parents, exclude, Collections.emptyList());
     }
 
     public CopyInstruction(List<String> sources, String destination) {
         this(sources, destination, null, null, null, null, null, null);
     }
 
+    /**
+     * Creates a COPY instruction whose fields are decoded when first accessed.
+     *
+     * @param decoder Supplies an equivalent instruction with all fields decoded.
+     * @return The instruction.
+     */
+    public static CopyInstruction deferred(Supplier<CopyInstruction> decoder) {
+        CopyInstruction instruction = new CopyInstruction(null, null);
+        instruction.deferDecoding(() -> {
+            CopyInstruction decoded = decoder.get();
+            instruction.sources = decoded.sources;
+            instruction.destination = decoded.destination;
+            instruction.from = decoded.from;
+            instruction.chown = decoded.chown;
+            instruction.chmod = decoded.chmod;
+            instruction.link = decoded.link;
+            instruction.parents = decoded.parents;
+            instruction.exclude = decoded.exclude;
+            instruction.heredocs = decoded.heredocs;
+        });
+        return instruction;
+    }
+
     public List<String> getSources() {
+        decode();
         return sources;
     }
 
     public void setSources(List<String> sources) {
+        decode();
         this.sources = sources;
+        markModified();
     }
 
     public String getDestination() {
+        decode();
         return destination;
     }
 
     public void setDestination(String destination) {
+        decode();
         this.destination = destination;
+        markModified();
     }
 
     public String getFrom() {
+        decode();
         return from;
     }
 
     public void setFrom(String from) {
+        decode();
         this.from = from;
+        markModified();
     }
 
     public String getChown() {
+        decode();
         return chown;
     }
 
     public void setChown(String chown) {
+        decode();
         this.chown = chown;
+        markModified();
     }
 
     public String getChmod() {
+        decode();
         return chmod;
     }
 
     public void setChmod(String chmod) {
+        decode();
         this.chmod = chmod;
+        markModified();
     }
 
     public Boolean getLink() {
+        decode();
         return link;
     }
 
     public void setLink(Boolean link) {
+        decode();
         this.link = link;
+        markModified();
     }
 
     public Boolean getParents() {
+        decode();
         return parents;
     }
 
     public void setParents(Boolean parents) {
+        decode();
         this.parents = parents;
+        markModified();
     }
 
     public List<String> getExclude() {
+        decode();
         return exclude;
     }
 
     public void setExclude(List<String> exclude) {
+        decode();
         this.exclude = exclude;
+        markModified();
+    }
+
+    public List<Heredoc> getHeredocs() {
+        decode();
+        return heredocs;
+    }
+
+    public void setHeredocs(List<Heredoc> heredocs) {
+        decode();
+        this.heredocs = heredocs;
+        markModified();
     }
 
     @Override
-    public String toCanonicalForm() {
-        StringBuilder sb = new StringBuilder(getInstruction());
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitCopy(this);
+    }
+
+    @Override
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        decode();
+        out.append(getInstruction());
 
         if (from != null) {
-            sb.append(" --from=").append(from);
+            out.append(" --from=").append(from);
         }
         if (chown != null) {
-            sb.append(" --chown=").append(chown);
+            out.append(" --chown=").append(chown);
         }
         if (chmod != null) {
-            sb.append(" --chmod=").append(chmod);
+            out.append(" --chmod=").append(chmod);
         }
         if (link != null) {
-            sb.append(" --link=").append(link);
+            out.append(" --link=").append(String.valueOf(link));
         }
         if (parents != null) {
-            sb.append(" --parents=").append(parents);
+            out.append(" --parents=").append(String.valueOf(parents));
         }
         if (exclude != null && !exclude.isEmpty()) {
             for (String path : exclude) {
-                sb.append(" --exclude=").append(path);
+                out.append(" --exclude=").append(path);
             }
         }
 
         for (String source : sources) {
-            sb.append(" ").append(source);
+            out.append(" ").append(source);
+        }
+        out.append(" ").append(destination);
+        for (Heredoc heredoc : heredocs) {
+            heredoc.appendCanonicalForm(out);
         }
-        sb.append(" ").append(destination);
-
-        return sb.toString();
     }
 }
\ No newline at end of file
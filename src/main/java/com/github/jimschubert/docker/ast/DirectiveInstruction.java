@@ -1,12 +1,13 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Represents a directive instruction in a Dockerfile.
  */
-public class DirectiveInstruction extends DockerInstruction {
+public final class DirectiveInstruction extends DockerInstruction {
     private final Map<String, String> directives = new HashMap<>();
 
     /**
@@ -15,7 +16,7 @@ public class DirectiveInstruction extends DockerInstruction {
      * @param directive The directive to set.
      */
     public DirectiveInstruction(String directive) {
-        super("#");
+        super("#", InstructionKind.DIRECTIVE);
         parseDirectives(directive);
     }
 
@@ -36,9 +37,15 @@ public class DirectiveInstruction extends DockerInstruction {
     }
 
     @Override
-    public String toCanonicalForm() {
-        StringBuilder sb = new StringBuilder("#");
-        directives.forEach((key, value) -> sb.append(" ").append(key).append("=").append(value));
-        return sb.toString();
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitDirective(this);
+    }
+
+    @Override
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        out.append("#");
+        for (Map.Entry<String, String> entry : directives.entrySet()) {
+            out.append(" ").append(entry.getKey()).append("=").append(entry.getValue());
+        }
     }
 }
\ No newline at end of file
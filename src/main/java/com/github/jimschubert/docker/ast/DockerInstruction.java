@@ -1,28 +1,132 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /**
  * Represents a Docker instruction.
+ * <p>
+ * The hierarchy is sealed: every instruction is one of the permitted classes, and {@link #getKind()} identifies which,
+ * so callers can dispatch with a {@code switch} over {@link InstructionKind} rather than a chain of {@code instanceof}
+ * checks.
  */
-public abstract class DockerInstruction {
-    String instruction;
+public abstract sealed class DockerInstruction permits AddInstruction, ArgInstruction, CommandInstruction,
+        CommentInstruction, CopyInstruction, DirectiveInstruction, EnvInstruction, ExposeInstruction, FromInstruction,
+        HealthCheckInstruction, LabelInstruction, MaintainerInstruction, OnBuildInstruction, RunInstruction,
+        ShellInstruction, StopSignalInstruction, UnknownInstruction, UserInstruction, WorkdirInstruction {
+    private final String instruction;
+    private final InstructionKind kind;
+    private SourceSpan sourceSpan;
+    private volatile Runnable pendingDecode;
+    private boolean modified;
 
     public String getInstruction() {
         return instruction;
     }
 
+    public InstructionKind getKind() {
+        return kind;
+    }
+
+    /**
+     * Gets the location of this instruction in the Dockerfile it was parsed from. After an incremental reparse, the
+     * position of a reused instruction in the new text is given by
+     * {@link com.github.jimschubert.docker.parser.ParsedDockerfile#getSourceSpan(int)}.
+     *
+     * @return The source span, or {@code null} if the instruction wasn't parsed from a Dockerfile.
+     */
+    public SourceSpan getSourceSpan() {
+        return sourceSpan;
+    }
+
+    public void setSourceSpan(SourceSpan sourceSpan) {
+        this.sourceSpan = sourceSpan;
+    }
+
+    /**
+     * Records that this instruction no longer matches the text it was parsed from. Setters call this; callers which
+     * mutate nested values, such as a {@link KeyValuePair} or a list returned by a getter, should call it themselves.
+     * Instructions without a source span are always rendered, so this has no effect on them.
+     */
+    public void markModified() {
+        if (sourceSpan != null) {
+            modified = true;
+        }
+    }
+
+    /**
+     * @return {@code true} if this instruction was changed since it was parsed.
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
     /**
      * Creates a new instance of DockerInstruction.
      *
      * @param instruction The instruction to set.
+     * @param kind        The kind of instruction.
      */
-    public DockerInstruction(String instruction) {
+    DockerInstruction(String instruction, InstructionKind kind) {
         this.instruction = instruction;
+        this.kind = kind;
     }
 
+    /**
+     * Defers decoding of this instruction's fields until {@link #decode()} is first called.
+     *
+     * @param decode Populates the fields of this instruction. It must assign fields directly rather than call getters.
+     */
+    protected void deferDecoding(Runnable decode) {
+        this.pendingDecode = decode;
+    }
+
+    /**
+     * Decodes any fields whose decoding was deferred by a lazily parsing {@code DockerfileParser}. Getters call this
+     * before reading fields, so callers only need it when reading fields some other way, such as by reflection.
+     */
+    public final void decode() {
+        if (pendingDecode != null) {
+            synchronized (this) {
+                Runnable decode = pendingDecode;
+                if (decode != null) {
+                    decode.run();
+                    pendingDecode = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls the visitor's visit method for this instruction's type.
+     *
+     * @param visitor The visitor.
+     * @param <R>     The type of result returned by the visitor.
+     * @return The result of the visit.
+     */
+    public abstract <R> R accept(DockerInstructionVisitor<R> visitor);
+
+    /**
+     * Appends the instruction's canonical form, without a trailing newline.
+     *
+     * @param out The destination to append to.
+     * @throws IOException If an I/O error occurs while appending.
+     */
+    public abstract void appendCanonicalForm(Appendable out) throws IOException;
+
     /**
      * Converts the instruction to its canonical form.
      *
      * @return The instruction in canonical form.
      */
-    public abstract String toCanonicalForm();
+    public String toCanonicalForm() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            appendCanonicalForm(sb);
+        } catch (IOException e) {
+            // a StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
 }
@@ -0,0 +1,96 @@
+package com.github.jimschubert.docker.ast;
+
+/**
+ * Visits the nodes of a parsed Dockerfile: its instructions and the structures nested within them.
+ * <p>
+ * Each node's {@code accept} method calls the visit method for its own type, so a visitor handles each type without
+ * casts. A visitor only sees the node it's given; to also visit nested nodes, such as the instruction deferred by an
+ * ONBUILD or the mounts of a RUN, extend {@link DockerInstructionWalker}.
+ *
+ * @param <R> The type of result returned by each visit.
+ */
+public interface DockerInstructionVisitor<R> {
+    R visitAdd(AddInstruction instruction);
+
+    R visitArg(ArgInstruction instruction);
+
+    R visitCmd(CmdInstruction instruction);
+
+    R visitComment(CommentInstruction instruction);
+
+    R visitCopy(CopyInstruction instruction);
+
+    R visitDirective(DirectiveInstruction instruction);
+
+    R visitEntrypoint(EntrypointInstruction instruction);
+
+    R visitEnv(EnvInstruction instruction);
+
+    R visitExpose(ExposeInstruction instruction);
+
+    R visitFrom(FromInstruction instruction);
+
+    R visitHealthCheck(HealthCheckInstruction instruction);
+
+    R visitLabel(LabelInstruction instruction);
+
+    R visitMaintainer(MaintainerInstruction instruction);
+
+    R visitOnBuild(OnBuildInstruction instruction);
+
+    R visitRun(RunInstruction instruction);
+
+    R visitShell(ShellInstruction instruction);
+
+    R visitStopSignal(StopSignalInstruction instruction);
+
+    R visitUnknown(UnknownInstruction instruction);
+
+    R visitUser(UserInstruction instruction);
+
+    R visitVolume(VolumeInstruction instruction);
+
+    R visitWorkdir(WorkdirInstruction instruction);
+
+    /**
+     * Visits a key-value pair of an ARG or LABEL instruction.
+     *
+     * @param pair The key-value pair.
+     * @return The result.
+     */
+    R visitKeyValuePair(KeyValuePair pair);
+
+    /**
+     * Visits a variable of an ENV instruction. By default, this visits it as a key-value pair.
+     *
+     * @param variable The variable.
+     * @return The result.
+     */
+    default R visitEnvVariable(EnvVariable variable) {
+        return visitKeyValuePair(variable);
+    }
+
+    /**
+     * Visits a port of an EXPOSE instruction.
+     *
+     * @param port The port.
+     * @return The result.
+     */
+    R visitPort(ExposeInstruction.Port port);
+
+    /**
+     * Visits a mount of a RUN instruction.
+     *
+     * @param mount The mount.
+     * @return The result.
+     */
+    R visitMount(RunInstruction.Mount mount);
+
+    /**
+     * Visits a heredoc of a RUN, COPY or ADD instruction.
+     *
+     * @param heredoc The heredoc.
+     * @return The result.
+     */
+    R visitHeredoc(Heredoc heredoc);
+}
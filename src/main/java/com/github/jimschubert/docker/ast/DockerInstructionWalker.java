@@ -0,0 +1,202 @@
+package com.github.jimschubert.docker.ast;
+
+import java.util.List;
+
+/**
+ * A visitor which walks every node of a parsed Dockerfile: each instruction, the instruction deferred by an ONBUILD, the
+ * key-value pairs of ARG and LABEL, the variables of ENV, the ports of EXPOSE, the mounts of RUN and the heredocs of
+ * RUN, COPY and ADD.
+ * <p>
+ * Override the visit methods for the nodes of interest, calling the superclass method to continue into nested nodes.
+ * The results of sibling nodes are combined with {@link #aggregateResult(Object, Object)}, starting from
+ * {@link #defaultResult()}, so a walker can count or collect without building intermediate lists. Lists are walked by
+ * index rather than with an iterator, so walking allocates nothing beyond what the overriding methods do, except that
+ * visiting a RUN, COPY or ADD instruction from a lazily parsing {@code DockerfileParser} decodes its fields.
+ *
+ * @param <R> The type of result returned by each visit.
+ */
+public abstract class DockerInstructionWalker<R> implements DockerInstructionVisitor<R> {
+    /**
+     * Visits each instruction in order.
+     *
+     * @param instructions The instructions.
+     * @return The aggregate of the result of each instruction.
+     */
+    public R walk(List<? extends DockerInstruction> instructions) {
+        R result = defaultResult();
+        for (int i = 0, size = instructions.size(); i < size; i++) {
+            result = aggregateResult(result, instructions.get(i).accept(this));
+        }
+        return result;
+    }
+
+    /**
+     * @return The result of a node with no nested nodes, and the initial aggregate of a node's nested nodes. Defaults
+     * to {@code null}.
+     */
+    protected R defaultResult() {
+        return null;
+    }
+
+    /**
+     * Combines the results of sibling nodes.
+     *
+     * @param aggregate The result of the nodes visited so far.
+     * @param next      The result of the node just visited.
+     * @return The combined result. Defaults to {@code next}.
+     */
+    protected R aggregateResult(R aggregate, R next) {
+        return next;
+    }
+
+    @Override
+    public R visitAdd(AddInstruction instruction) {
+        return visitHeredocs(defaultResult(), instruction.getHeredocs());
+    }
+
+    @Override
+    public R visitArg(ArgInstruction instruction) {
+        return visitPairs(instruction.getArgs());
+    }
+
+    @Override
+    public R visitCmd(CmdInstruction instruction) {
+        return defaultResult();
+    }
+
+    @Override
+    public R visitComment(CommentInstruction instruction) {
+        return defaultResult();
+    }
+
+    @Override
+    public R visitCopy(CopyInstruction instruction) {
+        return visitHeredocs(defaultResult(), instruction.getHeredocs());
+    }
+
+    @Override
+    public R visitDirective(DirectiveInstruction instruction) {
+        return defaultResult();
+    }
+
+    @Override
+    public R visitEntrypoint(EntrypointInstruction instruction) {
+        return defaultResult();
+    }
+
+    @Override
+    public R visitEnv(EnvInstruction instruction) {
+        return visitPairs(instruction.getVariables());
+    }
+
+    @Override
+    public R visitExpose(ExposeInstruction instruction) {
+        R result = defaultResult();
+        List<ExposeInstruction.Port> ports = instruction.getPorts();
+        for (int i = 0, size = ports != null ? ports.size() : 0; i < size; i++) {
+            result = aggregateResult(result, ports.get(i).accept(this));
+        }
+        return result;
+    }
+
+    @Override
+    public R visitFrom(FromInstruction instruction) {
+        return defaultResult();
+    }
+
+    @Override
+    public R visitHealthCheck(HealthCheckInstruction instruction) {
+        return defaultResult();
+    }
+
+    @Override
+    public R visitLabel(LabelInstruction instruction) {
+        return visitPairs(instruction.getLabels());
+    }
+
+    @Override
+    public R visitMaintainer(MaintainerInstruction instruction) {
+        return defaultResult();
+    }
+
+    @Override
+    public R visitOnBuild(OnBuildInstruction instruction) {
+        DockerInstruction deferred = instruction.getDeferredInstruction();
+        return deferred != null ? deferred.accept(this) : defaultResult();
+    }
+
+    @Override
+    public R visitRun(RunInstruction instruction) {
+        R result = defaultResult();
+        List<RunInstruction.Mount> mounts = instruction.getMounts();
+        for (int i = 0, size = mounts != null ? mounts.size() : 0; i < size; i++) {
+            result = aggregateResult(result, mounts.get(i).accept(this));
+        }
+        return visitHeredocs(result, instruction.getHeredocs());
+    }
+
+    @Override
+    public R visitShell(ShellInstruction instruction) {
+        return defaultResult();
+    }
+
+    @Override
+    public R visitStopSignal(StopSignalInstruction instruction) {
+        return defaultResult();
+    }
+
+    @Override
+    public R visitUnknown(UnknownInstruction instruction) {
+        return defaultResult();
+    }
+
+    @Override
+    public R visitUser(UserInstruction instruction) {
+        return defaultResult();
+    }
+
+    @Override
+    public R visitVolume(VolumeInstruction instruction) {
+        return defaultResult();
+    }
+
+    @Override
+    public R visitWorkdir(WorkdirInstruction instruction) {
+        return defaultResult();
+    }
+
+    @Override
+    public R visitKeyValuePair(KeyValuePair pair) {
+        return defaultResult();
+    }
+
+    @Override
+    public R visitPort(ExposeInstruction.Port port) {
+        return defaultResult();
+    }
+
+    @Override
+    public R visitMount(RunInstruction.Mount mount) {
+        return defaultResult();
+    }
+
+    @Override
+    public R visitHeredoc(Heredoc heredoc) {
+        return defaultResult();
+    }
+
+    private R visitPairs(List<? extends KeyValuePair> pairs) {
+        R result = defaultResult();
+        for (int i = 0, size = pairs != null ? pairs.size() : 0; i < size; i++) {
+            result = aggregateResult(result, pairs.get(i).accept(this));
+        }
+        return result;
+    }
+
+    private R visitHeredocs(R result, List<Heredoc> heredocs) {
+        for (int i = 0, size = heredocs != null ? heredocs.size() : 0; i < size; i++) {
+            result = aggregateResult(result, heredocs.get(i).accept(this));
+        }
+        return result;
+    }
+}
@@ -5,15 +5,20 @@ import java.util.List;
 /**
  * Represents an ENTRYPOINT instruction.
  */
-public class EntrypointInstruction extends CommandInstruction {
+public final class EntrypointInstruction extends CommandInstruction {
     /**
      * Creates a new instance of EntrypointInstruction.
      */
     public EntrypointInstruction() {
-        super("ENTRYPOINT");
+        super(InstructionKind.ENTRYPOINT);
     }
 
     public List<String> getEntrypoint() {
         return getCommand();
     }
+
+    @Override
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitEntrypoint(this);
+    }
 }
@@ -1,11 +1,12 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Represents an ENV instruction in a Dockerfile.
  */
-public class EnvInstruction extends DockerInstruction {
+public final class EnvInstruction extends DockerInstruction {
     private List<EnvVariable> variables;
 
     /**
@@ -14,7 +15,7 @@ public class EnvInstruction extends DockerInstruction {
      * @param variables The variables to set.
      */
     public EnvInstruction(List<EnvVariable> variables) {
-        super("ENV");
+        super("ENV", InstructionKind.ENV);
         this.variables = variables;
     }
 
@@ -24,34 +25,40 @@ public class EnvInstruction extends DockerInstruction {
 
     public void setVariables(List<EnvVariable> variables) {
         this.variables = variables;
+        markModified();
     }
 
     @Override
-    public String toCanonicalForm() {
-        StringBuilder sb = new StringBuilder("ENV");
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitEnv(this);
+    }
+
+    @Override
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        out.append("ENV");
         for (EnvVariable variable : variables) {
-            sb.append(" ").append(variable.getKey());
+            out.append(" ").append(variable.getKey());
             if (variable.isDeprecatedSyntax()) {
-                sb.append(" ");
+                out.append(" ");
             } else {
-                sb.append("=");
+                out.append("=");
             }
-            sb.append(formatValue(variable));
+            appendValue(out, variable);
         }
-        return sb.toString();
     }
 
     /**
-     * Formats the value of an environment variable.
+     * Appends the value of an environment variable, quoted as it was parsed.
      *
-     * @param variable The variable to format.
-     * @return The formatted value.
+     * @param out The destination to append to.
+     * @param variable The variable to append.
+     * @throws IOException If an I/O error occurs.
      */
-    private String formatValue(EnvVariable variable) {
-        return switch (variable.getQuoting()) {
-            case SINGLE_QUOTED -> "'" + variable.getValue() + "'";
-            case DOUBLE_QUOTED -> "\"" + variable.getValue() + "\"";
-            default -> variable.getValue();
-        };
+    private void appendValue(Appendable out, EnvVariable variable) throws IOException {
+        switch (variable.getQuoting()) {
+            case SINGLE_QUOTED -> out.append("'").append(variable.getValue()).append("'");
+            case DOUBLE_QUOTED -> out.append("\"").append(variable.getValue()).append("\"");
+            default -> out.append(variable.getValue());
+        }
     }
 }
\ No newline at end of file
@@ -19,4 +19,9 @@ public class EnvVariable extends KeyValuePair {
     public boolean isDeprecatedSyntax() {
         return !super.hasEquals();
     }
+
+    @Override
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitEnvVariable(this);
+    }
 }
\ No newline at end of file
@@ -1,11 +1,12 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Represents an EXPOSE instruction.
  */
-public class ExposeInstruction extends DockerInstruction {
+public final class ExposeInstruction extends DockerInstruction {
     /**
      * Represents a port to expose.
      */
@@ -60,6 +61,17 @@ public class ExposeInstruction extends DockerInstruction {
             this.protocol = protocol;
             this.protocolProvided = true;
         }
+
+        /**
+         * Calls the visitor's visit method for this port.
+         *
+         * @param visitor The visitor.
+         * @param <R>     The type of result returned by the visitor.
+         * @return The result of the visit.
+         */
+        public <R> R accept(DockerInstructionVisitor<R> visitor) {
+            return visitor.visitPort(this);
+        }
     }
 
     private List<Port> ports;
@@ -70,6 +82,7 @@ public class ExposeInstruction extends DockerInstruction {
 
     public void setPorts(List<Port> ports) {
         this.ports = ports;
+        markModified();
     }
 
 
@@ -79,19 +92,23 @@ public class ExposeInstruction extends DockerInstruction {
      * @param ports The ports to expose.
      */
     public ExposeInstruction(List<Port> ports) {
-        super("EXPOSE");
+        super("EXPOSE", InstructionKind.EXPOSE);
         this.ports = ports;
     }
 
     @Override
-    public String toCanonicalForm() {
-        StringBuilder sb = new StringBuilder(getInstruction());
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitExpose(this);
+    }
+
+    @Override
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        out.append(getInstruction());
         for (Port port : ports) {
-            sb.append(" ").append(port.getPort());
+            out.append(" ").append(port.getPort());
             if (port.isProtocolProvided() && !"".equals(port.getProtocol())) {
-                sb.append("/").append(port.getProtocol());
+                out.append("/").append(port.getProtocol());
             }
         }
-        return sb.toString();
     }
 }
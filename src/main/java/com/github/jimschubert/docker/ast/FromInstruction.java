@@ -1,9 +1,11 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
+
 /**
  * Represents a FROM instruction.
  */
-public class FromInstruction extends DockerInstruction {
+public final class FromInstruction extends DockerInstruction {
     private String platform;
     private String image;
     private String digest;
@@ -18,7 +20,7 @@ public class FromInstruction extends DockerInstruction {
      * @param alias The alias to use.
      */
     public FromInstruction(String platform, String image, String digest, String alias) {
-        super("FROM");
+        super("FROM", InstructionKind.FROM);
         this.platform = platform;
         this.image = image;
         this.digest = digest;
@@ -31,6 +33,7 @@ public class FromInstruction extends DockerInstruction {
 
     public void setPlatform(String platform) {
         this.platform = platform;
+        markModified();
     }
 
     public String getImage() {
@@ -39,6 +42,7 @@ public class FromInstruction extends DockerInstruction {
 
     public void setImage(String image) {
         this.image = image;
+        markModified();
     }
 
     public String getDigest() {
@@ -47,6 +51,7 @@ public class FromInstruction extends DockerInstruction {
 
     public void setDigest(String digest) {
         this.digest = digest;
+        markModified();
     }
 
     public String getAlias() {
@@ -55,21 +60,26 @@ public class FromInstruction extends DockerInstruction {
 
     public void setAlias(String alias) {
         this.alias = alias;
+        markModified();
+    }
+
+    @Override
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitFrom(this);
     }
 
     @Override
-    public String toCanonicalForm() {
-        StringBuilder sb = new StringBuilder("FROM ");
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        out.append("FROM ");
         if (platform != null && !platform.isEmpty()) {
-            sb.append("--platform=").append(platform).append(" ");
+            out.append("--platform=").append(platform).append(" ");
         }
-        sb.append(image);
+        out.append(image);
         if (digest != null && !digest.isEmpty()) {
-            sb.append("@").append(digest);
+            out.append("@").append(digest);
         }
         if (alias != null && !alias.isEmpty()) {
-            sb.append(" AS ").append(alias);
+            out.append(" AS ").append(alias);
         }
-        return sb.toString();
     }
 }
\ No newline at end of file
@@ -1,9 +1,11 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
+
 /**
  * Represents a HEALTHCHECK instruction.
  */
-public class HealthCheckInstruction extends DockerInstruction {
+public final class HealthCheckInstruction extends DockerInstruction {
     /**
      * Represents the type of health check.
      */
@@ -29,7 +31,7 @@ public class HealthCheckInstruction extends DockerInstruction {
      * @param retries The number of retries.
      */
     public HealthCheckInstruction(HealthCheckType type, String test, String interval, String timeout, String startPeriod, String retries) {
-        super("HEALTHCHECK");
+        super("HEALTHCHECK", InstructionKind.HEALTHCHECK);
         this.type = type;
         this.test = test;
         this.interval = interval;
@@ -42,7 +44,7 @@ public class HealthCheckInstruction extends DockerInstruction {
      * Creates a new instance of HealthCheckInstruction.
      */
     public HealthCheckInstruction() {
-        super("HEALTHCHECK");
+        super("HEALTHCHECK", InstructionKind.HEALTHCHECK);
         this.type = HealthCheckType.NONE;
         this.test = null;
         this.interval = null;
@@ -76,26 +78,31 @@ public class HealthCheckInstruction extends DockerInstruction {
     }
 
     @Override
-    public String toCanonicalForm() {
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitHealthCheck(this);
+    }
+
+    @Override
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        out.append(getInstruction());
         if (type == HealthCheckType.NONE) {
-            return getInstruction() + " NONE";
+            out.append(" NONE");
+            return;
         }
 
-        StringBuilder sb = new StringBuilder(getInstruction());
-        sb.append(" CMD ");
-        sb.append(test);
+        out.append(" CMD ");
+        out.append(test);
         if (interval != null) {
-            sb.append(" --interval=").append(interval);
+            out.append(" --interval=").append(interval);
         }
         if (timeout != null) {
-            sb.append(" --timeout=").append(timeout);
+            out.append(" --timeout=").append(timeout);
         }
         if (startPeriod != null) {
-            sb.append(" --start-period=").append(startPeriod);
+            out.append(" --start-period=").append(startPeriod);
         }
         if (retries != null) {
-            sb.append(" --retries=").append(retries);
+            out.append(" --retries=").append(retries);
         }
-        return sb.toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,222 @@
+package com.github.jimschubert.docker.ast;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Represents a heredoc of a RUN, COPY or ADD instruction, such as {@code <<EOF}, {@code <<-EOF} or {@code <<"EOF"},
+ * whose body is the lines following the instruction up to a line holding only its name.
+ * <p>
+ * The body is usually a read-only view of the text the instruction was parsed from rather than a copy of it, so large
+ * inline scripts are stored once. It can be read as a stream with {@link #openReader()}, and is only copied into a
+ * string by {@link #getText()}. Heredocs are immutable and safe to share between threads.
+ */
+public final class Heredoc {
+    private final String name;
+    // either a String or a TextRange, and replaced by a String once one is made
+    private volatile CharSequence body;
+    private final boolean chomp;
+    private final boolean expand;
+    private final int fileDescriptor;
+
+    /**
+     * Creates a new instance of Heredoc.
+     *
+     * @param name           The name which ends the body, with any quotes removed.
+     * @param body           The lines of the body, each ending with a newline. Anything other than a string is copied.
+     * @param chomp          Whether leading tabs were removed from each line, as requested by {@code <<-}.
+     * @param expand         Whether variables in the body are expanded, which is the case unless the name is quoted.
+     * @param fileDescriptor The file descriptor the body is redirected to, such as 3 for {@code 3<<EOF}, or 0 if none
+     *                       was given.
+     */
+    public Heredoc(String name, CharSequence body, boolean chomp, boolean expand, int fileDescriptor) {
+        this.name = name;
+        this.body = body.toString();
+        this.chomp = chomp;
+        this.expand = expand;
+        this.fileDescriptor = fileDescriptor;
+    }
+
+    /**
+     * Creates a new instance of Heredoc whose body is a view of part of a text, which isn't copied.
+     *
+     * @param name           The name which ends the body, with any quotes removed.
+     * @param text           The text holding the body.
+     * @param start          The offset of the body in {@code text}.
+     * @param end            The exclusive end of the body in {@code text}, which follows a newline unless the body is
+     *                       empty.
+     * @param chomp          Whether leading tabs were removed from each line, as requested by {@code <<-}.
+     * @param expand         Whether variables in the body are expanded, which is the case unless the name is quoted.
+     * @param fileDescriptor The file descriptor the body is redirected to, such as 3 for {@code 3<<EOF}, or 0 if none
+     *                       was given.
+     */
+    public Heredoc(String name, String text, int start, int end, boolean chomp, boolean expand, int fileDescriptor) {
+        this.name = name;
+        this.body = start == end ? "" : start == 0 && end == text.length() ? text : new TextRange(text, start, end);
+        this.chomp = chomp;
+        this.expand = expand;
+        this.fileDescriptor = fileDescriptor;
+    }
+
+    /**
+     * Creates a new instance of Heredoc, with an unquoted name and no file descriptor.
+     *
+     * @param name The name which ends the body.
+     * @param body The lines of the body, each ending with a newline.
+     */
+    public Heredoc(String name, CharSequence body) {
+        this(name, body, false, true, 0);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The lines of the body, each ending with a newline, as a read-only sequence which doesn't copy them.
+     */
+    public CharSequence getBody() {
+        return body;
+    }
+
+    /**
+     * Returns the body as a string, copying it on the first call. The view of the parsed text is then released.
+     *
+     * @return The body.
+     */
+    public String getText() {
+        CharSequence current = body;
+        if (current instanceof String text) {
+            return text;
+        }
+        // threads racing here each make an equal string, and keep whichever is written last
+        String text = current.toString();
+        body = text;
+        return text;
+    }
+
+    /**
+     * Opens a reader over the body, which reads it without copying it.
+     *
+     * @return The reader.
+     */
+    public Reader openReader() {
+        return new CharSequenceReader(body);
+    }
+
+    public boolean isChomp() {
+        return chomp;
+    }
+
+    public boolean isExpand() {
+        return expand;
+    }
+
+    public int getFileDescriptor() {
+        return fileDescriptor;
+    }
+
+    /**
+     * Calls the visitor's visit method for this heredoc.
+     *
+     * @param visitor The visitor.
+     * @param <R>     The type of result returned by the visitor.
+     * @return The result of the visit.
+     */
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitHeredoc(this);
+    }
+
+    /**
+     * Appends the body and the line which ends it, as they follow the line of the instruction.
+     *
+     * @param out The destination to append to.
+     * @throws IOException If an I/O error occurs while writing to {@code out}.
+     */
+    void appendCanonicalForm(Appendable out) throws IOException {
+        out.append('\n').append(body).append(name);
+    }
+
+    /**
+     * A read-only view of part of a string.
+     */
+    private static final class TextRange implements CharSequence {
+        private final String text;
+        private final int start;
+        private final int end;
+
+        TextRange(String text, int start, int end) {
+            if (start < 0 || start > end || end > text.length()) {
+                throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") is out of bounds for length " + text.length());
+            }
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return text.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if (from < 0 || from > to || to > end - start) {
+                throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") is out of bounds for length " + (end - start));
+            }
+            return new TextRange(text, start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return text.substring(start, end);
+        }
+    }
+
+    private static final class CharSequenceReader extends Reader {
+        private final CharSequence text;
+        private int position = 0;
+
+        CharSequenceReader(CharSequence text) {
+            this.text = text;
+        }
+
+        @Override
+        public int read() {
+            return position < text.length() ? text.charAt(position++) : -1;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            int remaining = text.length() - position;
+            if (remaining <= 0) {
+                return length == 0 ? 0 : -1;
+            }
+            int count = Math.min(length, remaining);
+            if (text instanceof String string) {
+                string.getChars(position, position + count, buffer, offset);
+            } else if (text instanceof TextRange range) {
+                range.text.getChars(range.start + position, range.start + position + count, buffer, offset);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    buffer[offset + i] = text.charAt(position + i);
+                }
+            }
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            position = text.length();
+        }
+    }
+}
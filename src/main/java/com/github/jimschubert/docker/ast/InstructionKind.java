@@ -0,0 +1,37 @@
+package com.github.jimschubert.docker.ast;
+
+/**
+ * Represents the kind of a Docker instruction.
+ */
+public enum InstructionKind {
+    ADD,
+    ARG,
+    CMD,
+    /**
+     * Represents a comment line.
+     */
+    COMMENT,
+    COPY,
+    /**
+     * Represents a parser directive, such as {@code # syntax=...} or {@code # escape=...}.
+     */
+    DIRECTIVE,
+    ENTRYPOINT,
+    ENV,
+    EXPOSE,
+    FROM,
+    HEALTHCHECK,
+    LABEL,
+    MAINTAINER,
+    ONBUILD,
+    RUN,
+    SHELL,
+    STOPSIGNAL,
+    USER,
+    VOLUME,
+    WORKDIR,
+    /**
+     * Represents an instruction whose keyword the parser doesn't recognize.
+     */
+    UNKNOWN
+}
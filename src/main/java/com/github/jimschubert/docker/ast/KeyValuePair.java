@@ -56,6 +56,17 @@ public class KeyValuePair {
         this.quoting = quoting;
     }
 
+    /**
+     * Calls the visitor's visit method for this key-value pair.
+     *
+     * @param visitor The visitor.
+     * @param <R>     The type of result returned by the visitor.
+     * @return The result of the visit.
+     */
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitKeyValuePair(this);
+    }
+
     /**
      * Converts the key-value pair to its canonical form.
      *
@@ -1,12 +1,13 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Represents a LABEL instruction in a Dockerfile.
  */
-public class LabelInstruction extends DockerInstruction {
+public final class LabelInstruction extends DockerInstruction {
     private List<KeyValuePair> labels = new ArrayList<>();
 
     /**
@@ -15,7 +16,7 @@ public class LabelInstruction extends DockerInstruction {
      * @param labels The labels to set.
      */
     public LabelInstruction(List<KeyValuePair> labels) {
-        super("LABEL");
+        super("LABEL", InstructionKind.LABEL);
         this.labels.addAll(labels);
     }
 
@@ -25,24 +26,29 @@ public class LabelInstruction extends DockerInstruction {
 
     public void setLabels(List<KeyValuePair> labels) {
         this.labels = labels;
+        markModified();
     }
 
     @Override
-    public String toCanonicalForm() {
-        StringBuilder sb = new StringBuilder("LABEL");
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitLabel(this);
+    }
+
+    @Override
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        out.append("LABEL");
         for (KeyValuePair label : labels) {
-            sb.append(" ").append(label.getKey());
+            out.append(" ").append(label.getKey());
             if (label.hasEquals()) {
-                sb.append("=");
+                out.append("=");
             }
             if (label.getQuoting() == Quoting.SINGLE_QUOTED) {
-                sb.append("'").append(label.getValue()).append("'");
+                out.append("'").append(label.getValue()).append("'");
             } else if (label.getQuoting() == Quoting.DOUBLE_QUOTED) {
-                sb.append("\"").append(label.getValue()).append("\"");
+                out.append("\"").append(label.getValue()).append("\"");
             } else {
-                sb.append(label.getValue());
+                out.append(label.getValue());
             }
         }
-        return sb.toString();
     }
 }
\ No newline at end of file
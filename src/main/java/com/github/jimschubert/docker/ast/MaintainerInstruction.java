@@ -1,9 +1,11 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
+
 /**
  * Represents a MAINTAINER instruction.
  */
-public class MaintainerInstruction extends DockerInstruction {
+public final class MaintainerInstruction extends DockerInstruction {
     private final String maintainer;
 
     /**
@@ -12,7 +14,7 @@ public class MaintainerInstruction extends DockerInstruction {
      * @param maintainer The maintainer to set.
      */
     public MaintainerInstruction(String maintainer) {
-        super("MAINTAINER");
+        super("MAINTAINER", InstructionKind.MAINTAINER);
         this.maintainer = maintainer;
     }
 
@@ -21,7 +23,12 @@ public class MaintainerInstruction extends DockerInstruction {
     }
 
     @Override
-    public String toCanonicalForm() {
-        return String.format("%s %s", getInstruction(), maintainer);
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitMaintainer(this);
+    }
+
+    @Override
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        out.append(getInstruction()).append(" ").append(maintainer);
     }
 }
@@ -1,9 +1,11 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
+
 /**
  * Represents an ONBUILD instruction.
  */
-public class OnBuildInstruction extends DockerInstruction {
+public final class OnBuildInstruction extends DockerInstruction {
     private DockerInstruction deferredInstruction;
 
     public DockerInstruction getDeferredInstruction() {
@@ -12,6 +14,7 @@ public class OnBuildInstruction extends DockerInstruction {
 
     public void setDeferredInstruction(DockerInstruction deferredInstruction) {
         this.deferredInstruction = deferredInstruction;
+        markModified();
     }
 
     /**
@@ -20,12 +23,23 @@ public class OnBuildInstruction extends DockerInstruction {
      * @param instruction The instruction to defer.
      */
     public OnBuildInstruction(DockerInstruction instruction) {
-        super("ONBUILD");
+        super("ONBUILD", InstructionKind.ONBUILD);
         deferredInstruction = instruction;
     }
 
     @Override
-    public String toCanonicalForm() {
-        return String.format("%s %s", getInstruction(), deferredInstruction.toCanonicalForm());
+    public boolean isModified() {
+        return super.isModified() || deferredInstruction.isModified();
+    }
+
+    @Override
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitOnBuild(this);
+    }
+
+    @Override
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        out.append(getInstruction()).append(" ");
+        deferredInstruction.appendCanonicalForm(out);
     }
 }
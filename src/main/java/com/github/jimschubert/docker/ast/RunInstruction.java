@@ -1,120 +1,519 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
-public class RunInstruction extends DockerInstruction {
-    private final List<String> commands;
-    private final List<Mount> mounts;
-    private final NetworkOption networkOption;
-    private final SecurityOption securityOption;
-    private final String heredoc;
-    private final String heredocName;
+public final class RunInstruction extends DockerInstruction {
+    private List<String> commands;
+    private String commandText;
+    private List<Mount> mounts;
+    private String network;
+    private String security;
+    private List<Heredoc> heredocs;
+    private transient volatile ShellScript shellScript;
 
-    public RunInstruction(List<String> commands, List<Mount> mounts, NetworkOption networkOption, SecurityOption securityOption, String heredoc, String heredocName) {
-        super("RUN");
+    /**
+     * Creates a new instance of RunInstruction.
+     *
+     * @param commands The commands, which include the {@code <<name} word of each heredoc.
+     * @param mounts   The mounts.
+     * @param network  The value of {@code --network}, or {@code null} if none was given.
+     * @param security The value of {@code --security}, or {@code null} if none was given.
+     * @param heredocs The heredocs, in the order they're started.
+     */
+    public RunInstruction(List<String> commands, List<Mount> mounts, String network, String security, List<Heredoc> heredocs) {
+        this(commands, null, mounts, network, security, heredocs);
+    }
+
+    /**
+     * Creates a new instance of RunInstruction.
+     *
+     * @param commands    The commands, which include the {@code <<name} word of each heredoc.
+     * @param commandText The command as written, which {@link #getShellScript()} tokenizes so that whitespace within
+     *                    quotes is kept, or {@code null} to tokenize the commands joined by spaces.
+     * @param mounts      The mounts.
+     * @param network     The value of {@code --network}, or {@code null} if none was given.
+     * @param security    The value of {@code --security}, or {@code null} if none was given.
+     * @param heredocs    The heredocs, in the order they're started.
+     */
+    public RunInstruction(List<String> commands, String commandText, List<Mount> mounts, String network, String security, List<Heredoc> heredocs) {
+        super("RUN", InstructionKind.RUN);
         this.commands = commands;
+        this.commandText = commandText;
         this.mounts = mounts;
-        this.networkOption = networkOption;
-        this.securityOption = securityOption;
-        this.heredoc = heredoc;
-        this.heredocName = heredocName;
+        this.network = network;
+        this.security = security;
+        this.heredocs = heredocs;
+    }
+
+    /**
+     * Creates a new instance of RunInstruction.
+     *
+     * @param commands       The commands, which include the {@code <<name} word of each heredoc.
+     * @param mounts         The mounts.
+     * @param networkOption  The network option, or {@code null} if none was given.
+     * @param securityOption The security option, or {@code null} if none was given.
+     * @param heredocs       The heredocs, in the order they're started.
+     */
+    public RunInstruction(List<String> commands, List<Mount> mounts, NetworkOption networkOption, SecurityOption securityOption, List<Heredoc> heredocs) {
+        this(commands, mounts, networkOption != null ? networkOption.getValue() : null,
+                securityOption != null ? securityOption.getValue() : null, heredocs);
+    }
+
+    /**
+     * Creates a new instance of RunInstruction with at most one heredoc, whose {@code <<name} word is added to the end of
+     * the commands.
+     *
+     * @param commands       The commands, without the {@code <<name} word of the heredoc.
+     * @param mounts         The mounts.
+     * @param networkOption  The network option, or {@code null} if none was given.
+     * @param securityOption The security option, or {@code null} if none was given.
+     * @param heredoc        The body of the heredoc, without its final newline, or {@code null} if there is none.
+     * @param heredocName    The name of the heredoc.
+     * @deprecated Use {@link #RunInstruction(List, List, NetworkOption, SecurityOption, List)}, which takes any number
+     * of heredocs.
+     */
+    @Deprecated
+    public RunInstruction(List<String> commands, List<Mount> mounts, NetworkOption networkOption, SecurityOption securityOption, String heredoc, String heredocName) {
+        this(heredoc != null ? withHeredocWord(commands, heredocName) : commands, mounts, networkOption, securityOption,
+                heredoc != null ? List.of(new Heredoc(heredocName, heredoc + "\n")) : Collections.emptyList());
     }
 
     public RunInstruction(List<String> commands) {
-        this(commands, Collections.emptyList(), null, null, null, null);
+        this(commands, Collections.emptyList(), (String) null, null, Collections.emptyList());
+    }
+
+    private static List<String> withHeredocWord(List<String> commands, String name) {
+        List<String> result = new ArrayList<>(commands != null ? commands : Collections.emptyList());
+        if (result.isEmpty()) {
+            result.add("<<" + name);
+        } else {
+            result.set(result.size() - 1, result.get(result.size() - 1) + " <<" + name);
+        }
+        return result;
+    }
+
+    /**
+     * Creates a RUN instruction whose fields are decoded when first accessed.
+     *
+     * @param decoder Supplies an equivalent instruction with all fields decoded.
+     * @return The instruction.
+     */
+    public static RunInstruction deferred(Supplier<RunInstruction> decoder) {
+        RunInstruction instruction = new RunInstruction(null, null, (String) null, null, null);
+        instruction.deferDecoding(() -> {
+            RunInstruction decoded = decoder.get();
+            instruction.commands = decoded.commands;
+            instruction.commandText = decoded.commandText;
+            instruction.mounts = decoded.mounts;
+            instruction.network = decoded.network;
+            instruction.security = decoded.security;
+            instruction.heredocs = decoded.heredocs;
+        });
+        return instruction;
     }
 
     public List<String> getCommands() {
+        decode();
         return commands;
     }
 
+    /**
+     * @return The command as written, or {@code null} if it wasn't given when the instruction was created.
+     */
+    public String getCommandText() {
+        decode();
+        return commandText;
+    }
+
     public List<Mount> getMounts() {
+        decode();
         return mounts;
     }
 
+    /**
+     * @return The value of {@code --network} as written, or {@code null} if none was given.
+     */
+    public String getNetwork() {
+        decode();
+        return network;
+    }
+
+    /**
+     * @return The network option, or {@code null} if none was given or its value isn't one BuildKit supports.
+     */
     public NetworkOption getNetworkOption() {
-        return networkOption;
+        decode();
+        return network != null ? NetworkOption.fromValue(network) : null;
+    }
+
+    /**
+     * @return The value of {@code --security} as written, or {@code null} if none was given.
+     */
+    public String getSecurity() {
+        decode();
+        return security;
     }
 
+    /**
+     * @return The security option, or {@code null} if none was given or its value isn't one BuildKit supports.
+     */
     public SecurityOption getSecurityOption() {
-        return securityOption;
+        decode();
+        return security != null ? SecurityOption.fromValue(security) : null;
     }
 
+    public List<Heredoc> getHeredocs() {
+        decode();
+        return heredocs;
+    }
+
+    /**
+     * @return The body of the first heredoc, or {@code null} if there is none.
+     */
     public String getHeredoc() {
-        return heredoc;
+        decode();
+        return heredocs.isEmpty() ? null : heredocs.get(0).getText();
+    }
+
+    /**
+     * @return The name of the first heredoc, or {@code null} if there is none.
+     */
+    public String getHeredocName() {
+        decode();
+        return heredocs.isEmpty() ? null : heredocs.get(0).getName();
+    }
+
+    /**
+     * Parses the command as a shell script on the first call, and returns the same script on later calls. The bodies
+     * of any heredocs aren't included; each can be parsed with {@link ShellScript#parse(CharSequence)}.
+     *
+     * @return The script, or {@code null} if the command is in exec form.
+     */
+    public ShellScript getShellScript() {
+        decode();
+        ShellScript script = shellScript;
+        if (script == null) {
+            String command = commandText != null ? commandText : String.join(" ", commands);
+            if (command.startsWith("[")) {
+                return null;
+            }
+            script = ShellScript.parse(command);
+            shellScript = script;
+        }
+        return script;
+    }
+
+    @Override
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitRun(this);
     }
 
     @Override
-    public String toCanonicalForm() {
-        StringBuilder sb = new StringBuilder(getInstruction());
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        decode();
+        out.append(getInstruction());
 
         for (Mount mount : mounts) {
-            if (mount.getType() == null) {
-                sb.append(" --mount=target=").append(mount.getTarget());
-            } else {
-                sb.append(" --mount=type=").append(mount.getType())
-                        .append(",target=").append(mount.getTarget());
-                if (mount.getId() != null) {
-                    sb.append(",id=").append(mount.getId());
-                }
-            }
+            out.append(" --mount=");
+            mount.appendOptions(out);
         }
 
-        if (networkOption != null) {
-            sb.append(" --network=").append(networkOption.name().toLowerCase());
+        if (network != null) {
+            out.append(" --network=").append(network);
         }
 
-        if (securityOption != null) {
-            sb.append(" --security=").append(securityOption.name().toLowerCase());
+        if (security != null) {
+            out.append(" --security=").append(security);
         }
 
         for (String command : commands) {
-            sb.append(" ").append(command);
+            out.append(" ").append(command);
         }
 
-        if (heredoc != null) {
-            sb.append("<<").append(heredocName).append("\n").append(heredoc).append("\n").append(heredocName);
+        for (Heredoc heredoc : heredocs) {
+            heredoc.appendCanonicalForm(out);
         }
-
-        return sb.toString();
     }
 
+    /**
+     * Represents a {@code --mount} flag, such as {@code --mount=type=cache,target=/root/.cache,sharing=locked}.
+     * <p>
+     * The options are kept in the order they were written, under their canonical keys: {@code dst} and
+     * {@code destination} are stored as {@code target}, {@code src} as {@code source}, {@code ro} and {@code rw} as
+     * {@code readonly}, and a flag given without a value, such as {@code required}, has the value {@code true}.
+     */
     public static class Mount {
-        private final String type;
-        private final String target;
-        private final String id;
+        private final Map<String, String> options;
 
+        /**
+         * Creates a new instance of Mount.
+         *
+         * @param options The options by canonical key, in the order they were written. A key with a {@code null}
+         *                value is written without one.
+         */
+        public Mount(Map<String, String> options) {
+            this.options = Collections.unmodifiableMap(new LinkedHashMap<>(options));
+        }
+
+        /**
+         * Creates a new instance of Mount.
+         *
+         * @param type   The mount type, or {@code null} for the default of {@code bind}.
+         * @param target The path the mount is placed at.
+         * @param id     The cache or secret id, or {@code null} if none was given.
+         */
         public Mount(String type, String target, String id) {
-            this.type = type;
-            this.target = target;
-            this.id = id;
+            Map<String, String> options = new LinkedHashMap<>(4);
+            if (type != null) {
+                options.put("type", type);
+            }
+            options.put("target", target);
+            if (id != null) {
+                options.put("id", id);
+            }
+            this.options = Collections.unmodifiableMap(options);
         }
 
         public Mount(String target) {
-            this.type = null;
-            this.target = target;
-            this.id = null;
+            this(null, target, null);
+        }
+
+        /**
+         * @return Every option by canonical key, in the order they were written.
+         */
+        public Map<String, String> getOptions() {
+            return options;
         }
 
+        /**
+         * @return The mount type as written, or {@code null} if none was given, in which case it's {@code bind}.
+         */
         public String getType() {
-            return type;
+            return options.get("type");
+        }
+
+        /**
+         * @return The mount type, which defaults to {@code bind}, or {@code null} if it isn't one BuildKit supports.
+         */
+        public MountType getMountType() {
+            String type = getType();
+            return type != null ? MountType.fromValue(type) : MountType.BIND;
         }
 
         public String getTarget() {
-            return target;
+            return options.get("target");
         }
 
         public String getId() {
-            return id;
+            return options.get("id");
+        }
+
+        public String getSource() {
+            return options.get("source");
+        }
+
+        /**
+         * @return The stage or image a bind or cache mount is taken from, or {@code null} if it's the build context.
+         */
+        public String getFrom() {
+            return options.get("from");
+        }
+
+        /**
+         * @return The sharing mode of a cache mount, such as {@code shared}, {@code private} or {@code locked}.
+         */
+        public String getSharing() {
+            return options.get("sharing");
+        }
+
+        public String getMode() {
+            return options.get("mode");
+        }
+
+        public String getUid() {
+            return options.get("uid");
+        }
+
+        public String getGid() {
+            return options.get("gid");
+        }
+
+        /**
+         * @return The size limit of a tmpfs mount.
+         */
+        public String getSize() {
+            return options.get("size");
+        }
+
+        /**
+         * @return The environment variable a secret is exposed as.
+         */
+        public String getEnv() {
+            return options.get("env");
+        }
+
+        /**
+         * @return Whether the mount is read-only, or {@code null} if that wasn't given.
+         */
+        public Boolean getReadOnly() {
+            return parseBoolean(options.get("readonly"));
+        }
+
+        /**
+         * @return Whether a secret or SSH mount must be available, or {@code null} if that wasn't given.
+         */
+        public Boolean getRequired() {
+            return parseBoolean(options.get("required"));
+        }
+
+        /**
+         * Calls the visitor's visit method for this mount.
+         *
+         * @param visitor The visitor.
+         * @param <R>     The type of result returned by the visitor.
+         * @return The result of the visit.
+         */
+        public <R> R accept(DockerInstructionVisitor<R> visitor) {
+            return visitor.visitMount(this);
+        }
+
+        /**
+         * Appends the options, separated by commas. An option holding a comma or a double quote is quoted as a CSV
+         * field, and the whole value is then quoted if it holds whitespace, quotes or backslashes, since those are
+         * removed from a flag before its options are split.
+         */
+        void appendOptions(Appendable out) throws IOException {
+            StringBuilder csv = new StringBuilder();
+            for (Map.Entry<String, String> option : options.entrySet()) {
+                if (!csv.isEmpty()) {
+                    csv.append(',');
+                }
+                String field = option.getValue() == null ? option.getKey() : option.getKey() + "=" + option.getValue();
+                if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0) {
+                    csv.append('"').append(field.replace("\"", "\"\"")).append('"');
+                } else {
+                    csv.append(field);
+                }
+            }
+
+            boolean quoted = false;
+            for (int i = 0; i < csv.length() && !quoted; i++) {
+                char c = csv.charAt(i);
+                quoted = Character.isWhitespace(c) || c == '"' || c == '\'' || c == '\\';
+            }
+            if (!quoted) {
+                out.append(csv);
+            } else if (csv.indexOf("'") < 0) {
+                out.append('\'').append(csv).append('\'');
+            } else {
+                out.append('"');
+                for (int i = 0; i < csv.length(); i++) {
+                    char c = csv.charAt(i);
+                    if (c == '"' || c == '\\') {
+                        out.append('\\');
+                    }
+                    out.append(c);
+                }
+                out.append('"');
+            }
+        }
+
+        /**
+         * Parses a boolean the way BuildKit does, or returns {@code null} if the value isn't one.
+         */
+        private static Boolean parseBoolean(String value) {
+            if (value == null) {
+                return null;
+            }
+            return switch (value) {
+                case "1", "t", "T", "true", "TRUE", "True" -> Boolean.TRUE;
+                case "0", "f", "F", "false", "FALSE", "False" -> Boolean.FALSE;
+                default -> null;
+            };
+        }
+    }
+
+    public enum MountType {
+        BIND, CACHE, TMPFS, SECRET, SSH;
+
+        /**
+         * @return The type as written in a {@code --mount} flag.
+         */
+        public String getValue() {
+            return name().toLowerCase();
+        }
+
+        /**
+         * Finds a type by its value, ignoring case.
+         *
+         * @param value The value.
+         * @return The type, or {@code null} if there is none.
+         */
+        public static MountType fromValue(String value) {
+            for (MountType type : values()) {
+                if (type.name().equalsIgnoreCase(value)) {
+                    return type;
+                }
+            }
+            return null;
         }
     }
 
     public enum NetworkOption {
-        DEFAULT, NONE, HOST
+        DEFAULT, NONE, HOST;
+
+        /**
+         * @return The option as written in a {@code --network} flag.
+         */
+        public String getValue() {
+            return name().toLowerCase();
+        }
+
+        /**
+         * Finds an option by its value, ignoring case.
+         *
+         * @param value The value.
+         * @return The option, or {@code null} if there is none.
+         */
+        public static NetworkOption fromValue(String value) {
+            for (NetworkOption option : values()) {
+                if (option.name().equalsIgnoreCase(value)) {
+                    return option;
+                }
+            }
+            return null;
+        }
     }
 
     public enum SecurityOption {
-        DEFAULT, INSECURE
+        DEFAULT, INSECURE, SANDBOX;
+
+        /**
+         * @return The option as written in a {@code --security} flag.
+         */
+        public String getValue() {
+            return name().toLowerCase();
+        }
+
+        /**
+         * Finds an option by its value, ignoring case.
+         *
+         * @param value The value.
+         * @return The option, or {@code null} if there is none.
+         */
+        public static SecurityOption fromValue(String value) {
+            for (SecurityOption option : values()) {
+                if (option.name().equalsIgnoreCase(value)) {
+                    return option;
+                }
+            }
+            return null;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,95 @@
+package com.github.jimschubert.docker.ast;
+
+import java.util.List;
+
+/**
+ * Represents a simple command of a shell script: the assignments and words up to the next operator, along with their
+ * redirections. For example, {@code DEBIAN_FRONTEND=noninteractive apt-get install -y curl > /dev/null} has one
+ * assignment, the words {@code apt-get}, {@code install}, {@code -y} and {@code curl}, and one redirection.
+ */
+public final class ShellCommand {
+    private final List<ShellWord> words;
+    private final List<ShellWord> assignments;
+    private final List<ShellRedirection> redirections;
+    private final int depth;
+    private final ShellOperator operator;
+
+    /**
+     * Creates a new instance of ShellCommand.
+     *
+     * @param words        The command name and its arguments.
+     * @param assignments  The variable assignments preceding the command name.
+     * @param redirections The redirections, in the order they're written.
+     * @param operator     The operator following the command, or {@code null} if there is none.
+     * @param depth        The number of subshells and brace groups the command is nested within.
+     */
+    public ShellCommand(List<ShellWord> words, List<ShellWord> assignments, List<ShellRedirection> redirections, ShellOperator operator, int depth) {
+        this.words = List.copyOf(words);
+        this.assignments = List.copyOf(assignments);
+        this.redirections = List.copyOf(redirections);
+        this.operator = operator;
+        this.depth = depth;
+    }
+
+    /**
+     * @return The command name followed by its arguments, excluding assignments and redirections.
+     */
+    public List<ShellWord> getWords() {
+        return words;
+    }
+
+    /**
+     * @return The value of the command name, or {@code null} if the command only holds assignments or redirections.
+     */
+    public String getName() {
+        return words.isEmpty() ? null : words.get(0).getValue();
+    }
+
+    /**
+     * @return The words following the command name.
+     */
+    public List<ShellWord> getArguments() {
+        return words.isEmpty() ? words : words.subList(1, words.size());
+    }
+
+    public List<ShellWord> getAssignments() {
+        return assignments;
+    }
+
+    public List<ShellRedirection> getRedirections() {
+        return redirections;
+    }
+
+    /**
+     * @return The operator following the command, or {@code null} if there is none.
+     */
+    public ShellOperator getOperator() {
+        return operator;
+    }
+
+    /**
+     * @return The number of subshells and brace groups the command is nested within, which is 0 at the top level.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (ShellWord assignment : assignments) {
+            builder.append(assignment).append(' ');
+        }
+        for (ShellWord word : words) {
+            builder.append(word).append(' ');
+        }
+        for (ShellRedirection redirection : redirections) {
+            builder.append(redirection).append(' ');
+        }
+        builder.setLength(Math.max(0, builder.length() - 1));
+        if (operator != null) {
+            builder.append(' ').append(operator.getSymbol());
+        }
+        return builder.toString();
+    }
+}
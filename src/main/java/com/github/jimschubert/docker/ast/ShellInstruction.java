@@ -1,11 +1,12 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Represents a SHELL instruction.
  */
-public class ShellInstruction extends DockerInstruction {
+public final class ShellInstruction extends DockerInstruction {
     private final List<String> commands;
 
     /**
@@ -14,7 +15,7 @@ public class ShellInstruction extends DockerInstruction {
      * @param commands The commands to run.
      */
     public ShellInstruction(List<String> commands) {
-        super("SHELL");
+        super("SHELL", InstructionKind.SHELL);
         this.commands = commands;
     }
 
@@ -24,15 +25,19 @@ public class ShellInstruction extends DockerInstruction {
 
     @SuppressWarnings("DuplicatedCode")
     @Override
-    public String toCanonicalForm() {
-        StringBuilder sb = new StringBuilder(getInstruction() + " [");
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitShell(this);
+    }
+
+    @Override
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        out.append(getInstruction()).append(" [");
         for (int i = 0; i < commands.size(); i++) {
-            sb.append("\"").append(commands.get(i)).append("\"");
+            out.append("\"").append(commands.get(i)).append("\"");
             if (i < commands.size() - 1) {
-                sb.append(", ");
+                out.append(", ");
             }
         }
-        sb.append("]");
-        return sb.toString();
+        out.append("]");
     }
 }
@@ -0,0 +1,40 @@
+package com.github.jimschubert.docker.ast;
+
+/**
+ * Represents an operator which separates the commands of a shell script.
+ */
+public enum ShellOperator {
+    /**
+     * Represents {@code &&}, which runs the next command only if this one succeeds.
+     */
+    AND("&&"),
+    /**
+     * Represents {@code ||}, which runs the next command only if this one fails.
+     */
+    OR("||"),
+    /**
+     * Represents {@code |} or {@code |&}, which pipes the output of this command to the next.
+     */
+    PIPE("|"),
+    /**
+     * Represents {@code ;}, {@code ;;} or a newline, which run the next command once this one finishes.
+     */
+    SEQUENCE(";"),
+    /**
+     * Represents {@code &}, which runs this command in the background.
+     */
+    BACKGROUND("&");
+
+    private final String symbol;
+
+    ShellOperator(String symbol) {
+        this.symbol = symbol;
+    }
+
+    /**
+     * @return The operator as it's usually written.
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+}
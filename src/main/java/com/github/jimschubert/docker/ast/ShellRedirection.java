@@ -0,0 +1,33 @@
+package com.github.jimschubert.docker.ast;
+
+/**
+ * Represents a redirection of a shell command, such as {@code > /dev/null}, {@code 2>&1} or {@code <<EOF}.
+ */
+public final class ShellRedirection {
+    private final String operator;
+    private final ShellWord target;
+
+    /**
+     * Creates a new instance of ShellRedirection.
+     *
+     * @param operator The operator as written, including any file descriptor, such as {@code 2>} or {@code <<-}.
+     * @param target   The file, file descriptor or heredoc name, or {@code null} if the script ends first.
+     */
+    public ShellRedirection(String operator, ShellWord target) {
+        this.operator = operator;
+        this.target = target;
+    }
+
+    public String getOperator() {
+        return operator;
+    }
+
+    public ShellWord getTarget() {
+        return target;
+    }
+
+    @Override
+    public String toString() {
+        return target != null ? operator + target : operator;
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.jimschubert.docker.ast;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents the shell form command of a RUN, CMD or ENTRYPOINT instruction, or the body of a heredoc, as a sequence
+ * of simple commands separated by operators.
+ * <p>
+ * The script is tokenized following the POSIX shell grammar for words, quoting, expansions, operators and
+ * redirections, in a single pass. Compound commands are flattened: subshells and brace groups only raise the
+ * {@link ShellCommand#getDepth() depth} of the commands within them, the reserved words of {@code if}, {@code while}
+ * and {@code until} are dropped, and {@code for} and {@code case} are commands of their own. Command substitutions
+ * stay within the word holding them, though the variables they expand are still found.
+ * <p>
+ * A script and everything within it are immutable, so the script an instruction caches can be shared by its callers.
+ */
+public final class ShellScript {
+    private final String text;
+    private final List<ShellCommand> commands;
+    private final List<ShellVariable> variables;
+
+    /**
+     * Creates a new instance of ShellScript.
+     *
+     * @param text      The script.
+     * @param commands  The simple commands, in order.
+     * @param variables Every parameter expansion in the script, in order.
+     */
+    public ShellScript(String text, List<ShellCommand> commands, List<ShellVariable> variables) {
+        this.text = text;
+        this.commands = List.copyOf(commands);
+        this.variables = List.copyOf(variables);
+    }
+
+    /**
+     * Parses a shell script.
+     *
+     * @param text The script.
+     * @return The parsed script.
+     */
+    public static ShellScript parse(CharSequence text) {
+        return new ShellTokenizer(text).tokenize();
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public List<ShellCommand> getCommands() {
+        return commands;
+    }
+
+    public List<ShellVariable> getVariables() {
+        return variables;
+    }
+
+    /**
+     * Finds the commands with the given name, such as every {@code apt-get} invocation.
+     *
+     * @param name The command name, compared with the value of each command's first word.
+     * @return The commands, in order.
+     */
+    public List<ShellCommand> findCommands(String name) {
+        List<ShellCommand> found = new ArrayList<>(0);
+        for (ShellCommand command : commands) {
+            if (name.equals(command.getName())) {
+                found.add(command);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
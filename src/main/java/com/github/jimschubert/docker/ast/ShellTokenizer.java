@@ -0,0 +1,510 @@
+package com.github.jimschubert.docker.ast;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tokenizes a shell script into a {@link ShellScript} in a single left-to-right pass.
+ * <p>
+ * Quoted strings, expansions and command substitutions are scanned by index rather than by copying them, and the
+ * characters of each word's value are collected into one reused buffer.
+ */
+final class ShellTokenizer {
+    private final CharSequence text;
+    private final int length;
+    private final StringBuilder value = new StringBuilder();
+    private final List<ShellCommand> commands = new ArrayList<>();
+    private final List<ShellVariable> variables = new ArrayList<>();
+    private int position = 0;
+    private int depth = 0;
+
+    private final List<ShellWord> words = new ArrayList<>();
+    private List<ShellWord> assignments = List.of();
+    private List<ShellRedirection> redirections = List.of();
+    private int commandDepth = 0;
+
+    // set while scanning a word
+    private boolean substitution;
+
+    ShellTokenizer(CharSequence text) {
+        this.text = text;
+        this.length = text.length();
+    }
+
+    ShellScript tokenize() {
+        while (true) {
+            skipBlanks();
+            if (position >= length) {
+                break;
+            }
+            char c = text.charAt(position);
+            switch (c) {
+                case '\n' -> {
+                    position++;
+                    endCommand(ShellOperator.SEQUENCE);
+                }
+                case ';' -> {
+                    position += peek(1) == ';' ? 2 : 1;
+                    endCommand(ShellOperator.SEQUENCE);
+                }
+                case '&' -> {
+                    if (peek(1) == '&') {
+                        position += 2;
+                        endCommand(ShellOperator.AND);
+                    } else if (peek(1) == '>') {
+                        readRedirection(position);
+                    } else {
+                        position++;
+                        endCommand(ShellOperator.BACKGROUND);
+                    }
+                }
+                case '|' -> {
+                    if (peek(1) == '|') {
+                        position += 2;
+                        endCommand(ShellOperator.OR);
+                    } else {
+                        position += peek(1) == '&' ? 2 : 1;
+                        endCommand(ShellOperator.PIPE);
+                    }
+                }
+                case '(' -> {
+                    endCommand(null);
+                    position++;
+                    depth++;
+                }
+                case ')' -> {
+                    endCommand(null);
+                    position++;
+                    depth = Math.max(0, depth - 1);
+                }
+                case '<', '>' -> readRedirection(position);
+                case '#' -> {
+                    while (position < length && text.charAt(position) != '\n') {
+                        position++;
+                    }
+                }
+                default -> readWordOrRedirection();
+            }
+        }
+        endCommand(null);
+        return new ShellScript(text.toString(), commands, variables);
+    }
+
+    private char peek(int offset) {
+        int i = position + offset;
+        return i < length ? text.charAt(i) : 0;
+    }
+
+    private void skipBlanks() {
+        while (position < length) {
+            char c = text.charAt(position);
+            if (c == ' ' || c == '\t' || c == '\r') {
+                position++;
+            } else if (c == '\\' && peek(1) == '\n') {
+                position += 2;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private boolean isCommandStart() {
+        return words.isEmpty() && assignments.isEmpty() && redirections.isEmpty();
+    }
+
+    private void endCommand(ShellOperator operator) {
+        if (!isCommandStart()) {
+            commands.add(new ShellCommand(words, assignments, redirections, operator, commandDepth));
+            words.clear();
+            assignments = List.of();
+            redirections = List.of();
+        } else if (operator != null && !commands.isEmpty()) {
+            // an operator following a subshell or brace group applies to its last command
+            ShellCommand last = commands.get(commands.size() - 1);
+            if (last.getOperator() == null) {
+                commands.set(commands.size() - 1, new ShellCommand(last.getWords(), last.getAssignments(),
+                        last.getRedirections(), operator, last.getDepth()));
+            }
+        }
+    }
+
+    private void readWordOrRedirection() {
+        int start = position;
+        int i = position;
+        while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            i++;
+        }
+        if (i > start && i < length && (text.charAt(i) == '<' || text.charAt(i) == '>')) {
+            position = i;
+            readRedirection(start);
+            return;
+        }
+
+        if (isCommandStart()) {
+            commandDepth = depth;
+        }
+        ShellWord word = readWord();
+        if (isCommandStart() && !word.isQuoted()) {
+            switch (word.getRaw()) {
+                case "{" -> {
+                    depth++;
+                    return;
+                }
+                case "}" -> {
+                    depth = Math.max(0, depth - 1);
+                    return;
+                }
+                case "!", "if", "then", "else", "elif", "fi", "do", "done", "while", "until" -> {
+                    return;
+                }
+            }
+        }
+        if (words.isEmpty() && isAssignment(word.getRaw())) {
+            if (assignments.isEmpty()) {
+                assignments = new ArrayList<>(2);
+            }
+            assignments.add(word);
+        } else {
+            words.add(word);
+        }
+    }
+
+    private static boolean isAssignment(String raw) {
+        if (raw.isEmpty() || !isNameStart(raw.charAt(0))) {
+            return false;
+        }
+        int i = 1;
+        while (i < raw.length() && isNameChar(raw.charAt(i))) {
+            i++;
+        }
+        return i < raw.length() && raw.charAt(i) == '=';
+    }
+
+    /**
+     * Reads a redirection whose operator starts at the current position, and whose file descriptor, if any, starts at
+     * {@code start}.
+     */
+    private void readRedirection(int start) {
+        if (isCommandStart()) {
+            commandDepth = depth;
+        }
+        char c = text.charAt(position++);
+        if (c == '&') {
+            // &> and &>>
+            position++;
+            if (peek(0) == '>') {
+                position++;
+            }
+        } else if (c == '<') {
+            if (peek(0) == '<') {
+                position++;
+                if (peek(0) == '<' || peek(0) == '-') {
+                    position++;
+                }
+            } else if (peek(0) == '&' || peek(0) == '>') {
+                position++;
+            }
+        } else if (peek(0) == '>' || peek(0) == '&' || peek(0) == '|') {
+            position++;
+        }
+        String operator = text.subSequence(start, position).toString();
+        skipBlanks();
+        ShellWord target = null;
+        if (position < length && !isMetacharacter(text.charAt(position))) {
+            target = readWord();
+        }
+        if (redirections.isEmpty()) {
+            redirections = new ArrayList<>(2);
+        }
+        redirections.add(new ShellRedirection(operator, target));
+    }
+
+    private static boolean isMetacharacter(char c) {
+        return switch (c) {
+            case ' ', '\t', '\r', '\n', ';', '&', '|', '(', ')', '<', '>' -> true;
+            default -> false;
+        };
+    }
+
+    private ShellWord readWord() {
+        int start = position;
+        int firstVariable = variables.size();
+        value.setLength(0);
+        substitution = false;
+        boolean plain = false;
+        boolean escaped = false;
+        int quotedParts = 0;
+        Quoting quoting = Quoting.UNQUOTED;
+
+        while (position < length) {
+            char c = text.charAt(position);
+            if (isMetacharacter(c)) {
+                break;
+            }
+            switch (c) {
+                case '\\' -> {
+                    if (position + 1 < length) {
+                        if (text.charAt(position + 1) != '\n') {
+                            value.append(text.charAt(position + 1));
+                        }
+                        escaped = true;
+                        position += 2;
+                    } else {
+                        value.append(c);
+                        position++;
+                    }
+                }
+                case '\'' -> {
+                    int close = indexOf('\'', position + 1);
+                    value.append(text, position + 1, close);
+                    position = Math.min(close + 1, length);
+                    quotedParts++;
+                    quoting = Quoting.SINGLE_QUOTED;
+                }
+                case '"' -> {
+                    position = scanDoubleQuoted(position + 1, value);
+                    quotedParts++;
+                    quoting = Quoting.DOUBLE_QUOTED;
+                }
+                case '$' -> {
+                    int end = scanExpansion(position, false);
+                    value.append(text, position, end);
+                    position = end;
+                    plain = true;
+                }
+                case '`' -> {
+                    int end = scanBackticks(position + 1, false);
+                    value.append(text, position, end);
+                    position = end;
+                    plain = true;
+                }
+                default -> {
+                    value.append(c);
+                    position++;
+                    plain = true;
+                }
+            }
+        }
+
+        List<ShellVariable> wordVariables = variables.subList(firstVariable, variables.size());
+        String raw = text.subSequence(start, position).toString();
+        // a word without quotes or escapes is its own value
+        return new ShellWord(raw, quotedParts == 0 && !escaped ? raw : value.toString(), start,
+                quotedParts == 1 && !plain && !escaped ? quoting : Quoting.UNQUOTED,
+                quotedParts > 0 || escaped, substitution, wordVariables);
+    }
+
+    private int indexOf(char c, int from) {
+        for (int i = from; i < length; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Scans a double quoted string from just after its opening quote, appending its value to {@code out} if it's not
+     * {@code null}.
+     *
+     * @return The index following the closing quote.
+     */
+    private int scanDoubleQuoted(int from, StringBuilder out) {
+        int i = from;
+        while (i < length) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> {
+                    return i + 1;
+                }
+                case '\\' -> {
+                    if (i + 1 < length) {
+                        char next = text.charAt(i + 1);
+                        if (out != null && next != '\n') {
+                            if (next != '$' && next != '`' && next != '"' && next != '\\') {
+                                out.append(c);
+                            }
+                            out.append(next);
+                        }
+                        i += 2;
+                    } else {
+                        if (out != null) {
+                            out.append(c);
+                        }
+                        i++;
+                    }
+                }
+                case '$' -> {
+                    int end = scanExpansion(i, true);
+                    if (out != null) {
+                        out.append(text, i, end);
+                    }
+                    i = end;
+                }
+                case '`' -> {
+                    int end = scanBackticks(i + 1, true);
+                    if (out != null) {
+                        out.append(text, i, end);
+                    }
+                    i = end;
+                }
+                default -> {
+                    if (out != null) {
+                        out.append(c);
+                    }
+                    i++;
+                }
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Scans an expansion starting with {@code $}, recording the variables it expands.
+     *
+     * @return The index following the expansion, which is {@code at + 1} for a {@code $} which starts none.
+     */
+    private int scanExpansion(int at, boolean quoted) {
+        int i = at + 1;
+        if (i >= length) {
+            return i;
+        }
+        char c = text.charAt(i);
+        if (c == '{') {
+            int nameStart = i + 1;
+            if (nameStart + 1 < length && (text.charAt(nameStart) == '#' || text.charAt(nameStart) == '!')
+                    && text.charAt(nameStart + 1) != '}') {
+                nameStart++;
+            }
+            int nameEnd = scanName(nameStart);
+            int index = variables.size();
+            if (nameEnd > nameStart) {
+                variables.add(null);
+            }
+            int end = scanBraced(nameEnd, quoted);
+            if (nameEnd > nameStart) {
+                variables.set(index, new ShellVariable(text.subSequence(nameStart, nameEnd).toString(), at, end, true, quoted));
+            }
+            return end;
+        }
+        if (c == '(') {
+            substitution = true;
+            return scanSubstitution(i + 1);
+        }
+        int nameEnd = scanName(i);
+        if (nameEnd > i) {
+            variables.add(new ShellVariable(text.subSequence(i, nameEnd).toString(), at, nameEnd, false, quoted));
+            return nameEnd;
+        }
+        return i;
+    }
+
+    /**
+     * Scans a variable name, or a single positional or special parameter.
+     *
+     * @return The index following the name, which is {@code from} if there is none.
+     */
+    private int scanName(int from) {
+        if (from >= length) {
+            return from;
+        }
+        char c = text.charAt(from);
+        if (isNameStart(c)) {
+            int i = from + 1;
+            while (i < length && isNameChar(text.charAt(i))) {
+                i++;
+            }
+            return i;
+        }
+        return (c >= '0' && c <= '9') || "@*#?$!-".indexOf(c) >= 0 ? from + 1 : from;
+    }
+
+    /**
+     * Scans the rest of a braced expansion, such as {@code :-default}, recording any variables expanded within it.
+     *
+     * @return The index following the closing brace.
+     */
+    private int scanBraced(int from, boolean quoted) {
+        int i = from;
+        while (i < length) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '}' -> {
+                    return i + 1;
+                }
+                case '\\' -> i += 2;
+                case '\'' -> i = quoted ? i + 1 : Math.min(indexOf('\'', i + 1) + 1, length);
+                case '"' -> i = scanDoubleQuoted(i + 1, null);
+                case '$' -> i = scanExpansion(i, quoted);
+                case '`' -> i = scanBackticks(i + 1, quoted);
+                default -> i++;
+            }
+        }
+        return Math.min(i, length);
+    }
+
+    /**
+     * Scans a command substitution or arithmetic expansion from just after its opening parenthesis, recording any
+     * variables expanded within it.
+     *
+     * @return The index following the matching closing parenthesis.
+     */
+    private int scanSubstitution(int from) {
+        int nesting = 1;
+        int i = from;
+        while (i < length) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '(' -> {
+                    nesting++;
+                    i++;
+                }
+                case ')' -> {
+                    if (--nesting == 0) {
+                        return i + 1;
+                    }
+                    i++;
+                }
+                case '\\' -> i += 2;
+                case '\'' -> i = Math.min(indexOf('\'', i + 1) + 1, length);
+                case '"' -> i = scanDoubleQuoted(i + 1, null);
+                case '$' -> i = scanExpansion(i, false);
+                case '`' -> i = scanBackticks(i + 1, false);
+                default -> i++;
+            }
+        }
+        return Math.min(i, length);
+    }
+
+    /**
+     * Scans a backtick command substitution from just after its opening backtick, recording any variables expanded
+     * within it.
+     *
+     * @return The index following the closing backtick.
+     */
+    private int scanBackticks(int from, boolean quoted) {
+        substitution = true;
+        int i = from;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == '`') {
+                return i + 1;
+            } else if (c == '\\') {
+                i += 2;
+            } else if (c == '$') {
+                i = scanExpansion(i, quoted);
+            } else {
+                i++;
+            }
+        }
+        return Math.min(i, length);
+    }
+
+    private static boolean isNameStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isNameChar(char c) {
+        return isNameStart(c) || (c >= '0' && c <= '9');
+    }
+}
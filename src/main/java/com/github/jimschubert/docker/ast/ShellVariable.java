@@ -0,0 +1,54 @@
+package com.github.jimschubert.docker.ast;
+
+/**
+ * Represents a parameter expansion in a shell script, such as {@code $HOME}, {@code ${VERSION:-1.0}} or {@code $1}.
+ */
+public final class ShellVariable {
+    private final String name;
+    private final int start;
+    private final int end;
+    private final boolean braced;
+    private final boolean quoted;
+
+    /**
+     * Creates a new instance of ShellVariable.
+     *
+     * @param name   The name of the variable, such as {@code VERSION} for {@code ${VERSION:-1.0}}.
+     * @param start  The index in the script of the {@code $} which starts the expansion.
+     * @param end    The index in the script following the expansion.
+     * @param braced Whether the expansion is braced, as in {@code ${NAME}}.
+     * @param quoted Whether the expansion is within double quotes, so its value isn't split into words.
+     */
+    public ShellVariable(String name, int start, int end, boolean braced, boolean quoted) {
+        this.name = name;
+        this.start = start;
+        this.end = end;
+        this.braced = braced;
+        this.quoted = quoted;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public boolean isBraced() {
+        return braced;
+    }
+
+    public boolean isQuoted() {
+        return quoted;
+    }
+
+    @Override
+    public String toString() {
+        return "$" + name;
+    }
+}
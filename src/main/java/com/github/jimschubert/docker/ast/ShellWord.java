@@ -0,0 +1,84 @@
+package com.github.jimschubert.docker.ast;
+
+import java.util.List;
+
+/**
+ * Represents a word of a shell script, such as a command name, an argument or an assignment.
+ * <p>
+ * The value of a word is its text with quotes removed and backslash escapes resolved. Expansions are left as written, so
+ * the value of {@code "$HOME/bin"} is {@code $HOME/bin}; the expansions are listed by {@link #getVariables()}.
+ */
+public final class ShellWord {
+    private final String raw;
+    private final String value;
+    private final int start;
+    private final Quoting quoting;
+    private final boolean quoted;
+    private final boolean substitution;
+    private final List<ShellVariable> variables;
+
+    /**
+     * Creates a new instance of ShellWord.
+     *
+     * @param raw          The word as written.
+     * @param value        The word with quotes removed and escapes resolved.
+     * @param start        The index of the word in the script.
+     * @param quoting      The quoting of the word, if it's a single quoted string, or {@link Quoting#UNQUOTED}.
+     * @param quoted       Whether any part of the word is quoted or escaped.
+     * @param substitution Whether the word holds a command substitution, such as {@code $(uname -m)}.
+     * @param variables    The parameter expansions within the word, including those within command substitutions.
+     */
+    public ShellWord(String raw, String value, int start, Quoting quoting, boolean quoted, boolean substitution, List<ShellVariable> variables) {
+        this.raw = raw;
+        this.value = value;
+        this.start = start;
+        this.quoting = quoting;
+        this.quoted = quoted;
+        this.substitution = substitution;
+        this.variables = List.copyOf(variables);
+    }
+
+    public String getRaw() {
+        return raw;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return start + raw.length();
+    }
+
+    /**
+     * @return {@link Quoting#SINGLE_QUOTED} or {@link Quoting#DOUBLE_QUOTED} if the whole word is one quoted string,
+     * otherwise {@link Quoting#UNQUOTED}.
+     */
+    public Quoting getQuoting() {
+        return quoting;
+    }
+
+    /**
+     * @return {@code true} if any part of the word is quoted or escaped.
+     */
+    public boolean isQuoted() {
+        return quoted;
+    }
+
+    public boolean hasSubstitution() {
+        return substitution;
+    }
+
+    public List<ShellVariable> getVariables() {
+        return variables;
+    }
+
+    @Override
+    public String toString() {
+        return raw;
+    }
+}
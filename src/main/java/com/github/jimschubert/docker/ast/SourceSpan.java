@@ -0,0 +1,278 @@
+package com.github.jimschubert.docker.ast;
+
+import java.util.Arrays;
+
+/**
+ * The location of an instruction, and of its key parts, in the parsed Dockerfile.
+ * <p>
+ * Every position has a 1-based line, a 1-based column, a 0-based character offset and a 0-based UTF-8 byte offset.
+ * Ends are exclusive. All positions are packed into a single {@code int} array rather than an object per part.
+ */
+public final class SourceSpan {
+    /**
+     * The kinds of parts located within an instruction.
+     */
+    public enum PartKind {
+        /**
+         * The instruction keyword, such as {@code COPY}.
+         */
+        KEYWORD,
+        /**
+         * A {@code --name=value} flag.
+         */
+        FLAG,
+        /**
+         * A COPY or ADD source.
+         */
+        SOURCE,
+        /**
+         * A COPY or ADD destination.
+         */
+        DESTINATION,
+        /**
+         * The image reference of a FROM instruction.
+         */
+        IMAGE,
+        /**
+         * The stage name of a FROM instruction.
+         */
+        ALIAS
+    }
+
+    private static final PartKind[] KINDS = PartKind.values();
+    private static final int POSITION_SIZE = 4;
+    private static final int SPAN_SIZE = 2 * POSITION_SIZE;
+    private static final int PART_SIZE = 1 + SPAN_SIZE;
+
+    // [span][kind, part span]*
+    private final int[] data;
+
+    private SourceSpan(int[] data) {
+        this.data = data;
+    }
+
+    public int getStartLine() {
+        return data[0];
+    }
+
+    public int getStartColumn() {
+        return data[1];
+    }
+
+    public int getStartOffset() {
+        return data[2];
+    }
+
+    public int getStartByteOffset() {
+        return data[3];
+    }
+
+    public int getEndLine() {
+        return data[4];
+    }
+
+    public int getEndColumn() {
+        return data[5];
+    }
+
+    public int getEndOffset() {
+        return data[6];
+    }
+
+    public int getEndByteOffset() {
+        return data[7];
+    }
+
+    /**
+     * @return The number of located parts.
+     */
+    public int getPartCount() {
+        return (data.length - SPAN_SIZE) / PART_SIZE;
+    }
+
+    public PartKind getPartKind(int index) {
+        return KINDS[data[part(index)]];
+    }
+
+    public int getPartStartLine(int index) {
+        return data[part(index) + 1];
+    }
+
+    public int getPartStartColumn(int index) {
+        return data[part(index) + 2];
+    }
+
+    public int getPartStartOffset(int index) {
+        return data[part(index) + 3];
+    }
+
+    public int getPartStartByteOffset(int index) {
+        return data[part(index) + 4];
+    }
+
+    public int getPartEndLine(int index) {
+        return data[part(index) + 5];
+    }
+
+    public int getPartEndColumn(int index) {
+        return data[part(index) + 6];
+    }
+
+    public int getPartEndOffset(int index) {
+        return data[part(index) + 7];
+    }
+
+    public int getPartEndByteOffset(int index) {
+        return data[part(index) + 8];
+    }
+
+    /**
+     * Finds the first part of the given kind.
+     *
+     * @param kind The kind of part.
+     * @return The part index, or -1 if there is no such part.
+     */
+    public int indexOfPart(PartKind kind) {
+        for (int i = 0; i < getPartCount(); i++) {
+            if (getPartKind(i) == kind) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves this span, and all of its parts, by the given number of lines, characters and bytes. Columns are kept, so
+     * this is only suitable for text which was moved by inserting or removing whole lines before it.
+     *
+     * @param lines The number of lines to move by.
+     * @param chars The number of characters to move by.
+     * @param bytes The number of UTF-8 bytes to move by.
+     * @return The moved span.
+     */
+    public SourceSpan shift(int lines, int chars, int bytes) {
+        int[] shifted = data.clone();
+        shiftPosition(shifted, 0, lines, chars, bytes);
+        shiftPosition(shifted, POSITION_SIZE, lines, chars, bytes);
+        for (int i = SPAN_SIZE; i < shifted.length; i += PART_SIZE) {
+            shiftPosition(shifted, i + 1, lines, chars, bytes);
+            shiftPosition(shifted, i + 1 + POSITION_SIZE, lines, chars, bytes);
+        }
+        return new SourceSpan(shifted);
+    }
+
+    private static void shiftPosition(int[] data, int index, int lines, int chars, int bytes) {
+        data[index] += lines;
+        data[index + 2] += chars;
+        data[index + 3] += bytes;
+    }
+
+    private int part(int index) {
+        if (index < 0 || index >= getPartCount()) {
+            throw new IndexOutOfBoundsException("Part index " + index + " out of bounds for " + getPartCount() + " parts");
+        }
+        return SPAN_SIZE + index * PART_SIZE;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SourceSpan other && Arrays.equals(data, other.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(data);
+    }
+
+    @Override
+    public String toString() {
+        return getStartLine() + ":" + getStartColumn() + "-" + getEndLine() + ":" + getEndColumn();
+    }
+
+    /**
+     * Builds a {@link SourceSpan}.
+     */
+    public static final class Builder {
+        private int[] data = new int[SPAN_SIZE + 4 * PART_SIZE];
+        private int size = SPAN_SIZE;
+
+        /**
+         * Sets the start of the span.
+         *
+         * @param line       The 1-based line.
+         * @param column     The 1-based column.
+         * @param offset     The 0-based character offset.
+         * @param byteOffset The 0-based UTF-8 byte offset.
+         * @return This builder.
+         */
+        public Builder start(int line, int column, int offset, int byteOffset) {
+            return set(0, line, column, offset, byteOffset);
+        }
+
+        /**
+         * Sets the exclusive end of the span.
+         *
+         * @param line       The 1-based line.
+         * @param column     The 1-based column.
+         * @param offset     The 0-based character offset.
+         * @param byteOffset The 0-based UTF-8 byte offset.
+         * @return This builder.
+         */
+        public Builder end(int line, int column, int offset, int byteOffset) {
+            return set(POSITION_SIZE, line, column, offset, byteOffset);
+        }
+
+        /**
+         * Adds a part. Its start and end are set with {@link #partStart} and {@link #partEnd}.
+         *
+         * @param kind The kind of part.
+         * @return This builder.
+         */
+        public Builder part(PartKind kind) {
+            if (size + PART_SIZE > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size] = kind.ordinal();
+            size += PART_SIZE;
+            return this;
+        }
+
+        /**
+         * Sets the start of the most recently added part.
+         *
+         * @param line       The 1-based line.
+         * @param column     The 1-based column.
+         * @param offset     The 0-based character offset.
+         * @param byteOffset The 0-based UTF-8 byte offset.
+         * @return This builder.
+         */
+        public Builder partStart(int line, int column, int offset, int byteOffset) {
+            return set(size - SPAN_SIZE, line, column, offset, byteOffset);
+        }
+
+        /**
+         * Sets the exclusive end of the most recently added part.
+         *
+         * @param line       The 1-based line.
+         * @param column     The 1-based column.
+         * @param offset     The 0-based character offset.
+         * @param byteOffset The 0-based UTF-8 byte offset.
+         * @return This builder.
+         */
+        public Builder partEnd(int line, int column, int offset, int byteOffset) {
+            return set(size - POSITION_SIZE, line, column, offset, byteOffset);
+        }
+
+        public SourceSpan build() {
+            return new SourceSpan(Arrays.copyOf(data, size));
+        }
+
+        private Builder set(int index, int line, int column, int offset, int byteOffset) {
+            data[index] = line;
+            data[index + 1] = column;
+            data[index + 2] = offset;
+            data[index + 3] = byteOffset;
+            return this;
+        }
+    }
+}
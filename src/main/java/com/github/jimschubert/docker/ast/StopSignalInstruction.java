@@ -1,9 +1,11 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
+
 /**
  * Represents a STOPSIGNAL instruction.
  */
-public class StopSignalInstruction extends DockerInstruction {
+public final class StopSignalInstruction extends DockerInstruction {
     private final String signal;
 
     /**
@@ -12,7 +14,7 @@ public class StopSignalInstruction extends DockerInstruction {
      * @param signal The signal to stop.
      */
     public StopSignalInstruction(String signal) {
-        super("STOPSIGNAL");
+        super("STOPSIGNAL", InstructionKind.STOPSIGNAL);
         this.signal = signal;
     }
 
@@ -21,7 +23,12 @@ public class StopSignalInstruction extends DockerInstruction {
     }
 
     @Override
-    public String toCanonicalForm() {
-        return getInstruction() + " " + signal;
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitStopSignal(this);
+    }
+
+    @Override
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        out.append(getInstruction()).append(" ").append(signal);
     }
 }
\ No newline at end of file
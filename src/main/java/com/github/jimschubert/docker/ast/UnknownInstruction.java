@@ -0,0 +1,35 @@
+package com.github.jimschubert.docker.ast;
+
+import java.io.IOException;
+
+/**
+ * Represents an instruction whose keyword the parser doesn't recognize, keeping its arguments verbatim.
+ */
+public final class UnknownInstruction extends DockerInstruction {
+    private final String arguments;
+
+    /**
+     * Creates a new instance of UnknownInstruction.
+     *
+     * @param keyword   The keyword, upper-cased like those of the known instructions.
+     * @param arguments The arguments following the keyword.
+     */
+    public UnknownInstruction(String keyword, String arguments) {
+        super(keyword, InstructionKind.UNKNOWN);
+        this.arguments = arguments;
+    }
+
+    public String getArguments() {
+        return arguments;
+    }
+
+    @Override
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitUnknown(this);
+    }
+
+    @Override
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        out.append(getInstruction()).append(" ").append(arguments);
+    }
+}
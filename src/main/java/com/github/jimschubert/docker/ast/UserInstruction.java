@@ -1,9 +1,11 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
+
 /**
  * Represents a USER instruction.
  */
-public class UserInstruction extends DockerInstruction {
+public final class UserInstruction extends DockerInstruction {
     private String user;
     private String group;
 
@@ -23,7 +25,7 @@ public class UserInstruction extends DockerInstruction {
      * @param group The group to set.
      */
     public UserInstruction(String user, String group) {
-        super("USER");
+        super("USER", InstructionKind.USER);
         this.user = user;
         this.group = group;
     }
@@ -34,6 +36,7 @@ public class UserInstruction extends DockerInstruction {
 
     public void setUser(String user) {
         this.user = user;
+        markModified();
     }
 
     public String getGroup() {
@@ -42,10 +45,19 @@ public class UserInstruction extends DockerInstruction {
 
     public void setGroup(String group) {
         this.group = group;
+        markModified();
+    }
+
+    @Override
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitUser(this);
     }
 
     @Override
-    public String toCanonicalForm() {
-        return String.format("%s %s%s%s", getInstruction(), user, group != null ? ":" : "", group != null ? group : "");
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        out.append(getInstruction()).append(" ").append(user);
+        if (group != null) {
+            out.append(":").append(group);
+        }
     }
 }
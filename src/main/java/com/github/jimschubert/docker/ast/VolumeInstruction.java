@@ -3,12 +3,12 @@ package com.github.jimschubert.docker.ast;
 /**
  * Represents a VOLUME instruction.
  */
-public class VolumeInstruction extends CommandInstruction {
+public final class VolumeInstruction extends CommandInstruction {
     /**
      * Creates a new instance of VolumeInstruction.
      */
     public VolumeInstruction() {
-        super("VOLUME");
+        super(InstructionKind.VOLUME);
     }
 
     public String getVolume() {
@@ -17,4 +17,9 @@ public class VolumeInstruction extends CommandInstruction {
         }
         return getCommand().get(0);
     }
+
+    @Override
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitVolume(this);
+    }
 }
@@ -1,9 +1,11 @@
 package com.github.jimschubert.docker.ast;
 
+import java.io.IOException;
+
 /**
  * Represents a WORKDIR instruction.
  */
-public class WorkdirInstruction extends DockerInstruction {
+public final class WorkdirInstruction extends DockerInstruction {
     private final String workdir;
 
     /**
@@ -12,7 +14,7 @@ public class WorkdirInstruction extends DockerInstruction {
      * @param workdir The working directory to set.
      */
     public WorkdirInstruction(String workdir) {
-        super("WORKDIR");
+        super("WORKDIR", InstructionKind.WORKDIR);
         this.workdir = workdir;
     }
 
@@ -21,7 +23,12 @@ public class WorkdirInstruction extends DockerInstruction {
     }
 
     @Override
-    public String toCanonicalForm() {
-        return String.format("%s %s", getInstruction(), workdir);
+    public <R> R accept(DockerInstructionVisitor<R> visitor) {
+        return visitor.visitWorkdir(this);
+    }
+
+    @Override
+    public void appendCanonicalForm(Appendable out) throws IOException {
+        out.append(getInstruction()).append(" ").append(workdir);
     }
 }
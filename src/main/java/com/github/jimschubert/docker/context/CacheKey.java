@@ -0,0 +1,58 @@
+package com.github.jimschubert.docker.context;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+
+import java.util.List;
+
+/**
+ * The predicted cache key of the layer a COPY or ADD instruction creates from the build context.
+ */
+public final class CacheKey {
+    private final DockerInstruction instruction;
+    private final String digest;
+    private final List<String> files;
+    private final boolean complete;
+
+    CacheKey(DockerInstruction instruction, String digest, List<String> files, boolean complete) {
+        this.instruction = instruction;
+        this.digest = digest;
+        this.files = files;
+        this.complete = complete;
+    }
+
+    /**
+     * @return The COPY or ADD instruction.
+     */
+    public DockerInstruction getInstruction() {
+        return instruction;
+    }
+
+    /**
+     * @return The digest of the instruction's options and of the paths, types, permissions and contents of the files it
+     * copies, as {@code sha256:} followed by hex digits.
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * @return The paths of the files and directories copied, relative to the context directory, in the order they were
+     * hashed.
+     */
+    public List<String> getFiles() {
+        return files;
+    }
+
+    /**
+     * @return {@code false} if the instruction adds a remote source without a {@code --checksum}, whose contents can't
+     * be known before the build, so that an equal digest doesn't guarantee a cache hit.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public String toString() {
+        return instruction.toCanonicalForm() + " " + digest;
+    }
+}
@@ -0,0 +1,400 @@
+package com.github.jimschubert.docker.context;
+
+import com.github.jimschubert.docker.ast.AddInstruction;
+import com.github.jimschubert.docker.ast.CopyInstruction;
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.ast.Heredoc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Predicts the cache keys of the layers COPY and ADD instructions create from a build context directory, so that cache
+ * hits can be estimated before running a build.
+ * <p>
+ * A key is the SHA-256 digest of the instruction's options, such as its destination, {@code --chown} and
+ * {@code --chmod}, and of the path, type, permissions and contents of every file it copies. Keys are deterministic:
+ * files are hashed in order of their paths, whatever order the file system lists them in. The files of all instructions
+ * are hashed in parallel on an executor, and their digests are cached in a {@link FileDigestCache}, so a file which
+ * hasn't changed since an earlier calculation isn't read again.
+ * <p>
+ * Sources follow Docker's rules: they're relative to the context directory, which they can't escape, a directory
+ * copies everything under it, and a source with wildcards copies every path matching it. Paths excluded by the
+ * context's {@code .dockerignore} file are left out, as are those matching the instruction's {@code --exclude}
+ * patterns, which are relative to the directory source they apply to, or to the directory holding a file source. Both
+ * kinds of pattern are compiled into one {@link IgnoreMatcher}, and excluded directories are pruned from the walk
+ * where no negated pattern can include anything below them. COPY instructions with {@code --from} don't read
+ * the context and have no key, and neither do instructions deferred with ONBUILD. A remote ADD source is keyed by its
+ * URL and {@code --checksum}; without a checksum its contents can't be known, and the key is marked incomplete. A
+ * heredoc source, such as {@code <<EOF}, is keyed by its name and body.
+ */
+public final class CacheKeyCalculator {
+    private static final byte DIRECTORY = 'd';
+    private static final byte FILE = 'f';
+    private static final byte SYMBOLIC_LINK = 'l';
+    private static final byte OTHER = 'o';
+    private static final byte REMOTE = 'r';
+    private static final byte HEREDOC = 'h';
+    private static final PosixFilePermission[] PERMISSIONS = PosixFilePermission.values();
+
+    private final Path context;
+    private final FileDigestCache cache;
+    private final Executor executor;
+
+    /**
+     * Creates a new instance of CacheKeyCalculator.
+     *
+     * @param context  The build context directory.
+     * @param cache    The cache of file digests, which may be shared between calculators.
+     * @param executor The executor to hash files on.
+     */
+    public CacheKeyCalculator(Path context, FileDigestCache cache, Executor executor) {
+        this.context = context.toAbsolutePath().normalize();
+        this.cache = cache;
+        this.executor = executor;
+    }
+
+    /**
+     * Calculates the cache key of every COPY and ADD instruction which reads the build context.
+     *
+     * @param instructions The parsed instructions.
+     * @return The keys, in the order of their instructions.
+     * @throws IOException          If a source doesn't exist or is ignored, or a file can't be read.
+     * @throws InterruptedException If interrupted while waiting for files to be hashed.
+     */
+    public List<CacheKey> calculate(List<DockerInstruction> instructions) throws IOException, InterruptedException {
+        List<String> ignore = DockerIgnore.read(context);
+        IgnoreMatcher ignoreMatcher = IgnoreMatcher.compile(ignore);
+        List<Sources> resolved = new ArrayList<>();
+        Map<Path, CompletableFuture<byte[]>> digests = new HashMap<>();
+        for (DockerInstruction instruction : instructions) {
+            Sources sources = resolve(instruction, ignore, ignoreMatcher);
+            if (sources == null) {
+                continue;
+            }
+            resolved.add(sources);
+            for (List<ContextFile> files : sources.files()) {
+                for (ContextFile file : files) {
+                    if (file.attributes().isRegularFile()) {
+                        digests.computeIfAbsent(file.path(), path -> CompletableFuture.supplyAsync(() -> {
+                            try {
+                                return cache.digest(path, file.attributes());
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }, executor));
+                    }
+                }
+            }
+        }
+
+        Map<Path, byte[]> hashed = new HashMap<>(digests.size() * 2);
+        for (Map.Entry<Path, CompletableFuture<byte[]>> entry : digests.entrySet()) {
+            try {
+                hashed.put(entry.getKey(), entry.getValue().get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException cause) {
+                    throw cause.getCause();
+                } else if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+
+        List<CacheKey> keys = new ArrayList<>(resolved.size());
+        for (Sources sources : resolved) {
+            keys.add(key(sources, hashed));
+        }
+        return keys;
+    }
+
+    /**
+     * Calculates the cache key of one instruction.
+     *
+     * @param instruction A COPY or ADD instruction.
+     * @return The key, or {@code null} if the instruction doesn't read the build context.
+     * @throws IOException          If a source doesn't exist or a file can't be read.
+     * @throws InterruptedException If interrupted while waiting for files to be hashed.
+     */
+    public CacheKey calculate(DockerInstruction instruction) throws IOException, InterruptedException {
+        List<CacheKey> keys = calculate(List.of(instruction));
+        return keys.isEmpty() ? null : keys.get(0);
+    }
+
+    public Path getContext() {
+        return context;
+    }
+
+    /**
+     * Finds the files each source of an instruction copies.
+     *
+     * @return The sources, or {@code null} if the instruction doesn't read the build context.
+     */
+    private Sources resolve(DockerInstruction instruction, List<String> ignore, IgnoreMatcher ignoreMatcher) throws IOException {
+        List<String> sources;
+        List<String> exclude;
+        List<Heredoc> heredocs;
+        switch (instruction.getKind()) {
+            case COPY -> {
+                CopyInstruction copy = (CopyInstruction) instruction;
+                if (copy.getFrom() != null) {
+                    return null;
+                }
+                sources = copy.getSources();
+                exclude = copy.getExclude();
+                heredocs = copy.getHeredocs();
+            }
+            case ADD -> {
+                AddInstruction add = (AddInstruction) instruction;
+                sources = add.getSources();
+                exclude = add.getExclude();
+                heredocs = add.getHeredocs();
+            }
+            default -> {
+                return null;
+            }
+        }
+
+        List<List<ContextFile>> files = new ArrayList<>(sources.size());
+        // the heredocs are started by the sources which name them, in order
+        List<Heredoc> sourceHeredocs = new ArrayList<>(sources.size());
+        int nextHeredoc = 0;
+        for (String source : sources) {
+            Heredoc heredoc = null;
+            if (source.startsWith("<<") && heredocs != null && nextHeredoc < heredocs.size()) {
+                heredoc = heredocs.get(nextHeredoc++);
+            }
+            sourceHeredocs.add(heredoc);
+            files.add(isRemote(source) || heredoc != null ? List.of() : find(source, ignore, ignoreMatcher, exclude != null ? exclude : List.of()));
+        }
+        return new Sources(instruction, sources, files, sourceHeredocs);
+    }
+
+    /**
+     * Finds the files a local source copies, sorted by path.
+     */
+    private List<ContextFile> find(String source, List<String> ignore, IgnoreMatcher ignoreMatcher, List<String> exclude) throws IOException {
+        String normalized = normalize(source);
+        List<String> roots = new ArrayList<>();
+        if (!GlobPattern.hasMeta(normalized)) {
+            if (!Files.exists(resolvePath(normalized), LinkOption.NOFOLLOW_LINKS)) {
+                throw new NoSuchFileException(source, null, "not found in build context " + context);
+            }
+            roots.add(normalized);
+        } else {
+            GlobPattern pattern = GlobPattern.compile(normalized);
+            String[] segments = normalized.split("/");
+            int literal = 0;
+            while (literal < segments.length && !GlobPattern.hasMeta(segments[literal])) {
+                literal++;
+            }
+            Path base = resolvePath(String.join("/", List.of(segments).subList(0, literal)));
+            if (Files.isDirectory(base, LinkOption.NOFOLLOW_LINKS)) {
+                try (var paths = Files.walk(base, segments.length - literal)) {
+                    paths.map(path -> relative(context, path)).filter(pattern::matches).forEach(roots::add);
+                }
+            }
+            roots.sort(null);
+        }
+
+        List<ContextFile> files = new ArrayList<>();
+        for (String root : roots) {
+            IgnoreMatcher matcher = ignoreMatcher;
+            if (!exclude.isEmpty()) {
+                // exclude patterns apply below a directory source, or beside a file source
+                boolean directory = Files.isDirectory(resolvePath(root), LinkOption.NOFOLLOW_LINKS);
+                int slash = root.lastIndexOf('/');
+                String prefix = directory ? root : slash < 0 ? "" : root.substring(0, slash);
+                matcher = IgnoreMatcher.compile(withExcludes(ignore, prefix, exclude));
+            }
+            int start = files.size();
+            new ContextWalker(context, matcher).walk(root,
+                    (path, relativePath, attributes) -> files.add(new ContextFile(path, relativePath.toString(), attributes)));
+            files.subList(start, files.size()).sort(Comparator.comparing(ContextFile::relativePath));
+        }
+        if (files.isEmpty()) {
+            throw new NoSuchFileException(source, null, "no files in build context " + context + " match, or all are ignored");
+        }
+        return files;
+    }
+
+    /**
+     * Appends exclude patterns, made relative to the context directory, to the ignore patterns.
+     */
+    private static List<String> withExcludes(List<String> ignore, String prefix, List<String> exclude) {
+        List<String> patterns = new ArrayList<>(ignore.size() + exclude.size());
+        patterns.addAll(ignore);
+        String escaped = prefix.isEmpty() ? "" : IgnoreMatcher.escape(prefix) + "/";
+        for (String pattern : exclude) {
+            boolean negated = pattern.startsWith("!");
+            String cleaned = DockerIgnore.clean(negated ? pattern.substring(1) : pattern);
+            patterns.add((negated ? "!" : "") + escaped + cleaned);
+        }
+        return patterns;
+    }
+
+    private CacheKey key(Sources sources, Map<Path, byte[]> digests) throws IOException {
+        DockerInstruction instruction = sources.instruction();
+        MessageDigest digest = FileDigestCache.newDigest();
+        String chmod;
+        boolean complete = true;
+        update(digest, instruction.getInstruction());
+        if (instruction instanceof CopyInstruction copy) {
+            chmod = copy.getChmod();
+            update(digest, copy.getDestination());
+            update(digest, copy.getChown());
+            update(digest, chmod);
+            update(digest, String.valueOf(copy.getLink()));
+            update(digest, String.valueOf(copy.getParents()));
+            update(digest, copy.getExclude());
+        } else {
+            AddInstruction add = (AddInstruction) instruction;
+            chmod = add.getChmod();
+            update(digest, add.getDestination());
+            update(digest, add.getChown());
+            update(digest, chmod);
+            update(digest, String.valueOf(add.getLink()));
+            update(digest, String.valueOf(add.getKeepGitDir()));
+            update(digest, add.getChecksum());
+            update(digest, add.getExclude());
+            for (String source : sources.sources()) {
+                complete &= !isRemote(source) || add.getChecksum() != null;
+            }
+        }
+
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < sources.sources().size(); i++) {
+            String source = sources.sources().get(i);
+            if (isRemote(source)) {
+                digest.update(REMOTE);
+                update(digest, source);
+                continue;
+            }
+            Heredoc heredoc = sources.heredocs().get(i);
+            if (heredoc != null) {
+                digest.update(HEREDOC);
+                update(digest, heredoc.getName());
+                update(digest, String.valueOf(heredoc.getBody().length()));
+                digest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(heredoc.getBody())));
+                continue;
+            }
+            update(digest, normalize(source));
+            for (ContextFile file : sources.files().get(i)) {
+                BasicFileAttributes attributes = file.attributes();
+                paths.add(file.relativePath());
+                digest.update(attributes.isDirectory() ? DIRECTORY : attributes.isRegularFile() ? FILE
+                        : attributes.isSymbolicLink() ? SYMBOLIC_LINK : OTHER);
+                update(digest, file.relativePath());
+                // --chmod replaces the permissions of every file
+                if (chmod == null && attributes instanceof PosixFileAttributes posix) {
+                    int mode = 0;
+                    for (PosixFilePermission permission : posix.permissions()) {
+                        mode |= 1 << (PERMISSIONS.length - 1 - permission.ordinal());
+                    }
+                    update(digest, Integer.toOctalString(mode));
+                }
+                if (attributes.isRegularFile()) {
+                    digest.update(digests.get(file.path()));
+                } else if (attributes.isSymbolicLink()) {
+                    update(digest, Files.readSymbolicLink(file.path()).toString());
+                }
+            }
+        }
+        return new CacheKey(instruction, "sha256:" + HexFormat.of().formatHex(digest.digest()), List.copyOf(paths), complete);
+    }
+
+    private Path resolvePath(String normalized) {
+        return normalized.isEmpty() ? context : context.resolve(normalized);
+    }
+
+    /**
+     * @return {@code true} if ADD fetches the source rather than reading it from the context.
+     */
+    static boolean isRemote(String source) {
+        return source.startsWith("http://") || source.startsWith("https://") || source.startsWith("git@")
+                || source.startsWith("git://");
+    }
+
+    /**
+     * Normalizes a source to a path relative to the context root, removing {@code .} segments and resolving {@code ..}
+     * segments, which can't go above the root.
+     *
+     * @return The path, separated by {@code /}, or an empty string for the root.
+     */
+    static String normalize(String source) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : source.split("/")) {
+            if (segment.equals("..")) {
+                if (!segments.isEmpty()) {
+                    segments.remove(segments.size() - 1);
+                }
+            } else if (!segment.isEmpty() && !segment.equals(".")) {
+                segments.add(segment);
+            }
+        }
+        return String.join("/", segments);
+    }
+
+    private static String relative(Path root, Path path) {
+        Path relative = root.relativize(path);
+        StringBuilder sb = new StringBuilder();
+        for (Path name : relative) {
+            if (!sb.isEmpty()) {
+                sb.append('/');
+            }
+            sb.append(name);
+        }
+        return sb.toString();
+    }
+
+    private static void update(MessageDigest digest, List<String> values) {
+        if (values == null) {
+            digest.update((byte) 1);
+            return;
+        }
+        digest.update((byte) 2);
+        for (String value : values) {
+            update(digest, value);
+        }
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Adds a string, terminated so that adjacent strings can't run together, and telling {@code null} from empty.
+     */
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update((byte) 1);
+        } else {
+            digest.update((byte) 2);
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+    }
+
+    private record ContextFile(Path path, String relativePath, BasicFileAttributes attributes) {
+    }
+
+    private record Sources(DockerInstruction instruction, List<String> sources, List<List<ContextFile>> files, List<Heredoc> heredocs) {
+    }
+}
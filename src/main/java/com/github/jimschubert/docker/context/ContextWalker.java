@@ -0,0 +1,208 @@
+package com.github.jimschubert.docker.context;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+/**
+ * Walks a build context directory, streaming the paths an {@link IgnoreMatcher} doesn't exclude.
+ * <p>
+ * The matcher's progress is kept for each directory on the way down, so each path segment is matched once, and an
+ * excluded directory which no negated pattern can reach into is skipped without being listed. Excluded directories
+ * which negated patterns can reach into are walked, but not reported themselves. The walker reuses its buffers between
+ * paths, so beyond what the file system API allocates, a walk allocates only for new depths. Symbolic links are
+ * reported rather than followed.
+ * <p>
+ * A walker isn't safe to use from several threads at once; create one per thread, sharing the matcher.
+ */
+public final class ContextWalker {
+    /**
+     * Receives each path a walk includes.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * Receives a path.
+         *
+         * @param path         The path.
+         * @param relativePath The path relative to the context directory, separated by {@code /}. The sequence is
+         *                     reused for the next path, so it must be copied to be kept.
+         * @param attributes   The attributes of the path, without following symbolic links.
+         * @throws IOException If the visitor fails, which stops the walk.
+         */
+        void visit(Path path, CharSequence relativePath, BasicFileAttributes attributes) throws IOException;
+    }
+
+    private final Path context;
+    private final IgnoreMatcher matcher;
+    private final StringBuilder relativePath = new StringBuilder();
+    private final int[] marks;
+    private int epoch;
+    // the matcher's progress at each depth of the walk
+    private IgnoreMatcher.Node[][] levels = new IgnoreMatcher.Node[8][];
+    private int[] sizes = new int[8];
+    private int[] decisions = new int[8];
+    private int[] pathLengths = new int[8];
+    private int depth;
+    private long pruned;
+
+    /**
+     * Creates a new instance of ContextWalker.
+     *
+     * @param context The build context directory, which ignore patterns are relative to.
+     * @param matcher The patterns excluding paths.
+     */
+    public ContextWalker(Path context, IgnoreMatcher matcher) {
+        this.context = context;
+        this.matcher = matcher;
+        this.marks = new int[matcher.getNodeCount()];
+    }
+
+    /**
+     * Walks the whole context.
+     *
+     * @param visitor Receives each included path, starting with the context directory.
+     * @throws IOException If a path can't be read, or the visitor fails.
+     */
+    public void walk(Visitor visitor) throws IOException {
+        walk("", visitor);
+    }
+
+    /**
+     * Walks part of the context.
+     *
+     * @param root    The path to start from, relative to the context directory, separated by {@code /}.
+     * @param visitor Receives each included path, starting with the root unless it's excluded.
+     * @throws IOException If a path can't be read, or the visitor fails.
+     */
+    public void walk(String root, Visitor visitor) throws IOException {
+        depth = 0;
+        relativePath.setLength(0);
+        sizes[0] = matcher.start(level(0), marks, nextEpoch());
+        decisions[0] = -1;
+        String normalized = CacheKeyCalculator.normalize(root);
+        if (!normalized.isEmpty()) {
+            for (String segment : normalized.split("/")) {
+                if (!descend(segment) && matcher.canPrune(levels[depth], sizes[depth], decisions[depth])) {
+                    pruned++;
+                    return;
+                }
+            }
+        }
+
+        Path start = normalized.isEmpty() ? context : context.resolve(normalized);
+        BasicFileAttributes startAttributes = Files.readAttributes(start, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!startAttributes.isDirectory()) {
+            if (!matcher.isExcluded(decisions[depth])) {
+                visitor.visit(start, relativePath, startAttributes);
+            }
+            return;
+        }
+
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                if (!dir.equals(start) && !descend(dir.getFileName().toString())) {
+                    if (matcher.canPrune(levels[depth], sizes[depth], decisions[depth])) {
+                        pruned++;
+                        ascend();
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+                if (!matcher.isExcluded(decisions[depth])) {
+                    visitor.visit(dir, relativePath, attributes);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                String name = file.getFileName().toString();
+                // match the file's name into the next level without entering it
+                IgnoreMatcher.Node[] next = level(depth + 1);
+                int size = matcher.step(levels[depth], sizes[depth], name, next, marks, nextEpoch());
+                int decision = Math.max(decisions[depth], matcher.match(next, size));
+                if (!matcher.isExcluded(decision)) {
+                    int length = relativePath.length();
+                    if (length > 0) {
+                        relativePath.append('/');
+                    }
+                    relativePath.append(name);
+                    visitor.visit(file, relativePath, attributes);
+                    relativePath.setLength(length);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                if (!dir.equals(start)) {
+                    ascend();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * @return The number of excluded directories skipped without being listed, over every walk.
+     */
+    public long getPrunedCount() {
+        return pruned;
+    }
+
+    /**
+     * Enters a directory.
+     *
+     * @return {@code true} if the directory is included.
+     */
+    private boolean descend(String name) {
+        IgnoreMatcher.Node[] next = level(depth + 1);
+        sizes[depth + 1] = matcher.step(levels[depth], sizes[depth], name, next, marks, nextEpoch());
+        decisions[depth + 1] = Math.max(decisions[depth], matcher.match(next, sizes[depth + 1]));
+        pathLengths[depth + 1] = relativePath.length();
+        if (relativePath.length() > 0) {
+            relativePath.append('/');
+        }
+        relativePath.append(name);
+        depth++;
+        return !matcher.isExcluded(decisions[depth]);
+    }
+
+    private void ascend() {
+        relativePath.setLength(pathLengths[depth]);
+        depth--;
+    }
+
+    private IgnoreMatcher.Node[] level(int index) {
+        if (index >= levels.length) {
+            int length = Math.max(index + 1, levels.length * 2);
+            levels = Arrays.copyOf(levels, length);
+            sizes = Arrays.copyOf(sizes, length);
+            decisions = Arrays.copyOf(decisions, length);
+            pathLengths = Arrays.copyOf(pathLengths, length);
+        }
+        if (levels[index] == null) {
+            levels[index] = new IgnoreMatcher.Node[matcher.getNodeCount()];
+        }
+        return levels[index];
+    }
+
+    private int nextEpoch() {
+        if (++epoch == 0) {
+            // the counter wrapped, so old marks could collide with new epochs
+            Arrays.fill(marks, 0);
+            epoch = 1;
+        }
+        return epoch;
+    }
+}
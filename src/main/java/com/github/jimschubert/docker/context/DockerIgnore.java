@@ -0,0 +1,105 @@
+package com.github.jimschubert.docker.context;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the patterns of a {@code .dockerignore} file.
+ * <p>
+ * Each line holds one pattern. Lines starting with {@code #} are comments, and blank lines are skipped. A pattern
+ * starting with {@code !} re-includes paths an earlier pattern excluded. Patterns are cleaned as Docker cleans them:
+ * surrounding whitespace, {@code .} segments, repeated and leading separators are removed, and {@code ..} segments are
+ * resolved, so every pattern is relative to the context directory.
+ */
+public final class DockerIgnore {
+    /**
+     * The name of the file in a context directory.
+     */
+    public static final String FILE_NAME = ".dockerignore";
+
+    private DockerIgnore() {
+    }
+
+    /**
+     * Reads the {@code .dockerignore} file of a context directory.
+     *
+     * @param context The context directory.
+     * @return The cleaned patterns, or an empty list if the directory has no {@code .dockerignore} file.
+     * @throws IOException If the file can't be read.
+     */
+    public static List<String> read(Path context) throws IOException {
+        try (Reader reader = Files.newBufferedReader(context.resolve(FILE_NAME), StandardCharsets.UTF_8)) {
+            return parse(reader);
+        } catch (NoSuchFileException e) {
+            return List.of();
+        }
+    }
+
+    /**
+     * Parses the contents of a {@code .dockerignore} file.
+     *
+     * @param contents The contents.
+     * @return The cleaned patterns.
+     */
+    public static List<String> parse(String contents) {
+        try {
+            return parse(new StringReader(contents));
+        } catch (IOException e) {
+            // a StringReader never throws
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parses the contents of a {@code .dockerignore} file.
+     *
+     * @param reader The reader to read the contents from.
+     * @return The cleaned patterns.
+     * @throws IOException If the contents can't be read.
+     */
+    public static List<String> parse(Reader reader) throws IOException {
+        List<String> patterns = new ArrayList<>();
+        BufferedReader lines = reader instanceof BufferedReader buffered ? buffered : new BufferedReader(reader);
+        String line;
+        boolean first = true;
+        while ((line = lines.readLine()) != null) {
+            if (first && line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+            first = false;
+            if (line.startsWith("#")) {
+                continue;
+            }
+            String pattern = line.strip();
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            boolean negated = pattern.charAt(0) == '!';
+            if (negated) {
+                pattern = pattern.substring(1).strip();
+            }
+            pattern = clean(pattern);
+            patterns.add(negated ? "!" + pattern : pattern);
+        }
+        return patterns;
+    }
+
+    /**
+     * Cleans a pattern the way Go's {@code filepath.Clean} does, then makes it relative to the context directory.
+     *
+     * @return The cleaned pattern, or {@code .} for the context directory itself.
+     */
+    static String clean(String pattern) {
+        String cleaned = CacheKeyCalculator.normalize(pattern);
+        return cleaned.isEmpty() ? "." : cleaned;
+    }
+}
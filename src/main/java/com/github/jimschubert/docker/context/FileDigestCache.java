@@ -0,0 +1,134 @@
+package com.github.jimschubert.docker.context;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of the SHA-256 digests of files' contents, keyed by path, size and modification time.
+ * <p>
+ * A file whose size and modification time haven't changed since it was last hashed isn't read again. This is the same
+ * heuristic build tools use to skip unchanged files, and like theirs it misses a change which keeps both the size and
+ * the modification time. Files of at least {@link #MAPPED_READ_THRESHOLD} bytes are read through a memory mapping,
+ * which avoids copying their contents onto the heap; smaller files are read directly, as mapping costs more than it
+ * saves for them. A cache is safe to share between threads.
+ */
+public final class FileDigestCache {
+    /**
+     * The size from which files are hashed through a memory mapping.
+     */
+    public static final long MAPPED_READ_THRESHOLD = 1 << 20;
+    // the largest region mapped at once; a mapping can't exceed 2 GiB
+    private static final long MAPPING_SIZE = 1 << 28;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ConcurrentHashMap<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Gets the digest of a file's contents, hashing the file unless its size and modification time match the last time
+     * it was hashed.
+     *
+     * @param file The file.
+     * @return The SHA-256 digest of the file's contents.
+     * @throws IOException If the file can't be read.
+     */
+    public byte[] digest(Path file) throws IOException {
+        return digest(file, Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)).clone();
+    }
+
+    /**
+     * Gets the digest of a file's contents, given attributes already read. The returned array is shared, and mustn't be
+     * modified.
+     */
+    byte[] digest(Path file, BasicFileAttributes attributes) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.size() == size && entry.modified() == modified) {
+            hits.incrementAndGet();
+            return entry.digest();
+        }
+        misses.incrementAndGet();
+        byte[] digest = hash(file, size);
+        entries.put(key, new Entry(size, modified, digest));
+        return digest;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of lookups which had to hash the file.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of files with a cached digest.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes every cached digest.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Hashes the contents of a file.
+     *
+     * @param size The size of the file, which decides how it's read.
+     */
+    static byte[] hash(Path file, long size) throws IOException {
+        MessageDigest digest = newDigest();
+        if (size >= MAPPED_READ_THRESHOLD) {
+            try (FileChannel channel = FileChannel.open(file)) {
+                // the file may have changed size since its attributes were read
+                long length = channel.size();
+                for (long position = 0; position < length; position += MAPPING_SIZE) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPING_SIZE, length - position));
+                    digest.update(buffer);
+                }
+            }
+        } else {
+            try (InputStream in = Files.newInputStream(file)) {
+                byte[] buffer = new byte[(int) Math.min(Math.max(size, 1), BUFFER_SIZE)];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+        return digest.digest();
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Entry(long size, long modified, byte[] digest) {
+    }
+}
@@ -0,0 +1,230 @@
+package com.github.jimschubert.docker.context;
+
+/**
+ * A path pattern with the syntax of Go's {@code filepath.Match}, which Docker uses for wildcard sources of COPY and ADD
+ * and for their {@code --exclude} flags.
+ * <p>
+ * {@code *} matches any run of characters other than {@code /}, {@code ?} matches one such character, {@code [...]}
+ * matches one character of a class, negated by a leading {@code ^}, and {@code \} escapes the character after it.
+ * Matching works on the indices of the pattern and path, so it doesn't allocate.
+ */
+final class GlobPattern {
+    private final String pattern;
+
+    private GlobPattern(String pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * Compiles a pattern.
+     *
+     * @param pattern The pattern.
+     * @return The compiled pattern.
+     * @throws IllegalArgumentException If the pattern has an unterminated class or a trailing escape.
+     */
+    static GlobPattern compile(String pattern) {
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                if (i + 1 == pattern.length()) {
+                    throw new IllegalArgumentException("Trailing escape in pattern " + pattern);
+                }
+                i += 2;
+            } else if (c == '[') {
+                i = classEnd(pattern, i);
+                if (i < 0) {
+                    throw new IllegalArgumentException("Unterminated character class in pattern " + pattern);
+                }
+            } else {
+                i++;
+            }
+        }
+        return new GlobPattern(pattern);
+    }
+
+    /**
+     * @param text A path or pattern.
+     * @return {@code true} if the text has any of the characters which make it a pattern rather than a literal path.
+     */
+    static boolean hasMeta(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * @param path A path relative to the root the pattern applies to, separated by {@code /}.
+     * @return {@code true} if the whole path matches the pattern.
+     */
+    boolean matches(String path) {
+        return matches(pattern, 0, pattern.length(), path, 0);
+    }
+
+    /**
+     * Matches a range of a pattern against the rest of a path, as Go does: the pattern is split into chunks, each
+     * preceded by an optional star, and each star takes as few characters as lets the rest of the chunk match.
+     */
+    static boolean matches(String pattern, int patternStart, int patternEnd, String path, int pathStart) {
+        int p = patternStart;
+        int n = pathStart;
+        chunks:
+        while (p < patternEnd) {
+            boolean star = false;
+            while (p < patternEnd && pattern.charAt(p) == '*') {
+                star = true;
+                p++;
+            }
+            int chunkEnd = chunkEnd(pattern, p, patternEnd);
+            if (star && p == chunkEnd) {
+                // a trailing star matches the rest of the path, unless it crosses a separator
+                return path.indexOf('/', n) < 0;
+            }
+            int matched = matchChunk(pattern, p, chunkEnd, path, n);
+            if (matched >= 0 && (matched == path.length() || chunkEnd < patternEnd)) {
+                n = matched;
+                p = chunkEnd;
+                continue;
+            }
+            if (star) {
+                for (int i = n; i < path.length() && path.charAt(i) != '/'; i++) {
+                    matched = matchChunk(pattern, p, chunkEnd, path, i + 1);
+                    if (matched >= 0 && (chunkEnd < patternEnd || matched == path.length())) {
+                        n = matched;
+                        p = chunkEnd;
+                        continue chunks;
+                    }
+                }
+            }
+            return false;
+        }
+        return n == path.length();
+    }
+
+    /**
+     * Finds the end of the chunk starting at {@code start}: the next star outside a class.
+     */
+    private static int chunkEnd(String pattern, int start, int end) {
+        int i = start;
+        while (i < end) {
+            char c = pattern.charAt(i);
+            if (c == '*') {
+                break;
+            } else if (c == '\\') {
+                i += 2;
+            } else if (c == '[') {
+                i = classEnd(pattern, i);
+            } else {
+                i++;
+            }
+        }
+        return Math.min(i, end);
+    }
+
+    /**
+     * Matches a chunk, which has no stars, against the start of the rest of a path.
+     *
+     * @return The index in the path after the match, or -1 if the chunk doesn't match.
+     */
+    private static int matchChunk(String pattern, int start, int end, String path, int pathStart) {
+        int p = start;
+        int n = pathStart;
+        while (p < end) {
+            if (n == path.length()) {
+                return -1;
+            }
+            char c = path.charAt(n);
+            char token = pattern.charAt(p);
+            if (token == '[') {
+                int classEnd = classEnd(pattern, p);
+                if (c == '/' || !inClass(pattern, p + 1, classEnd - 1, c)) {
+                    return -1;
+                }
+                p = classEnd;
+            } else if (token == '?') {
+                if (c == '/') {
+                    return -1;
+                }
+                p++;
+            } else {
+                if (token == '\\') {
+                    token = pattern.charAt(++p);
+                }
+                if (token != c) {
+                    return -1;
+                }
+                p++;
+            }
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * @param start The index after the opening bracket.
+     * @param end   The index of the closing bracket.
+     */
+    private static boolean inClass(String pattern, int start, int end, char c) {
+        boolean negated = start < end && pattern.charAt(start) == '^';
+        int i = negated ? start + 1 : start;
+        boolean matched = false;
+        while (i < end) {
+            char low = pattern.charAt(i);
+            if (low == '\\') {
+                low = pattern.charAt(++i);
+            }
+            i++;
+            char high = low;
+            if (i + 1 < end && pattern.charAt(i) == '-') {
+                high = pattern.charAt(i + 1);
+                if (high == '\\') {
+                    high = pattern.charAt(i + 2);
+                    i++;
+                }
+                i += 2;
+            }
+            matched |= low <= c && c <= high;
+        }
+        return matched != negated;
+    }
+
+    /**
+     * Finds the end of the class starting at {@code start}.
+     *
+     * @return The index after the closing bracket, or -1 if the class isn't terminated.
+     */
+    private static int classEnd(String pattern, int start) {
+        int i = start + 1;
+        if (i < pattern.length() && pattern.charAt(i) == '^') {
+            i++;
+        }
+        // a class holds at least one character, so a leading ] is a member
+        if (i < pattern.length() && pattern.charAt(i) == ']') {
+            i++;
+        }
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == ']') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
@@ -0,0 +1,318 @@
+package com.github.jimschubert.docker.context;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled set of ignore patterns, such as those of a {@code .dockerignore} file combined with the
+ * {@code --exclude} patterns of a COPY or ADD instruction.
+ * <p>
+ * A path is excluded when the last pattern matching it, or matching any of its parent directories, isn't negated with
+ * {@code !}. Within a segment, patterns have the syntax of {@link GlobPattern}, and a {@code **} segment matches any
+ * number of directories, including none; a trailing {@code **} matches everything below the directory before it.
+ * <p>
+ * The patterns are compiled into a single trie of path segments, with literal segments shared between patterns and
+ * looked up by hash, so matching costs one step per segment of the path however many patterns there are. A
+ * {@link ContextWalker} keeps the step reached at each directory, so each segment of the context is matched once, and
+ * it uses {@link #canPrune} to skip excluded directories which no negated pattern can reach into. A matcher is
+ * immutable and safe to share between threads.
+ */
+public final class IgnoreMatcher {
+    private static final Node[] NO_NODES = new Node[0];
+    private static final GlobPattern[] NO_GLOBS = new GlobPattern[0];
+    /**
+     * A matcher with no patterns, which excludes nothing.
+     */
+    public static final IgnoreMatcher EMPTY = compile(List.of());
+
+    private final List<String> patterns;
+    private final boolean[] negated;
+    private final Node root;
+    private final int nodeCount;
+
+    private IgnoreMatcher(List<String> patterns, boolean[] negated, Node root, int nodeCount) {
+        this.patterns = patterns;
+        this.negated = negated;
+        this.root = root;
+        this.nodeCount = nodeCount;
+    }
+
+    /**
+     * Compiles patterns, each relative to the root of the paths it's matched against and cleaned as
+     * {@link DockerIgnore} cleans them.
+     *
+     * @param patterns The patterns, in order. Later patterns take precedence over earlier ones.
+     * @return The matcher.
+     * @throws IllegalArgumentException If a pattern is malformed.
+     */
+    public static IgnoreMatcher compile(List<String> patterns) {
+        boolean[] negated = new boolean[patterns.size()];
+        Node root = new Node(0);
+        int[] nodeCount = {1};
+        for (int i = 0; i < patterns.size(); i++) {
+            String pattern = patterns.get(i);
+            negated[i] = pattern.startsWith("!");
+            if (negated[i]) {
+                pattern = pattern.substring(1);
+            }
+            String[] segments = pattern.split("/");
+            Node node = root;
+            for (int s = 0; s < segments.length; s++) {
+                String segment = segments[s];
+                if (segment.equals("**")) {
+                    if (s == segments.length - 1) {
+                        if (node.anyTail == null) {
+                            node.anyTail = new Node(nodeCount[0]++);
+                            node.anyTail.selfLoop = true;
+                        }
+                        node = node.anyTail;
+                    } else {
+                        if (node.doubleStar == null) {
+                            node.doubleStar = new Node(nodeCount[0]++);
+                            node.doubleStar.selfLoop = true;
+                        }
+                        node = node.doubleStar;
+                    }
+                } else if (GlobPattern.hasMeta(segment)) {
+                    node = node.globChild(GlobPattern.compile(segment), nodeCount);
+                } else {
+                    node = node.literalChild(segment, nodeCount);
+                }
+            }
+            node.terminal = i;
+        }
+        root.computeMaxNegated(negated);
+        return new IgnoreMatcher(List.copyOf(patterns), negated, root, nodeCount[0]);
+    }
+
+    /**
+     * Escapes a literal path so that it can prefix a pattern.
+     *
+     * @param path The path.
+     * @return The path, with each pattern character escaped.
+     */
+    public static String escape(String path) {
+        if (!GlobPattern.hasMeta(path)) {
+            return path;
+        }
+        StringBuilder sb = new StringBuilder(path.length() + 8);
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    public boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    /**
+     * Checks whether a path is excluded, by itself or by a parent directory.
+     *
+     * @param path A path relative to the root of the patterns, separated by {@code /}.
+     * @return {@code true} if the path is excluded.
+     */
+    public boolean isExcluded(String path) {
+        String normalized = CacheKeyCalculator.normalize(path);
+        if (normalized.isEmpty()) {
+            return false;
+        }
+        Node[] current = new Node[nodeCount];
+        Node[] next = new Node[nodeCount];
+        int[] marks = new int[nodeCount];
+        int size = start(current, marks, 1);
+        int decision = -1;
+        int epoch = 1;
+        for (String segment : normalized.split("/")) {
+            size = step(current, size, segment, next, marks, ++epoch);
+            decision = Math.max(decision, match(next, size));
+            Node[] swap = current;
+            current = next;
+            next = swap;
+        }
+        return isExcluded(decision);
+    }
+
+    /**
+     * @return The number of nodes in the trie, and so the most nodes a step can reach.
+     */
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Fills in the nodes reached before any segment has been matched.
+     *
+     * @param nodes The array to fill in, of at least {@link #getNodeCount()} elements.
+     * @param marks The epoch each node was last added in, used to skip duplicates.
+     * @param epoch A number identifying this step, different from any in {@code marks}.
+     * @return The number of nodes.
+     */
+    int start(Node[] nodes, int[] marks, int epoch) {
+        return add(root, nodes, 0, marks, epoch);
+    }
+
+    /**
+     * Matches one segment of a path, without allocating.
+     *
+     * @param from     The nodes reached by the segments before.
+     * @param fromSize The number of nodes in {@code from}.
+     * @param segment  The segment.
+     * @param to       The array to fill in with the nodes reached, of at least {@link #getNodeCount()} elements.
+     * @param marks    The epoch each node was last added in, used to skip duplicates.
+     * @param epoch    A number identifying this step, different from any in {@code marks}.
+     * @return The number of nodes reached.
+     */
+    int step(Node[] from, int fromSize, String segment, Node[] to, int[] marks, int epoch) {
+        int size = 0;
+        for (int i = 0; i < fromSize; i++) {
+            Node node = from[i];
+            if (node.literals != null) {
+                Node child = node.literals.get(segment);
+                if (child != null) {
+                    size = add(child, to, size, marks, epoch);
+                }
+            }
+            for (int g = 0; g < node.globs.length; g++) {
+                if (node.globs[g].matches(segment)) {
+                    size = add(node.globChildren[g], to, size, marks, epoch);
+                }
+            }
+            if (node.anyTail != null) {
+                size = add(node.anyTail, to, size, marks, epoch);
+            }
+            if (node.selfLoop) {
+                size = add(node, to, size, marks, epoch);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return The index of the last pattern matching the path which reached the nodes, or -1 if none does.
+     */
+    int match(Node[] nodes, int size) {
+        int match = -1;
+        for (int i = 0; i < size; i++) {
+            match = Math.max(match, nodes[i].terminal);
+        }
+        return match;
+    }
+
+    /**
+     * @param decision The index of the last pattern matching a path or any of its parents, or -1 if none does.
+     * @return {@code true} if that pattern excludes the path.
+     */
+    boolean isExcluded(int decision) {
+        return decision >= 0 && !negated[decision];
+    }
+
+    /**
+     * Checks whether nothing below an excluded directory can be included again, so that it needn't be walked.
+     *
+     * @param nodes    The nodes reached by the directory's path.
+     * @param size     The number of nodes.
+     * @param decision The index of the pattern excluding the directory.
+     * @return {@code true} if no negated pattern after the excluding one can match a path below the directory.
+     */
+    boolean canPrune(Node[] nodes, int size, int decision) {
+        for (int i = 0; i < size; i++) {
+            if (nodes[i].maxNegated > decision) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a node, and the {@code **} nodes which can match no segments after it.
+     */
+    private static int add(Node node, Node[] nodes, int size, int[] marks, int epoch) {
+        for (; node != null; node = node.doubleStar) {
+            if (marks[node.id] != epoch) {
+                marks[node.id] = epoch;
+                nodes[size++] = node;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return patterns.toString();
+    }
+
+    /**
+     * A node of the trie, reached after matching a sequence of pattern segments.
+     */
+    static final class Node {
+        private final int id;
+        private Map<String, Node> literals;
+        private GlobPattern[] globs = NO_GLOBS;
+        private Node[] globChildren = NO_NODES;
+        // a ** segment with more segments after it, which can match no segments
+        private Node doubleStar;
+        // a trailing ** segment, which matches at least one segment
+        private Node anyTail;
+        private boolean selfLoop;
+        // the index of the last pattern ending at this node
+        private int terminal = -1;
+        // the index of the last negated pattern ending at this node or below it
+        private int maxNegated = -1;
+
+        private Node(int id) {
+            this.id = id;
+        }
+
+        private Node literalChild(String segment, int[] nodeCount) {
+            if (literals == null) {
+                literals = new HashMap<>();
+            }
+            return literals.computeIfAbsent(segment, s -> new Node(nodeCount[0]++));
+        }
+
+        private Node globChild(GlobPattern glob, int[] nodeCount) {
+            for (int g = 0; g < globs.length; g++) {
+                if (globs[g].getPattern().equals(glob.getPattern())) {
+                    return globChildren[g];
+                }
+            }
+            globs = Arrays.copyOf(globs, globs.length + 1);
+            globChildren = Arrays.copyOf(globChildren, globChildren.length + 1);
+            globs[globs.length - 1] = glob;
+            globChildren[globChildren.length - 1] = new Node(nodeCount[0]++);
+            return globChildren[globChildren.length - 1];
+        }
+
+        private int computeMaxNegated(boolean[] negated) {
+            int max = terminal >= 0 && negated[terminal] ? terminal : -1;
+            List<Node> children = new ArrayList<>();
+            if (literals != null) {
+                children.addAll(literals.values());
+            }
+            children.addAll(List.of(globChildren));
+            if (doubleStar != null) {
+                children.add(doubleStar);
+            }
+            if (anyTail != null) {
+                children.add(anyTail);
+            }
+            for (Node child : children) {
+                max = Math.max(max, child.computeMaxNegated(negated));
+            }
+            maxNegated = max;
+            return max;
+        }
+    }
+}
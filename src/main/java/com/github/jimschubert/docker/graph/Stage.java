@@ -0,0 +1,70 @@
+package com.github.jimschubert.docker.graph;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.ast.FromInstruction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents a build stage: a FROM instruction and the instructions following it, up to the next FROM.
+ */
+public final class Stage {
+    private final int index;
+    private final FromInstruction from;
+    private final List<DockerInstruction> instructions;
+    final List<Stage> dependencies = new ArrayList<>(2);
+    final List<Stage> dependents = new ArrayList<>(2);
+
+    /**
+     * Creates a new instance of Stage.
+     *
+     * @param index        The position of the stage in the Dockerfile, starting at 0.
+     * @param from         The FROM instruction starting the stage.
+     * @param instructions The instructions of the stage, starting with its FROM instruction.
+     */
+    Stage(int index, FromInstruction from, List<DockerInstruction> instructions) {
+        this.index = index;
+        this.from = from;
+        this.instructions = Collections.unmodifiableList(instructions);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return The name given to the stage with {@code AS}, or {@code null}.
+     */
+    public String getName() {
+        return from.getAlias();
+    }
+
+    public FromInstruction getFrom() {
+        return from;
+    }
+
+    public List<DockerInstruction> getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * @return The stages this stage uses as its base, copies from or mounts, in the order first referenced.
+     */
+    public List<Stage> getDependencies() {
+        return Collections.unmodifiableList(dependencies);
+    }
+
+    /**
+     * @return The stages which depend on this stage, in Dockerfile order.
+     */
+    public List<Stage> getDependents() {
+        return Collections.unmodifiableList(dependents);
+    }
+
+    @Override
+    public String toString() {
+        return getName() != null ? getName() : String.valueOf(index);
+    }
+}
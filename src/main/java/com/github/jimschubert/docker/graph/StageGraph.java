@@ -0,0 +1,260 @@
+package com.github.jimschubert.docker.graph;
+
+import com.github.jimschubert.docker.ast.CopyInstruction;
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.ast.FromInstruction;
+import com.github.jimschubert.docker.ast.RunInstruction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.ToLongFunction;
+
+/**
+ * The dependency graph between the stages of a multi-stage Dockerfile.
+ * <p>
+ * A stage depends on another when it's built FROM an earlier stage's name, copies from it with {@code COPY --from}, or
+ * mounts it with {@code RUN --mount=...,from=...}. Stages are referenced by name, ignoring case, or by index; any other
+ * reference names an external image and isn't part of the graph. Instructions deferred with ONBUILD only run in later
+ * builds, so they don't add dependencies.
+ * <p>
+ * Stages with no path between them can be built concurrently. {@link #getParallelGroups()} groups stages by how many
+ * stages must be built before them, and {@link #getCriticalPath()} finds the longest chain of dependencies, which bounds
+ * how quickly the build can finish however many stages are built at once.
+ */
+public final class StageGraph {
+    private final List<Stage> stages;
+    private final List<Stage> order;
+
+    private StageGraph(List<Stage> stages, List<Stage> order) {
+        this.stages = stages;
+        this.order = order;
+    }
+
+    /**
+     * Builds the stage graph of a parsed Dockerfile.
+     *
+     * @param instructions The parsed instructions. Any before the first FROM, such as global ARGs, belong to no stage.
+     * @return The stage graph.
+     * @throws IllegalArgumentException If stages depend on each other in a cycle.
+     */
+    public static StageGraph of(List<DockerInstruction> instructions) {
+        List<Stage> stages = new ArrayList<>();
+        List<DockerInstruction> current = null;
+        FromInstruction from = null;
+        for (DockerInstruction instruction : instructions) {
+            if (instruction instanceof FromInstruction next) {
+                if (from != null) {
+                    stages.add(new Stage(stages.size(), from, current));
+                }
+                from = next;
+                current = new ArrayList<>();
+            }
+            if (current != null) {
+                current.add(instruction);
+            }
+        }
+        if (from != null) {
+            stages.add(new Stage(stages.size(), from, current));
+        }
+
+        Map<String, Stage> byName = new HashMap<>();
+        for (Stage stage : stages) {
+            String image = stage.getFrom().getImage();
+            // FROM only refers to earlier stages, so a stage may be named after its base image
+            Stage base = image != null ? byName.get(image.toLowerCase(Locale.ROOT)) : null;
+            if (base != null) {
+                addDependency(stage, base);
+            }
+            if (stage.getName() != null) {
+                byName.putIfAbsent(stage.getName().toLowerCase(Locale.ROOT), stage);
+            }
+        }
+        for (Stage stage : stages) {
+            for (DockerInstruction instruction : stage.getInstructions()) {
+                if (instruction instanceof CopyInstruction copy && copy.getFrom() != null) {
+                    addReference(stage, copy.getFrom(), stages, byName);
+                } else if (instruction instanceof RunInstruction run) {
+                    for (RunInstruction.Mount mount : run.getMounts()) {
+                        if (mount.getFrom() != null && !mount.getFrom().isEmpty()) {
+                            addReference(stage, mount.getFrom(), stages, byName);
+                        }
+                    }
+                }
+            }
+        }
+        for (Stage stage : stages) {
+            for (Stage dependency : stage.dependencies) {
+                dependency.dependents.add(stage);
+            }
+        }
+
+        return new StageGraph(Collections.unmodifiableList(stages), topologicalOrder(stages));
+    }
+
+    public List<Stage> getStages() {
+        return stages;
+    }
+
+    /**
+     * Finds a stage the way {@code COPY --from} does.
+     *
+     * @param reference The name of the stage, ignoring case, or its index.
+     * @return The stage, or {@code null} if no stage matches.
+     */
+    public Stage getStage(String reference) {
+        for (Stage stage : stages) {
+            if (stage.getName() != null && stage.getName().equalsIgnoreCase(reference)) {
+                return stage;
+            }
+        }
+        int index = parseIndex(reference);
+        return index >= 0 && index < stages.size() ? stages.get(index) : null;
+    }
+
+    /**
+     * @return The stages ordered so that every stage follows its dependencies, keeping Dockerfile order where possible.
+     */
+    public List<Stage> getTopologicalOrder() {
+        return order;
+    }
+
+    /**
+     * Groups the stages into waves which can each be built concurrently once the previous waves are built. A stage is in
+     * the wave after the latest wave holding one of its dependencies.
+     *
+     * @return The waves, in build order, each in Dockerfile order.
+     */
+    public List<List<Stage>> getParallelGroups() {
+        int[] levels = new int[stages.size()];
+        List<List<Stage>> groups = new ArrayList<>();
+        for (Stage stage : order) {
+            int level = 0;
+            for (Stage dependency : stage.dependencies) {
+                level = Math.max(level, levels[dependency.getIndex()] + 1);
+            }
+            levels[stage.getIndex()] = level;
+            while (groups.size() <= level) {
+                groups.add(new ArrayList<>());
+            }
+        }
+        for (Stage stage : stages) {
+            groups.get(levels[stage.getIndex()]).add(stage);
+        }
+        return groups;
+    }
+
+    /**
+     * Finds the longest chain of dependencies, counting each stage once.
+     *
+     * @return The stages of the chain, each depending on the one before it.
+     */
+    public List<Stage> getCriticalPath() {
+        return getCriticalPath(stage -> 1);
+    }
+
+    /**
+     * Finds the chain of dependencies with the largest total weight, such as the estimated build time of each stage.
+     *
+     * @param weight The weight of a stage, which must not be negative.
+     * @return The stages of the chain, each depending on the one before it, or an empty list if there are no stages.
+     */
+    public List<Stage> getCriticalPath(ToLongFunction<Stage> weight) {
+        long[] totals = new long[stages.size()];
+        Stage[] previous = new Stage[stages.size()];
+        Stage last = null;
+        for (Stage stage : order) {
+            long longest = 0;
+            for (Stage dependency : stage.dependencies) {
+                if (previous[stage.getIndex()] == null || totals[dependency.getIndex()] > longest) {
+                    longest = totals[dependency.getIndex()];
+                    previous[stage.getIndex()] = dependency;
+                }
+            }
+            totals[stage.getIndex()] = longest + weight.applyAsLong(stage);
+            if (last == null || totals[stage.getIndex()] > totals[last.getIndex()]) {
+                last = stage;
+            }
+        }
+
+        List<Stage> path = new ArrayList<>();
+        for (Stage stage = last; stage != null; stage = previous[stage.getIndex()]) {
+            path.add(stage);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private static void addReference(Stage stage, String reference, List<Stage> stages, Map<String, Stage> byName) {
+        Stage dependency = byName.get(reference.toLowerCase(Locale.ROOT));
+        if (dependency == null) {
+            int index = parseIndex(reference);
+            if (index >= 0 && index < stages.size()) {
+                dependency = stages.get(index);
+            }
+        }
+        if (dependency != null) {
+            addDependency(stage, dependency);
+        }
+    }
+
+    private static void addDependency(Stage stage, Stage dependency) {
+        if (!stage.dependencies.contains(dependency)) {
+            stage.dependencies.add(dependency);
+        }
+    }
+
+    private static int parseIndex(String reference) {
+        if (reference.isEmpty() || reference.length() > 9) {
+            return -1;
+        }
+        int index = 0;
+        for (int i = 0; i < reference.length(); i++) {
+            char c = reference.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            index = index * 10 + (c - '0');
+        }
+        return index;
+    }
+
+    /**
+     * Orders the stages with Kahn's algorithm, always taking the earliest ready stage.
+     */
+    private static List<Stage> topologicalOrder(List<Stage> stages) {
+        int[] pending = new int[stages.size()];
+        PriorityQueue<Stage> ready = new PriorityQueue<>(Comparator.comparingInt(Stage::getIndex));
+        for (Stage stage : stages) {
+            pending[stage.getIndex()] = stage.dependencies.size();
+            if (stage.dependencies.isEmpty()) {
+                ready.add(stage);
+            }
+        }
+        List<Stage> order = new ArrayList<>(stages.size());
+        while (!ready.isEmpty()) {
+            Stage stage = ready.poll();
+            order.add(stage);
+            for (Stage dependent : stage.dependents) {
+                if (--pending[dependent.getIndex()] == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (order.size() < stages.size()) {
+            List<Stage> cycle = new ArrayList<>();
+            for (Stage stage : stages) {
+                if (pending[stage.getIndex()] > 0) {
+                    cycle.add(stage);
+                }
+            }
+            throw new IllegalArgumentException("Circular dependency between stages " + cycle);
+        }
+        return Collections.unmodifiableList(order);
+    }
+}
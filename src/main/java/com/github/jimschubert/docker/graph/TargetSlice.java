@@ -0,0 +1,255 @@
+package com.github.jimschubert.docker.graph;
+
+import com.github.jimschubert.docker.ast.*;
+import com.github.jimschubert.docker.parser.ExpansionTemplate;
+import com.github.jimschubert.docker.parser.ParsedDockerfile;
+import com.github.jimschubert.docker.printer.DockerfilePrinter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The part of a Dockerfile needed to build one target stage: the stages it transitively depends on, the global ARGs
+ * those stages use, and the parser directives.
+ * <p>
+ * Everything else can be skipped when building the target. Comments directly before a FROM are kept with the stage it
+ * starts. To print the slice with the formatting of the original text, pass {@link #getInstructions()} to a
+ * {@link com.github.jimschubert.docker.printer.LosslessPrinter}.
+ * <p>
+ * The global ARGs a stage uses are found from the variable references in its FROM instruction and in the defaults of
+ * other global ARGs. A parser which expands variables replaces those references with their values, so slice its result
+ * with {@link #of(ParsedDockerfile, String)}, which reads them from the original text.
+ */
+public final class TargetSlice {
+    private final Stage target;
+    private final List<Stage> stages;
+    private final List<ArgInstruction> globalArgs;
+    private final List<DockerInstruction> instructions;
+
+    private TargetSlice(Stage target, List<Stage> stages, List<ArgInstruction> globalArgs, List<DockerInstruction> instructions) {
+        this.target = target;
+        this.stages = stages;
+        this.globalArgs = globalArgs;
+        this.instructions = instructions;
+    }
+
+    /**
+     * Slices a parsed Dockerfile for a target.
+     *
+     * @param instructions The parsed instructions.
+     * @param target       The name or index of the target stage, or {@code null} for the last stage, as when building
+     *                     without {@code --target}.
+     * @return The slice.
+     * @throws IllegalArgumentException If no stage matches the target, or stages depend on each other in a cycle.
+     */
+    public static TargetSlice of(List<DockerInstruction> instructions, String target) {
+        return of(instructions, target, null);
+    }
+
+    /**
+     * Slices a parsed Dockerfile for a target, reading the variables used by unmodified FROM and ARG instructions from
+     * the text they were parsed from.
+     *
+     * @param parsed The parsed Dockerfile.
+     * @param target The name or index of the target stage, or {@code null} for the last stage, as when building
+     *               without {@code --target}.
+     * @return The slice.
+     * @throws IllegalArgumentException If no stage matches the target, or stages depend on each other in a cycle.
+     */
+    public static TargetSlice of(ParsedDockerfile parsed, String target) {
+        return of(parsed.getInstructions(), target, parsed);
+    }
+
+    private static TargetSlice of(List<DockerInstruction> instructions, String target, ParsedDockerfile parsed) {
+        StageGraph graph = StageGraph.of(instructions);
+        List<Stage> all = graph.getStages();
+        Stage targetStage = target != null ? graph.getStage(target) : all.isEmpty() ? null : all.get(all.size() - 1);
+        if (targetStage == null) {
+            throw new IllegalArgumentException("Target stage " + target + " not found");
+        }
+
+        BitSet needed = new BitSet(all.size());
+        Deque<Stage> pending = new ArrayDeque<>();
+        pending.add(targetStage);
+        needed.set(targetStage.getIndex());
+        while (!pending.isEmpty()) {
+            for (Stage dependency : pending.poll().getDependencies()) {
+                if (!needed.get(dependency.getIndex())) {
+                    needed.set(dependency.getIndex());
+                    pending.add(dependency);
+                }
+            }
+        }
+        List<Stage> stages = new ArrayList<>(needed.cardinality());
+        for (int i = needed.nextSetBit(0); i >= 0; i = needed.nextSetBit(i + 1)) {
+            stages.add(all.get(i));
+        }
+
+        List<DockerInstruction> preamble = all.isEmpty() ? instructions : instructions.subList(0, instructions.indexOf(all.get(0).getFrom()));
+        char escapeChar = escapeChar(preamble);
+        List<ArgInstruction> globalArgs = globalArgs(preamble, stages, escapeChar, parsed);
+
+        List<DockerInstruction> sliced = new ArrayList<>();
+        for (DockerInstruction instruction : preamble) {
+            if (instruction instanceof DirectiveInstruction || globalArgs.contains(instruction)) {
+                sliced.add(instruction);
+            }
+        }
+        for (Stage stage : stages) {
+            int index = stage.getIndex();
+            if (index > 0) {
+                List<DockerInstruction> previous = all.get(index - 1).getInstructions();
+                sliced.addAll(previous.subList(trailingCommentsStart(previous), previous.size()));
+            } else {
+                sliced.addAll(preamble.subList(trailingCommentsStart(preamble), preamble.size()));
+            }
+            List<DockerInstruction> own = stage.getInstructions();
+            sliced.addAll(own.subList(0, trailingCommentsStart(own)));
+        }
+
+        return new TargetSlice(targetStage, Collections.unmodifiableList(stages), Collections.unmodifiableList(globalArgs),
+                Collections.unmodifiableList(sliced));
+    }
+
+    public Stage getTarget() {
+        return target;
+    }
+
+    /**
+     * @return The stages needed to build the target, in Dockerfile order.
+     */
+    public List<Stage> getStages() {
+        return stages;
+    }
+
+    /**
+     * @return The ARG instructions before the first FROM which the needed stages use.
+     */
+    public List<ArgInstruction> getGlobalArgs() {
+        return globalArgs;
+    }
+
+    /**
+     * @return The instructions of the slice, in Dockerfile order.
+     */
+    public List<DockerInstruction> getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * Prints the slice as a Dockerfile, with each instruction in canonical form.
+     *
+     * @return The trimmed Dockerfile.
+     */
+    public String print() {
+        return new DockerfilePrinter(instructions).print();
+    }
+
+    /**
+     * Finds the global ARGs the stages use, either in their FROM instructions, or by redeclaring them without a default.
+     * A global ARG whose default uses another global ARG needs that one too. Given the parsed Dockerfile, references
+     * are read from its text rather than from values which may have been expanded.
+     */
+    private static List<ArgInstruction> globalArgs(List<DockerInstruction> preamble, List<Stage> stages,
+                                                   char escapeChar, ParsedDockerfile parsed) {
+        String text = parsed != null ? parsed.getText() : null;
+        Set<String> names = new HashSet<>();
+        for (Stage stage : stages) {
+            FromInstruction from = stage.getFrom();
+            SourceSpan span = sourceSpan(from, parsed);
+            if (span != null) {
+                for (int i = 0; i < span.getPartCount(); i++) {
+                    if (span.getPartKind(i) == SourceSpan.PartKind.IMAGE || span.getPartKind(i) == SourceSpan.PartKind.FLAG) {
+                        addVariableNames(names, text.substring(span.getPartStartOffset(i), span.getPartEndOffset(i)), escapeChar);
+                    }
+                }
+            } else {
+                addVariableNames(names, from.getPlatform(), escapeChar);
+                addVariableNames(names, from.getImage(), escapeChar);
+                addVariableNames(names, from.getDigest(), escapeChar);
+            }
+            for (DockerInstruction instruction : stage.getInstructions()) {
+                if (instruction instanceof ArgInstruction arg) {
+                    for (KeyValuePair pair : arg.getArgs()) {
+                        if (!pair.hasEquals()) {
+                            names.add(pair.getKey());
+                        }
+                    }
+                }
+            }
+        }
+
+        List<ArgInstruction> globalArgs = new ArrayList<>();
+        // walk backwards, as a default can only use the ARGs declared before it
+        for (int i = preamble.size() - 1; i >= 0; i--) {
+            if (!(preamble.get(i) instanceof ArgInstruction arg)) {
+                continue;
+            }
+            boolean used = false;
+            for (KeyValuePair pair : arg.getArgs()) {
+                used |= names.contains(pair.getKey());
+            }
+            if (used) {
+                globalArgs.add(0, arg);
+                SourceSpan span = sourceSpan(arg, parsed);
+                if (span != null) {
+                    // the template skips single-quoted defaults, which aren't expanded
+                    addVariableNames(names, text.substring(span.getStartOffset(), span.getEndOffset()), escapeChar);
+                    continue;
+                }
+                for (KeyValuePair pair : arg.getArgs()) {
+                    if (pair.hasEquals() && pair.getQuoting() != Quoting.SINGLE_QUOTED) {
+                        addVariableNames(names, pair.getValue(), escapeChar);
+                    }
+                }
+            }
+        }
+        return globalArgs;
+    }
+
+    /**
+     * @return The source span in the parsed text of an instruction which still matches it, or {@code null} if there is
+     * no parsed Dockerfile.
+     */
+    private static SourceSpan sourceSpan(DockerInstruction instruction, ParsedDockerfile parsed) {
+        if (parsed == null || instruction.isModified()) {
+            return null;
+        }
+        return parsed.getSourceSpan(parsed.getInstructions().indexOf(instruction));
+    }
+
+    private static void addVariableNames(Set<String> names, String text, char escapeChar) {
+        if (text != null && text.indexOf('$') >= 0) {
+            names.addAll(ExpansionTemplate.of(text, escapeChar).getVariableNames());
+        }
+    }
+
+    private static char escapeChar(List<DockerInstruction> preamble) {
+        for (DockerInstruction instruction : preamble) {
+            if (instruction instanceof DirectiveInstruction directive) {
+                String escape = directive.getDirectives().get("escape");
+                if (escape != null && escape.length() == 1) {
+                    return escape.charAt(0);
+                }
+            }
+        }
+        return '\\';
+    }
+
+    /**
+     * Finds where the comments at the end of a list of instructions start, which describe the stage that follows.
+     */
+    private static int trailingCommentsStart(List<DockerInstruction> instructions) {
+        int start = instructions.size();
+        while (start > 0 && instructions.get(start - 1) instanceof CommentInstruction) {
+            start--;
+        }
+        return start;
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.jimschubert.docker.lint;
+
+import com.github.jimschubert.docker.ast.DirectiveInstruction;
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.ast.InstructionKind;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The configuration of checks given by {@code # check=...} parser directives, such as
+ * {@code # check=skip=JSONArgsRecommended,StageNameCasing;error=true}.
+ * <p>
+ * As with other parser directives, only those at the top of the Dockerfile, before any comment or instruction, apply.
+ * {@code skip} takes a comma separated list of rule names, ignoring case, or {@code all}; {@code error=true} makes any
+ * finding fail the check. When several check directives are given, their skip lists are combined.
+ */
+public final class CheckDirectives {
+    static final CheckDirectives NONE = new CheckDirectives(Set.of(), false, false);
+
+    private final Set<String> skipped;
+    private final boolean skipAll;
+    private final boolean error;
+
+    private CheckDirectives(Set<String> skipped, boolean skipAll, boolean error) {
+        this.skipped = skipped;
+        this.skipAll = skipAll;
+        this.error = error;
+    }
+
+    /**
+     * Reads the check directives at the top of a parsed Dockerfile.
+     *
+     * @param instructions The parsed instructions.
+     * @return The check configuration.
+     */
+    public static CheckDirectives of(List<DockerInstruction> instructions) {
+        Set<String> skipped = null;
+        boolean skipAll = false;
+        boolean error = false;
+        for (int i = 0, size = instructions.size(); i < size && instructions.get(i).getKind() == InstructionKind.DIRECTIVE; i++) {
+            String value = ((DirectiveInstruction) instructions.get(i)).getDirectives().get("check");
+            if (value == null) {
+                continue;
+            }
+            for (String option : value.split(";")) {
+                int equals = option.indexOf('=');
+                String key = (equals < 0 ? option : option.substring(0, equals)).trim().toLowerCase(Locale.ROOT);
+                String optionValue = equals < 0 ? "" : option.substring(equals + 1).trim();
+                if (key.equals("skip")) {
+                    for (String name : optionValue.split(",")) {
+                        name = name.trim().toLowerCase(Locale.ROOT);
+                        if (name.equals("all")) {
+                            skipAll = true;
+                        } else if (!name.isEmpty()) {
+                            if (skipped == null) {
+                                skipped = new HashSet<>();
+                            }
+                            skipped.add(name);
+                        }
+                    }
+                } else if (key.equals("error")) {
+                    error = Boolean.parseBoolean(optionValue);
+                }
+            }
+        }
+        if (skipped == null && !skipAll && !error) {
+            return NONE;
+        }
+        return new CheckDirectives(skipped != null ? Collections.unmodifiableSet(skipped) : Set.of(), skipAll, error);
+    }
+
+    /**
+     * @return The names of the skipped rules, in lower case, not including {@code all}.
+     */
+    public Set<String> getSkipped() {
+        return skipped;
+    }
+
+    public boolean isSkipAll() {
+        return skipAll;
+    }
+
+    /**
+     * @return {@code true} if any finding should fail the check.
+     */
+    public boolean isError() {
+        return error;
+    }
+
+    /**
+     * @param rule The name of a rule.
+     * @return {@code true} if the rule shouldn't run.
+     */
+    public boolean isSkipped(String rule) {
+        return skipAll || !skipped.isEmpty() && skipped.contains(rule.toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.jimschubert.docker.lint;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+
+/**
+ * A problem a rule found in a Dockerfile.
+ */
+public final class Finding {
+    private final String rule;
+    private final String message;
+    private final DockerInstruction instruction;
+
+    /**
+     * Creates a new instance of Finding.
+     *
+     * @param rule        The name of the rule which reported the problem.
+     * @param message     The description of the problem.
+     * @param instruction The instruction with the problem, or {@code null} if it concerns the whole file.
+     */
+    public Finding(String rule, String message, DockerInstruction instruction) {
+        this.rule = rule;
+        this.message = message;
+        this.instruction = instruction;
+    }
+
+    public String getRule() {
+        return rule;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return The instruction with the problem, or {@code null} if it concerns the whole file.
+     */
+    public DockerInstruction getInstruction() {
+        return instruction;
+    }
+
+    /**
+     * @return The line the instruction starts on in the text it was parsed from, or 0 if the finding concerns the whole
+     * file or the instruction wasn't parsed from a Dockerfile.
+     */
+    public int getLine() {
+        return instruction != null && instruction.getSourceSpan() != null ? instruction.getSourceSpan().getStartLine() : 0;
+    }
+
+    @Override
+    public String toString() {
+        int line = getLine();
+        return (line > 0 ? line + ": " : "") + rule + ": " + message;
+    }
+}
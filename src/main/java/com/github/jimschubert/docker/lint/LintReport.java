@@ -0,0 +1,37 @@
+package com.github.jimschubert.docker.lint;
+
+import java.util.List;
+
+/**
+ * The findings of checking one Dockerfile with a {@link RuleEngine}.
+ */
+public final class LintReport {
+    private final List<Finding> findings;
+    private final CheckDirectives checks;
+
+    LintReport(List<Finding> findings, CheckDirectives checks) {
+        this.findings = findings;
+        this.checks = checks;
+    }
+
+    /**
+     * @return The findings, ordered by instruction, then by the order the rules were registered.
+     */
+    public List<Finding> getFindings() {
+        return findings;
+    }
+
+    /**
+     * @return The configuration given by the file's check directives.
+     */
+    public CheckDirectives getChecks() {
+        return checks;
+    }
+
+    /**
+     * @return {@code true} if there are findings and the file's check directives set {@code error=true}.
+     */
+    public boolean isError() {
+        return checks.isError() && !findings.isEmpty();
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.jimschubert.docker.lint;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.ast.InstructionKind;
+
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * A check run by a {@link RuleEngine} against each Dockerfile.
+ * <p>
+ * A rule registers for the kinds of instruction it inspects, and the engine calls {@link #check} only with those. Rules
+ * may be called from several threads at once, each checking a different file, so any state must be kept in the
+ * {@link RuleContext} rather than in the rule.
+ */
+public interface Rule {
+    /**
+     * @return The name of the rule, which {@code # check=skip=...} directives refer to.
+     */
+    String getName();
+
+    /**
+     * @return The kinds of instruction the rule inspects. Instructions deferred by ONBUILD are checked as their own
+     * kind, as well as the ONBUILD instruction itself.
+     */
+    Set<InstructionKind> getKinds();
+
+    /**
+     * Checks an instruction, reporting any problems to the context.
+     *
+     * @param instruction The instruction, of one of the kinds the rule registered for.
+     * @param context     The state of the file being checked.
+     */
+    void check(DockerInstruction instruction, RuleContext context);
+
+    /**
+     * Called once every instruction of a file has been checked, for rules which look at the file as a whole.
+     *
+     * @param context The state of the file being checked.
+     */
+    default void finish(RuleContext context) {
+    }
+
+    /**
+     * Creates a rule from a function.
+     *
+     * @param name  The name of the rule.
+     * @param kinds The kinds of instruction the rule inspects.
+     * @param check Checks an instruction.
+     * @return The rule.
+     */
+    static Rule of(String name, Set<InstructionKind> kinds, BiConsumer<DockerInstruction, RuleContext> check) {
+        return new Rule() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public Set<InstructionKind> getKinds() {
+                return kinds;
+            }
+
+            @Override
+            public void check(DockerInstruction instruction, RuleContext context) {
+                check.accept(instruction, context);
+            }
+        };
+    }
+}
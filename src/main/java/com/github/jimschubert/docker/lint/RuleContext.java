@@ -0,0 +1,108 @@
+package com.github.jimschubert.docker.lint;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.ast.FromInstruction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The state of one Dockerfile being checked by a {@link RuleEngine}: where the check has reached, the findings so far,
+ * and any state rules keep between instructions. A context is only used by one thread.
+ */
+public final class RuleContext {
+    private final Rule[] rules;
+    private final Object[] states;
+    private final int[] findingCounts;
+    private final List<Finding> findings = new ArrayList<>();
+    private int rule;
+    private int stageIndex = -1;
+    private FromInstruction from;
+    private boolean deferred;
+
+    RuleContext(Rule[] rules) {
+        this.rules = rules;
+        this.states = new Object[rules.length];
+        this.findingCounts = new int[rules.length];
+    }
+
+    /**
+     * @return The index of the stage being checked, or -1 before the first FROM.
+     */
+    public int getStageIndex() {
+        return stageIndex;
+    }
+
+    /**
+     * @return The FROM instruction starting the stage being checked, or {@code null} before the first FROM.
+     */
+    public FromInstruction getFrom() {
+        return from;
+    }
+
+    /**
+     * @return {@code true} if the instruction being checked is deferred by an ONBUILD instruction.
+     */
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+    /**
+     * Gets the state the current rule keeps for this file, creating it on first use.
+     *
+     * @param initial Creates the state.
+     * @param <T>     The type of the state.
+     * @return The state.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getState(Supplier<T> initial) {
+        Object state = states[rule];
+        if (state == null) {
+            state = initial.get();
+            states[rule] = state;
+        }
+        return (T) state;
+    }
+
+    /**
+     * Reports a problem with an instruction.
+     *
+     * @param instruction The instruction with the problem.
+     * @param message     The description of the problem.
+     */
+    public void report(DockerInstruction instruction, String message) {
+        findings.add(new Finding(rules[rule].getName(), message, instruction));
+        findingCounts[rule]++;
+    }
+
+    /**
+     * Reports a problem with the file as a whole.
+     *
+     * @param message The description of the problem.
+     */
+    public void report(String message) {
+        report(null, message);
+    }
+
+    void setRule(int rule) {
+        this.rule = rule;
+    }
+
+    void startStage(FromInstruction from) {
+        this.from = from;
+        stageIndex++;
+    }
+
+    void setDeferred(boolean deferred) {
+        this.deferred = deferred;
+    }
+
+    int getFindingCount(int rule) {
+        return findingCounts[rule];
+    }
+
+    List<Finding> getFindings() {
+        return findings;
+    }
+}
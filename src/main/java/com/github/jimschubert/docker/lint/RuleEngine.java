@@ -0,0 +1,232 @@
+package com.github.jimschubert.docker.lint;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.ast.FromInstruction;
+import com.github.jimschubert.docker.ast.InstructionKind;
+import com.github.jimschubert.docker.ast.OnBuildInstruction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs a set of {@link Rule}s against parsed Dockerfiles.
+ * <p>
+ * Each file is checked in a single pass: the engine looks up the rules registered for each instruction's kind in a
+ * table built once, and calls only those, rather than every rule walking the instructions itself. Rules skipped by the
+ * file's {@code # check=skip=...} directives are removed from the table before the pass begins.
+ * <p>
+ * An engine is safe to share between threads, and {@link #checkAll} checks many files in parallel. The time spent in
+ * each rule, how often it's called and how many findings it reports are counted across every file, and read with
+ * {@link #getTimings()}.
+ */
+public final class RuleEngine {
+    private static final InstructionKind[] KINDS = InstructionKind.values();
+    private static final int[] NO_RULES = new int[0];
+
+    private final Rule[] rules;
+    // the indices of the rules registered for each kind, indexed by ordinal
+    private final int[][] byKind;
+    private final LongAdder[] invocations;
+    private final LongAdder[] nanos;
+    private final LongAdder[] findings;
+
+    /**
+     * Creates a new instance of RuleEngine.
+     *
+     * @param rules The rules to run, in the order their findings are reported for each instruction.
+     * @throws IllegalArgumentException If two rules have the same name, ignoring case.
+     */
+    public RuleEngine(Collection<? extends Rule> rules) {
+        this.rules = rules.toArray(new Rule[0]);
+        Set<String> names = new HashSet<>();
+        for (Rule rule : this.rules) {
+            if (!names.add(rule.getName().toLowerCase(Locale.ROOT))) {
+                throw new IllegalArgumentException("Duplicate rule " + rule.getName());
+            }
+        }
+        this.byKind = table(this.rules);
+        this.invocations = counters(this.rules.length);
+        this.nanos = counters(this.rules.length);
+        this.findings = counters(this.rules.length);
+    }
+
+    public List<Rule> getRules() {
+        return List.of(rules);
+    }
+
+    /**
+     * Checks a parsed Dockerfile.
+     *
+     * @param instructions The parsed instructions.
+     * @return The findings.
+     */
+    public LintReport check(List<DockerInstruction> instructions) {
+        CheckDirectives checks = CheckDirectives.of(instructions);
+        boolean[] active = null;
+        int[][] table = byKind;
+        if (checks != CheckDirectives.NONE) {
+            active = new boolean[rules.length];
+            boolean skipped = false;
+            for (int r = 0; r < rules.length; r++) {
+                active[r] = !checks.isSkipped(rules[r].getName());
+                skipped |= !active[r];
+            }
+            if (skipped) {
+                table = withoutSkipped(active);
+            }
+        }
+
+        RuleContext context = new RuleContext(rules);
+        long[] calls = new long[rules.length];
+        long[] time = new long[rules.length];
+        for (int i = 0, size = instructions.size(); i < size; i++) {
+            DockerInstruction instruction = instructions.get(i);
+            if (instruction.getKind() == InstructionKind.FROM) {
+                context.startStage((FromInstruction) instruction);
+            }
+            dispatch(table, instruction, context, calls, time);
+            if (instruction.getKind() == InstructionKind.ONBUILD) {
+                DockerInstruction deferred = ((OnBuildInstruction) instruction).getDeferredInstruction();
+                if (deferred != null) {
+                    context.setDeferred(true);
+                    dispatch(table, deferred, context, calls, time);
+                    context.setDeferred(false);
+                }
+            }
+        }
+        for (int r = 0; r < rules.length; r++) {
+            if (active == null || active[r]) {
+                context.setRule(r);
+                long start = System.nanoTime();
+                rules[r].finish(context);
+                time[r] += System.nanoTime() - start;
+                calls[r]++;
+            }
+        }
+
+        for (int r = 0; r < rules.length; r++) {
+            if (calls[r] > 0) {
+                invocations[r].add(calls[r]);
+                nanos[r].add(time[r]);
+                findings[r].add(context.getFindingCount(r));
+            }
+        }
+        return new LintReport(Collections.unmodifiableList(context.getFindings()), checks);
+    }
+
+    /**
+     * Checks many parsed Dockerfiles in parallel.
+     *
+     * @param files    The parsed instructions of each file.
+     * @param executor The executor to check files on.
+     * @return The reports, in the same order as the files.
+     * @throws InterruptedException If interrupted while waiting for the checks to complete.
+     * @throws RuntimeException     If a rule throws, the first exception thrown, in file order.
+     */
+    public List<LintReport> checkAll(Collection<? extends List<DockerInstruction>> files, Executor executor) throws InterruptedException {
+        List<CompletableFuture<LintReport>> futures = new ArrayList<>(files.size());
+        for (List<DockerInstruction> file : files) {
+            futures.add(CompletableFuture.supplyAsync(() -> check(file), executor));
+        }
+        List<LintReport> reports = new ArrayList<>(futures.size());
+        for (CompletableFuture<LintReport> future : futures) {
+            try {
+                reports.add(future.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                } else if (e.getCause() instanceof Error cause) {
+                    throw cause;
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * @return The counters of each rule, in the order the rules were registered.
+     */
+    public List<RuleTiming> getTimings() {
+        List<RuleTiming> timings = new ArrayList<>(rules.length);
+        for (int r = 0; r < rules.length; r++) {
+            timings.add(new RuleTiming(rules[r].getName(), invocations[r].sum(), nanos[r].sum(), findings[r].sum()));
+        }
+        return timings;
+    }
+
+    /**
+     * Sets the counters of every rule back to zero.
+     */
+    public void resetTimings() {
+        for (int r = 0; r < rules.length; r++) {
+            invocations[r].reset();
+            nanos[r].reset();
+            findings[r].reset();
+        }
+    }
+
+    private void dispatch(int[][] table, DockerInstruction instruction, RuleContext context, long[] calls, long[] time) {
+        for (int r : table[instruction.getKind().ordinal()]) {
+            context.setRule(r);
+            long start = System.nanoTime();
+            rules[r].check(instruction, context);
+            time[r] += System.nanoTime() - start;
+            calls[r]++;
+        }
+    }
+
+    /**
+     * Builds the table of rules registered for each kind.
+     */
+    private static int[][] table(Rule[] rules) {
+        int[][] table = new int[KINDS.length][];
+        for (InstructionKind kind : KINDS) {
+            int count = 0;
+            int[] indices = new int[rules.length];
+            for (int r = 0; r < rules.length; r++) {
+                if (rules[r].getKinds().contains(kind)) {
+                    indices[count++] = r;
+                }
+            }
+            table[kind.ordinal()] = count == 0 ? NO_RULES : Arrays.copyOf(indices, count);
+        }
+        return table;
+    }
+
+    /**
+     * Copies the table of rules registered for each kind, leaving out inactive rules.
+     */
+    private int[][] withoutSkipped(boolean[] active) {
+        int[][] table = new int[byKind.length][];
+        for (int k = 0; k < byKind.length; k++) {
+            int count = 0;
+            int[] indices = new int[byKind[k].length];
+            for (int r : byKind[k]) {
+                if (active[r]) {
+                    indices[count++] = r;
+                }
+            }
+            table[k] = count == 0 ? NO_RULES : Arrays.copyOf(indices, count);
+        }
+        return table;
+    }
+
+    private static LongAdder[] counters(int count) {
+        LongAdder[] counters = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+}
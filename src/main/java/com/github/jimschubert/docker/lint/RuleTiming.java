@@ -0,0 +1,48 @@
+package com.github.jimschubert.docker.lint;
+
+/**
+ * Counters for one rule of a {@link RuleEngine}, accumulated over every file it has checked.
+ */
+public final class RuleTiming {
+    private final String rule;
+    private final long invocations;
+    private final long nanos;
+    private final long findings;
+
+    RuleTiming(String rule, long invocations, long nanos, long findings) {
+        this.rule = rule;
+        this.invocations = invocations;
+        this.nanos = nanos;
+        this.findings = findings;
+    }
+
+    public String getRule() {
+        return rule;
+    }
+
+    /**
+     * @return The number of times the rule was called, including {@link Rule#finish}.
+     */
+    public long getInvocations() {
+        return invocations;
+    }
+
+    /**
+     * @return The total time spent in the rule, in nanoseconds.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return The number of findings the rule reported.
+     */
+    public long getFindings() {
+        return findings;
+    }
+
+    @Override
+    public String toString() {
+        return rule + ": " + invocations + " calls, " + nanos / 1_000_000.0 + " ms, " + findings + " findings";
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.jimschubert.docker.parser;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Parses many Dockerfiles in parallel on an {@link Executor}.
+ * <p>
+ * Each source produces a {@link ParseResult}, so a file which fails to read or parse doesn't abort the batch. At most
+ * {@code maxInFlight} sources are open and being parsed at any time; submission blocks until a slot frees up, which
+ * keeps memory flat regardless of the batch size.
+ */
+public class BatchParser {
+    /**
+     * Opens a source for reading.
+     *
+     * @param <S> The source type.
+     */
+    @FunctionalInterface
+    public interface SourceOpener<S> {
+        /**
+         * Opens the source. The returned stream is closed once parsing completes.
+         *
+         * @param source The source to open.
+         * @return The Dockerfile contents.
+         * @throws IOException If the source can't be opened.
+         */
+        InputStream open(S source) throws IOException;
+    }
+
+    private final DockerfileParser parser;
+    private final Executor executor;
+    private final int maxInFlight;
+
+    /**
+     * Creates a new instance of BatchParser.
+     *
+     * @param parser      The parser to use for every source. Parsers are safe to share between threads.
+     * @param executor    The executor to run parses on, such as a virtual thread executor on JDK 21 and newer.
+     * @param maxInFlight The maximum number of sources being parsed at once.
+     */
+    public BatchParser(DockerfileParser parser, Executor executor, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.parser = parser;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Creates an executor suited to batch parsing: one virtual thread per task where the runtime supports virtual
+     * threads, otherwise a fixed pool sized to the available processors.
+     *
+     * @return A new executor, which the caller is responsible for shutting down.
+     */
+    public static ExecutorService newDefaultExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * Parses Dockerfiles from the file system.
+     *
+     * @param paths The paths to parse.
+     * @return The results, in the same order as the paths.
+     * @throws InterruptedException If interrupted while waiting for the batch to complete.
+     */
+    public List<ParseResult<Path>> parsePaths(Collection<Path> paths) throws InterruptedException {
+        return parseAll(paths, Files::newInputStream);
+    }
+
+    /**
+     * Parses Dockerfiles from already opened streams. Each stream is closed once it has been parsed.
+     *
+     * @param streams The streams to parse.
+     * @return The results, in the same order as the streams.
+     * @throws InterruptedException If interrupted while waiting for the batch to complete.
+     */
+    public List<ParseResult<InputStream>> parseStreams(Collection<? extends InputStream> streams) throws InterruptedException {
+        return parseAll(new ArrayList<InputStream>(streams), stream -> stream);
+    }
+
+    /**
+     * Parses every source and collects the results.
+     *
+     * @param sources The sources to parse.
+     * @param opener  Opens each source.
+     * @param <S>     The source type.
+     * @return The results, in the same order as the sources.
+     * @throws InterruptedException If interrupted while waiting for the batch to complete.
+     */
+    public <S> List<ParseResult<S>> parseAll(Collection<S> sources, SourceOpener<S> opener) throws InterruptedException {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ParseResult<S>[] results = new ParseResult[sources.size()];
+        List<Indexed<S>> indexed = new ArrayList<>(sources.size());
+        for (S source : sources) {
+            indexed.add(new Indexed<>(indexed.size(), source));
+        }
+        parse(indexed, item -> opener.open(item.source()), result -> results[result.getSource().index()] =
+                result.isSuccess()
+                        ? ParseResult.success(result.getSource().source(), result.getInstructions())
+                        : ParseResult.failure(result.getSource().source(), result.getError()));
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Parses every source, handing each result to the consumer as soon as it's available. Results aren't retained,
+     * so this is the preferred entry point for very large batches.
+     * <p>
+     * The consumer is called from the executor's threads, but never concurrently.
+     *
+     * @param sources  The sources to parse, which may be lazily produced.
+     * @param opener   Opens each source.
+     * @param consumer Receives each result, in completion order.
+     * @param <S>      The source type.
+     * @throws InterruptedException If interrupted while waiting for the batch to complete.
+     */
+    public <S> void parse(Iterable<S> sources, SourceOpener<S> opener, Consumer<ParseResult<S>> consumer) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        Object consumerLock = new Object();
+        for (S source : sources) {
+            inFlight.acquire();
+            try {
+                executor.execute(() -> {
+                    try {
+                        ParseResult<S> result = parseOne(source, opener);
+                        synchronized (consumerLock) {
+                            consumer.accept(result);
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+        // every permit is available again only once all submitted parses have completed
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+    }
+
+    private <S> ParseResult<S> parseOne(S source, SourceOpener<S> opener) {
+        try (InputStream inputStream = opener.open(source)) {
+            List<DockerInstruction> instructions = parser.parseDockerfile(inputStream);
+            return ParseResult.success(source, instructions);
+        } catch (ParserError e) {
+            return ParseResult.failure(source, e);
+        } catch (IOException e) {
+            return ParseResult.failure(source, new ParserError("Unable to read " + source + ": " + e.getMessage(), e));
+        } catch (RuntimeException e) {
+            return ParseResult.failure(source, new ParserError("Unable to parse " + source + ": " + e.getMessage(), e));
+        }
+    }
+
+    private record Indexed<S>(int index, S source) {
+    }
+}
@@ -0,0 +1,574 @@
+package com.github.jimschubert.docker.parser;
+
+import com.github.jimschubert.docker.ast.*;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Encodes parsed instructions into a compact binary form and decodes them again.
+ * <p>
+ * The encoding starts with a table of distinct strings, so repeated values such as paths and image names are stored
+ * once and referenced by index. Integers, lengths and indexes are written as unsigned variable-length integers. Every
+ * instruction is a one byte tag followed by its source span and fields. The format is versioned by
+ * {@link #FORMAT_VERSION}, which must change whenever the encoding does.
+ */
+final class BinaryAstCodec {
+    static final int FORMAT_VERSION = 4;
+
+    private static final int UNKNOWN = 0;
+    private static final int ADD = 1;
+    private static final int ARG = 2;
+    private static final int CMD = 3;
+    private static final int COMMENT = 4;
+    private static final int COPY = 5;
+    private static final int DIRECTIVE = 6;
+    private static final int ENTRYPOINT = 7;
+    private static final int ENV = 8;
+    private static final int EXPOSE = 9;
+    private static final int FROM = 10;
+    private static final int HEALTHCHECK = 11;
+    private static final int LABEL = 12;
+    private static final int MAINTAINER = 13;
+    private static final int ONBUILD = 14;
+    private static final int RUN = 15;
+    private static final int SHELL = 16;
+    private static final int STOPSIGNAL = 17;
+    private static final int USER = 18;
+    private static final int VOLUME = 19;
+    private static final int WORKDIR = 20;
+
+    private static final SourceSpan.PartKind[] PART_KINDS = SourceSpan.PartKind.values();
+    private static final Quoting[] QUOTINGS = Quoting.values();
+    private static final CommandInstruction.Form[] FORMS = CommandInstruction.Form.values();
+    private static final HealthCheckInstruction.HealthCheckType[] HEALTH_CHECK_TYPES = HealthCheckInstruction.HealthCheckType.values();
+
+    private BinaryAstCodec() {
+    }
+
+    /**
+     * Encodes instructions.
+     *
+     * @param instructions The instructions to encode.
+     * @return The encoded instructions.
+     */
+    static byte[] encode(List<DockerInstruction> instructions) {
+        Encoder body = new Encoder();
+        body.writeVarInt(instructions.size());
+        for (DockerInstruction instruction : instructions) {
+            body.writeInstruction(instruction);
+        }
+
+        Encoder out = new Encoder();
+        out.writeVarInt(body.strings.size());
+        for (String string : body.strings.keySet()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeVarInt(bytes.length);
+            out.writeBytes(bytes, bytes.length);
+        }
+        out.writeBytes(body.buffer, body.size);
+        return Arrays.copyOf(out.buffer, out.size);
+    }
+
+    /**
+     * Decodes instructions written by {@link #encode(List)}.
+     *
+     * @param buffer The encoded instructions, from the buffer's position to its limit.
+     * @return The decoded instructions.
+     * @throws IOException If the encoded data is malformed.
+     */
+    static List<DockerInstruction> decode(ByteBuffer buffer) throws IOException {
+        try {
+            Decoder decoder = new Decoder(buffer);
+            int count = decoder.readCount();
+            List<DockerInstruction> instructions = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                instructions.add(decoder.readInstruction());
+            }
+            if (buffer.hasRemaining()) {
+                throw new IOException("Unexpected data after the encoded instructions");
+            }
+            return instructions;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Malformed encoded instructions", e);
+        }
+    }
+
+    private static final class Encoder {
+        // LinkedHashMap keeps the table in index order
+        private final Map<String, Integer> strings = new LinkedHashMap<>();
+        private byte[] buffer = new byte[256];
+        private int size = 0;
+
+        void writeInstruction(DockerInstruction instruction) {
+            switch (instruction.getKind()) {
+                case ADD -> {
+                    AddInstruction add = (AddInstruction) instruction;
+                    writeHeader(ADD, add);
+                    writeStrings(add.getSources());
+                    writeString(add.getDestination());
+                    writeBoolean(add.getKeepGitDir());
+                    writeString(add.getChecksum());
+                    writeString(add.getChown());
+                    writeString(add.getChmod());
+                    writeBoolean(add.getLink());
+                    writeStrings(add.getExclude());
+                    writeHeredocs(add.getHeredocs());
+                }
+                case ARG -> {
+                    ArgInstruction arg = (ArgInstruction) instruction;
+                    writeHeader(ARG, arg);
+                    writePairs(arg.getArgs());
+                }
+                case CMD -> writeCommand(CMD, (CommandInstruction) instruction);
+                case ENTRYPOINT -> writeCommand(ENTRYPOINT, (CommandInstruction) instruction);
+                case VOLUME -> writeCommand(VOLUME, (CommandInstruction) instruction);
+                case COMMENT -> {
+                    CommentInstruction comment = (CommentInstruction) instruction;
+                    writeHeader(COMMENT, comment);
+                    writeString(comment.getComment());
+                }
+                case COPY -> {
+                    CopyInstruction copy = (CopyInstruction) instruction;
+                    writeHeader(COPY, copy);
+                    writeStrings(copy.getSources());
+                    writeString(copy.getDestination());
+                    writeString(copy.getFrom());
+                    writeString(copy.getChown());
+                    writeString(copy.getChmod());
+                    writeBoolean(copy.getLink());
+                    writeBoolean(copy.getParents());
+                    writeStrings(copy.getExclude());
+                    writeHeredocs(copy.getHeredocs());
+                }
+                case DIRECTIVE -> {
+                    DirectiveInstruction directive = (DirectiveInstruction) instruction;
+                    writeHeader(DIRECTIVE, directive);
+                    writeVarInt(directive.getDirectives().size());
+                    for (Map.Entry<String, String> entry : directive.getDirectives().entrySet()) {
+                        writeString(entry.getKey());
+                        writeString(entry.getValue());
+                    }
+                }
+                case ENV -> {
+                    EnvInstruction env = (EnvInstruction) instruction;
+                    writeHeader(ENV, env);
+                    writePairs(env.getVariables());
+                }
+                case EXPOSE -> {
+                    ExposeInstruction expose = (ExposeInstruction) instruction;
+                    writeHeader(EXPOSE, expose);
+                    writeVarInt(expose.getPorts().size());
+                    for (ExposeInstruction.Port port : expose.getPorts()) {
+                        writeString(port.getPort());
+                        writeString(port.getProtocol());
+                        writeBoolean(port.isProtocolProvided());
+                    }
+                }
+                case FROM -> {
+                    FromInstruction from = (FromInstruction) instruction;
+                    writeHeader(FROM, from);
+                    writeString(from.getPlatform());
+                    writeString(from.getImage());
+                    writeString(from.getDigest());
+                    writeString(from.getAlias());
+                }
+                case HEALTHCHECK -> {
+                    HealthCheckInstruction healthCheck = (HealthCheckInstruction) instruction;
+                    writeHeader(HEALTHCHECK, healthCheck);
+                    writeEnum(healthCheck.getType());
+                    writeString(healthCheck.getTest());
+                    writeString(healthCheck.getInterval());
+                    writeString(healthCheck.getTimeout());
+                    writeString(healthCheck.getStartPeriod());
+                    writeString(healthCheck.getRetries());
+                }
+                case LABEL -> {
+                    LabelInstruction label = (LabelInstruction) instruction;
+                    writeHeader(LABEL, label);
+                    writePairs(label.getLabels());
+                }
+                case MAINTAINER -> {
+                    MaintainerInstruction maintainer = (MaintainerInstruction) instruction;
+                    writeHeader(MAINTAINER, maintainer);
+                    writeString(maintainer.getMaintainer());
+                }
+                case ONBUILD -> {
+                    OnBuildInstruction onBuild = (OnBuildInstruction) instruction;
+                    writeHeader(ONBUILD, onBuild);
+                    writeInstruction(onBuild.getDeferredInstruction());
+                }
+                case RUN -> {
+                    RunInstruction run = (RunInstruction) instruction;
+                    writeHeader(RUN, run);
+                    writeStrings(run.getCommands());
+                    writeString(run.getCommandText());
+                    writeVarInt(run.getMounts().size());
+                    for (RunInstruction.Mount mount : run.getMounts()) {
+                        writeVarInt(mount.getOptions().size());
+                        for (Map.Entry<String, String> option : mount.getOptions().entrySet()) {
+                            writeString(option.getKey());
+                            writeString(option.getValue());
+                        }
+                    }
+                    writeString(run.getNetwork());
+                    writeString(run.getSecurity());
+                    writeHeredocs(run.getHeredocs());
+                }
+                case SHELL -> {
+                    ShellInstruction shell = (ShellInstruction) instruction;
+                    writeHeader(SHELL, shell);
+                    writeStrings(shell.getCommands());
+                }
+                case STOPSIGNAL -> {
+                    StopSignalInstruction stopSignal = (StopSignalInstruction) instruction;
+                    writeHeader(STOPSIGNAL, stopSignal);
+                    writeString(stopSignal.getSignal());
+                }
+                case USER -> {
+                    UserInstruction user = (UserInstruction) instruction;
+                    writeHeader(USER, user);
+                    writeString(user.getUser());
+                    writeString(user.getGroup());
+                }
+                case WORKDIR -> {
+                    WorkdirInstruction workdir = (WorkdirInstruction) instruction;
+                    writeHeader(WORKDIR, workdir);
+                    writeString(workdir.getWorkdir());
+                }
+                case UNKNOWN -> {
+                    UnknownInstruction unknown = (UnknownInstruction) instruction;
+                    writeHeader(UNKNOWN, unknown);
+                    writeString(unknown.getInstruction());
+                    writeString(unknown.getArguments());
+                }
+            }
+        }
+
+        private void writeCommand(int tag, CommandInstruction command) {
+            writeHeader(tag, command);
+            writeEnum(command.getForm());
+            writeStrings(command.getCommand());
+            writeString(command.getCommandText());
+        }
+
+        private void writeHeader(int tag, DockerInstruction instruction) {
+            writeByte(tag);
+            SourceSpan span = instruction.getSourceSpan();
+            if (span == null) {
+                writeVarInt(0);
+                return;
+            }
+            writeVarInt(span.getPartCount() + 1);
+            // the start is absolute; every other position is relative to it, apart from its column
+            int line = span.getStartLine();
+            int offset = span.getStartOffset();
+            int byteOffset = span.getStartByteOffset();
+            writePosition(line, span.getStartColumn(), offset, byteOffset);
+            writePosition(span.getEndLine() - line, span.getEndColumn(), span.getEndOffset() - offset, span.getEndByteOffset() - byteOffset);
+            for (int i = 0; i < span.getPartCount(); i++) {
+                writeByte(span.getPartKind(i).ordinal());
+                writePosition(span.getPartStartLine(i) - line, span.getPartStartColumn(i), span.getPartStartOffset(i) - offset, span.getPartStartByteOffset(i) - byteOffset);
+                writePosition(span.getPartEndLine(i) - line, span.getPartEndColumn(i), span.getPartEndOffset(i) - offset, span.getPartEndByteOffset(i) - byteOffset);
+            }
+        }
+
+        private void writePosition(int line, int column, int offset, int byteOffset) {
+            writeVarInt(line);
+            writeVarInt(column);
+            writeVarInt(offset);
+            writeVarInt(byteOffset);
+        }
+
+        private void writeHeredocs(List<Heredoc> heredocs) {
+            writeVarInt(heredocs.size());
+            for (Heredoc heredoc : heredocs) {
+                writeString(heredoc.getName());
+                writeString(heredoc.getBody().toString());
+                writeBoolean(heredoc.isChomp());
+                writeBoolean(heredoc.isExpand());
+                writeVarInt(heredoc.getFileDescriptor());
+            }
+        }
+
+        private void writePairs(List<? extends KeyValuePair> pairs) {
+            writeVarInt(pairs.size());
+            for (KeyValuePair pair : pairs) {
+                writeString(pair.getKey());
+                writeString(pair.getValue());
+                writeBoolean(pair.hasEquals());
+                writeEnum(pair.getQuoting());
+            }
+        }
+
+        private void writeStrings(List<String> values) {
+            if (values == null) {
+                writeVarInt(0);
+                return;
+            }
+            writeVarInt(values.size() + 1);
+            for (String value : values) {
+                writeString(value);
+            }
+        }
+
+        private void writeString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index == null) {
+                index = strings.size();
+                strings.put(value, index);
+            }
+            writeVarInt(index + 1);
+        }
+
+        private void writeBoolean(Boolean value) {
+            writeByte(value == null ? 0 : value ? 2 : 1);
+        }
+
+        private void writeEnum(Enum<?> value) {
+            writeVarInt(value == null ? 0 : value.ordinal() + 1);
+        }
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        private void writeByte(int value) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size * 2);
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeBytes(byte[] bytes, int length) {
+            if (size + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(size * 2, size + length));
+            }
+            System.arraycopy(bytes, 0, buffer, size, length);
+            size += length;
+        }
+    }
+
+    private static final class Decoder {
+        private final ByteBuffer buffer;
+        private final String[] strings;
+        private byte[] scratch = new byte[64];
+
+        Decoder(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.strings = new String[readCount()];
+            for (int i = 0; i < strings.length; i++) {
+                int length = readCount();
+                if (length > scratch.length) {
+                    scratch = new byte[Math.max(length, scratch.length * 2)];
+                }
+                buffer.get(scratch, 0, length);
+                strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+        }
+
+        DockerInstruction readInstruction() throws IOException {
+            int tag = buffer.get();
+            SourceSpan span = readSpan();
+            DockerInstruction instruction = switch (tag) {
+                case ADD -> new AddInstruction(readStrings(), readString(), readBoolean(), readString(), readString(), readString(), readBoolean(), readStrings(), readHeredocs());
+                case ARG -> new ArgInstruction(readPairs());
+                case CMD -> readCommand(new CmdInstruction());
+                case COMMENT -> new CommentInstruction(readString());
+                case COPY -> new CopyInstruction(readStrings(), readString(), readString(), readString(), readString(), readBoolean(), readBoolean(), readStrings(), readHeredocs());
+                case DIRECTIVE -> readDirective();
+                case ENTRYPOINT -> readCommand(new EntrypointInstruction());
+                case ENV -> new EnvInstruction(readVariables());
+                case EXPOSE -> readExpose();
+                case FROM -> new FromInstruction(readString(), readString(), readString(), readString());
+                case HEALTHCHECK -> new HealthCheckInstruction(readEnum(HEALTH_CHECK_TYPES), readString(), readString(), readString(), readString(), readString());
+                case LABEL -> new LabelInstruction(readPairs());
+                case MAINTAINER -> new MaintainerInstruction(readString());
+                case ONBUILD -> new OnBuildInstruction(readInstruction());
+                case RUN -> readRun();
+                case SHELL -> new ShellInstruction(readStrings());
+                case STOPSIGNAL -> new StopSignalInstruction(readString());
+                case USER -> new UserInstruction(readString(), readString());
+                case VOLUME -> readCommand(new VolumeInstruction());
+                case WORKDIR -> new WorkdirInstruction(readString());
+                case UNKNOWN -> new UnknownInstruction(readString(), readString());
+                default -> throw new IOException("Unknown instruction tag " + tag);
+            };
+            instruction.setSourceSpan(span);
+            return instruction;
+        }
+
+        private CommandInstruction readCommand(CommandInstruction command) {
+            command.setForm(readEnum(FORMS));
+            command.setCommand(readStrings(), readString());
+            return command;
+        }
+
+        private DirectiveInstruction readDirective() {
+            // directives are rebuilt from their key=value pairs, which parse back into the same map
+            int count = readCount();
+            StringBuilder directive = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    directive.append(' ');
+                }
+                directive.append(readString()).append('=').append(readString());
+            }
+            return new DirectiveInstruction(directive.toString());
+        }
+
+        private ExposeInstruction readExpose() {
+            int count = readCount();
+            List<ExposeInstruction.Port> ports = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ExposeInstruction.Port port = new ExposeInstruction.Port(readString());
+                port.setProtocol(readString());
+                port.setProtocolProvided(Boolean.TRUE.equals(readBoolean()));
+                ports.add(port);
+            }
+            return new ExposeInstruction(ports);
+        }
+
+        private RunInstruction readRun() {
+            List<String> commands = readStrings();
+            String commandText = readString();
+            int count = readCount();
+            List<RunInstruction.Mount> mounts = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int size = readCount();
+                Map<String, String> options = new LinkedHashMap<>(size * 2);
+                for (int j = 0; j < size; j++) {
+                    options.put(readString(), readString());
+                }
+                mounts.add(new RunInstruction.Mount(options));
+            }
+            return new RunInstruction(commands, commandText, mounts, readString(), readString(), readHeredocs());
+        }
+
+        private List<Heredoc> readHeredocs() {
+            int count = readCount();
+            List<Heredoc> heredocs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                heredocs.add(new Heredoc(readString(), readString(), Boolean.TRUE.equals(readBoolean()), Boolean.TRUE.equals(readBoolean()), readVarInt()));
+            }
+            return heredocs;
+        }
+
+        private SourceSpan readSpan() {
+            int header = readOptionalCount();
+            if (header == 0) {
+                return null;
+            }
+            int line = readVarInt();
+            int column = readVarInt();
+            int offset = readVarInt();
+            int byteOffset = readVarInt();
+            SourceSpan.Builder builder = new SourceSpan.Builder().start(line, column, offset, byteOffset);
+            builder.end(line + readVarInt(), readVarInt(), offset + readVarInt(), byteOffset + readVarInt());
+            for (int i = 1; i < header; i++) {
+                builder.part(PART_KINDS[buffer.get()]);
+                builder.partStart(line + readVarInt(), readVarInt(), offset + readVarInt(), byteOffset + readVarInt());
+                builder.partEnd(line + readVarInt(), readVarInt(), offset + readVarInt(), byteOffset + readVarInt());
+            }
+            return builder.build();
+        }
+
+        private List<KeyValuePair> readPairs() {
+            int count = readCount();
+            List<KeyValuePair> pairs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                pairs.add(new KeyValuePair(readString(), readString(), Boolean.TRUE.equals(readBoolean()), readEnum(QUOTINGS)));
+            }
+            return pairs;
+        }
+
+        private List<EnvVariable> readVariables() {
+            int count = readCount();
+            List<EnvVariable> variables = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                variables.add(new EnvVariable(readString(), readString(), !Boolean.TRUE.equals(readBoolean()), readEnum(QUOTINGS)));
+            }
+            return variables;
+        }
+
+        private List<String> readStrings() {
+            int header = readOptionalCount();
+            if (header == 0) {
+                return null;
+            }
+            List<String> values = new ArrayList<>(header - 1);
+            for (int i = 1; i < header; i++) {
+                values.add(readString());
+            }
+            return values;
+        }
+
+        private String readString() {
+            int index = readVarInt();
+            return index == 0 ? null : strings[index - 1];
+        }
+
+        private Boolean readBoolean() {
+            return switch (buffer.get()) {
+                case 0 -> null;
+                case 1 -> Boolean.FALSE;
+                case 2 -> Boolean.TRUE;
+                default -> throw new IllegalArgumentException("Malformed boolean");
+            };
+        }
+
+        private <E extends Enum<E>> E readEnum(E[] values) {
+            int ordinal = readVarInt();
+            return ordinal == 0 ? null : values[ordinal - 1];
+        }
+
+        /**
+         * Reads a count of elements, each of which takes at least one byte, so that a corrupt count can't cause a huge
+         * allocation.
+         */
+        private int readCount() {
+            int count = readVarInt();
+            if (count > buffer.remaining()) {
+                throw new IllegalArgumentException("Count " + count + " exceeds the remaining data");
+            }
+            return count;
+        }
+
+        /**
+         * Reads a count of elements plus one, where zero stands for no elements at all.
+         */
+        private int readOptionalCount() {
+            int header = readVarInt();
+            if (header - 1 > buffer.remaining()) {
+                throw new IllegalArgumentException("Count " + (header - 1) + " exceeds the remaining data");
+            }
+            return header;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    if (value < 0) {
+                        throw new IllegalArgumentException("Negative varint");
+                    }
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.github.jimschubert.docker.parser;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent cache of parsed Dockerfiles, stored as one file per Dockerfile in a directory.
+ * <p>
+ * Entries are keyed by the SHA-256 hash of the Dockerfile's contents, whether the parser expands variables and, if it
+ * does, its build arguments, and hold the instructions, including their source spans, in a compact binary encoding.
+ * Entries are read through a memory mapping and checked against a format version, the content hash and a CRC32
+ * checksum; an entry that is corrupt or was written by an incompatible version is ignored, and the Dockerfile is parsed
+ * again and its entry rewritten.
+ * <p>
+ * Entries are written to a temporary file and then renamed into place, so that other threads and processes sharing the
+ * directory never observe a partially written entry. Writing is best-effort: a failure to write an entry never fails
+ * the parse. Instructions read from the cache are always fully decoded, regardless of the parser's lazy argument
+ * option.
+ */
+public class DiskParseCache {
+    private static final byte[] MAGIC = {'D', 'P', 'A', 'C'};
+    private static final int DIGEST_LENGTH = 32;
+    // magic, format version, content digest, options, payload length, payload CRC32
+    private static final int HEADER_LENGTH = MAGIC.length + 4 + DIGEST_LENGTH + 1 + 4 + 4;
+    private static final String SUFFIX = ".ast";
+
+    private final Path directory;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+
+    /**
+     * Creates a new instance of DiskParseCache.
+     *
+     * @param directory The directory to keep entries in. It's created if it doesn't exist.
+     * @throws IOException If the directory can't be created.
+     */
+    public DiskParseCache(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    /**
+     * Parses a Dockerfile, or reads the instructions of an earlier parse of the same contents.
+     *
+     * @param parser      The parser to use on a miss. Whether it expands variables, and with which build arguments, is
+     *                    part of the cache key.
+     * @param inputStream The input stream to read the Dockerfile from.
+     * @return An unmodifiable list of the parsed instructions.
+     * @throws IOException If an I/O error occurs while reading the Dockerfile.
+     * @throws ParserError If an error occurs while parsing the Dockerfile. Failures aren't cached.
+     */
+    public List<DockerInstruction> parseDockerfile(DockerfileParser parser, InputStream inputStream) throws IOException, ParserError {
+        return parseDockerfile(parser, inputStream.readAllBytes());
+    }
+
+    /**
+     * Parses a Dockerfile, or reads the instructions of an earlier parse of the same contents.
+     *
+     * @param parser  The parser to use on a miss. Whether it expands variables, and with which build arguments, is part
+     *                of the cache key.
+     * @param content The contents of the Dockerfile.
+     * @return An unmodifiable list of the parsed instructions.
+     * @throws IOException If an I/O error occurs while reading the Dockerfile.
+     * @throws ParserError If an error occurs while parsing the Dockerfile. Failures aren't cached.
+     */
+    public List<DockerInstruction> parseDockerfile(DockerfileParser parser, byte[] content) throws IOException, ParserError {
+        byte[] digest = digest(content, parser.isExpandVariables() ? parser.getBuildArgs() : Map.of());
+        byte options = (byte) (parser.isExpandVariables() ? 1 : 0);
+        Path entry = directory.resolve(HexFormat.of().formatHex(digest) + "-" + options + SUFFIX);
+
+        List<DockerInstruction> cached = read(entry, digest, options);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+
+        List<DockerInstruction> instructions = List.copyOf(parser.parseDockerfile(new ByteArrayInputStream(content)));
+        write(entry, digest, options, instructions);
+        return instructions;
+    }
+
+    /**
+     * @return The directory entries are kept in.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of lookups which had to parse, including those which found an invalid entry.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of entries found to be corrupt or written by an incompatible version.
+     */
+    public long getInvalidCount() {
+        return invalid.get();
+    }
+
+    private List<DockerInstruction> read(Path entry, byte[] digest, byte options) {
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid entry size " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || buffer.getInt() != BinaryAstCodec.FORMAT_VERSION) {
+                throw new IOException("Unsupported entry format");
+            }
+            byte[] entryDigest = new byte[DIGEST_LENGTH];
+            buffer.get(entryDigest);
+            if (!Arrays.equals(entryDigest, digest) || buffer.get() != options) {
+                throw new IOException("Entry doesn't match its key");
+            }
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length != size - HEADER_LENGTH) {
+                throw new IOException("Truncated entry");
+            }
+            ByteBuffer payload = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("Entry checksum mismatch");
+            }
+            return List.copyOf(BinaryAstCodec.decode(payload));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            invalid.incrementAndGet();
+            return null;
+        }
+    }
+
+    private void write(Path entry, byte[] digest, byte options, List<DockerInstruction> instructions) {
+        Path temp = null;
+        try {
+            byte[] payload = BinaryAstCodec.encode(instructions);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH)
+                    .put(MAGIC)
+                    .putInt(BinaryAstCodec.FORMAT_VERSION)
+                    .put(digest)
+                    .put(options)
+                    .putInt(payload.length)
+                    .putInt((int) crc.getValue())
+                    .flip();
+
+            temp = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer body = ByteBuffer.wrap(payload);
+                while (header.hasRemaining() || body.hasRemaining()) {
+                    channel.write(new ByteBuffer[]{header, body});
+                }
+            }
+            try {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            // caching is best-effort; the parse itself succeeded
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // nothing more can be done
+                }
+            }
+        }
+    }
+
+    private static byte[] digest(byte[] content, Map<String, String> buildArgs) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content);
+            if (!buildArgs.isEmpty()) {
+                // sorted so that the key doesn't depend on the iteration order of the map
+                for (Map.Entry<String, String> entry : new TreeMap<>(buildArgs).entrySet()) {
+                    digest.update((byte) 0);
+                    digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                    digest.update(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,609 @@
+package com.github.jimschubert.docker.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hand-written lexer for the logical lines of a Dockerfile.
+ * <p>
+ * Every method makes a single left-to-right pass over its input and never compiles a regular expression. The
+ * tokenization rules intentionally match the patterns {@link DockerfileParser} used historically, so the resulting
+ * instructions are unchanged.
+ */
+final class DockerfileLexer {
+    /**
+     * A {@code --name[=value]} flag found in an instruction's arguments.
+     *
+     * @param name  The flag name, without the leading dashes.
+     * @param value The flag value, or an empty string if none was provided.
+     */
+    record Flag(String name, String value) {
+    }
+
+    /**
+     * The flags extracted from an instruction's arguments.
+     *
+     * @param flags     The flags, in the order they were found.
+     * @param remainder The trimmed argument text left once the flags are removed.
+     */
+    record FlagScan(List<Flag> flags, String remainder) {
+    }
+
+    /**
+     * A heredoc started on the first line of an instruction.
+     *
+     * @param name           The name which ends the body, with quotes removed.
+     * @param chomp          Whether leading tabs are removed from the body and the line which ends it.
+     * @param expand         Whether the name is unquoted, so that variables in the body are expanded.
+     * @param fileDescriptor The file descriptor given before {@code <<}, or 0 if there is none.
+     */
+    record HeredocToken(String name, boolean chomp, boolean expand, int fileDescriptor) {
+    }
+
+    /**
+     * A key and value pair found in the arguments of ENV, ARG or LABEL.
+     *
+     * @param key       The key.
+     * @param separator The character separating the key and value, or {@code 0} if there was no value.
+     * @param value     The raw value, or {@code null} if there was no value.
+     */
+    record KeyValueToken(String key, char separator, String value) {
+    }
+
+    private DockerfileLexer() {
+    }
+
+    /**
+     * Equivalent to the {@code \s} character class.
+     */
+    static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Equivalent to the {@code \w} character class.
+     */
+    static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * The characters which terminate {@code .} in a regular expression.
+     */
+    static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * Returns the index of the first non-whitespace character at or after {@code from}.
+     */
+    static int skipWhitespace(CharSequence s, int from) {
+        int i = from;
+        while (i < s.length() && isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the index of the first whitespace character at or after {@code from}.
+     */
+    static int skipNonWhitespace(CharSequence s, int from) {
+        int i = from;
+        while (i < s.length() && !isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Splits a string on runs of whitespace, following the semantics of {@code s.split("\\s+")}.
+     *
+     * @param s The string to split.
+     * @return The tokens.
+     */
+    static List<String> splitWhitespace(String s) {
+        List<String> tokens = new ArrayList<>();
+        int len = s.length();
+        int start = 0;
+        boolean matched = false;
+        int i = 0;
+        while (i < len) {
+            if (isWhitespace(s.charAt(i))) {
+                int end = skipWhitespace(s, i);
+                tokens.add(s.substring(start, i));
+                matched = true;
+                start = end;
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        if (!matched) {
+            tokens.add(s);
+            return tokens;
+        }
+        tokens.add(s.substring(start));
+        removeTrailingEmpty(tokens);
+        return tokens;
+    }
+
+    /**
+     * Splits a string on commas, trimming whitespace around each comma, following the semantics of
+     * {@code s.split("\\s*,\\s*")} for an already trimmed string.
+     *
+     * @param s The string to split.
+     * @return The tokens.
+     */
+    static List<String> splitCommas(String s) {
+        List<String> tokens = new ArrayList<>();
+        int start = 0;
+        int comma;
+        while ((comma = s.indexOf(',', start)) >= 0) {
+            tokens.add(trimWhitespace(s, start, comma));
+            start = comma + 1;
+        }
+        if (start == 0) {
+            tokens.add(s);
+            return tokens;
+        }
+        tokens.add(trimWhitespace(s, start, s.length()));
+        removeTrailingEmpty(tokens);
+        return tokens;
+    }
+
+    private static String trimWhitespace(String s, int start, int end) {
+        while (start < end && isWhitespace(s.charAt(start))) {
+            start++;
+        }
+        while (end > start && isWhitespace(s.charAt(end - 1))) {
+            end--;
+        }
+        return s.substring(start, end);
+    }
+
+    private static void removeTrailingEmpty(List<String> tokens) {
+        int size = tokens.size();
+        while (size > 0 && tokens.get(size - 1).isEmpty()) {
+            tokens.remove(--size);
+        }
+    }
+
+    /**
+     * Removes a single leading and a single trailing double quote, if present.
+     */
+    static String stripDoubleQuotes(String s) {
+        int start = !s.isEmpty() && s.charAt(0) == '"' ? 1 : 0;
+        int end = s.length() > start && s.charAt(s.length() - 1) == '"' ? s.length() - 1 : s.length();
+        return s.substring(start, end);
+    }
+
+    /**
+     * Extracts every {@code --name[=value]} flag with one of the given names from the arguments.
+     * <p>
+     * A flag is recognized wherever {@code --name} occurs, and its value runs until the next whitespace.
+     *
+     * @param args  The instruction arguments.
+     * @param names The recognized flag names, without the leading dashes.
+     * @return The flags and the remaining argument text.
+     */
+    static FlagScan scanFlags(String args, String... names) {
+        List<Flag> flags = new ArrayList<>();
+        return new FlagScan(flags, scanFlags(args, flags, names));
+    }
+
+    /**
+     * Removes every {@code --name[=value]} flag with one of the given names from the arguments, as
+     * {@link #scanFlags(String, String...)} does, without collecting the flags.
+     *
+     * @param args  The instruction arguments.
+     * @param names The recognized flag names, without the leading dashes.
+     * @return The remaining argument text.
+     */
+    static String removeFlags(String args, String... names) {
+        return scanFlags(args, null, names);
+    }
+
+    private static String scanFlags(String args, List<Flag> flags, String... names) {
+        StringBuilder remainder = null;
+        int len = args.length();
+        int copied = 0;
+        int i = 0;
+        while (i + 1 < len) {
+            if (args.charAt(i) == '-' && args.charAt(i + 1) == '-') {
+                String name = matchName(args, i + 2, names);
+                if (name != null) {
+                    int p = i + 2 + name.length();
+                    if (p < len && args.charAt(p) == '=') {
+                        p++;
+                    }
+                    int valueEnd = skipNonWhitespace(args, p);
+                    if (flags != null) {
+                        flags.add(new Flag(name, args.substring(p, valueEnd)));
+                    }
+                    if (remainder == null) {
+                        remainder = new StringBuilder(len);
+                    }
+                    remainder.append(args, copied, i);
+                    copied = valueEnd;
+                    i = valueEnd;
+                    continue;
+                }
+            }
+            i++;
+        }
+        if (remainder == null) {
+            return args.trim();
+        }
+        remainder.append(args, copied, len);
+        return remainder.toString().trim();
+    }
+
+    private static String matchName(String s, int from, String... names) {
+        for (String name : names) {
+            if (s.startsWith(name, from)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Extracts the {@code --name=value} flags with one of the given names which lead the arguments.
+     * <p>
+     * As in BuildKit, the flags end at the first word which doesn't start with {@code --}, and quotes and backslashes
+     * within a flag are removed, so a value may hold whitespace. Unlike BuildKit, a flag with another name, or a word
+     * which is only {@code --}, also ends the flags and is kept in the remainder, so the remainder never reads as flags.
+     *
+     * @param args  The instruction arguments.
+     * @param names The recognized flag names, without the leading dashes.
+     * @return The flags and the argument text following them, which is kept as written.
+     */
+    static FlagScan scanLeadingFlags(String args, String... names) {
+        List<Flag> flags = new ArrayList<>();
+        int len = args.length();
+        int i = skipWhitespace(args, 0);
+        while (i + 1 < len && args.charAt(i) == '-' && args.charAt(i + 1) == '-') {
+            String name = matchName(args, i + 2, names);
+            int p = i + 2 + (name != null ? name.length() : 0);
+            if (name == null || p == len || args.charAt(p) != '=') {
+                break;
+            }
+            StringBuilder value = new StringBuilder();
+            char quote = 0;
+            for (p++; p < len && (quote != 0 || !isWhitespace(args.charAt(p))); p++) {
+                char c = args.charAt(p);
+                if (c == '\\' && quote != '\'') {
+                    if (p + 1 < len) {
+                        value.append(args.charAt(++p));
+                    }
+                } else if (quote == 0 && (c == '"' || c == '\'')) {
+                    quote = c;
+                } else if (c == quote) {
+                    quote = 0;
+                } else {
+                    value.append(c);
+                }
+            }
+            flags.add(new Flag(name, value.toString()));
+            i = skipWhitespace(args, p);
+        }
+        return new FlagScan(flags, i == 0 ? args : args.substring(i));
+    }
+
+    /**
+     * Splits a line of comma-separated values, following the rules of RFC 4180: a field which starts with a double
+     * quote runs until the next lone double quote, and holds a double quote for each pair of them.
+     *
+     * @param s The line to split.
+     * @return The fields, which is a single empty field for an empty line.
+     */
+    static List<String> splitCsv(String s) {
+        List<String> fields = new ArrayList<>(4);
+        int len = s.length();
+        int i = 0;
+        while (true) {
+            if (i < len && s.charAt(i) == '"') {
+                StringBuilder field = new StringBuilder();
+                for (i++; i < len; i++) {
+                    char c = s.charAt(i);
+                    if (c == '"') {
+                        if (i + 1 < len && s.charAt(i + 1) == '"') {
+                            i++;
+                        } else {
+                            i++;
+                            break;
+                        }
+                    }
+                    field.append(c);
+                }
+                // any text between the closing quote and the next comma is kept as written
+                int comma = s.indexOf(',', i);
+                int end = comma < 0 ? len : comma;
+                field.append(s, i, end);
+                fields.add(field.toString());
+                i = end;
+            } else {
+                int comma = s.indexOf(',', i);
+                int end = comma < 0 ? len : comma;
+                fields.add(s.substring(i, end));
+                i = end;
+            }
+            if (i == len) {
+                return fields;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Finds the value of the first {@code prefix} occurrence which is followed by at least one non-whitespace
+     * character. The value runs until the next whitespace.
+     *
+     * @param s      The string to search.
+     * @param prefix The literal prefix, such as {@code --platform=}.
+     * @return The index of the prefix, or -1 if not found.
+     */
+    static int indexOfValued(String s, String prefix) {
+        int idx = s.indexOf(prefix);
+        while (idx >= 0) {
+            int valueStart = idx + prefix.length();
+            if (valueStart < s.length() && !isWhitespace(s.charAt(valueStart))) {
+                return idx;
+            }
+            idx = s.indexOf(prefix, idx + 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first whitespace-delimited {@code word}, returning the start of the whitespace preceding it and the
+     * start of the text following it, following the semantics of {@code s.split("\\s+WORD\\s+", 2)}.
+     *
+     * @param s    The string to search.
+     * @param word The separating word, which is matched case-sensitively.
+     * @return A two element array of the separator start and the following text start, or {@code null}.
+     */
+    static int[] findSeparatorWord(String s, String word) {
+        int len = s.length();
+        int i = 0;
+        while (i < len) {
+            if (isWhitespace(s.charAt(i))) {
+                int wordStart = skipWhitespace(s, i);
+                int wordEnd = wordStart + word.length();
+                if (s.startsWith(word, wordStart) && wordEnd < len && isWhitespace(s.charAt(wordEnd))) {
+                    return new int[]{i, skipWhitespace(s, wordEnd)};
+                }
+                i = wordStart;
+            } else {
+                i++;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether an instruction may start heredocs, which only RUN, COPY and ADD may.
+     *
+     * @param s          The instruction.
+     * @param keywordEnd The index at which the instruction's keyword ends.
+     * @return {@code true} if the instruction may start heredocs.
+     */
+    static boolean allowsHeredocs(CharSequence s, int keywordEnd) {
+        return keywordIs(s, keywordEnd, "RUN") || keywordIs(s, keywordEnd, "COPY") || keywordIs(s, keywordEnd, "ADD");
+    }
+
+    private static boolean keywordIs(CharSequence s, int keywordEnd, String keyword) {
+        if (keywordEnd != keyword.length()) {
+            return false;
+        }
+        for (int i = 0; i < keywordEnd; i++) {
+            if (Character.toUpperCase(s.charAt(i)) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the heredocs started on the first line of an instruction, in order.
+     * <p>
+     * As in BuildKit, the line is split into words, keeping quotes, and a heredoc is a word of the form
+     * {@code [n]<<[-]name}. Any quotes around the name are removed, and quoting any part of it disables expansion of
+     * the body. A {@code <<<} here-string isn't a heredoc.
+     *
+     * @param s    The text to search.
+     * @param from The index at which to start.
+     * @return The heredocs, which is empty if there are none.
+     */
+    static List<HeredocToken> findHeredocs(CharSequence s, int from) {
+        List<HeredocToken> heredocs = List.of();
+        int len = s.length();
+        int i = skipWhitespace(s, from);
+        while (i < len) {
+            int wordStart = i;
+            char quote = 0;
+            while (i < len && (quote != 0 || !isWhitespace(s.charAt(i)))) {
+                char c = s.charAt(i);
+                if (c == '\\' && quote != '\'' && i + 1 < len) {
+                    i++;
+                } else if (quote == 0 && (c == '"' || c == '\'')) {
+                    quote = c;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+                i++;
+            }
+            HeredocToken heredoc = matchHeredoc(s, wordStart, i);
+            if (heredoc != null) {
+                if (heredocs.isEmpty()) {
+                    heredocs = new ArrayList<>(2);
+                }
+                heredocs.add(heredoc);
+            }
+            i = skipWhitespace(s, i);
+        }
+        return heredocs;
+    }
+
+    /**
+     * Matches a single word against {@code [n]<<[-]name}.
+     */
+    private static HeredocToken matchHeredoc(CharSequence s, int start, int end) {
+        int i = start;
+        int fileDescriptor = 0;
+        while (i < end && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+            fileDescriptor = fileDescriptor * 10 + (s.charAt(i) - '0');
+            i++;
+        }
+        if (i + 2 > end || s.charAt(i) != '<' || s.charAt(i + 1) != '<') {
+            return null;
+        }
+        i += 2;
+        boolean chomp = i < end && s.charAt(i) == '-';
+        if (chomp) {
+            i++;
+        }
+        StringBuilder name = new StringBuilder(end - i);
+        boolean expand = true;
+        char quote = 0;
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '<') {
+                return null;
+            }
+            if (c == '\\' && quote != '\'' && i + 1 < end) {
+                expand = false;
+                name.append(s.charAt(++i));
+            } else if (quote == 0 && (c == '"' || c == '\'')) {
+                expand = false;
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            } else {
+                name.append(c);
+            }
+        }
+        return name.isEmpty() ? null : new HeredocToken(name.toString(), chomp, expand, fileDescriptor);
+    }
+
+    /**
+     * Scans ENV arguments. Each key is a word followed by {@code =} or whitespace, and the value runs until the end
+     * of the line.
+     *
+     * @param args The instruction arguments.
+     * @return The key and value tokens.
+     */
+    static List<KeyValueToken> scanEnvPairs(String args) {
+        List<KeyValueToken> tokens = new ArrayList<>();
+        int len = args.length();
+        int i = 0;
+        while (i < len) {
+            if (!isWordChar(args.charAt(i))) {
+                i++;
+                continue;
+            }
+            int keyEnd = skipWord(args, i);
+            if (keyEnd < len && (args.charAt(keyEnd) == '=' || isWhitespace(args.charAt(keyEnd)))) {
+                int valueEnd = keyEnd + 1;
+                while (valueEnd < len && !isLineTerminator(args.charAt(valueEnd))) {
+                    valueEnd++;
+                }
+                tokens.add(new KeyValueToken(args.substring(i, keyEnd), args.charAt(keyEnd), args.substring(keyEnd + 1, valueEnd)));
+                i = valueEnd;
+            } else {
+                i = keyEnd;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Scans ARG arguments. Each key is a word, optionally followed by {@code =} and a non-whitespace value.
+     *
+     * @param args The instruction arguments.
+     * @return The key and value tokens.
+     */
+    static List<KeyValueToken> scanArgPairs(String args) {
+        List<KeyValueToken> tokens = new ArrayList<>();
+        int len = args.length();
+        int i = 0;
+        while (i < len) {
+            if (!isWordChar(args.charAt(i))) {
+                i++;
+                continue;
+            }
+            int keyEnd = skipWord(args, i);
+            if (keyEnd + 1 < len && args.charAt(keyEnd) == '=' && !isWhitespace(args.charAt(keyEnd + 1))) {
+                int valueEnd = skipNonWhitespace(args, keyEnd + 1);
+                tokens.add(new KeyValueToken(args.substring(i, keyEnd), '=', args.substring(keyEnd + 1, valueEnd)));
+                i = valueEnd;
+            } else {
+                tokens.add(new KeyValueToken(args.substring(i, keyEnd), (char) 0, null));
+                i = keyEnd;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Scans LABEL arguments. Each key is the shortest non-whitespace prefix followed by {@code =} or whitespace and a
+     * value, which may be double-quoted, single-quoted or a non-whitespace run.
+     *
+     * @param args The instruction arguments.
+     * @return The key and value tokens, with values still quoted.
+     */
+    static List<KeyValueToken> scanLabelPairs(String args) {
+        List<KeyValueToken> tokens = new ArrayList<>();
+        int len = args.length();
+        int i = 0;
+        outer:
+        while (i < len) {
+            if (isWhitespace(args.charAt(i))) {
+                i++;
+                continue;
+            }
+            int runEnd = skipNonWhitespace(args, i);
+            for (int k = i + 1; k <= runEnd && k < len; k++) {
+                char separator = args.charAt(k);
+                if (separator != '=' && !isWhitespace(separator)) {
+                    continue;
+                }
+                int valueEnd = matchLabelValue(args, k + 1);
+                if (valueEnd >= 0) {
+                    tokens.add(new KeyValueToken(args.substring(i, k), separator, args.substring(k + 1, valueEnd)));
+                    i = valueEnd;
+                    continue outer;
+                }
+            }
+            // no key starting within this run can be followed by a value
+            i = runEnd;
+        }
+        return tokens;
+    }
+
+    private static int matchLabelValue(String s, int from) {
+        if (from >= s.length()) {
+            return -1;
+        }
+        char c = s.charAt(from);
+        if (c == '"' || c == '\'') {
+            int close = s.indexOf(c, from + 1);
+            if (close >= 0) {
+                return close + 1;
+            }
+        }
+        if (isWhitespace(c)) {
+            return -1;
+        }
+        return skipNonWhitespace(s, from);
+    }
+
+    private static int skipWord(CharSequence s, int from) {
+        int i = from;
+        while (i < s.length() && isWordChar(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -5,19 +5,25 @@ import com.github.jimschubert.docker.printer.ASTPrinter;
 import com.github.jimschubert.docker.printer.DockerfilePrinter;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * Parses a Dockerfile into a list of DockerInstruction objects.
+ * <p>
+ * A parser only holds immutable configuration. State such as the escape directive and declared environment variables
+ * lives in a context created for each parse, so a single instance can be reused and shared between threads.
  */
 public class DockerfileParser {
 
-    private final Map<String, String> envVariables = new HashMap<>();
-    private final boolean expandVariables;
-    private char escapeChar = '\\'; // Default escape character
+    private static final String[] ADD_FLAGS = {"keep-git-dir", "checksum", "chown", "chmod", "link", "exclude"};
+    private static final String[] COPY_FLAGS = {"from", "chown", "chmod", "link", "parents", "exclude"};
+    private static final String[] RUN_FLAGS = {"mount", "network", "security"};
 
+    private final boolean expandVariables;
+    private final boolean lazyArguments;
+    private final Map<String, String> buildArgs;
 
     /**
      * Creates a new instance of DockerfileParser.
@@ -32,7 +38,51 @@ public class DockerfileParser {
      * @param expandVariables Whether to expand environment variables in the Dockerfile.
      */
     public DockerfileParser(boolean expandVariables) {
+        this(expandVariables, false);
+    }
+
+    /**
+     * Creates a new instance of DockerfileParser.
+     * <p>
+     * A lazy parser defers decoding the fields of RUN, COPY and ADD instructions until one of their getters is first
+     * called, which avoids most allocation for consumers that only look at some instructions. Malformed arguments are
+     * still reported while parsing, and lazily decoded instructions are indistinguishable from eagerly decoded ones.
+     *
+     * @param expandVariables Whether to expand environment variables in the Dockerfile.
+     * @param lazyArguments   Whether to defer decoding instruction arguments until they are accessed.
+     */
+    public DockerfileParser(boolean expandVariables, boolean lazyArguments) {
+        this(expandVariables, lazyArguments, Map.of());
+    }
+
+    /**
+     * Creates a new instance of DockerfileParser.
+     * <p>
+     * Variables are expanded following BuildKit's rules: global ARGs before the first FROM are visible to FROM, and
+     * each stage sees its own ARG and ENV variables, as described by {@link VariableScope}. See
+     * {@link ExpansionTemplate} for the supported syntax. Variables are expanded in ARG defaults, ENV values and the
+     * platform, image and digest of FROM.
+     *
+     * @param expandVariables Whether to expand variables in the Dockerfile.
+     * @param lazyArguments   Whether to defer decoding instruction arguments until they are accessed.
+     * @param buildArgs       The build arguments, which override the defaults of ARG instructions when expanding.
+     */
+    public DockerfileParser(boolean expandVariables, boolean lazyArguments, Map<String, String> buildArgs) {
         this.expandVariables = expandVariables;
+        this.lazyArguments = lazyArguments;
+        this.buildArgs = Map.copyOf(buildArgs);
+    }
+
+    boolean isExpandVariables() {
+        return expandVariables;
+    }
+
+    boolean isLazyArguments() {
+        return lazyArguments;
+    }
+
+    Map<String, String> getBuildArgs() {
+        return buildArgs;
     }
 
     /**
@@ -45,119 +95,240 @@ public class DockerfileParser {
      */
     public List<DockerInstruction> parseDockerfile(InputStream inputStream) throws IOException, ParserError {
         List<DockerInstruction> instructions = new ArrayList<>();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-
-        String line;
-        StringBuilder currentCommand = new StringBuilder();
-        StringBuilder currentComment = new StringBuilder();
-        boolean inHeredoc = false;
-        String heredocDelimiter = null;
-
-        while ((line = reader.readLine()) != null) {
-            if (!inHeredoc) {
-                // heredocs need to retain leading whitespace
-                line = line.trim();
-            }
-            if (line.isEmpty()) {
-                if (!currentComment.isEmpty()) {
-                    instructions.add(new CommentInstruction(currentComment.toString().trim()));
-                    currentComment = new StringBuilder();
-                }
-                continue;
-            }
-
-            if (inHeredoc) {
-                currentCommand.append("\n").append(line);
-                if (line.equals(heredocDelimiter)) {
-                    inHeredoc = false;
-                    instructions.add(parseInstruction(currentCommand.toString().trim()));
-                    currentCommand = new StringBuilder();
-                }
-                continue;
-            }
-
-            if (line.startsWith("# syntax") || line.startsWith("# escape") || line.startsWith("# check")) {
-                if (!currentComment.isEmpty()) {
-                    instructions.add(new CommentInstruction(currentComment.toString().trim()));
-                    currentComment = new StringBuilder();
-                }
-                if (line.startsWith("# escape")) {
-                    escapeChar = line.charAt(line.length() - 1);
-                }
-                instructions.add(new DirectiveInstruction(line.substring(1).trim()));
-                continue;
-            } else if (line.startsWith("#")) {
-                if (!currentComment.isEmpty()) {
-                    currentComment.append("\n");
-                }
-                currentComment.append(line.substring(1).trim());
-                continue;
-            }
-
-            if (!currentComment.isEmpty()) {
-                instructions.add(new CommentInstruction(currentComment.toString().trim()));
-                currentComment = new StringBuilder();
-            }
+        InstructionIterator iterator = new InstructionIterator(this, new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        DockerInstruction instruction;
+        while ((instruction = iterator.nextInstruction()) != null) {
+            instructions.add(instruction);
+        }
+        return instructions;
+    }
 
-            if (line.endsWith(String.valueOf(escapeChar))) {
-                currentCommand.append(line, 0, line.length() - 1).append(" ");
-                continue;
-            } else {
-                currentCommand.append(line);
-            }
+    /**
+     * Parses a Dockerfile, indexing the instructions by kind and by stage as they're parsed.
+     *
+     * @param inputStream The input stream to read the Dockerfile from.
+     * @return The indexed instructions.
+     * @throws IOException    If an I/O error occurs.
+     * @throws ParserError If an error occurs while parsing the Dockerfile.
+     */
+    public IndexedDockerfile parseIndexed(InputStream inputStream) throws IOException, ParserError {
+        IndexedDockerfile.Builder builder = new IndexedDockerfile.Builder();
+        InstructionIterator iterator = new InstructionIterator(this, new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        DockerInstruction instruction;
+        while ((instruction = iterator.nextInstruction()) != null) {
+            builder.add(instruction);
+        }
+        return builder.build();
+    }
 
-            Pattern heredocPattern = Pattern.compile("<<([A-Z]+)");
-            Matcher heredocMatcher = heredocPattern.matcher(line);
-            if (heredocMatcher.find()) {
-                inHeredoc = true;
-                heredocDelimiter = heredocMatcher.group(1);
-                continue;
-            }
+    /**
+     * Lazily parses a Dockerfile, reading from the input stream only as instructions are requested.
+     * <p>
+     * The caller should close the returned iterator, which also closes the input stream.
+     *
+     * @param inputStream The input stream to read the Dockerfile from.
+     * @return An iterator over the parsed instructions.
+     */
+    public InstructionIterator iterateDockerfile(InputStream inputStream) {
+        return new InstructionIterator(this, new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
 
-            instructions.add(parseInstruction(currentCommand.toString().trim()));
-            currentCommand = new StringBuilder();
-        }
+    /**
+     * Lazily parses a Dockerfile into a stream of DockerInstruction objects.
+     * <p>
+     * Reading stops as soon as the stream stops pulling instructions, for example after {@code findFirst()}. Closing
+     * the stream closes the input stream, so use it within a try-with-resources block.
+     *
+     * @param inputStream The input stream to read the Dockerfile from.
+     * @return A stream of parsed instructions.
+     */
+    public Stream<DockerInstruction> streamDockerfile(InputStream inputStream) {
+        return iterateDockerfile(inputStream).stream();
+    }
 
-        if (!currentComment.isEmpty()) {
-            instructions.add(new CommentInstruction(currentComment.toString().trim()));
-        }
+    /**
+     * Parses the text of a Dockerfile, keeping the text so that it can later be reparsed incrementally with
+     * {@link #reparse(ParsedDockerfile, TextEdit)}.
+     *
+     * @param text The text of the Dockerfile.
+     * @return The parsed Dockerfile.
+     * @throws ParserError If an error occurs while parsing the Dockerfile.
+     */
+    public ParsedDockerfile parseText(String text) throws ParserError {
+        return Reparser.parse(this, text);
+    }
 
-        return instructions;
+    /**
+     * Applies an edit to a previously parsed Dockerfile, reparsing only the logical lines the edit affects.
+     * <p>
+     * Instructions before and after the affected region are reused rather than parsed again: they're the same objects
+     * as in {@code previous}, which is left unchanged and can still be printed. A reused instruction's own source span
+     * stays in the text it was parsed from, so get its position in the new text from
+     * {@link ParsedDockerfile#getSourceSpan(int)}.
+     *
+     * @param previous The previous parse, which must have been made with a parser of the same configuration.
+     * @param edit     The edit to apply.
+     * @return The parsed Dockerfile, whose {@link ParsedDockerfile#getChangedIndices()} are the new instructions.
+     * @throws ParserError If an error occurs while parsing the Dockerfile.
+     */
+    public ParsedDockerfile reparse(ParsedDockerfile previous, TextEdit edit) throws ParserError {
+        return Reparser.reparse(this, previous, edit);
     }
 
-    private DockerInstruction parseInstruction(String line) throws ParserError {
-        String[] parts = line.split("\\s+", 2);
-        String command = parts[0].toUpperCase();
-        String args = parts.length > 1 ? parts[1] : "";
+    DockerInstruction parseInstruction(String line, ParseContext context) throws ParserError {
+        int keywordEnd = DockerfileLexer.skipNonWhitespace(line, 0);
+        String command = line.substring(0, keywordEnd).toUpperCase();
+        int argsStart = DockerfileLexer.skipWhitespace(line, keywordEnd);
+        // the arguments of RUN, COPY and ADD are their first line, and the lines of any heredocs follow it
+        int newline = DockerfileLexer.allowsHeredocs(line, keywordEnd) ? line.indexOf('\n', argsStart) : -1;
+        int bodies = newline < 0 ? line.length() : newline + 1;
+        int argsEnd = newline < 0 ? line.length() : newline;
+        while (newline >= 0 && argsEnd > argsStart && DockerfileLexer.isWhitespace(line.charAt(argsEnd - 1))) {
+            argsEnd--;
+        }
+        String args = line.substring(argsStart, argsEnd);
 
         return switch (command) {
-            case "ARG" -> parseArg(args);
-            case "ADD" -> parseAdd(args);
+            case "ARG" -> parseArg(args, context);
+            case "ADD" -> lazyArguments && hasSourceAndDestination(DockerfileLexer.removeFlags(args, ADD_FLAGS))
+                    ? AddInstruction.deferred(() -> decode(() -> parseAdd(args, readHeredocs(args, line, bodies))))
+                    : parseAdd(args, readHeredocs(args, line, bodies));
             case "CMD" -> parseCmd(args);
-            case "COPY" -> parseCopy(args);
+            case "COPY" -> lazyArguments && hasSourceAndDestination(DockerfileLexer.removeFlags(args, COPY_FLAGS))
+                    ? CopyInstruction.deferred(() -> decode(() -> parseCopy(args, readHeredocs(args, line, bodies))))
+                    : parseCopy(args, readHeredocs(args, line, bodies));
             case "ENTRYPOINT" -> parseEntrypoint(args);
-            case "ENV" -> parseEnv(args);
+            case "ENV" -> parseEnv(args, context);
             case "EXPOSE" -> parseExpose(args);
-            case "FROM" -> parseFrom(args);
+            case "FROM" -> parseFrom(args, context);
             case "HEALTHCHECK" -> parseHealthCheck(args);
             case "LABEL" -> parseLabel(args);
             case "MAINTAINER" -> parseMaintainer(args);
-            case "ONBUILD" -> parseOnBuild(args);
-            case "RUN" -> parseRun(args);
+            case "ONBUILD" -> parseOnBuild(args, context);
+            case "RUN" -> lazyArguments
+                    ? RunInstruction.deferred(() -> parseRun(args, readHeredocs(args, line, bodies)))
+                    : parseRun(args, readHeredocs(args, line, bodies));
             case "SHELL" -> parseShell(args);
             case "STOPSIGNAL" -> parseStopSignal(args);
             case "USER" -> parseUser(args);
             case "VOLUME" -> parseVolume(args);
             case "WORKDIR" -> parseWorkDir(args);
-            default -> new DockerInstruction(command) {
-                @Override
-                public String toCanonicalForm() {
-                    return command + " " + args;
-                }
-            };
+            default -> new UnknownInstruction(command, args);
         };
     }
 
+    /**
+     * Checks, without decoding them, whether COPY or ADD arguments with their flags removed name at least one source and
+     * a destination. Decoding of arguments which fail this check isn't deferred, so that the error isn't either.
+     */
+    private static boolean hasSourceAndDestination(String args) {
+        if (args.startsWith("[")) {
+            if (args.length() < 2) {
+                return false;
+            }
+            // a second element exists if anything but commas and whitespace follows the first comma
+            String elements = args.substring(1, args.length() - 1).trim();
+            for (int i = elements.indexOf(',') + 1; i > 0 && i < elements.length(); i++) {
+                char c = elements.charAt(i);
+                if (c != ',' && !DockerfileLexer.isWhitespace(c)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        // the arguments are trimmed, so any whitespace separates two parts
+        for (int i = 0; i < args.length(); i++) {
+            if (DockerfileLexer.isWhitespace(args.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the bodies of the heredocs started in the arguments of a RUN, COPY or ADD instruction, in a single pass
+     * over the lines which follow them. A body is a view of the instruction's text unless leading tabs have to be
+     * removed from it, and a heredoc which isn't ended runs to the end of the text.
+     *
+     * @param args        The first line of the arguments.
+     * @param text        The text of the instruction.
+     * @param bodiesStart The index in {@code text} at which the line after the arguments starts.
+     * @return The heredocs.
+     */
+    private static List<Heredoc> readHeredocs(String args, String text, int bodiesStart) {
+        List<DockerfileLexer.HeredocToken> tokens = DockerfileLexer.findHeredocs(args, 0);
+        if (tokens.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Heredoc> heredocs = new ArrayList<>(tokens.size());
+        int len = text.length();
+        int i = bodiesStart;
+        for (DockerfileLexer.HeredocToken token : tokens) {
+            String name = token.name();
+            int bodyStart = i;
+            int bodyEnd = len;
+            boolean tabbed = false;
+            while (i < len) {
+                int lineStart = i;
+                int lineEnd = text.indexOf('\n', lineStart);
+                if (lineEnd < 0) {
+                    lineEnd = len;
+                }
+                int start = lineStart;
+                while (token.chomp() && start < lineEnd && text.charAt(start) == '\t') {
+                    start++;
+                }
+                i = lineEnd < len ? lineEnd + 1 : len;
+                if (lineEnd - start == name.length() && text.startsWith(name, start)) {
+                    bodyEnd = lineStart;
+                    break;
+                }
+                tabbed |= start > lineStart;
+            }
+            boolean terminated = bodyStart == bodyEnd || text.charAt(bodyEnd - 1) == '\n';
+            heredocs.add(!tabbed && terminated
+                    ? new Heredoc(name, text, bodyStart, bodyEnd, token.chomp(), token.expand(), token.fileDescriptor())
+                    : new Heredoc(name, heredocBody(text, bodyStart, bodyEnd, tabbed, terminated), token.chomp(), token.expand(), token.fileDescriptor()));
+        }
+        return heredocs;
+    }
+
+    /**
+     * Copies the lines of a heredoc's body, without their leading tabs if it has any, and ending with a newline. A body
+     * which needs neither is a view of the text instead.
+     */
+    private static String heredocBody(String text, int start, int end, boolean tabbed, boolean terminated) {
+        StringBuilder body = new StringBuilder(end - start + 1);
+        boolean lineStart = true;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (!(tabbed && lineStart && c == '\t')) {
+                body.append(c);
+                lineStart = c == '\n';
+            }
+        }
+        if (!terminated) {
+            body.append('\n');
+        }
+        return body.toString();
+    }
+
+    /**
+     * Runs a deferred decoder which has been checked not to fail.
+     */
+    private static <T> T decode(Decoder<T> decoder) {
+        try {
+            return decoder.decode();
+        } catch (ParserError e) {
+            throw new UncheckedParserError(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Decoder<T> {
+        T decode() throws ParserError;
+    }
+
     private ShellInstruction parseShell(String args) {
         List<String> commands = parseExecForm(args);
         return new ShellInstruction(commands);
@@ -175,9 +346,9 @@ public class DockerfileParser {
         String startPeriod = null;
         String retries = null;
 
-        String[] parts = args.split("\\s+", 2);
-        if (parts.length > 1) {
-            String[] options = parts[1].split("\\s+");
+        int typeEnd = DockerfileLexer.skipNonWhitespace(args, 0);
+        if (typeEnd < args.length()) {
+            List<String> options = DockerfileLexer.splitWhitespace(args.substring(DockerfileLexer.skipWhitespace(args, typeEnd)));
             for (String option : options) {
                 String[] optionParts = option.split("=", 2);
                 if (optionParts.length < 2) {
@@ -200,14 +371,16 @@ public class DockerfileParser {
         return new StopSignalInstruction(args);
     }
 
-    private OnBuildInstruction parseOnBuild(String args) throws ParserError {
-        DockerInstruction instruction = parseInstruction(args);
+    private OnBuildInstruction parseOnBuild(String args, ParseContext context) throws ParserError {
+        // the trigger runs in a later build, so anything it declares isn't visible to this one
+        DockerInstruction instruction = parseInstruction(args, expandVariables ? new ParseContext(context) : context);
 
-        if (instruction instanceof OnBuildInstruction) {
+        InstructionKind kind = instruction.getKind();
+        if (kind == InstructionKind.ONBUILD) {
             throw new ParserError("Chaining ONBUILD instructions using ONBUILD ONBUILD isn't allowed.");
         }
 
-        if (instruction instanceof FromInstruction || instruction instanceof MaintainerInstruction) {
+        if (kind == InstructionKind.FROM || kind == InstructionKind.MAINTAINER) {
             throw new ParserError("The ONBUILD instruction may not trigger FROM or MAINTAINER instructions.");
         }
         return new OnBuildInstruction(instruction);
@@ -229,7 +402,7 @@ public class DockerfileParser {
         return new ExposeInstruction(ports);
     }
 
-    private AddInstruction parseAdd(String args) throws ParserError {
+    private AddInstruction parseAdd(String args, List<Heredoc> heredocs) throws ParserError {
         List<String> sources = new ArrayList<>();
         String destination = null;
         Boolean keepGitDir = null;
@@ -239,14 +412,11 @@ public class DockerfileParser {
         Boolean link = null;
         List<String> exclude = new ArrayList<>();
 
-        Pattern optionPattern = Pattern.compile("--(keep-git-dir|checksum|chown|chmod|link|exclude)=?([^\\s]*)");
-        Matcher optionMatcher = optionPattern.matcher(args);
-
         // Extract options
-        while (optionMatcher.find()) {
-            String option = optionMatcher.group(1);
-            String value = optionMatcher.group(2);
-            switch (option) {
+        DockerfileLexer.FlagScan scan = DockerfileLexer.scanFlags(args, ADD_FLAGS);
+        for (DockerfileLexer.Flag flag : scan.flags()) {
+            String value = flag.value();
+            switch (flag.name()) {
                 case "keep-git-dir" -> keepGitDir = value.isEmpty() || Boolean.parseBoolean(value);
                 case "checksum" -> checksum = value;
                 case "chown" -> chown = value;
@@ -256,8 +426,8 @@ public class DockerfileParser {
             }
         }
 
-        // Remove options from args
-        args = args.replaceAll("--(keep-git-dir|checksum|chown|chmod|link|exclude)=?[^\\s]*", "").trim();
+        // Remaining args, with options removed
+        args = scan.remainder();
 
         // Check if args are in JSON array format
         if (args.startsWith("[")) {
@@ -268,18 +438,18 @@ public class DockerfileParser {
             destination = parts.remove(parts.size() - 1);
             sources.addAll(parts);
         } else {
-            String[] parts = args.split("\\s+");
-            if (parts.length < 2) {
+            List<String> parts = DockerfileLexer.splitWhitespace(args);
+            if (parts.size() < 2) {
                 throw new ParserError("ADD instruction requires at least one source and a destination");
             }
-            destination = parts[parts.length - 1];
-            sources.addAll(Arrays.asList(parts).subList(0, parts.length - 1));
+            destination = parts.remove(parts.size() - 1);
+            sources.addAll(parts);
         }
 
-        return new AddInstruction(sources, destination, keepGitDir, checksum, chown, chmod, link, exclude);
+        return new AddInstruction(sources, destination, keepGitDir, checksum, chown, chmod, link, exclude, heredocs);
     }
 
-    private CopyInstruction parseCopy(String args) throws ParserError {
+    private CopyInstruction parseCopy(String args, List<Heredoc> heredocs) throws ParserError {
         List<String> sources = new ArrayList<>();
         String destination = null;
         String from = null;
@@ -289,14 +459,11 @@ public class DockerfileParser {
         Boolean parents = null;
         List<String> exclude = new ArrayList<>();
 
-        Pattern optionPattern = Pattern.compile("--(from|chown|chmod|link|parents|exclude)=?([^\\s]*)");
-        Matcher optionMatcher = optionPattern.matcher(args);
-
         // Extract options
-        while (optionMatcher.find()) {
-            String option = optionMatcher.group(1);
-            String value = optionMatcher.group(2);
-            switch (option) {
+        DockerfileLexer.FlagScan scan = DockerfileLexer.scanFlags(args, COPY_FLAGS);
+        for (DockerfileLexer.Flag flag : scan.flags()) {
+            String value = flag.value();
+            switch (flag.name()) {
                 case "from" -> from = value;
                 case "chown" -> chown = value;
                 case "chmod" -> chmod = value;
@@ -306,8 +473,8 @@ public class DockerfileParser {
             }
         }
 
-        // Remove options from args
-        args = args.replaceAll("--(from|chown|chmod|link|parents|exclude)=?[^\\s]*", "").trim();
+        // Remaining args, with options removed
+        args = scan.remainder();
 
         // Check if args are in JSON array format
         if (args.startsWith("[")) {
@@ -318,15 +485,15 @@ public class DockerfileParser {
             destination = parts.remove(parts.size() - 1);
             sources.addAll(parts);
         } else {
-            String[] parts = args.split("\\s+");
-            if (parts.length < 2) {
+            List<String> parts = DockerfileLexer.splitWhitespace(args);
+            if (parts.size() < 2) {
                 throw new ParserError("COPY instruction requires at least one source and a destination");
             }
-            destination = parts[parts.length - 1];
-            sources.addAll(Arrays.asList(parts).subList(0, parts.length - 1));
+            destination = parts.remove(parts.size() - 1);
+            sources.addAll(parts);
         }
 
-        return new CopyInstruction(sources, destination, from, chown, chmod, link, parents, exclude);
+        return new CopyInstruction(sources, destination, from, chown, chmod, link, parents, exclude, heredocs);
     }
 
     private CmdInstruction parseCmd(String args) {
@@ -340,8 +507,17 @@ public class DockerfileParser {
         return new LabelInstruction(labels);
     }
 
-    private ArgInstruction parseArg(String args) {
+    private ArgInstruction parseArg(String args, ParseContext context) throws ParserError {
         List<KeyValuePair> argsList = parseArgs(args);
+        if (this.expandVariables) {
+            VariableScope variables = context.getVariables();
+            for (KeyValuePair pair : argsList) {
+                if (pair.hasEquals() && pair.getQuoting() != Quoting.SINGLE_QUOTED) {
+                    pair.setValue(ExpansionTemplate.expand(pair.getValue(), context.getEscapeChar(), variables::get));
+                }
+                variables.declareArg(pair.getKey(), pair.hasEquals() ? pair.getValue() : null);
+            }
+        }
         return new ArgInstruction(argsList);
     }
 
@@ -361,124 +537,132 @@ public class DockerfileParser {
         return volume;
     }
 
-    private FromInstruction parseFrom(String args) {
+    private FromInstruction parseFrom(String args, ParseContext context) throws ParserError {
         String platform = null;
         String image = null;
         String digest = null;
         String alias = null;
 
-        Pattern platformPattern = Pattern.compile("--platform=([^\\s]+)");
-        Matcher platformMatcher = platformPattern.matcher(args);
-        if (platformMatcher.find()) {
-            platform = platformMatcher.group(1);
-            args = args.replace(platformMatcher.group(0), "").trim();
+        int platformStart = DockerfileLexer.indexOfValued(args, "--platform=");
+        if (platformStart >= 0) {
+            int platformEnd = DockerfileLexer.skipNonWhitespace(args, platformStart);
+            platform = args.substring(platformStart + "--platform=".length(), platformEnd);
+            args = args.replace(args.substring(platformStart, platformEnd), "").trim();
         }
 
-        String[] parts = args.split("\\s+AS\\s+", 2);
-        if (parts.length > 1) {
-            alias = parts[1].trim();
+        String reference = args;
+        int[] as = DockerfileLexer.findSeparatorWord(args, "AS");
+        if (as != null) {
+            reference = args.substring(0, as[0]);
+            alias = args.substring(as[1]).trim();
         }
 
-        String[] imageParts = parts[0].split("@", 2);
-        image = imageParts[0].trim();
-        if (imageParts.length > 1) {
-            digest = imageParts[1].trim();
+        int at = reference.indexOf('@');
+        if (at >= 0) {
+            image = reference.substring(0, at).trim();
+            digest = reference.substring(at + 1).trim();
+        } else {
+            image = reference.trim();
         }
 
+        if (this.expandVariables) {
+            VariableScope variables = context.getVariables();
+            char escapeChar = context.getEscapeChar();
+            platform = expandFromValue(platform, escapeChar, variables);
+            image = expandFromValue(image, escapeChar, variables);
+            digest = expandFromValue(digest, escapeChar, variables);
+            variables.startStage(image, alias);
+        }
         return new FromInstruction(platform, image, digest, alias);
     }
 
-    private RunInstruction parseRun(String args) {
-        List<String> commands = new ArrayList<>();
-        List<RunInstruction.Mount> mounts = new ArrayList<>();
-        RunInstruction.NetworkOption networkOption = null;
-        RunInstruction.SecurityOption securityOption = null;
-        String heredoc = null;
-
-        Pattern mountTarget = Pattern.compile("--mount=target=([^ ]+)");
-        Pattern mountPattern = Pattern.compile("--mount=type=([^,]+),target=([^,]+)(,id=([^\\s]+))?");
-        Pattern networkPattern = Pattern.compile("--network=([^\\s]+)");
-        Pattern securityPattern = Pattern.compile("--security=([^\\s]+)");
-        Pattern heredocPattern = Pattern.compile("<<([A-Z]+)");
-
-        String[] parts = args.split("\\s+");
-        StringBuilder commandBuilder = new StringBuilder();
-        boolean inHeredoc = false;
-        String heredocName = "";
-
-        for (String part : parts) {
-            if (inHeredoc) {
-                if (part.equals(heredocName)) {
-                    inHeredoc = false;
-                }
-                continue;
-            }
-
-            Matcher mountTargetMatcher = mountTarget.matcher(part);
-            if (mountTargetMatcher.find()) {
-                mounts.add(new RunInstruction.Mount(mountTargetMatcher.group(1)));
-                continue;
-            }
+    /**
+     * Expands a value of a FROM instruction, which only sees global arguments. A reference to an unset argument, such
+     * as {@code $BUILDPLATFORM} when no platform was given, is kept as written rather than dropped.
+     */
+    private static String expandFromValue(String value, char escapeChar, VariableScope variables) throws ParserError {
+        if (value == null || value.indexOf('$') < 0) {
+            return value;
+        }
+        return ExpansionTemplate.of(value, escapeChar).expand(variables::getGlobal, true);
+    }
 
-            Matcher mountMatcher = mountPattern.matcher(part);
-            if (mountMatcher.find()) {
-                mounts.add(new RunInstruction.Mount(mountMatcher.group(1), mountMatcher.group(2), mountMatcher.group(4)));
-                continue;
+    private RunInstruction parseRun(String args, List<Heredoc> heredocs) {
+        List<RunInstruction.Mount> mounts = new ArrayList<>();
+        String network = null;
+        String security = null;
+
+        // Extract the options which lead the command
+        DockerfileLexer.FlagScan scan = DockerfileLexer.scanLeadingFlags(args, RUN_FLAGS);
+        for (DockerfileLexer.Flag flag : scan.flags()) {
+            switch (flag.name()) {
+                case "mount" -> mounts.add(parseMount(flag.value()));
+                case "network" -> network = flag.value();
+                case "security" -> security = flag.value();
             }
+        }
 
-            Matcher networkMatcher = networkPattern.matcher(part);
-            if (networkMatcher.find()) {
-                networkOption = RunInstruction.NetworkOption.valueOf(networkMatcher.group(1).toUpperCase());
-                continue;
-            }
+        // joined lines leave runs of whitespace, which are collapsed as they always have been
+        List<String> commands = new ArrayList<>(1);
+        commands.add(String.join(" ", DockerfileLexer.splitWhitespace(scan.remainder())));
+        return new RunInstruction(commands, scan.remainder().trim(), mounts, network, security, heredocs);
+    }
 
-            Matcher securityMatcher = securityPattern.matcher(part);
-            if (securityMatcher.find()) {
-                securityOption = RunInstruction.SecurityOption.valueOf(securityMatcher.group(1).toUpperCase());
+    /**
+     * Parses the value of a {@code --mount} option, such as {@code type=cache,target=/root/.cache,sharing=locked}, into
+     * options keyed as {@link RunInstruction.Mount} describes.
+     */
+    private static RunInstruction.Mount parseMount(String value) {
+        Map<String, String> options = new LinkedHashMap<>(8);
+        for (String field : DockerfileLexer.splitCsv(value)) {
+            if (field.isEmpty()) {
                 continue;
             }
-
-            Matcher heredocMatcher = heredocPattern.matcher(part);
-            if (heredocMatcher.find()) {
-                inHeredoc = true;
-                heredocName = heredocMatcher.group(1);
-                // split args on the heredoc. This may be a bit of a hack, but it works.
-                String[] heredocParts = args.split(heredocName);
-                if (heredocParts.length > 1) {
-                    // trim \r\n from start and end of heredoc
-
-                    heredoc = heredocParts[1].trim();
+            int equals = field.indexOf('=');
+            String key = (equals < 0 ? field : field.substring(0, equals)).toLowerCase(Locale.ROOT);
+            String option = equals < 0 ? null : field.substring(equals + 1);
+            switch (key) {
+                case "dst", "destination" -> key = "target";
+                case "src" -> key = "source";
+                case "ro" -> key = "readonly";
+                case "rw", "readwrite" -> {
+                    key = "readonly";
+                    option = option == null ? "false" : switch (option) {
+                        case "1", "t", "T", "true", "TRUE", "True" -> "false";
+                        case "0", "f", "F", "false", "FALSE", "False" -> "true";
+                        default -> option;
+                    };
                 }
-                continue;
             }
-
-            if (!commandBuilder.isEmpty()) {
-                commandBuilder.append(" ");
+            if (option == null && (key.equals("readonly") || key.equals("required"))) {
+                option = "true";
             }
-            commandBuilder.append(part);
+            options.put(key, option);
         }
-
-        commands.add(commandBuilder.toString());
-
-        return new RunInstruction(commands, mounts, networkOption, securityOption, heredoc, heredocName);
+        return new RunInstruction.Mount(options);
     }
 
-    private EnvInstruction parseEnv(String args) {
+    private EnvInstruction parseEnv(String args, ParseContext context) throws ParserError {
         List<EnvVariable> vars = new ArrayList<>();
-        Matcher matcher = Pattern.compile("(\\w+)(=|\\s)(.*)").matcher(args);
-        while (matcher.find()) {
-            String key = matcher.group(1);
-            boolean deprecatedSyntax = " ".equals(matcher.group(2));
-            String value = matcher.group(3);
+        VariableScope variables = context.getVariables();
+        for (DockerfileLexer.KeyValueToken token : DockerfileLexer.scanEnvPairs(args)) {
+            String key = token.key();
+            boolean deprecatedSyntax = token.separator() == ' ';
+            String value = token.value();
             if (this.expandVariables) {
-                value = expandVariables(value);
+                // every value sees the variables as they were before the instruction
+                value = ExpansionTemplate.expand(value, context.getEscapeChar(), variables::get);
             }
             Quoting quoting = determineQuoting(value);
             if (quoting != Quoting.UNQUOTED) {
                 value = value.substring(1, value.length() - 1);
             }
             vars.add(new EnvVariable(key, value, deprecatedSyntax, quoting));
-            envVariables.put(key, value);
+        }
+        if (this.expandVariables) {
+            for (EnvVariable variable : vars) {
+                variables.declareEnv(variable.getKey(), variable.getValue());
+            }
         }
         return new EnvInstruction(vars);
     }
@@ -489,23 +673,23 @@ public class DockerfileParser {
             instruction.setCommand(parseExecForm(args));
         } else {
             instruction.setForm(CommandInstruction.Form.SHELL);
-            instruction.setCommand(parseShellForm(args));
+            instruction.setCommand(parseShellForm(args), args.trim());
         }
     }
 
     public static List<String> parseExecForm(String command) {
         // Remove the surrounding brackets and split by comma
         String trimmed = command.substring(1, command.length() - 1).trim();
-        String[] parts = trimmed.split("\\s*,\\s*");
-        List<String> result = new ArrayList<>();
+        List<String> parts = DockerfileLexer.splitCommas(trimmed);
+        List<String> result = new ArrayList<>(parts.size());
         for (String part : parts) {
-            result.add(part.replaceAll("^\"|\"$", ""));
+            result.add(DockerfileLexer.stripDoubleQuotes(part));
         }
         return result;
     }
 
     public static List<String> parseShellForm(String command) {
-        return Arrays.asList(command.split("\\s+"));
+        return DockerfileLexer.splitWhitespace(command);
     }
 
     private Quoting determineQuoting(String value) {
@@ -520,11 +704,9 @@ public class DockerfileParser {
 
     private List<KeyValuePair> parseArgs(String args) {
         List<KeyValuePair> result = new ArrayList<>();
-        Pattern pattern = Pattern.compile("(\\w+)(=(\\S+))?");
-        Matcher matcher = pattern.matcher(args);
-        while (matcher.find()) {
-            String key = matcher.group(1);
-            String value = matcher.group(3) != null ? matcher.group(3) : "";
+        for (DockerfileLexer.KeyValueToken token : DockerfileLexer.scanArgPairs(args)) {
+            String key = token.key();
+            String value = token.value() != null ? token.value() : "";
             Quoting quoteStyle = Quoting.UNQUOTED;
             if (value.indexOf("'") == 0 && value.lastIndexOf("'") == value.length() - 1) {
                 value = value.substring(1, value.length() - 1);
@@ -533,45 +715,28 @@ public class DockerfileParser {
                 value = value.substring(1, value.length() - 1);
                 quoteStyle = Quoting.DOUBLE_QUOTED;
             }
-            result.add(new KeyValuePair(key, value, matcher.group(2) != null, quoteStyle));
+            result.add(new KeyValuePair(key, value, token.value() != null, quoteStyle));
         }
         return result;
     }
 
     private List<KeyValuePair> parseKeyValuePairs(String args) {
         List<KeyValuePair> labels = new ArrayList<>();
-        Pattern pattern = Pattern.compile("(\\S+?)(=|\\s)(\"[^\"]*\"|'[^']*'|\\S+)");
-        Matcher matcher = pattern.matcher(args);
-        while (matcher.find()) {
-            String key = matcher.group(1);
-            String separator = matcher.group(2);
-            String value = matcher.group(3);
+        for (DockerfileLexer.KeyValueToken token : DockerfileLexer.scanLabelPairs(args)) {
+            String value = token.value();
             Quoting quoting = determineQuoting(value);
             if (quoting != Quoting.UNQUOTED) {
                 value = value.substring(1, value.length() - 1);
             }
-            boolean hasEquals = "=".equals(separator);
-            labels.add(new KeyValuePair(key, value, hasEquals, quoting));
+            boolean hasEquals = token.separator() == '=';
+            labels.add(new KeyValuePair(token.key(), value, hasEquals, quoting));
         }
         return labels;
     }
 
-    private String expandVariables(String value) {
-        Pattern pattern = Pattern.compile("\\$\\{([^}]+)}");
-        Matcher matcher = pattern.matcher(value);
-        StringBuffer sb = new StringBuffer();
-        while (matcher.find()) {
-            String varName = matcher.group(1);
-            matcher.appendReplacement(sb, envVariables.getOrDefault(varName, ""));
-        }
-        matcher.appendTail(sb);
-        return sb.toString();
-    }
-
     private List<ExposeInstruction.Port> parsePorts(String args) {
         List<ExposeInstruction.Port> ports = new ArrayList<>();
-        String[] parts = args.split("\\s+");
-        for (String part : parts) {
+        for (String part : DockerfileLexer.splitWhitespace(args)) {
             String[] portParts = part.split("/", 2);
             if (portParts.length == 2) {
                 ports.add(new ExposeInstruction.Port(portParts[0], portParts[1]));
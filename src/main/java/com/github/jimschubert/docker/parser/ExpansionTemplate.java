@@ -0,0 +1,326 @@
+package com.github.jimschubert.docker.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A string compiled for variable expansion, following the rules BuildKit applies to Dockerfile instructions.
+ * <p>
+ * The supported forms are {@code $name}, {@code ${name}}, {@code ${name:-word}} and {@code ${name-word}} for a default,
+ * {@code ${name:+word}} and {@code ${name+word}} for an alternative, and {@code ${name:?word}} and {@code ${name?word}}
+ * to require a variable. The forms with a colon also treat an empty value as unset. The word is itself expanded.
+ * Nothing is expanded within single quotes, and the escape character before a {@code $} makes it literal. Quotes and
+ * other escapes are kept, as the parser records quoting separately.
+ * <p>
+ * A reference which isn't closed, or which has an empty name, is kept as written.
+ * <p>
+ * Compiled templates are immutable and cached per string and escape character by {@link #of(String, char)}, so
+ * expanding the same text again, such as a common base image reference across many Dockerfiles, only appends its parts.
+ */
+public final class ExpansionTemplate {
+    private static final int MAX_CACHED = 8192;
+    private static final Map<String, ExpansionTemplate> BACKSLASH_CACHE = new ConcurrentHashMap<>();
+    private static final Map<String, ExpansionTemplate> BACKTICK_CACHE = new ConcurrentHashMap<>();
+
+    private final String text;
+    // each part is either a literal String or a Reference
+    private final Object[] parts;
+
+    private ExpansionTemplate(String text, Object[] parts) {
+        this.text = text;
+        this.parts = parts;
+    }
+
+    /**
+     * Expands the variables in a string.
+     *
+     * @param text       The text to expand.
+     * @param escapeChar The escape character of the Dockerfile.
+     * @param variables  Looks up the value of a variable, returning {@code null} if it's unset.
+     * @return The expanded text, which is {@code text} itself if it references no variables.
+     * @throws ParserError If a required variable is unset.
+     */
+    public static String expand(String text, char escapeChar, Function<String, String> variables) throws ParserError {
+        if (text.indexOf('$') < 0) {
+            return text;
+        }
+        return of(text, escapeChar).expand(variables);
+    }
+
+    /**
+     * Compiles a string, or returns the template previously compiled for it.
+     *
+     * @param text       The text to compile.
+     * @param escapeChar The escape character of the Dockerfile.
+     * @return The compiled template.
+     */
+    public static ExpansionTemplate of(String text, char escapeChar) {
+        Map<String, ExpansionTemplate> cache = escapeChar == '\\' ? BACKSLASH_CACHE : escapeChar == '`' ? BACKTICK_CACHE : null;
+        if (cache == null) {
+            return compile(text, escapeChar);
+        }
+        ExpansionTemplate template = cache.get(text);
+        if (template == null) {
+            template = compile(text, escapeChar);
+            if (cache.size() >= MAX_CACHED) {
+                // a simple bound; templates are cheap to compile again
+                cache.clear();
+            }
+            cache.put(text, template);
+        }
+        return template;
+    }
+
+    /**
+     * @return {@code true} if expanding the template can give anything other than its text.
+     */
+    public boolean hasVariables() {
+        return parts.length != 1 || !(parts[0] instanceof String);
+    }
+
+    /**
+     * @return The names of the variables the template references, including those within words, in order.
+     */
+    public List<String> getVariableNames() {
+        List<String> names = new ArrayList<>();
+        collectNames(names);
+        return names;
+    }
+
+    private void collectNames(List<String> names) {
+        for (Object part : parts) {
+            if (part instanceof Reference reference) {
+                names.add(reference.name());
+                if (reference.word() != null) {
+                    reference.word().collectNames(names);
+                }
+            }
+        }
+    }
+
+    /**
+     * Expands the template.
+     *
+     * @param variables Looks up the value of a variable, returning {@code null} if it's unset.
+     * @return The expanded text.
+     * @throws ParserError If a required variable is unset.
+     */
+    public String expand(Function<String, String> variables) throws ParserError {
+        return expand(variables, false);
+    }
+
+    /**
+     * Expands the template.
+     *
+     * @param variables Looks up the value of a variable, returning {@code null} if it's unset.
+     * @param keepUnset Whether a plain reference to an unset variable, such as {@code $name} or {@code ${name}}, is
+     *                  kept as written rather than expanded to nothing.
+     * @return The expanded text.
+     * @throws ParserError If a required variable is unset.
+     */
+    public String expand(Function<String, String> variables, boolean keepUnset) throws ParserError {
+        if (!hasVariables()) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length() + 16);
+        appendTo(sb, variables, keepUnset);
+        return sb.toString();
+    }
+
+    private void appendTo(StringBuilder sb, Function<String, String> variables, boolean keepUnset) throws ParserError {
+        for (Object part : parts) {
+            if (part instanceof String literal) {
+                sb.append(literal);
+                continue;
+            }
+            Reference reference = (Reference) part;
+            String value = variables.apply(reference.name());
+            boolean set = value != null && (!reference.colon() || !value.isEmpty());
+            switch (reference.operator()) {
+                case NONE -> {
+                    if (value != null) {
+                        sb.append(value);
+                    } else if (keepUnset) {
+                        sb.append(reference.text());
+                    }
+                }
+                case DEFAULT -> {
+                    if (set) {
+                        sb.append(value);
+                    } else {
+                        reference.word().appendTo(sb, variables, keepUnset);
+                    }
+                }
+                case ALTERNATIVE -> {
+                    if (set) {
+                        reference.word().appendTo(sb, variables, keepUnset);
+                    }
+                }
+                case REQUIRED -> {
+                    if (!set) {
+                        String message = reference.word().expand(variables);
+                        throw new ParserError(reference.name() + ": " + (message.isEmpty() ? "is not allowed to be unset" : message));
+                    }
+                    sb.append(value);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private enum Operator {
+        NONE, DEFAULT, ALTERNATIVE, REQUIRED
+    }
+
+    /**
+     * A reference to a variable.
+     *
+     * @param name     The name of the variable.
+     * @param operator How the value is substituted.
+     * @param colon    Whether an empty value counts as unset.
+     * @param word     The default, alternative or error message, or {@code null} for {@link Operator#NONE}.
+     * @param text     The reference as written.
+     */
+    private record Reference(String name, Operator operator, boolean colon, ExpansionTemplate word, String text) {
+    }
+
+    private static ExpansionTemplate compile(String text, char escapeChar) {
+        Compiler compiler = new Compiler(text, escapeChar);
+        return compiler.compile(false);
+    }
+
+    private static final class Compiler {
+        private final String text;
+        private final char escapeChar;
+        private int pos;
+
+        Compiler(String text, char escapeChar) {
+            this.text = text;
+            this.escapeChar = escapeChar;
+        }
+
+        /**
+         * Compiles from the current position to the end of the text, or, within a word, to the brace closing it.
+         */
+        ExpansionTemplate compile(boolean word) {
+            int start = pos;
+            List<Object> parts = new ArrayList<>(4);
+            StringBuilder literal = new StringBuilder();
+            boolean singleQuoted = false;
+            boolean doubleQuoted = false;
+            while (pos < text.length()) {
+                char c = text.charAt(pos);
+                if (singleQuoted) {
+                    singleQuoted = c != '\'';
+                    literal.append(c);
+                    pos++;
+                } else if (word && c == '}') {
+                    break;
+                } else if (c == escapeChar && pos + 1 < text.length()) {
+                    char next = text.charAt(pos + 1);
+                    if (next != '$') {
+                        literal.append(c);
+                    }
+                    literal.append(next);
+                    pos += 2;
+                } else if (c == '$') {
+                    Reference reference = reference();
+                    if (reference == null) {
+                        literal.append('$');
+                        pos++;
+                    } else {
+                        if (!literal.isEmpty()) {
+                            parts.add(literal.toString());
+                            literal.setLength(0);
+                        }
+                        parts.add(reference);
+                    }
+                } else {
+                    if (c == '\'' && !doubleQuoted && !word) {
+                        singleQuoted = true;
+                    } else if (c == '"') {
+                        doubleQuoted = !doubleQuoted;
+                    }
+                    literal.append(c);
+                    pos++;
+                }
+            }
+            if (!literal.isEmpty() || parts.isEmpty()) {
+                parts.add(literal.toString());
+            }
+            return new ExpansionTemplate(text.substring(start, pos), parts.toArray());
+        }
+
+        /**
+         * Compiles the reference starting at the current {@code $}, or returns {@code null}, leaving the position
+         * unchanged, if it isn't a valid reference.
+         */
+        private Reference reference() {
+            int dollar = pos;
+            int nameStart = dollar + 1;
+            if (nameStart >= text.length()) {
+                return null;
+            }
+            if (text.charAt(nameStart) != '{') {
+                int nameEnd = nameEnd(nameStart);
+                if (nameEnd == nameStart) {
+                    return null;
+                }
+                pos = nameEnd;
+                return new Reference(text.substring(nameStart, nameEnd), Operator.NONE, false, null, text.substring(dollar, pos));
+            }
+
+            nameStart++;
+            int nameEnd = nameEnd(nameStart);
+            if (nameEnd == nameStart || nameEnd >= text.length()) {
+                return null;
+            }
+            String name = text.substring(nameStart, nameEnd);
+            char c = text.charAt(nameEnd);
+            if (c == '}') {
+                pos = nameEnd + 1;
+                return new Reference(name, Operator.NONE, false, null, text.substring(dollar, pos));
+            }
+            boolean colon = c == ':';
+            int operatorAt = colon ? nameEnd + 1 : nameEnd;
+            Operator operator = operatorAt < text.length() ? switch (text.charAt(operatorAt)) {
+                case '-' -> Operator.DEFAULT;
+                case '+' -> Operator.ALTERNATIVE;
+                case '?' -> Operator.REQUIRED;
+                default -> null;
+            } : null;
+            if (operator == null) {
+                return null;
+            }
+            pos = operatorAt + 1;
+            ExpansionTemplate word = compile(true);
+            if (pos >= text.length()) {
+                // unclosed, so the reference is kept as written
+                pos = dollar;
+                return null;
+            }
+            pos++;
+            return new Reference(name, operator, colon, word, text.substring(dollar, pos));
+        }
+
+        private int nameEnd(int from) {
+            int end = from;
+            while (end < text.length()) {
+                char c = text.charAt(end);
+                boolean valid = c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (end > from && c >= '0' && c <= '9');
+                if (!valid) {
+                    break;
+                }
+                end++;
+            }
+            return end;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.github.jimschubert.docker.parser;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.ast.FromInstruction;
+import com.github.jimschubert.docker.ast.InstructionKind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parsed instructions indexed by kind and by stage, so that queries such as "every COPY in the build stage" don't scan
+ * the whole list.
+ * <p>
+ * Stages are numbered from 0 in Dockerfile order, each starting at its FROM instruction. Instructions before the first
+ * FROM, such as parser directives and global ARGs, belong to no stage. Only top level instructions are indexed; the
+ * instruction deferred by an ONBUILD is found through the ONBUILD instruction. Lists returned by the index are
+ * unmodifiable views, created without copying.
+ */
+public final class IndexedDockerfile {
+    private static final int[] NO_POSITIONS = new int[0];
+
+    private final List<DockerInstruction> instructions;
+    private final Map<InstructionKind, List<DockerInstruction>> byKind;
+    // the positions in instructions of each kind's instructions, in ascending order
+    private final Map<InstructionKind, int[]> positions;
+    // the position of each stage's FROM instruction
+    private final int[] stageStarts;
+    private final Map<String, Integer> stagesByName;
+
+    private IndexedDockerfile(Builder builder) {
+        this.instructions = Collections.unmodifiableList(builder.instructions);
+        this.byKind = new EnumMap<>(InstructionKind.class);
+        this.positions = new EnumMap<>(InstructionKind.class);
+        for (Map.Entry<InstructionKind, List<DockerInstruction>> entry : builder.byKind.entrySet()) {
+            byKind.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+            int[] kindPositions = builder.positions.get(entry.getKey());
+            positions.put(entry.getKey(), Arrays.copyOf(kindPositions, entry.getValue().size()));
+        }
+        this.stageStarts = Arrays.copyOf(builder.stageStarts, builder.stageCount);
+        this.stagesByName = builder.stagesByName;
+    }
+
+    /**
+     * Indexes a list of parsed instructions.
+     *
+     * @param instructions The instructions.
+     * @return The index.
+     */
+    public static IndexedDockerfile of(List<DockerInstruction> instructions) {
+        Builder builder = new Builder();
+        for (DockerInstruction instruction : instructions) {
+            builder.add(instruction);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return All instructions, in Dockerfile order.
+     */
+    public List<DockerInstruction> getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * @param kind The kind of instruction.
+     * @return The instructions of that kind, in Dockerfile order.
+     */
+    public List<DockerInstruction> getInstructions(InstructionKind kind) {
+        List<DockerInstruction> list = byKind.get(kind);
+        return list != null ? list : List.of();
+    }
+
+    /**
+     * @param kind  The kind of instruction.
+     * @param stage The index of the stage.
+     * @return The instructions of that kind within the stage, in Dockerfile order.
+     * @throws IndexOutOfBoundsException If there's no such stage.
+     */
+    public List<DockerInstruction> getInstructions(InstructionKind kind, int stage) {
+        int start = stageStart(stage);
+        int end = stageEnd(stage);
+        int[] kindPositions = positions.getOrDefault(kind, NO_POSITIONS);
+        int from = lowerBound(kindPositions, start);
+        int to = lowerBound(kindPositions, end);
+        return getInstructions(kind).subList(from, to);
+    }
+
+    /**
+     * @return The instructions before the first FROM, or all instructions if there's no FROM.
+     */
+    public List<DockerInstruction> getGlobalInstructions() {
+        return instructions.subList(0, stageStarts.length > 0 ? stageStarts[0] : instructions.size());
+    }
+
+    public int getStageCount() {
+        return stageStarts.length;
+    }
+
+    /**
+     * @param stage The index of the stage.
+     * @return The instructions of the stage, starting with its FROM instruction.
+     * @throws IndexOutOfBoundsException If there's no such stage.
+     */
+    public List<DockerInstruction> getStageInstructions(int stage) {
+        return instructions.subList(stageStart(stage), stageEnd(stage));
+    }
+
+    /**
+     * @param stage The index of the stage.
+     * @return The FROM instruction starting the stage.
+     * @throws IndexOutOfBoundsException If there's no such stage.
+     */
+    public FromInstruction getFrom(int stage) {
+        return (FromInstruction) instructions.get(stageStart(stage));
+    }
+
+    /**
+     * @param name The name of a stage, ignoring case.
+     * @return The FROM instruction starting the stage, or {@code null} if no stage has that name.
+     */
+    public FromInstruction getFrom(String name) {
+        int stage = getStageIndex(name);
+        return stage >= 0 ? getFrom(stage) : null;
+    }
+
+    /**
+     * @param name The name of a stage, ignoring case.
+     * @return The index of the first stage with that name, or -1 if there's none.
+     */
+    public int getStageIndex(String name) {
+        Integer stage = stagesByName.get(name.toLowerCase(Locale.ROOT));
+        return stage != null ? stage : -1;
+    }
+
+    /**
+     * @param position The position of an instruction in {@link #getInstructions()}.
+     * @return The index of the stage containing the instruction, or -1 if it's before the first FROM.
+     */
+    public int getStageOf(int position) {
+        if (position < 0 || position >= instructions.size()) {
+            throw new IndexOutOfBoundsException(position);
+        }
+        return lowerBound(stageStarts, position + 1) - 1;
+    }
+
+    private int stageStart(int stage) {
+        if (stage < 0 || stage >= stageStarts.length) {
+            throw new IndexOutOfBoundsException("Stage " + stage + " out of bounds for " + stageStarts.length + " stages");
+        }
+        return stageStarts[stage];
+    }
+
+    private int stageEnd(int stage) {
+        return stage + 1 < stageStarts.length ? stageStarts[stage + 1] : instructions.size();
+    }
+
+    /**
+     * Finds the first index whose value is at least {@code key}, in an array sorted in ascending order.
+     */
+    private static int lowerBound(int[] values, int key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Builds an index as instructions are parsed, one at a time.
+     */
+    static final class Builder {
+        private final List<DockerInstruction> instructions = new ArrayList<>();
+        private final Map<InstructionKind, List<DockerInstruction>> byKind = new EnumMap<>(InstructionKind.class);
+        private final Map<InstructionKind, int[]> positions = new EnumMap<>(InstructionKind.class);
+        private final Map<String, Integer> stagesByName = new HashMap<>();
+        private int[] stageStarts = new int[4];
+        private int stageCount;
+
+        void add(DockerInstruction instruction) {
+            int position = instructions.size();
+            instructions.add(instruction);
+            InstructionKind kind = instruction.getKind();
+            List<DockerInstruction> list = byKind.computeIfAbsent(kind, k -> new ArrayList<>());
+            int[] kindPositions = positions.get(kind);
+            if (kindPositions == null || kindPositions.length == list.size()) {
+                kindPositions = kindPositions == null ? new int[8] : Arrays.copyOf(kindPositions, list.size() * 2);
+                positions.put(kind, kindPositions);
+            }
+            kindPositions[list.size()] = position;
+            list.add(instruction);
+
+            if (kind == InstructionKind.FROM) {
+                if (stageCount == stageStarts.length) {
+                    stageStarts = Arrays.copyOf(stageStarts, stageCount * 2);
+                }
+                String name = ((FromInstruction) instruction).getAlias();
+                if (name != null) {
+                    stagesByName.putIfAbsent(name.toLowerCase(Locale.ROOT), stageCount);
+                }
+                stageStarts[stageCount++] = position;
+            }
+        }
+
+        IndexedDockerfile build() {
+            return new IndexedDockerfile(this);
+        }
+    }
+}
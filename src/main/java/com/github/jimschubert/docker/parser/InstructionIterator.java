@@ -0,0 +1,309 @@
+package com.github.jimschubert.docker.parser;
+
+import com.github.jimschubert.docker.ast.CommentInstruction;
+import com.github.jimschubert.docker.ast.DirectiveInstruction;
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.ast.SourceSpan;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily parses a Dockerfile, reading only as many lines as needed to produce the next instruction.
+ * <p>
+ * Because {@link Iterator} can't throw checked exceptions, I/O errors are rethrown as {@link UncheckedIOException}
+ * and parse errors as {@link UncheckedParserError}. Closing the iterator closes the underlying reader.
+ * <p>
+ * Each instruction is given its {@link SourceSpan}. Byte offsets assume the Dockerfile is UTF-8 encoded.
+ */
+public class InstructionIterator implements Iterator<DockerInstruction>, Closeable {
+    private final DockerfileParser parser;
+    private final ParseContext context;
+    private final LineReader reader;
+    private final SourceMap sourceMap = new SourceMap();
+    private final Deque<DockerInstruction> pending = new ArrayDeque<>(2);
+
+    private StringBuilder currentCommand = new StringBuilder();
+    private StringBuilder currentComment = new StringBuilder();
+    // the heredocs started by the current instruction, of which the first heredocIndex have ended
+    private List<DockerfileLexer.HeredocToken> heredocs = List.of();
+    private int heredocIndex = 0;
+    private boolean finished = false;
+    // line, column, offset and byte offset of the first comment line's start and the last comment line's end
+    private final int[] commentStart = new int[4];
+    private final int[] commentEnd = new int[4];
+
+    /**
+     * Creates a new instance of InstructionIterator.
+     *
+     * @param parser The parser used to parse each logical line.
+     * @param reader The reader to read the Dockerfile from.
+     */
+    InstructionIterator(DockerfileParser parser, Reader reader) {
+        this.parser = parser;
+        this.context = new ParseContext(parser.getBuildArgs());
+        this.reader = new LineReader(reader);
+    }
+
+    /**
+     * Creates a new instance of InstructionIterator which starts parsing from the middle of a Dockerfile.
+     *
+     * @param parser     The parser used to parse each logical line.
+     * @param reader     The reader, positioned at the start of a line which doesn't continue a previous instruction.
+     * @param context    The parse state at that line.
+     * @param lineNumber The 1-based number of the line.
+     * @param offset     The character offset of the line.
+     * @param byteOffset The UTF-8 byte offset of the line.
+     */
+    InstructionIterator(DockerfileParser parser, Reader reader, ParseContext context, int lineNumber, int offset, int byteOffset) {
+        this.parser = parser;
+        this.context = context;
+        this.reader = new LineReader(reader, lineNumber, offset, byteOffset);
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            return fill();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ParserError e) {
+            throw new UncheckedParserError(e);
+        }
+    }
+
+    @Override
+    public DockerInstruction next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return pending.poll();
+    }
+
+    /**
+     * Returns the next instruction, or {@code null} once the Dockerfile is exhausted.
+     *
+     * @return The next instruction, or {@code null}.
+     * @throws IOException If an I/O error occurs.
+     * @throws ParserError If an error occurs while parsing the Dockerfile.
+     */
+    DockerInstruction nextInstruction() throws IOException, ParserError {
+        return fill() ? pending.poll() : null;
+    }
+
+    /**
+     * Returns a sequential stream over the remaining instructions. Closing the stream closes this iterator.
+     *
+     * @return The stream of instructions.
+     */
+    public Stream<DockerInstruction> stream() {
+        Spliterator<DockerInstruction> spliterator = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        reader.close();
+    }
+
+    /**
+     * Processes a single line, adding any instructions it completes to the pending instructions.
+     *
+     * @return {@code false} if the Dockerfile is exhausted.
+     * @throws IOException If an I/O error occurs.
+     * @throws ParserError If an error occurs while parsing the Dockerfile.
+     */
+    boolean advanceLine() throws IOException, ParserError {
+        if (finished) {
+            return false;
+        }
+        String line = reader.readLine();
+        if (line == null) {
+            finished = true;
+            flushComment();
+            return false;
+        }
+        processLine(line);
+        return true;
+    }
+
+    /**
+     * @return The next pending instruction, or {@code null} if there is none.
+     */
+    DockerInstruction pollPending() {
+        return pending.poll();
+    }
+
+    /**
+     * @return {@code true} if no instruction or comment is partially read, so the next line starts afresh.
+     */
+    boolean isAtBoundary() {
+        return currentCommand.isEmpty() && currentComment.isEmpty() && heredocIndex == heredocs.size();
+    }
+
+    /**
+     * @return The character offset of an instruction left unfinished at the end of the Dockerfile, or -1 if there is
+     * none.
+     */
+    int getUnfinishedOffset() {
+        return currentCommand.isEmpty() ? -1 : sourceMap.getStartOffset();
+    }
+
+    ParseContext getContext() {
+        return context;
+    }
+
+    LineReader getReader() {
+        return reader;
+    }
+
+    private boolean fill() throws IOException, ParserError {
+        while (pending.isEmpty() && advanceLine()) {
+            // keep reading until an instruction is complete
+        }
+        return !pending.isEmpty();
+    }
+
+    private void processLine(String raw) throws ParserError {
+        if (heredocIndex < heredocs.size()) {
+            processHeredocLine(raw);
+            return;
+        }
+
+        String line = raw.trim();
+        int leading = 0;
+        while (leading < raw.length() && raw.charAt(leading) <= ' ') {
+            leading++;
+        }
+        if (line.isEmpty()) {
+            flushComment();
+            return;
+        }
+
+        if (line.startsWith("# syntax") || line.startsWith("# escape") || line.startsWith("# check")) {
+            flushComment();
+            if (line.startsWith("# escape")) {
+                context.setEscapeChar(line.charAt(line.length() - 1));
+            }
+            DirectiveInstruction directive = new DirectiveInstruction(line.substring(1).trim());
+            directive.setSourceSpan(new SourceSpan.Builder()
+                    .start(reader.getLineNumber(), leading + 1, reader.getLineOffset() + leading, lineByteOffset(raw, leading))
+                    .end(reader.getLineNumber(), leading + line.length() + 1, reader.getLineOffset() + leading + line.length(), lineByteOffset(raw, leading + line.length()))
+                    .build());
+            pending.add(directive);
+            return;
+        } else if (line.startsWith("#")) {
+            if (!currentComment.isEmpty()) {
+                currentComment.append("\n");
+            } else {
+                setPosition(commentStart, raw, leading);
+            }
+            setPosition(commentEnd, raw, leading + line.length());
+            currentComment.append(line.substring(1).trim());
+            return;
+        }
+
+        flushComment();
+
+        if (currentCommand.isEmpty()) {
+            sourceMap.clear();
+        }
+        sourceMap.addSegment(currentCommand.length(), reader.getLineNumber(), leading + 1, reader.getLineOffset() + leading, lineByteOffset(raw, leading));
+        if (line.charAt(line.length() - 1) == context.getEscapeChar()) {
+            currentCommand.append(line, 0, line.length() - 1).append(" ");
+            return;
+        } else {
+            currentCommand.append(line);
+        }
+
+        int keywordEnd = DockerfileLexer.skipNonWhitespace(currentCommand, 0);
+        if (DockerfileLexer.allowsHeredocs(currentCommand, keywordEnd)) {
+            heredocs = DockerfileLexer.findHeredocs(currentCommand, keywordEnd);
+            if (!heredocs.isEmpty()) {
+                return;
+            }
+        }
+
+        emitCommand();
+    }
+
+    /**
+     * Appends a line of the current heredoc, retaining its whitespace apart from the leading tabs removed by
+     * {@code <<-}. The instruction is emitted once its last heredoc has ended.
+     */
+    private void processHeredocLine(String raw) throws ParserError {
+        DockerfileLexer.HeredocToken heredoc = heredocs.get(heredocIndex);
+        int tabs = 0;
+        if (heredoc.chomp()) {
+            while (tabs < raw.length() && raw.charAt(tabs) == '\t') {
+                tabs++;
+            }
+        }
+        currentCommand.append('\n');
+        // tabs are a single byte in UTF-8
+        sourceMap.addSegment(currentCommand.length(), reader.getLineNumber(), tabs + 1, reader.getLineOffset() + tabs, reader.getLineByteOffset() + tabs);
+        currentCommand.append(raw, tabs, raw.length());
+        String name = heredoc.name();
+        if (raw.length() - tabs == name.length() && raw.startsWith(name, tabs) && ++heredocIndex == heredocs.size()) {
+            heredocs = List.of();
+            heredocIndex = 0;
+            emitCommand();
+        }
+    }
+
+    private void emitCommand() throws ParserError {
+        String logical = currentCommand.toString();
+        int from = 0;
+        int to = logical.length();
+        while (from < to && logical.charAt(from) <= ' ') {
+            from++;
+        }
+        while (to > from && logical.charAt(to - 1) <= ' ') {
+            to--;
+        }
+        DockerInstruction instruction = parser.parseInstruction(logical.substring(from, to), context);
+        if (from < to) {
+            instruction.setSourceSpan(sourceMap.span(logical, from, to, instruction));
+        }
+        pending.add(instruction);
+        currentCommand = new StringBuilder();
+    }
+
+    private int lineByteOffset(String raw, int column) {
+        return reader.getLineByteOffset() + LineReader.utf8Length(raw, 0, column);
+    }
+
+    private void setPosition(int[] position, String raw, int index) {
+        position[0] = reader.getLineNumber();
+        position[1] = index + 1;
+        position[2] = reader.getLineOffset() + index;
+        position[3] = lineByteOffset(raw, index);
+    }
+
+    private void flushComment() {
+        if (!currentComment.isEmpty()) {
+            CommentInstruction comment = new CommentInstruction(currentComment.toString().trim());
+            comment.setSourceSpan(new SourceSpan.Builder()
+                    .start(commentStart[0], commentStart[1], commentStart[2], commentStart[3])
+                    .end(commentEnd[0], commentEnd[1], commentEnd[2], commentEnd[3])
+                    .build());
+            pending.add(comment);
+            currentComment = new StringBuilder();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.github.jimschubert.docker.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads lines like {@link java.io.BufferedReader#readLine()}, additionally tracking the line number and the character
+ * and UTF-8 byte offsets at which each line starts.
+ */
+final class LineReader implements Closeable {
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position = 0;
+    private int limit = 0;
+    private boolean skipLineFeed = false;
+
+    private int lineNumber = 0;
+    private int lineOffset = 0;
+    private int lineByteOffset = 0;
+    private int nextOffset = 0;
+    private int nextByteOffset = 0;
+
+    LineReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Creates a reader whose first line is at the given position, for reading from the middle of a Dockerfile.
+     *
+     * @param reader         The reader, positioned at the start of a line.
+     * @param lineNumber     The 1-based number of the first line.
+     * @param offset         The character offset of the first line.
+     * @param byteOffset     The UTF-8 byte offset of the first line.
+     */
+    LineReader(Reader reader, int lineNumber, int offset, int byteOffset) {
+        this.reader = reader;
+        this.lineNumber = lineNumber - 1;
+        this.nextOffset = offset;
+        this.nextByteOffset = byteOffset;
+    }
+
+    /**
+     * Reads the next line, without its terminator.
+     *
+     * @return The line, or {@code null} at the end of input.
+     * @throws IOException If an I/O error occurs.
+     */
+    String readLine() throws IOException {
+        skipLineFeed();
+        lineOffset = nextOffset;
+        lineByteOffset = nextByteOffset;
+
+        StringBuilder line = null;
+        while (true) {
+            if (position >= limit && !fill()) {
+                return line == null ? null : finish(line.toString(), 0);
+            }
+            int i = position;
+            while (i < limit && buffer[i] != '\n' && buffer[i] != '\r') {
+                i++;
+            }
+            if (i < limit) {
+                String text;
+                if (line == null) {
+                    text = new String(buffer, position, i - position);
+                } else {
+                    text = line.append(buffer, position, i - position).toString();
+                }
+                skipLineFeed = buffer[i] == '\r';
+                position = i + 1;
+                return finish(text, 1);
+            }
+            if (line == null) {
+                line = new StringBuilder(i - position + 80);
+            }
+            line.append(buffer, position, i - position);
+            position = i;
+        }
+    }
+
+    /**
+     * @return The 1-based number of the line last returned by {@link #readLine()}.
+     */
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return The character offset at which the line last returned by {@link #readLine()} starts.
+     */
+    int getLineOffset() {
+        return lineOffset;
+    }
+
+    /**
+     * @return The UTF-8 byte offset at which the line last returned by {@link #readLine()} starts.
+     */
+    int getLineByteOffset() {
+        return lineByteOffset;
+    }
+
+    /**
+     * @return The character offset at which the next line starts.
+     * @throws IOException If an I/O error occurs.
+     */
+    int getNextLineOffset() throws IOException {
+        skipLineFeed();
+        return nextOffset;
+    }
+
+    /**
+     * @return The UTF-8 byte offset at which the next line starts.
+     * @throws IOException If an I/O error occurs.
+     */
+    int getNextLineByteOffset() throws IOException {
+        skipLineFeed();
+        return nextByteOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void skipLineFeed() throws IOException {
+        if (skipLineFeed) {
+            skipLineFeed = false;
+            if ((position < limit || fill()) && buffer[position] == '\n') {
+                position++;
+                nextOffset++;
+                nextByteOffset++;
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        if (read < 0) {
+            position = limit = 0;
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private String finish(String line, int terminatorLength) {
+        lineNumber++;
+        nextOffset = lineOffset + line.length() + terminatorLength;
+        nextByteOffset = lineByteOffset + utf8Length(line, 0, line.length()) + terminatorLength;
+        return line;
+    }
+
+    /**
+     * Counts the UTF-8 encoded length of a range of characters.
+     */
+    static int utf8Length(CharSequence s, int from, int to) {
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                // each half of a surrogate pair accounts for two of the pair's four bytes
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,202 @@
+package com.github.jimschubert.docker.parser;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory cache of parsed Dockerfiles, keyed by the SHA-256 hash of their contents and the parser's options.
+ * <p>
+ * Each entry keeps the instructions of one parse in the compact form of {@link BinaryAstCodec}, and every hit decodes
+ * its own copy of them, so callers may change the returned instructions without affecting later hits. Encoding reads
+ * every field, so the instructions of a parser with lazy arguments are left undecoded on a miss: the entry keeps the
+ * contents instead, and is encoded from a parse of its own when it's first hit.
+ * <p>
+ * The least recently used entries are evicted once the cache holds more than {@code maxEntries} Dockerfiles or more
+ * than {@code maxWeight} bytes of Dockerfile contents. The cache is safe to share between threads.
+ */
+public class ParseCache {
+    private record Key(String digest, boolean expandVariables, boolean lazyArguments, Map<String, String> buildArgs) {
+    }
+
+    /**
+     * A cached parse.
+     *
+     * @param encoded The encoded instructions, or {@code null} until a lazy parse is first hit.
+     * @param content The contents of a lazy parse which hasn't been hit yet, or {@code null}.
+     * @param weight  The size of the contents.
+     */
+    private record Entry(byte[] encoded, byte[] content, long weight) {
+    }
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a new instance of ParseCache bounded only by the number of entries.
+     *
+     * @param maxEntries The maximum number of Dockerfiles to keep.
+     */
+    public ParseCache(int maxEntries) {
+        this(maxEntries, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new instance of ParseCache.
+     *
+     * @param maxEntries The maximum number of Dockerfiles to keep.
+     * @param maxWeight  The maximum total size, in bytes, of the contents of the Dockerfiles kept.
+     */
+    public ParseCache(int maxEntries, long maxWeight) {
+        if (maxEntries < 1 || maxWeight < 1) {
+            throw new IllegalArgumentException("maxEntries and maxWeight must be at least 1");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Parses a Dockerfile, or returns a copy of the instructions of an earlier parse of the same contents.
+     *
+     * @param parser      The parser to use on a miss. Its options are part of the cache key.
+     * @param inputStream The input stream to read the Dockerfile from.
+     * @return An unmodifiable list of the parsed instructions.
+     * @throws IOException If an I/O error occurs.
+     * @throws ParserError If an error occurs while parsing the Dockerfile. Failures aren't cached.
+     */
+    public List<DockerInstruction> parseDockerfile(DockerfileParser parser, InputStream inputStream) throws IOException, ParserError {
+        return parseDockerfile(parser, inputStream.readAllBytes());
+    }
+
+    /**
+     * Parses a Dockerfile, or returns a copy of the instructions of an earlier parse of the same contents.
+     *
+     * @param parser  The parser to use on a miss. Its options are part of the cache key.
+     * @param content The contents of the Dockerfile.
+     * @return An unmodifiable list of the parsed instructions.
+     * @throws IOException If an I/O error occurs, or a cached entry can't be decoded.
+     * @throws ParserError If an error occurs while parsing the Dockerfile. Failures aren't cached.
+     */
+    public List<DockerInstruction> parseDockerfile(DockerfileParser parser, byte[] content) throws IOException, ParserError {
+        Key key = new Key(digest(content), parser.isExpandVariables(), parser.isLazyArguments(),
+                parser.isExpandVariables() ? parser.getBuildArgs() : Map.of());
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+            if (entry.encoded() == null) {
+                entry = encode(key, entry, parser);
+            }
+            // decode outside the lock, as entries are never changed once added
+            return List.copyOf(BinaryAstCodec.decode(ByteBuffer.wrap(entry.encoded())));
+        }
+        misses.incrementAndGet();
+
+        // parse outside the lock; a concurrent miss on the same key parses twice and keeps the first result
+        List<DockerInstruction> instructions = List.copyOf(parser.parseDockerfile(new ByteArrayInputStream(content)));
+        if (content.length > maxWeight) {
+            return instructions;
+        }
+        Entry added = parser.isLazyArguments()
+                ? new Entry(null, content.clone(), content.length)
+                : new Entry(BinaryAstCodec.encode(instructions), null, content.length);
+        synchronized (entries) {
+            if (entries.putIfAbsent(key, added) == null) {
+                weight += content.length;
+                evict();
+            }
+        }
+        return instructions;
+    }
+
+    /**
+     * Encodes an entry which kept the contents of a lazy parse, parsing them again so that the instructions returned on
+     * the miss stay undecoded.
+     */
+    private Entry encode(Key key, Entry entry, DockerfileParser parser) throws IOException, ParserError {
+        List<DockerInstruction> instructions = parser.parseDockerfile(new ByteArrayInputStream(entry.content()));
+        Entry encoded = new Entry(BinaryAstCodec.encode(instructions), null, entry.weight());
+        synchronized (entries) {
+            // unless it was evicted, or a concurrent hit encoded it first
+            entries.replace(key, entry, encoded);
+        }
+        return encoded;
+    }
+
+    /**
+     * @return The number of Dockerfiles currently cached.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return The total size, in bytes, of the contents of the Dockerfiles currently cached.
+     */
+    public long getWeight() {
+        synchronized (entries) {
+            return weight;
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Removes all entries. The hit, miss and eviction counts are kept.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && eldest.hasNext()) {
+            weight -= eldest.next().weight();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static String digest(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.jimschubert.docker.parser;
+
+import java.util.Map;
+
+/**
+ * Holds the mutable state of a single parse, such as the escape character and the variables declared so far. A new
+ * context is created for every Dockerfile so that parses never observe each other's state.
+ */
+final class ParseContext {
+    private final VariableScope variables;
+    private char escapeChar = '\\'; // Default escape character
+
+    /**
+     * Creates a new instance of ParseContext.
+     *
+     * @param buildArgs The build arguments, which override the defaults of ARG instructions.
+     */
+    ParseContext(Map<String, String> buildArgs) {
+        this.variables = new VariableScope(buildArgs);
+    }
+
+    /**
+     * Creates a copy of another context.
+     *
+     * @param other The context to copy.
+     */
+    ParseContext(ParseContext other) {
+        this.variables = new VariableScope(other.variables);
+        this.escapeChar = other.escapeChar;
+    }
+
+    char getEscapeChar() {
+        return escapeChar;
+    }
+
+    void setEscapeChar(char escapeChar) {
+        this.escapeChar = escapeChar;
+    }
+
+    VariableScope getVariables() {
+        return variables;
+    }
+
+    /**
+     * @param other           Another context.
+     * @param expandVariables Whether the parser expands variables, in which case they affect the result.
+     * @return {@code true} if parsing the same text with either context gives the same result.
+     */
+    boolean isEquivalent(ParseContext other, boolean expandVariables) {
+        return escapeChar == other.escapeChar && (!expandVariables || variables.equals(other.variables));
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.jimschubert.docker.parser;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+
+import java.util.List;
+
+/**
+ * The outcome of parsing one Dockerfile in a batch: either the parsed instructions or the error which stopped parsing.
+ *
+ * @param <S> The type identifying the parsed source, such as a {@link java.nio.file.Path}.
+ */
+public final class ParseResult<S> {
+    private final S source;
+    private final List<DockerInstruction> instructions;
+    private final ParserError error;
+
+    private ParseResult(S source, List<DockerInstruction> instructions, ParserError error) {
+        this.source = source;
+        this.instructions = instructions;
+        this.error = error;
+    }
+
+    /**
+     * Creates a successful result.
+     *
+     * @param source       The parsed source.
+     * @param instructions The parsed instructions.
+     * @param <S>          The source type.
+     * @return The result.
+     */
+    public static <S> ParseResult<S> success(S source, List<DockerInstruction> instructions) {
+        return new ParseResult<>(source, instructions, null);
+    }
+
+    /**
+     * Creates a failed result.
+     *
+     * @param source The source which failed to parse.
+     * @param error  The error.
+     * @param <S>    The source type.
+     * @return The result.
+     */
+    public static <S> ParseResult<S> failure(S source, ParserError error) {
+        return new ParseResult<>(source, null, error);
+    }
+
+    public S getSource() {
+        return source;
+    }
+
+    /**
+     * @return The parsed instructions, or {@code null} if parsing failed.
+     */
+    public List<DockerInstruction> getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * @return The error, or {@code null} if parsing succeeded.
+     */
+    public ParserError getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
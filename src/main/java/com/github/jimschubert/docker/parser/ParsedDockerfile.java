@@ -0,0 +1,131 @@
+package com.github.jimschubert.docker.parser;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.ast.SourceSpan;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The text of a Dockerfile together with its parsed instructions, which can be incrementally reparsed after an edit
+ * with {@link DockerfileParser#reparse(ParsedDockerfile, TextEdit)}.
+ * <p>
+ * A reparse shares the instructions it didn't need to parse again with the previous result, and an instruction's own
+ * {@link DockerInstruction#getSourceSpan() source span} stays in the text it was parsed from. Where the instruction at
+ * an index is in this text is given by {@link #getSourceSpan(int)}.
+ */
+public final class ParsedDockerfile {
+    private final String text;
+    private final List<DockerInstruction> instructions;
+    private final BitSet changedIndices;
+    private final int unfinishedOffset;
+    private final List<ParseContext> checkpoints;
+    // [first index, lines, chars, bytes]* by which the spans of instructions from the first index on are moved
+    private final int[] shifts;
+
+    ParsedDockerfile(String text, List<DockerInstruction> instructions, BitSet changedIndices, int unfinishedOffset,
+                     List<ParseContext> checkpoints, int[] shifts) {
+        this.text = text;
+        this.instructions = Collections.unmodifiableList(instructions);
+        this.changedIndices = changedIndices;
+        this.unfinishedOffset = unfinishedOffset;
+        this.checkpoints = Collections.unmodifiableList(checkpoints);
+        this.shifts = shifts;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public List<DockerInstruction> getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * Gets the source span of the instruction at {@code index} in this text.
+     *
+     * @param index The index of the instruction.
+     * @return The source span, or {@code null} if the instruction has none.
+     */
+    public SourceSpan getSourceSpan(int index) {
+        return locate(index, instructions.get(index).getSourceSpan());
+    }
+
+    /**
+     * Moves a span within the instruction at {@code index}, such as that of the instruction deferred by an ONBUILD
+     * instruction, from the text the instruction was parsed from into this text.
+     *
+     * @param index The index of the instruction the span belongs to.
+     * @param span  The span, as found in the instruction.
+     * @return The span in this text, or {@code null} if {@code span} is {@code null}.
+     */
+    public SourceSpan locate(int index, SourceSpan span) {
+        int shift = shiftAt(index);
+        if (span == null || shift < 0 || (shifts[shift + 1] == 0 && shifts[shift + 2] == 0 && shifts[shift + 3] == 0)) {
+            return span;
+        }
+        return span.shift(shifts[shift + 1], shifts[shift + 2], shifts[shift + 3]);
+    }
+
+    int getStartOffset(int index) {
+        int shift = shiftAt(index);
+        return instructions.get(index).getSourceSpan().getStartOffset() + (shift < 0 ? 0 : shifts[shift + 2]);
+    }
+
+    int getEndOffset(int index) {
+        int shift = shiftAt(index);
+        return instructions.get(index).getSourceSpan().getEndOffset() + (shift < 0 ? 0 : shifts[shift + 2]);
+    }
+
+    /**
+     * @return The position in {@link #shifts} of the shift applying to {@code index}, or -1 if its span isn't moved.
+     */
+    private int shiftAt(int index) {
+        int low = 0;
+        int high = shifts.length / 4;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (shifts[mid * 4] <= index) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low == 0 ? -1 : (low - 1) * 4;
+    }
+
+    /**
+     * @return The shifts of the instructions, as {@code [first index, lines, chars, bytes]} groups ordered by index,
+     * each applying up to the next. The array must not be changed.
+     */
+    int[] getShifts() {
+        return shifts;
+    }
+
+    /**
+     * Gets the indexes of instructions which were parsed anew rather than reused from the previous result. After a full
+     * parse, every index is set.
+     *
+     * @return The changed indexes.
+     */
+    public BitSet getChangedIndices() {
+        return (BitSet) changedIndices.clone();
+    }
+
+    /**
+     * @return The character offset of an instruction left unfinished at the end of the text, which the parser
+     * discards, or -1 if there is none.
+     */
+    int getUnfinishedOffset() {
+        return unfinishedOffset;
+    }
+
+    /**
+     * @return The parse state before every {@link Reparser#CHECKPOINT_INTERVAL}th instruction, for as many
+     * instructions as a reparse has needed so far. The contexts must be copied before they're changed.
+     */
+    List<ParseContext> getCheckpoints() {
+        return checkpoints;
+    }
+}
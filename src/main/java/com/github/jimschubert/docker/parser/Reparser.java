@@ -0,0 +1,363 @@
+package com.github.jimschubert.docker.parser;
+
+import com.github.jimschubert.docker.ast.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Reparses only the part of a Dockerfile affected by an edit.
+ * <p>
+ * Parsing restarts at the start of the line following the last instruction which ends before the edit, with the parse
+ * state rebuilt from the preceding instructions. Once past the edit, parsing stops at the first line where both the new
+ * and the previous parse are between instructions with equivalent state; from there on the previous instructions are
+ * reused. Reused instructions are shared with the previous parse rather than changed, so instead of moving their
+ * source spans, the new parse records by how much the spans from each index on are moved.
+ * <p>
+ * The parse state before every {@value #CHECKPOINT_INTERVAL}th instruction is kept as a checkpoint, so rebuilding the
+ * state only replays the instructions since the last checkpoint before the restart.
+ */
+final class Reparser {
+    private static final int UNKNOWN = -2;
+    static final int CHECKPOINT_INTERVAL = 64;
+
+    private final DockerfileParser parser;
+    private final ParsedDockerfile previous;
+    private final String oldText;
+    private final List<DockerInstruction> old;
+    private final List<ParseContext> oldCheckpoints;
+    private final int oldUnfinishedOffset;
+    private int lastExpandingIndex = UNKNOWN;
+
+    // position in the previous text up to which lines and bytes have been counted
+    private int oldCursor;
+    private int oldCursorLine;
+    private int oldCursorByte;
+
+    private Reparser(DockerfileParser parser, ParsedDockerfile previous) {
+        this.parser = parser;
+        this.previous = previous;
+        this.oldText = previous.getText();
+        this.old = previous.getInstructions();
+        this.oldCheckpoints = previous.getCheckpoints();
+        this.oldUnfinishedOffset = previous.getUnfinishedOffset();
+    }
+
+    static ParsedDockerfile parse(DockerfileParser parser, String text) throws ParserError {
+        List<DockerInstruction> instructions = new ArrayList<>();
+        try (InstructionIterator iterator = new InstructionIterator(parser, new StringReader(text))) {
+            DockerInstruction instruction;
+            while ((instruction = iterator.nextInstruction()) != null) {
+                instructions.add(instruction);
+            }
+            BitSet changed = new BitSet(instructions.size());
+            changed.set(0, instructions.size());
+            List<ParseContext> checkpoints = new ArrayList<>(instructions.size() / CHECKPOINT_INTERVAL);
+            ParseContext context = new ParseContext(parser.getBuildArgs());
+            for (int i = 0; i < instructions.size(); i++) {
+                SourceSpan span = instructions.get(i).getSourceSpan();
+                replay(parser, context, instructions.get(i), text, span.getStartOffset(), span.getEndOffset());
+                if ((i + 1) % CHECKPOINT_INTERVAL == 0) {
+                    checkpoints.add(new ParseContext(context));
+                }
+            }
+            return new ParsedDockerfile(text, instructions, changed, iterator.getUnfinishedOffset(), checkpoints,
+                    new int[0]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static ParsedDockerfile reparse(DockerfileParser parser, ParsedDockerfile previous, TextEdit edit) throws ParserError {
+        try {
+            return new Reparser(parser, previous).reparse(edit);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ParsedDockerfile reparse(TextEdit edit) throws IOException, ParserError {
+        String newText = edit.apply(oldText);
+        int oldEditEnd = edit.getOffset() + edit.getRemovedLength();
+        int newEditEnd = edit.getOffset() + edit.getInsertedText().length();
+        int delta = newEditEnd - oldEditEnd;
+
+        // find where to restart
+        int restart = firstEndingAtOrAfter(edit.getOffset());
+        int restartOffset = 0;
+        while (restart > 0) {
+            // comments and directives may sit within a continued instruction, and a comment could merge with comment
+            // lines added after it
+            if (!isLineComment(old.get(restart - 1))) {
+                restartOffset = nextLineStart(previous.getEndOffset(restart - 1));
+                if (restartOffset >= 0 && restartOffset <= edit.getOffset()) {
+                    break;
+                }
+            }
+            restart--;
+        }
+        int known = Math.min(oldCheckpoints.size(), restart / CHECKPOINT_INTERVAL);
+        List<ParseContext> checkpoints = new ArrayList<>(oldCheckpoints.subList(0, known));
+        ParseContext context = known == 0 ? new ParseContext(parser.getBuildArgs()) : new ParseContext(checkpoints.get(known - 1));
+        for (int i = known * CHECKPOINT_INTERVAL; i < restart; i++) {
+            replay(context, i);
+            if ((i + 1) % CHECKPOINT_INTERVAL == 0) {
+                checkpoints.add(new ParseContext(context));
+            }
+        }
+        if (restart == 0) {
+            restartOffset = 0;
+            oldCursorLine = 1;
+        } else {
+            SourceSpan span = previous.getSourceSpan(restart - 1);
+            oldCursor = span.getEndOffset();
+            oldCursorLine = span.getEndLine();
+            oldCursorByte = span.getEndByteOffset();
+            countTo(restartOffset);
+        }
+
+        StringReader reader = new StringReader(newText);
+        reader.skip(restartOffset);
+        ParseContext oldContext = new ParseContext(context);
+        InstructionIterator iterator = new InstructionIterator(parser, reader, context, oldCursorLine, oldCursor, oldCursorByte);
+
+        List<DockerInstruction> instructions = new ArrayList<>(old.size() + 4);
+        instructions.addAll(old.subList(0, restart));
+        List<DockerInstruction> reused = List.of();
+        int[] shifts = previous.getShifts();
+        // the spans of the prefix keep their shifts, and the spans of the instructions parsed anew are where they are
+        Shifts newShifts = new Shifts();
+        for (int i = 0; i < shifts.length && shifts[i] < restart; i += 4) {
+            newShifts.add(shifts[i], shifts[i + 1], shifts[i + 2], shifts[i + 3]);
+        }
+        newShifts.add(restart, 0, 0, 0);
+        int[] moved = null;
+        int unfinishedOffset;
+        int next = restart;
+        while (true) {
+            int line = iterator.getReader().getNextLineOffset();
+            if (line > newEditEnd && iterator.isAtBoundary()) {
+                int oldLine = line - delta;
+                while (next < old.size() && previous.getEndOffset(next) < oldLine) {
+                    replay(oldContext, next);
+                    next++;
+                }
+                boolean environmentMatters = parser.isExpandVariables() && next <= lastExpandingIndex();
+                if (startsAtOrAfter(next, oldLine) && oldContext.isEquivalent(iterator.getContext(), environmentMatters)) {
+                    countTo(oldLine);
+                    int lineDelta = iterator.getReader().getLineNumber() + 1 - oldCursorLine;
+                    int byteDelta = iterator.getReader().getNextLineByteOffset() - oldCursorByte;
+                    reused = old.subList(next, old.size());
+                    moved = new int[] {next, lineDelta, delta, byteDelta};
+                    unfinishedOffset = oldUnfinishedOffset < 0 ? -1 : oldUnfinishedOffset + delta;
+                    break;
+                }
+            }
+            boolean more = iterator.advanceLine();
+            DockerInstruction instruction;
+            while ((instruction = iterator.pollPending()) != null) {
+                instructions.add(instruction);
+            }
+            if (!more) {
+                unfinishedOffset = iterator.getUnfinishedOffset();
+                break;
+            }
+        }
+
+        BitSet changed = new BitSet(instructions.size());
+        changed.set(restart, instructions.size());
+        if (moved != null) {
+            // the reused spans move by the edit, on top of how far they had already moved
+            int from = moved[0];
+            int offset = instructions.size() - from;
+            int i = 0;
+            int[] shift = {0, 0, 0};
+            for (; i < shifts.length && shifts[i] <= from; i += 4) {
+                shift = Arrays.copyOfRange(shifts, i + 1, i + 4);
+            }
+            newShifts.add(from + offset, shift[0] + moved[1], shift[1] + moved[2], shift[2] + moved[3]);
+            for (; i < shifts.length; i += 4) {
+                newShifts.add(shifts[i] + offset, shifts[i + 1] + moved[1], shifts[i + 2] + moved[2],
+                        shifts[i + 3] + moved[3]);
+            }
+        }
+        instructions.addAll(reused);
+        return new ParsedDockerfile(newText, instructions, changed, unfinishedOffset, checkpoints, newShifts.toArray());
+    }
+
+    /**
+     * Checks that the previous parse had no instruction or comment in progress at {@code offset}, given that every
+     * instruction before {@code index} ends before it.
+     */
+    private boolean startsAtOrAfter(int index, int offset) {
+        for (int i = index; i < old.size(); i++) {
+            if (previous.getStartOffset(i) < offset) {
+                return false;
+            }
+            // comments and directives within a continued instruction are emitted before it
+            if (!isLineComment(old.get(i))) {
+                return true;
+            }
+        }
+        return oldUnfinishedOffset < 0 || oldUnfinishedOffset >= offset;
+    }
+
+    /**
+     * Finds the last previous instruction which could expand a variable, after which differences in the declared
+     * variables no longer affect parsing.
+     */
+    private int lastExpandingIndex() {
+        if (lastExpandingIndex == UNKNOWN) {
+            lastExpandingIndex = -1;
+            for (int i = old.size() - 1; i >= 0; i--) {
+                DockerInstruction instruction = old.get(i);
+                if (instruction instanceof OnBuildInstruction onBuild) {
+                    instruction = onBuild.getDeferredInstruction();
+                }
+                InstructionKind kind = instruction.getKind();
+                if (kind == InstructionKind.ENV || kind == InstructionKind.ARG || kind == InstructionKind.FROM) {
+                    int end = previous.getEndOffset(i);
+                    for (int c = previous.getStartOffset(i); c < end && lastExpandingIndex < 0; c++) {
+                        if (oldText.charAt(c) == '$') {
+                            lastExpandingIndex = i;
+                        }
+                    }
+                    if (lastExpandingIndex >= 0) {
+                        break;
+                    }
+                }
+            }
+        }
+        return lastExpandingIndex;
+    }
+
+    private static boolean isLineComment(DockerInstruction instruction) {
+        return instruction.getKind() == InstructionKind.COMMENT || instruction.getKind() == InstructionKind.DIRECTIVE;
+    }
+
+    private int firstEndingAtOrAfter(int offset) {
+        int low = 0;
+        int high = old.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (previous.getEndOffset(mid) < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the start of the line following {@code offset}, or returns -1 if the text ends without another line, in
+     * which case text appended at the end continues the line at {@code offset}.
+     */
+    private int nextLineStart(int offset) {
+        int i = offset;
+        while (i < oldText.length()) {
+            char c = oldText.charAt(i++);
+            if (c == '\n') {
+                return i;
+            } else if (c == '\r') {
+                if (i < oldText.length() && oldText.charAt(i) == '\n') {
+                    i++;
+                }
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Advances the line and byte count of the previous text to {@code offset}, which must be at the start of a line.
+     */
+    private void countTo(int offset) {
+        for (int i = oldCursor; i < offset; i++) {
+            char c = oldText.charAt(i);
+            if (c == '\n' || (c == '\r' && (i + 1 >= oldText.length() || oldText.charAt(i + 1) != '\n'))) {
+                oldCursorLine++;
+            }
+        }
+        oldCursorByte += LineReader.utf8Length(oldText, oldCursor, offset);
+        oldCursor = offset;
+    }
+
+    /**
+     * Applies the effect an instruction had on the parse state when it was parsed.
+     */
+    private void replay(ParseContext context, int index) {
+        replay(parser, context, old.get(index), oldText, previous.getStartOffset(index), previous.getEndOffset(index));
+    }
+
+    /**
+     * Applies the effect an instruction had on the parse state when it was parsed, given where it is in {@code text}.
+     */
+    private static void replay(DockerfileParser parser, ParseContext context, DockerInstruction instruction,
+                               String text, int start, int end) {
+        if (instruction instanceof DirectiveInstruction) {
+            if (text.startsWith("# escape", start)) {
+                context.setEscapeChar(text.charAt(end - 1));
+            }
+        } else if (parser.isExpandVariables()) {
+            // variables only affect the parse when they're expanded
+            replayVariables(context.getVariables(), instruction);
+        }
+    }
+
+    private static void replayVariables(VariableScope variables, DockerInstruction instruction) {
+        switch (instruction.getKind()) {
+            case FROM -> {
+                FromInstruction from = (FromInstruction) instruction;
+                variables.startStage(from.getImage(), from.getAlias());
+            }
+            case ARG -> {
+                for (KeyValuePair pair : ((ArgInstruction) instruction).getArgs()) {
+                    variables.declareArg(pair.getKey(), pair.hasEquals() ? pair.getValue() : null);
+                }
+            }
+            case ENV -> {
+                for (EnvVariable variable : ((EnvInstruction) instruction).getVariables()) {
+                    variables.declareEnv(variable.getKey(), variable.getValue());
+                }
+            }
+            default -> {
+                // other instructions don't declare variables
+            }
+        }
+    }
+
+    /**
+     * Collects the shifts of a new parse, merging those which move spans by the same amounts.
+     */
+    private static final class Shifts {
+        private int[] data = new int[16];
+        private int size;
+
+        void add(int from, int lines, int chars, int bytes) {
+            if (size > 0 && data[size - 4] == from) {
+                size -= 4;
+            }
+            if (size == 0 ? lines == 0 && chars == 0 && bytes == 0
+                    : data[size - 3] == lines && data[size - 2] == chars && data[size - 1] == bytes) {
+                return;
+            }
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = from;
+            data[size++] = lines;
+            data[size++] = chars;
+            data[size++] = bytes;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.github.jimschubert.docker.parser;
+
+import com.github.jimschubert.docker.ast.*;
+
+import java.util.Arrays;
+
+/**
+ * Maps character indexes in a logical line back to positions in the Dockerfile.
+ * <p>
+ * A logical line is assembled from segments of physical lines: continuation lines are joined and heredoc lines are
+ * appended. Each segment records where it starts in the logical line and in the source, and any index is located
+ * relative to the segment containing it.
+ */
+final class SourceMap {
+    // logical start, line, column, offset, byte offset
+    private static final int STRIDE = 5;
+
+    private int[] segments = new int[STRIDE * 4];
+    private int count = 0;
+    private final int[] position = new int[4];
+
+    void clear() {
+        count = 0;
+    }
+
+    /**
+     * @return The character offset at which the logical line starts in the source, or -1 if it is empty.
+     */
+    int getStartOffset() {
+        return count == 0 ? -1 : segments[3];
+    }
+
+    /**
+     * Records that the logical line continues, at {@code logicalStart}, with text from the given source position.
+     */
+    void addSegment(int logicalStart, int line, int column, int offset, int byteOffset) {
+        if ((count + 1) * STRIDE > segments.length) {
+            segments = Arrays.copyOf(segments, segments.length * 2);
+        }
+        int base = count * STRIDE;
+        segments[base] = logicalStart;
+        segments[base + 1] = line;
+        segments[base + 2] = column;
+        segments[base + 3] = offset;
+        segments[base + 4] = byteOffset;
+        count++;
+    }
+
+    /**
+     * Builds the source span of an instruction parsed from {@code logical.substring(from, to)}, including its parts.
+     * The deferred instruction of an ONBUILD is assigned its own span.
+     *
+     * @param logical     The logical line.
+     * @param from        The index at which the instruction text starts.
+     * @param to          The index at which the instruction text ends.
+     * @param instruction The parsed instruction.
+     * @return The span.
+     */
+    SourceSpan span(String logical, int from, int to, DockerInstruction instruction) {
+        SourceSpan.Builder builder = new SourceSpan.Builder();
+        locate(logical, from);
+        builder.start(position[0], position[1], position[2], position[3]);
+        locateEnd(logical, to);
+        builder.end(position[0], position[1], position[2], position[3]);
+
+        int lineEnd = logical.indexOf('\n', from);
+        if (lineEnd < 0 || lineEnd > to) {
+            lineEnd = to;
+        }
+        int keywordEnd = skipNonWhitespace(logical, from, lineEnd);
+        addPart(builder, SourceSpan.PartKind.KEYWORD, logical, from, keywordEnd);
+        int i = skipWhitespace(logical, keywordEnd, lineEnd);
+
+        if (instruction instanceof OnBuildInstruction onBuild && onBuild.getDeferredInstruction() != null && i < to) {
+            onBuild.getDeferredInstruction().setSourceSpan(span(logical, i, to, onBuild.getDeferredInstruction()));
+        }
+
+        InstructionKind kind = instruction.getKind();
+        if (kind == InstructionKind.FROM || kind == InstructionKind.COPY || kind == InstructionKind.ADD
+                || kind == InstructionKind.RUN || kind == InstructionKind.HEALTHCHECK) {
+            while (i < lineEnd && logical.startsWith("--", i)) {
+                int flagEnd = skipNonWhitespace(logical, i, lineEnd);
+                addPart(builder, SourceSpan.PartKind.FLAG, logical, i, flagEnd);
+                i = skipWhitespace(logical, flagEnd, lineEnd);
+            }
+        }
+
+        if (kind == InstructionKind.FROM) {
+            int imageEnd = skipNonWhitespace(logical, i, lineEnd);
+            if (imageEnd > i) {
+                addPart(builder, SourceSpan.PartKind.IMAGE, logical, i, imageEnd);
+                i = skipWhitespace(logical, imageEnd, lineEnd);
+                if (skipNonWhitespace(logical, i, lineEnd) == i + 2 && logical.startsWith("AS", i)) {
+                    int aliasStart = skipWhitespace(logical, i + 2, lineEnd);
+                    int aliasEnd = skipNonWhitespace(logical, aliasStart, lineEnd);
+                    if (aliasEnd > aliasStart) {
+                        addPart(builder, SourceSpan.PartKind.ALIAS, logical, aliasStart, aliasEnd);
+                    }
+                }
+            }
+        } else if (kind == InstructionKind.COPY || kind == InstructionKind.ADD) {
+            addPaths(builder, logical, i, lineEnd);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Adds the sources and destination of a COPY or ADD, in either shell or exec form.
+     */
+    private void addPaths(SourceSpan.Builder builder, String logical, int from, int to) {
+        int lastStart = -1;
+        int lastEnd = -1;
+        int i = from;
+        boolean execForm = i < to && logical.charAt(i) == '[';
+        if (execForm) {
+            i++;
+        }
+        while (i < to) {
+            int start;
+            int end;
+            if (execForm) {
+                start = logical.indexOf('"', i);
+                end = start < 0 || start >= to ? -1 : logical.indexOf('"', start + 1);
+                if (end < 0 || end >= to) {
+                    break;
+                }
+                end++;
+            } else {
+                start = i;
+                end = skipNonWhitespace(logical, i, to);
+            }
+            if (lastStart >= 0) {
+                addPart(builder, SourceSpan.PartKind.SOURCE, logical, lastStart, lastEnd);
+            }
+            lastStart = start;
+            lastEnd = end;
+            i = skipWhitespace(logical, end, to);
+        }
+        if (lastStart >= 0) {
+            addPart(builder, SourceSpan.PartKind.DESTINATION, logical, lastStart, lastEnd);
+        }
+    }
+
+    private void addPart(SourceSpan.Builder builder, SourceSpan.PartKind kind, String logical, int from, int to) {
+        builder.part(kind);
+        locate(logical, from);
+        builder.partStart(position[0], position[1], position[2], position[3]);
+        locateEnd(logical, to);
+        builder.partEnd(position[0], position[1], position[2], position[3]);
+    }
+
+    /**
+     * Locates the position just past the character preceding {@code to}.
+     */
+    private void locateEnd(String logical, int to) {
+        if (to == 0) {
+            locate(logical, 0);
+            return;
+        }
+        locate(logical, to - 1);
+        position[1]++;
+        position[2]++;
+        position[3] += LineReader.utf8Length(logical, to - 1, to);
+    }
+
+    private void locate(String logical, int index) {
+        int segment = count - 1;
+        while (segment > 0 && segments[segment * STRIDE] > index) {
+            segment--;
+        }
+        int base = segment * STRIDE;
+        int segmentStart = segments[base];
+        int delta = index - segmentStart;
+        position[0] = segments[base + 1];
+        position[1] = segments[base + 2] + delta;
+        position[2] = segments[base + 3] + delta;
+        position[3] = segments[base + 4] + LineReader.utf8Length(logical, segmentStart, index);
+    }
+
+    private static int skipWhitespace(String s, int from, int to) {
+        int i = from;
+        while (i < to && DockerfileLexer.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipNonWhitespace(String s, int from, int to) {
+        int i = from;
+        while (i < to && !DockerfileLexer.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.jimschubert.docker.parser;
+
+/**
+ * A change to the text of a Dockerfile: a range of characters replaced with new text.
+ */
+public final class TextEdit {
+    private final int offset;
+    private final int removedLength;
+    private final String insertedText;
+
+    /**
+     * Creates a new instance of TextEdit.
+     *
+     * @param offset        The character offset at which the edit starts.
+     * @param removedLength The number of characters removed.
+     * @param insertedText  The text inserted in their place.
+     */
+    public TextEdit(int offset, int removedLength, String insertedText) {
+        if (offset < 0 || removedLength < 0) {
+            throw new IllegalArgumentException("Edit offset and removed length must not be negative.");
+        }
+        this.offset = offset;
+        this.removedLength = removedLength;
+        this.insertedText = insertedText == null ? "" : insertedText;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getRemovedLength() {
+        return removedLength;
+    }
+
+    public String getInsertedText() {
+        return insertedText;
+    }
+
+    /**
+     * Applies this edit.
+     *
+     * @param text The text to edit.
+     * @return The edited text.
+     */
+    public String apply(String text) {
+        if (offset + removedLength > text.length()) {
+            throw new IllegalArgumentException("Edit at " + offset + " removing " + removedLength + " characters is outside of text of length " + text.length());
+        }
+        return text.substring(0, offset) + insertedText + text.substring(offset + removedLength);
+    }
+}
@@ -0,0 +1,22 @@
+package com.github.jimschubert.docker.parser;
+
+/**
+ * Wraps a {@link ParserError} thrown where checked exceptions aren't allowed, such as while iterating a stream of
+ * instructions.
+ */
+public class UncheckedParserError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new instance of UncheckedParserError.
+     * @param cause The parser error.
+     */
+    public UncheckedParserError(ParserError cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized ParserError getCause() {
+        return (ParserError) super.getCause();
+    }
+}
@@ -0,0 +1,160 @@
+package com.github.jimschubert.docker.parser;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Tracks the variables visible while expanding a Dockerfile, following BuildKit's scoping rules.
+ * <p>
+ * ARG instructions before the first FROM declare global arguments, which are only visible to FROM instructions and,
+ * within a stage, to an ARG redeclaring them without a default. Each FROM starts a stage whose ARG and ENV variables are
+ * visible to the instructions after them in that stage, with ENV taking precedence over ARG. A stage built from an
+ * earlier stage inherits its ENV variables, but not its arguments. A build argument overrides the default of every ARG
+ * declaring it, and is never visible without one.
+ * <p>
+ * The platform arguments BuildKit predefines, such as {@code BUILDPLATFORM} and {@code TARGETARCH}, are global
+ * arguments whose values come from the build arguments, and are unset when none are given.
+ */
+public final class VariableScope {
+    /**
+     * The names of the arguments BuildKit predefines in the global scope for the build and target platforms.
+     */
+    public static final Set<String> PLATFORM_ARGS = Set.of("BUILDPLATFORM", "BUILDOS", "BUILDARCH", "BUILDVARIANT",
+            "TARGETPLATFORM", "TARGETOS", "TARGETARCH", "TARGETVARIANT");
+
+    private final Map<String, String> buildArgs;
+    private final Map<String, String> globalArgs;
+    private Map<String, String> stageArgs;
+    private Map<String, String> env;
+    // the ENV variables of each named stage, by lower case name
+    private final Map<String, Map<String, String>> stageEnv;
+    private String stageName;
+    private boolean inStage;
+
+    /**
+     * Creates a new instance of VariableScope.
+     *
+     * @param buildArgs The build arguments, which override the defaults of ARG instructions.
+     */
+    public VariableScope(Map<String, String> buildArgs) {
+        this.buildArgs = buildArgs;
+        this.globalArgs = new HashMap<>();
+        this.stageArgs = new HashMap<>();
+        this.env = new HashMap<>();
+        this.stageEnv = new HashMap<>();
+    }
+
+    /**
+     * Creates a copy of another scope.
+     *
+     * @param other The scope to copy.
+     */
+    public VariableScope(VariableScope other) {
+        this.buildArgs = other.buildArgs;
+        this.globalArgs = new HashMap<>(other.globalArgs);
+        this.stageArgs = new HashMap<>(other.stageArgs);
+        this.env = new HashMap<>(other.env);
+        // stage environments are never modified once their stage ends, so only the current one is copied
+        this.stageEnv = new HashMap<>(other.stageEnv);
+        this.stageName = other.stageName;
+        if (stageName != null) {
+            stageEnv.put(stageName, env);
+        }
+        this.inStage = other.inStage;
+    }
+
+    /**
+     * Declares an argument, in the global scope before the first stage and in the current stage after it.
+     *
+     * @param name         The name of the argument.
+     * @param defaultValue The expanded default value, or {@code null} if the ARG doesn't have one.
+     */
+    public void declareArg(String name, String defaultValue) {
+        String value = buildArgs.get(name);
+        if (value == null) {
+            value = defaultValue != null || !inStage ? defaultValue : globalArgs.get(name);
+        }
+        (inStage ? stageArgs : globalArgs).put(name, value);
+    }
+
+    /**
+     * Declares an environment variable in the current stage.
+     *
+     * @param name  The name of the variable.
+     * @param value The expanded value.
+     */
+    public void declareEnv(String name, String value) {
+        env.put(name, value);
+    }
+
+    /**
+     * Ends the current stage, if any, and starts a new one.
+     *
+     * @param image The expanded image the stage is built from, which may name an earlier stage.
+     * @param name  The name of the new stage, or {@code null}.
+     */
+    public void startStage(String image, String name) {
+        if (inStage) {
+            stageArgs = new HashMap<>();
+        }
+        Map<String, String> base = image != null ? stageEnv.get(image.toLowerCase(Locale.ROOT)) : null;
+        env = base != null ? new HashMap<>(base) : new HashMap<>();
+        stageName = name != null ? name.toLowerCase(Locale.ROOT) : null;
+        if (stageName != null) {
+            stageEnv.put(stageName, env);
+        }
+        inStage = true;
+    }
+
+    /**
+     * Looks up a variable as seen by an instruction in the current stage, or by a global ARG before the first stage.
+     *
+     * @param name The name of the variable.
+     * @return Its value, or {@code null} if it's unset.
+     */
+    public String get(String name) {
+        String value = env.get(name);
+        if (value != null) {
+            return value;
+        }
+        return inStage ? stageArgs.get(name) : globalArgs.get(name);
+    }
+
+    /**
+     * Looks up a global argument, as seen by a FROM instruction.
+     *
+     * @param name The name of the argument.
+     * @return Its value, or {@code null} if it's unset.
+     */
+    public String getGlobal(String name) {
+        String value = globalArgs.get(name);
+        if (value == null && !globalArgs.containsKey(name) && PLATFORM_ARGS.contains(name)) {
+            return buildArgs.get(name);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof VariableScope other)) {
+            return false;
+        }
+        return inStage == other.inStage
+                && buildArgs.equals(other.buildArgs)
+                && globalArgs.equals(other.globalArgs)
+                && stageArgs.equals(other.stageArgs)
+                && env.equals(other.env)
+                && stageEnv.equals(other.stageEnv);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(inStage, globalArgs, stageArgs, env);
+    }
+}
@@ -2,14 +2,40 @@ package com.github.jimschubert.docker.printer;
 
 import com.github.jimschubert.docker.ast.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
  * A utility class to print an AST object as a string.
+ * <p>
+ * The fields of each class are looked up once and cached as method handles, so printing doesn't reflect over each
+ * object it visits.
  */
 public class ASTPrinter {
+    private static final ClassValue<ClassPrinter> PRINTERS = new ClassValue<>() {
+        @Override
+        protected ClassPrinter computeValue(Class<?> type) {
+            return printerFor(type);
+        }
+    };
+
+    private static final int CACHED_INDENTS = 16;
+    private static final String[] INDENTS = new String[CACHED_INDENTS];
+
+    static {
+        for (int i = 0; i < CACHED_INDENTS; i++) {
+            INDENTS[i] = "  ".repeat(i);
+        }
+    }
 
     /**
      * Converts an AST object to a string.
@@ -18,94 +44,184 @@ public class ASTPrinter {
      */
     public static String toASTString(Object obj) {
         StringBuilder sb = new StringBuilder();
-        printObject(obj, sb, 0);
+        try {
+            printObject(obj, sb, 0);
+        } catch (IOException e) {
+            // a StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
         return sb.toString();
     }
 
+    /**
+     * Prints an AST object, producing the same text as {@link #toASTString(Object)}.
+     * @param obj The AST object to print.
+     * @param out The destination to print to.
+     * @throws IOException If an I/O error occurs while writing to {@code out}.
+     */
+    public static void print(Object obj, Appendable out) throws IOException {
+        printObject(obj, out, 0);
+    }
+
     /**
      * Recursively prints an object and its fields.
      * @param obj The object to print.
-     * @param sb The StringBuilder to append to.
+     * @param out The destination to print to.
      * @param indent The current indentation level.
      */
-    private static void printObject(Object obj, StringBuilder sb, int indent) {
+    private static void printObject(Object obj, Appendable out, int indent) throws IOException {
         if (obj == null) {
-            sb.append("null");
+            out.append("null");
             return;
         }
 
         if (obj instanceof String) {
-            sb.append("\"").append(obj).append("\"");
+            out.append('"').append((String) obj).append('"');
             return;
         }
 
-        Class<?> clazz = obj.getClass();
-        sb.append(clazz.getSimpleName()).append(" {");
+        if (obj instanceof DockerInstruction instruction) {
+            // fields are read directly below, so lazily parsed instructions must be decoded first
+            instruction.decode();
+        }
+
+        ClassPrinter printer = PRINTERS.get(obj.getClass());
+        out.append(printer.header);
+        printer.printFields(obj, out, indent);
+        newLine(out, indent).append('}');
+    }
+
+    private static void printValue(Object value, Appendable out, int indent) throws IOException {
+        if (value instanceof Collection) {
+            out.append('[');
+            for (Object item : (Collection<?>) value) {
+                newLine(out, indent + 1);
+                printObject(item, out, indent + 1);
+            }
+            newLine(out, indent).append(']');
+        } else if (value instanceof CharSequence || value instanceof Character || value instanceof byte[]) {
+            out.append('"').append(String.valueOf(value)).append('"');
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value.toString());
+        } else if (value instanceof Enum<?>) {
+            out.append(value.getClass().getSimpleName()).append('.').append(value.toString());
+        } else if (value instanceof Map) {
+            out.append('{');
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                newLine(out, indent + 1).append(String.valueOf(entry.getKey())).append(": ");
+                printObject(entry.getValue(), out, indent + 1);
+            }
+            newLine(out, indent).append('}');
+        } else {
+            out.append(String.valueOf(value));
+        }
+    }
+
+    private static Appendable newLine(Appendable out, int indent) throws IOException {
+        return out.append('\n').append(indent < CACHED_INDENTS ? INDENTS[indent] : "  ".repeat(indent));
+    }
 
-        // if class is KeyValuePair…
+    private static ClassPrinter printerFor(Class<?> clazz) {
+        String header = clazz.getSimpleName() + " {";
+        // these exact classes print a summary line rather than their fields
         if (clazz == KeyValuePair.class) {
-            KeyValuePair pair = (KeyValuePair) obj;
-            sb.append("\n").append("  ".repeat(indent + 1))
-                    .append("key: ").append(pair.getKey()).append(", ")
-                    .append("value: ").append(pair.getValue()).append(", ")
-                    .append("hasEquals: ").append(pair.hasEquals()).append(", ")
-                    .append("quoting: ").append(pair.getQuoting());
+            return new ClassPrinter(header) {
+                @Override
+                void printFields(Object obj, Appendable out, int indent) throws IOException {
+                    KeyValuePair pair = (KeyValuePair) obj;
+                    newLine(out, indent + 1)
+                            .append("key: ").append(pair.getKey()).append(", ")
+                            .append("value: ").append(pair.getValue()).append(", ")
+                            .append("hasEquals: ").append(String.valueOf(pair.hasEquals())).append(", ")
+                            .append("quoting: ").append(String.valueOf(pair.getQuoting()));
+                }
+            };
         } else if (clazz == EnvVariable.class) {
-            EnvVariable env = (EnvVariable) obj;
-            sb.append("\n").append("  ".repeat(indent + 1))
-                    .append("key: ").append(env.getKey()).append(", ")
-                    .append("value: ").append(env.getValue()).append(", ")
-                    .append("deprecatedSyntax: ").append(env.isDeprecatedSyntax()).append(", ")
-                    .append("quoting: ").append(env.getQuoting());
+            return new ClassPrinter(header) {
+                @Override
+                void printFields(Object obj, Appendable out, int indent) throws IOException {
+                    EnvVariable env = (EnvVariable) obj;
+                    newLine(out, indent + 1)
+                            .append("key: ").append(env.getKey()).append(", ")
+                            .append("value: ").append(env.getValue()).append(", ")
+                            .append("deprecatedSyntax: ").append(String.valueOf(env.isDeprecatedSyntax())).append(", ")
+                            .append("quoting: ").append(String.valueOf(env.getQuoting()));
+                }
+            };
         } else if (clazz == CmdInstruction.class || clazz == VolumeInstruction.class || clazz == EntrypointInstruction.class) {
-            CommandInstruction cmd = (CommandInstruction) obj;
-            sb.append("\n").append("  ".repeat(indent + 1))
-                    .append("form: ").append(cmd.getForm()).append(", ")
-                    .append("command: ").append(cmd.getCommand());
+            return new ClassPrinter(header) {
+                @Override
+                void printFields(Object obj, Appendable out, int indent) throws IOException {
+                    CommandInstruction cmd = (CommandInstruction) obj;
+                    newLine(out, indent + 1)
+                            .append("form: ").append(String.valueOf(cmd.getForm())).append(", ")
+                            .append("command: ").append(String.valueOf(cmd.getCommand()));
+                }
+            };
         }
+        return new FieldPrinter(header, accessors(clazz));
+    }
 
-        else {
-            Field[] fields = clazz.getDeclaredFields();
-            for (Field field : fields) {
-                field.setAccessible(true);
-                String fieldName = field.getName().replace("val$", "");
-                if (fieldName.equals("this$0")) {
-                    continue;
+    private static List<FieldAccessor> accessors(Class<?> clazz) {
+        List<FieldAccessor> accessors = new ArrayList<>();
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodType type = MethodType.methodType(Object.class, Object.class);
+        for (Field field : clazz.getDeclaredFields()) {
+            field.setAccessible(true);
+            String fieldName = field.getName().replace("val$", "");
+            // transient fields cache values derived from the others
+            if (fieldName.equals("this$0") || Modifier.isTransient(field.getModifiers())) {
+                continue;
+            }
+            try {
+                MethodHandle getter = lookup.unreflectGetter(field);
+                if (Modifier.isStatic(field.getModifiers())) {
+                    getter = MethodHandles.dropArguments(getter, 0, Object.class);
                 }
+                accessors.add(new FieldAccessor(fieldName, getter.asType(type)));
+            } catch (IllegalAccessException e) {
+                // the field was made accessible above
+                throw new IllegalStateException(e);
+            }
+        }
+        return accessors;
+    }
+
+    private abstract static class ClassPrinter {
+        final String header;
+
+        ClassPrinter(String header) {
+            this.header = header;
+        }
+
+        abstract void printFields(Object obj, Appendable out, int indent) throws IOException;
+    }
+
+    private static final class FieldPrinter extends ClassPrinter {
+        private final FieldAccessor[] accessors;
+
+        FieldPrinter(String header, List<FieldAccessor> accessors) {
+            super(header);
+            this.accessors = accessors.toArray(new FieldAccessor[0]);
+        }
+
+        @Override
+        void printFields(Object obj, Appendable out, int indent) throws IOException {
+            for (FieldAccessor accessor : accessors) {
+                Object value;
                 try {
-                    Object value = field.get(obj);
-                    sb.append("\n").append("  ".repeat(indent + 1))
-                            .append(fieldName).append(": ");
-
-                    if (value instanceof Collection) {
-                        sb.append("[");
-                        for (Object item : (Collection<?>) value) {
-                            sb.append("\n").append("  ".repeat(indent + 2));
-                            printObject(item, sb, indent + 2);
-                        }
-                        sb.append("\n").append("  ".repeat(indent + 1)).append("]");
-                    } else if (value instanceof String || value instanceof Character || value instanceof byte[]) {
-                        sb.append("\"").append(value).append("\"");
-                    } else if (value instanceof Number || value instanceof Boolean) {
-                        sb.append(value);
-                    } else if (value instanceof Enum<?>) {
-                        sb.append(value.getClass().getSimpleName()).append(".").append(value);
-                    } else if (value instanceof Map) {
-                        sb.append("{");
-                        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
-                            sb.append("\n").append("  ".repeat(indent + 2))
-                                    .append(entry.getKey()).append(": ");
-                            printObject(entry.getValue(), sb, indent + 2);
-                        }
-                        sb.append("\n").append("  ".repeat(indent + 1)).append("}");
-                    } else {
-                        sb.append(value);
-                    }
-                } catch (IllegalAccessException e) {
-                    sb.append("ERROR");
+                    value = (Object) accessor.getter().invokeExact(obj);
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
                 }
+                newLine(out, indent + 1).append(accessor.name()).append(": ");
+                printValue(value, out, indent + 1);
             }
         }
-        sb.append("\n").append("  ".repeat(indent)).append("}");
     }
-}
\ No newline at end of file
+
+    private record FieldAccessor(String name, MethodHandle getter) {
+    }
+}
@@ -2,6 +2,8 @@ package com.github.jimschubert.docker.printer;
 
 import com.github.jimschubert.docker.ast.DockerInstruction;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 public class DockerfilePrinter {
@@ -13,9 +15,25 @@ public class DockerfilePrinter {
 
     public String print() {
         StringBuilder sb = new StringBuilder();
-        for (DockerInstruction instruction : instructions) {
-            sb.append(instruction.toCanonicalForm()).append("\n");
+        try {
+            print(sb);
+        } catch (IOException e) {
+            // a StringBuilder never throws
+            throw new UncheckedIOException(e);
         }
         return sb.toString();
     }
+
+    /**
+     * Prints each instruction in canonical form, one per line, directly into {@code out}.
+     *
+     * @param out The destination to print to, such as a {@link java.io.Writer} or {@link StringBuilder}.
+     * @throws IOException If an I/O error occurs while writing to {@code out}.
+     */
+    public void print(Appendable out) throws IOException {
+        for (DockerInstruction instruction : instructions) {
+            instruction.appendCanonicalForm(out);
+            out.append('\n');
+        }
+    }
 }
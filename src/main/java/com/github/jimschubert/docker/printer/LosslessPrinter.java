@@ -0,0 +1,277 @@
+package com.github.jimschubert.docker.printer;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.ast.SourceSpan;
+import com.github.jimschubert.docker.parser.ParsedDockerfile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prints a possibly edited list of instructions back into the text of the Dockerfile they were parsed from, keeping
+ * the original text of everything which wasn't modified.
+ * <p>
+ * Each parsed instruction owns its {@link SourceSpan} and the trivia before it: the whitespace, blank lines and any
+ * other text between it and the previous instruction. An instruction from the parsed Dockerfile is copied verbatim,
+ * along with its trivia, unless {@link DockerInstruction#isModified()}, in which case it's rendered in canonical form in
+ * place of its original text. Instructions which weren't parsed from the Dockerfile, such as newly added ones, are
+ * rendered on a line of their own after the preceding instruction. The text and trivia of removed instructions are
+ * dropped. Printing unedited instructions reproduces the original text exactly.
+ * <p>
+ * A comment inside a continued instruction is parsed as its own instruction ahead of the one enclosing it. It's
+ * printed as part of the enclosing instruction, unless either of them was modified, in which case both are rendered.
+ */
+public class LosslessPrinter {
+    private final ParsedDockerfile original;
+    private final List<DockerInstruction> instructions;
+
+    /**
+     * Creates a new instance of LosslessPrinter.
+     *
+     * @param original     The parsed Dockerfile whose text is reused.
+     * @param instructions The instructions to print, typically an edited copy of the original instructions.
+     */
+    public LosslessPrinter(ParsedDockerfile original, List<DockerInstruction> instructions) {
+        this.original = original;
+        this.instructions = instructions;
+    }
+
+    public String print() {
+        StringBuilder sb = new StringBuilder(original.getText().length() + 64);
+        try {
+            print(sb);
+        } catch (IOException e) {
+            // a StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Prints the instructions directly into {@code out}.
+     *
+     * @param out The destination to print to.
+     * @throws IOException If an I/O error occurs while writing to {@code out}.
+     */
+    public void print(Appendable out) throws IOException {
+        new Printer(original.getText(), out, originals()).print(instructions);
+    }
+
+    /**
+     * Describes each original instruction: where its leading trivia starts, and which comments and directives are
+     * embedded within it, or which instruction it's embedded within.
+     */
+    private Map<DockerInstruction, Original> originals() {
+        List<DockerInstruction> parsed = original.getInstructions();
+        Map<DockerInstruction, Original> originals = new IdentityHashMap<>(parsed.size() * 2);
+        // embedded instructions precede the one enclosing them, so find them walking backwards
+        DockerInstruction enclosing = null;
+        for (int i = parsed.size() - 1; i >= 0; i--) {
+            DockerInstruction instruction = parsed.get(i);
+            SourceSpan span = original.getSourceSpan(i);
+            if (span == null) {
+                continue;
+            }
+            if (enclosing != null && encloses(originals.get(enclosing).span(), span)) {
+                originals.put(instruction, new Original(span, -1, enclosing, null));
+                originals.get(enclosing).embedded().add(0, instruction);
+            } else {
+                originals.put(instruction, new Original(span, 0, null, new ArrayList<>(0)));
+                enclosing = instruction;
+            }
+        }
+        int previousEnd = 0;
+        for (DockerInstruction instruction : parsed) {
+            Original node = originals.get(instruction);
+            if (node != null && node.enclosing() == null) {
+                originals.put(instruction, new Original(node.span(), previousEnd, null, node.embedded()));
+                previousEnd = node.span().getEndOffset();
+            }
+        }
+        return originals;
+    }
+
+    private static boolean encloses(SourceSpan outer, SourceSpan inner) {
+        return outer.getStartOffset() <= inner.getStartOffset() && inner.getEndOffset() <= outer.getEndOffset();
+    }
+
+    /**
+     * An instruction as it was parsed.
+     *
+     * @param span        Where the instruction is in the text.
+     * @param triviaStart The offset at which the trivia before the instruction starts, or -1 if it's embedded.
+     * @param enclosing   The instruction this one is embedded within, or {@code null}.
+     * @param embedded    The instructions embedded within this one, in order, or {@code null} if it's embedded.
+     */
+    private record Original(SourceSpan span, int triviaStart, DockerInstruction enclosing,
+                            List<DockerInstruction> embedded) {
+    }
+
+    private static final class Printer {
+        private final String source;
+        private final Appendable out;
+        private final Map<DockerInstruction, Original> originals;
+        // the source offset up to which text has been printed or skipped
+        private int cursor = 0;
+        // whether the output is empty or ends with a line break
+        private boolean atLineStart = true;
+
+        Printer(String source, Appendable out, Map<DockerInstruction, Original> originals) {
+            this.source = source;
+            this.out = out;
+            this.originals = originals;
+        }
+
+        void print(List<DockerInstruction> instructions) throws IOException {
+            int size = instructions.size();
+            for (int i = 0; i < size; i++) {
+                DockerInstruction instruction = instructions.get(i);
+                Original node = originals.get(instruction);
+                if (node == null) {
+                    appendNew(instruction);
+                    continue;
+                }
+
+                if (node.enclosing() != null) {
+                    DockerInstruction enclosing = node.enclosing();
+                    List<DockerInstruction> group = originals.get(enclosing).embedded();
+                    int enclosingIndex = i + group.size() - group.indexOf(instruction);
+                    if (enclosingIndex >= size || instructions.get(enclosingIndex) != enclosing) {
+                        // the enclosing instruction was removed or moved
+                        appendNew(instruction);
+                    } else if (!isVerbatim(instructions, enclosingIndex)) {
+                        // render it on its own line ahead of the enclosing instruction, as the parser ordered them
+                        int enclosingStart = originals.get(enclosing).span().getStartOffset();
+                        appendTrivia(originals.get(enclosing).triviaStart(), enclosingStart);
+                        instruction.appendCanonicalForm(out);
+                        out.append('\n');
+                        atLineStart = true;
+                    }
+                    // otherwise it's printed verbatim with the enclosing instruction
+                    continue;
+                }
+
+                SourceSpan span = node.span();
+                int start = span.getStartOffset();
+                int end = span.getEndOffset();
+                if (start < cursor) {
+                    // moved before an instruction which preceded it; it keeps its text but not its trivia
+                    if (!atLineStart) {
+                        out.append('\n');
+                    }
+                } else {
+                    appendTrivia(node.triviaStart(), start);
+                    cursor = end;
+                }
+                if (isVerbatim(instructions, i)) {
+                    out.append(source, start, end);
+                } else {
+                    instruction.appendCanonicalForm(out);
+                }
+                atLineStart = false;
+            }
+
+            // trailing trivia follows the last original instruction, even if it was removed
+            int lastEnd = 0;
+            for (Original node : originals.values()) {
+                lastEnd = Math.max(lastEnd, node.span().getEndOffset());
+            }
+            appendTrivia(lastEnd, source.length());
+        }
+
+        /**
+         * Checks whether an original instruction can be copied verbatim: it's unmodified, and so are the instructions
+         * embedded within it, which immediately precede it.
+         */
+        private boolean isVerbatim(List<DockerInstruction> instructions, int index) {
+            DockerInstruction instruction = instructions.get(index);
+            if (instruction.isModified()) {
+                return false;
+            }
+            List<DockerInstruction> group = originals.get(instruction).embedded();
+            int first = index - group.size();
+            if (first < 0) {
+                return false;
+            }
+            for (int j = 0; j < group.size(); j++) {
+                DockerInstruction embedded = instructions.get(first + j);
+                if (embedded != group.get(j) || embedded.isModified()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Copies the text between {@code from} and {@code to}, skipping any text before the cursor. When text was
+         * skipped because its instruction was removed, and the output already ends a line, the line break left over
+         * from the removed instruction is dropped.
+         */
+        private void appendTrivia(int from, int to) throws IOException {
+            int start = Math.max(from, cursor);
+            if (start > to) {
+                return;
+            }
+            if (start > cursor && atLineStart) {
+                int lineBreak = source.indexOf('\n', start);
+                if (lineBreak >= 0 && lineBreak < to) {
+                    start = lineBreak + 1;
+                }
+            }
+            if (!atLineStart && to < source.length() && !containsLineBreak(start, to)) {
+                // instructions always start on a new line
+                out.append('\n');
+                atLineStart = true;
+            }
+            if (start < to) {
+                out.append(source, start, to);
+                atLineStart = source.charAt(to - 1) == '\n';
+            }
+            cursor = to;
+        }
+
+        private void appendNew(DockerInstruction instruction) throws IOException {
+            if (!atLineStart) {
+                // end the preceding instruction's line, keeping its original line break
+                int lineEnd = lineEnd(cursor);
+                if (lineEnd > cursor) {
+                    out.append(source, cursor, lineEnd);
+                    cursor = lineEnd;
+                } else {
+                    out.append('\n');
+                }
+            }
+            instruction.appendCanonicalForm(out);
+            out.append('\n');
+            atLineStart = true;
+        }
+
+        private boolean containsLineBreak(int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (source.charAt(i) == '\n') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Finds the end of the line containing an offset, including its line break, if only whitespace follows the
+         * offset on that line.
+         */
+        private int lineEnd(int offset) {
+            int end = offset;
+            while (end < source.length() && (source.charAt(end) == ' ' || source.charAt(end) == '\t' || source.charAt(end) == '\r')) {
+                end++;
+            }
+            if (end < source.length() && source.charAt(end) == '\n') {
+                return end + 1;
+            }
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.github.jimschubert.docker.ast;
+
+import com.github.jimschubert.docker.parser.DockerfileParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DockerInstructionWalkerTest {
+    private static final String DOCKERFILE = """
+            # syntax=docker/dockerfile:1
+            ARG BASE=alpine VERSION=3.20
+            FROM ${BASE}:${VERSION} AS build
+            LABEL org.opencontainers.image.title="app" maintainer=me
+            ENV APP_HOME=/app
+            EXPOSE 80 443/tcp
+            RUN --mount=type=cache,target=/root/.cache make
+            COPY <<EOF /etc/app.conf
+            debug=true
+            EOF
+            ONBUILD RUN --mount=type=secret,target=/run/token,id=token make release
+            ONBUILD ARG FLAVOR
+            CMD ["/app/run"]
+            """;
+
+    @Test
+    void testWalkVisitsNestedNodes() throws Exception {
+        List<String> visited = new ArrayList<>();
+        new DockerInstructionWalker<Void>() {
+            @Override
+            public Void visitKeyValuePair(KeyValuePair pair) {
+                visited.add("pair " + pair.getKey());
+                return null;
+            }
+
+            @Override
+            public Void visitEnvVariable(EnvVariable variable) {
+                visited.add("env " + variable.getKey());
+                return null;
+            }
+
+            @Override
+            public Void visitPort(ExposeInstruction.Port port) {
+                visited.add("port " + port.getPort());
+                return null;
+            }
+
+            @Override
+            public Void visitMount(RunInstruction.Mount mount) {
+                visited.add("mount " + mount.getTarget());
+                return null;
+            }
+
+            @Override
+            public Void visitHeredoc(Heredoc heredoc) {
+                visited.add("heredoc " + heredoc.getName());
+                return null;
+            }
+        }.walk(parse(DOCKERFILE));
+
+        assertEquals(List.of("pair BASE", "pair VERSION", "pair org.opencontainers.image.title", "pair maintainer",
+                "env APP_HOME", "port 80", "port 443", "mount /root/.cache", "heredoc EOF", "mount /run/token", "pair FLAVOR"), visited);
+    }
+
+    @Test
+    void testAggregateResults() throws Exception {
+        DockerInstructionWalker<Integer> counter = new DockerInstructionWalker<>() {
+            @Override
+            protected Integer defaultResult() {
+                return 0;
+            }
+
+            @Override
+            protected Integer aggregateResult(Integer aggregate, Integer next) {
+                return aggregate + next;
+            }
+
+            @Override
+            public Integer visitRun(RunInstruction instruction) {
+                return 1 + super.visitRun(instruction);
+            }
+
+            @Override
+            public Integer visitMount(RunInstruction.Mount mount) {
+                return 10;
+            }
+        };
+
+        // two RUN instructions, one of them deferred, each with one mount
+        assertEquals(Integer.valueOf(22), counter.walk(parse(DOCKERFILE)));
+        assertEquals(Integer.valueOf(0), counter.walk(List.of()));
+    }
+
+    @Test
+    void testAcceptDispatchesOnType() throws Exception {
+        List<DockerInstruction> instructions = new ArrayList<>(parse(DOCKERFILE + """
+                ADD https://example.com/app.tgz /app
+                COPY . /src
+                ENTRYPOINT ["/init"]
+                HEALTHCHECK NONE
+                MAINTAINER someone
+                SHELL ["/bin/bash", "-c"]
+                STOPSIGNAL SIGTERM
+                USER app
+                VOLUME /data
+                WORKDIR /app
+                FETCH something
+                """));
+        instructions.add(new CommentInstruction("comment"));
+
+        KindVisitor visitor = new KindVisitor();
+        for (DockerInstruction instruction : instructions) {
+            assertEquals(instruction.getKind(), instruction.accept(visitor));
+        }
+        assertEquals(InstructionKind.values().length, instructions.stream().map(DockerInstruction::getKind).distinct().count());
+    }
+
+    private static List<DockerInstruction> parse(String dockerfile) throws Exception {
+        try (InputStream inputStream = new ByteArrayInputStream(dockerfile.getBytes(StandardCharsets.UTF_8))) {
+            return new DockerfileParser().parseDockerfile(inputStream);
+        }
+    }
+
+    /**
+     * Returns the kind matching the visit method called.
+     */
+    private static final class KindVisitor implements DockerInstructionVisitor<InstructionKind> {
+        @Override
+        public InstructionKind visitAdd(AddInstruction instruction) {
+            return InstructionKind.ADD;
+        }
+
+        @Override
+        public InstructionKind visitArg(ArgInstruction instruction) {
+            return InstructionKind.ARG;
+        }
+
+        @Override
+        public InstructionKind visitCmd(CmdInstruction instruction) {
+            return InstructionKind.CMD;
+        }
+
+        @Override
+        public InstructionKind visitComment(CommentInstruction instruction) {
+            return InstructionKind.COMMENT;
+        }
+
+        @Override
+        public InstructionKind visitCopy(CopyInstruction instruction) {
+            return InstructionKind.COPY;
+        }
+
+        @Override
+        public InstructionKind visitDirective(DirectiveInstruction instruction) {
+            return InstructionKind.DIRECTIVE;
+        }
+
+        @Override
+        public InstructionKind visitEntrypoint(EntrypointInstruction instruction) {
+            return InstructionKind.ENTRYPOINT;
+        }
+
+        @Override
+        public InstructionKind visitEnv(EnvInstruction instruction) {
+            return InstructionKind.ENV;
+        }
+
+        @Override
+        public InstructionKind visitExpose(ExposeInstruction instruction) {
+            return InstructionKind.EXPOSE;
+        }
+
+        @Override
+        public InstructionKind visitFrom(FromInstruction instruction) {
+            return InstructionKind.FROM;
+        }
+
+        @Override
+        public InstructionKind visitHealthCheck(HealthCheckInstruction instruction) {
+            return InstructionKind.HEALTHCHECK;
+        }
+
+        @Override
+        public InstructionKind visitLabel(LabelInstruction instruction) {
+            return InstructionKind.LABEL;
+        }
+
+        @Override
+        public InstructionKind visitMaintainer(MaintainerInstruction instruction) {
+            return InstructionKind.MAINTAINER;
+        }
+
+        @Override
+        public InstructionKind visitOnBuild(OnBuildInstruction instruction) {
+            return InstructionKind.ONBUILD;
+        }
+
+        @Override
+        public InstructionKind visitRun(RunInstruction instruction) {
+            return InstructionKind.RUN;
+        }
+
+        @Override
+        public InstructionKind visitShell(ShellInstruction instruction) {
+            return InstructionKind.SHELL;
+        }
+
+        @Override
+        public InstructionKind visitStopSignal(StopSignalInstruction instruction) {
+            return InstructionKind.STOPSIGNAL;
+        }
+
+        @Override
+        public InstructionKind visitUnknown(UnknownInstruction instruction) {
+            return InstructionKind.UNKNOWN;
+        }
+
+        @Override
+        public InstructionKind visitUser(UserInstruction instruction) {
+            return InstructionKind.USER;
+        }
+
+        @Override
+        public InstructionKind visitVolume(VolumeInstruction instruction) {
+            return InstructionKind.VOLUME;
+        }
+
+        @Override
+        public InstructionKind visitWorkdir(WorkdirInstruction instruction) {
+            return InstructionKind.WORKDIR;
+        }
+
+        @Override
+        public InstructionKind visitKeyValuePair(KeyValuePair pair) {
+            return null;
+        }
+
+        @Override
+        public InstructionKind visitPort(ExposeInstruction.Port port) {
+            return null;
+        }
+
+        @Override
+        public InstructionKind visitMount(RunInstruction.Mount mount) {
+            return null;
+        }
+
+        @Override
+        public InstructionKind visitHeredoc(Heredoc heredoc) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.jimschubert.docker.ast;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShellScriptTest {
+
+    @Test
+    void testCommandsAndOperators() {
+        ShellScript script = ShellScript.parse("apt-get update && apt-get install -y curl | tee log; true || false & wait\necho done");
+        List<ShellCommand> commands = script.getCommands();
+
+        assertEquals(List.of("apt-get", "apt-get", "tee", "true", "false", "wait", "echo"), names(commands));
+        assertEquals(ShellOperator.AND, commands.get(0).getOperator());
+        assertEquals(ShellOperator.PIPE, commands.get(1).getOperator());
+        assertEquals(ShellOperator.SEQUENCE, commands.get(2).getOperator());
+        assertEquals(ShellOperator.OR, commands.get(3).getOperator());
+        assertEquals(ShellOperator.BACKGROUND, commands.get(4).getOperator());
+        assertEquals(ShellOperator.SEQUENCE, commands.get(5).getOperator());
+        assertNull(commands.get(6).getOperator());
+        assertEquals(List.of("install", "-y", "curl"), values(commands.get(1).getArguments()));
+        assertEquals(2, script.findCommands("apt-get").size());
+    }
+
+    @Test
+    void testQuotingAndEscapes() {
+        ShellScript script = ShellScript.parse("echo 'a  b' \"c \\\"d\\\" \\x\" e\\ f g\"h\"i ''");
+        List<ShellWord> words = script.getCommands().get(0).getArguments();
+
+        assertEquals(List.of("a  b", "c \"d\" \\x", "e f", "ghi", ""), values(words));
+        assertEquals(Quoting.SINGLE_QUOTED, words.get(0).getQuoting());
+        assertEquals(Quoting.DOUBLE_QUOTED, words.get(1).getQuoting());
+        assertEquals(Quoting.UNQUOTED, words.get(2).getQuoting());
+        assertTrue(words.get(2).isQuoted());
+        assertEquals(Quoting.UNQUOTED, words.get(3).getQuoting());
+        assertEquals("\"c \\\"d\\\" \\x\"", words.get(1).getRaw());
+        assertEquals(words.get(1).getStart() + words.get(1).getRaw().length(), words.get(1).getEnd());
+        assertFalse(ShellScript.parse("echo a").getCommands().get(0).getWords().get(1).isQuoted());
+    }
+
+    @Test
+    void testVariables() {
+        ShellScript script = ShellScript.parse("echo $HOME \"${VERSION:-$DEFAULT}\" '$NOT' $1 $(cat $FILE) `id -u $USER` ${#LIST} $ \\$ESCAPED");
+        List<ShellVariable> variables = script.getVariables();
+
+        assertEquals(List.of("HOME", "VERSION", "DEFAULT", "1", "FILE", "USER", "LIST"),
+                variables.stream().map(ShellVariable::getName).toList());
+        assertFalse(variables.get(0).isQuoted());
+        assertTrue(variables.get(1).isQuoted());
+        assertTrue(variables.get(1).isBraced());
+        assertEquals("${VERSION:-$DEFAULT}", script.getText().substring(variables.get(1).getStart(), variables.get(1).getEnd()));
+        List<ShellWord> words = script.getCommands().get(0).getArguments();
+        assertEquals("$(cat $FILE)", words.get(4).getValue());
+        assertTrue(words.get(4).hasSubstitution());
+        assertTrue(words.get(5).hasSubstitution());
+        assertFalse(words.get(0).hasSubstitution());
+        assertEquals(List.of(), words.get(2).getVariables());
+        assertEquals("$ESCAPED", words.get(8).getValue());
+    }
+
+    @Test
+    void testAssignmentsAndRedirections() {
+        ShellScript script = ShellScript.parse("DEBIAN_FRONTEND=noninteractive A=\"x y\" apt-get -o a=b install >/dev/null 2>&1 <<-EOF");
+        ShellCommand command = script.getCommands().get(0);
+
+        assertEquals(List.of("DEBIAN_FRONTEND=noninteractive", "A=x y"), values(command.getAssignments()));
+        assertEquals("apt-get", command.getName());
+        assertEquals(List.of("-o", "a=b", "install"), values(command.getArguments()));
+        assertEquals(3, command.getRedirections().size());
+        assertEquals(">", command.getRedirections().get(0).getOperator());
+        assertEquals("/dev/null", command.getRedirections().get(0).getTarget().getValue());
+        assertEquals("2>&", command.getRedirections().get(1).getOperator());
+        assertEquals("1", command.getRedirections().get(1).getTarget().getValue());
+        assertEquals("<<-", command.getRedirections().get(2).getOperator());
+        assertEquals("EOF", command.getRedirections().get(2).getTarget().getValue());
+    }
+
+    @Test
+    void testCompoundCommandsAreFlattened() {
+        ShellScript script = ShellScript.parse("""
+                set -e # fail fast
+                if [ -f x ]; then (cd x && make) || { echo no; exit 1; }; fi
+                for f in *.txt; do cat "$f"; done""");
+        List<ShellCommand> commands = script.getCommands();
+
+        assertEquals(List.of("set", "[", "cd", "make", "echo", "exit", "for", "cat"), names(commands));
+        assertEquals(List.of("-e"), values(commands.get(0).getArguments()));
+        assertEquals(0, commands.get(1).getDepth());
+        assertEquals(1, commands.get(2).getDepth());
+        assertEquals(ShellOperator.OR, commands.get(3).getOperator());
+        assertEquals(1, commands.get(4).getDepth());
+        assertEquals(0, commands.get(7).getDepth());
+    }
+
+    @Test
+    void testScriptIsUnmodifiable() {
+        ShellScript script = ShellScript.parse("A=1 echo $A > out && (make)");
+        ShellCommand command = script.getCommands().get(0);
+
+        assertThrows(UnsupportedOperationException.class, () -> script.getCommands().clear());
+        assertThrows(UnsupportedOperationException.class, () -> script.getVariables().clear());
+        assertThrows(UnsupportedOperationException.class, () -> command.getWords().clear());
+        assertThrows(UnsupportedOperationException.class, () -> command.getArguments().clear());
+        assertThrows(UnsupportedOperationException.class, () -> command.getAssignments().clear());
+        assertThrows(UnsupportedOperationException.class, () -> command.getRedirections().clear());
+        assertThrows(UnsupportedOperationException.class, () -> command.getWords().get(1).getVariables().clear());
+        assertEquals(ShellOperator.AND, command.getOperator());
+    }
+
+    @Test
+    void testUnterminatedInput() {
+        for (String text : List.of("echo 'a", "echo \"a", "echo $(a", "echo ${a", "echo `a", "echo \\", "echo >", "echo $", "")) {
+            ShellScript script = ShellScript.parse(text);
+            assertEquals(text, script.getText());
+        }
+        assertEquals(List.of(), ShellScript.parse("  # only a comment").getCommands());
+    }
+
+    private static List<String> names(List<ShellCommand> commands) {
+        List<String> names = new ArrayList<>();
+        for (ShellCommand command : commands) {
+            names.add(command.getName());
+        }
+        return names;
+    }
+
+    private static List<String> values(List<ShellWord> words) {
+        List<String> values = new ArrayList<>();
+        for (ShellWord word : words) {
+            values.add(word.getValue());
+        }
+        return values;
+    }
+}
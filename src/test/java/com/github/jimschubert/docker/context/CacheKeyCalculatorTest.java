@@ -0,0 +1,155 @@
+package com.github.jimschubert.docker.context;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.parser.DockerfileParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheKeyCalculatorTest {
+    private static final String DOCKERFILE = """
+            FROM golang:1.23 AS build
+            COPY go.mod go.sum ./
+            COPY --exclude=app/*_test.go cmd/ /src/cmd/
+            COPY *.go /src/
+            ADD https://example.com/tool.tgz /opt/
+            ADD --checksum=sha256:24454f830cdb571e2c4ad15481119c43b3cafd48dd869a9b2945d1036d1dc68d https://example.com/lib.tgz /opt/
+            ONBUILD COPY . /app
+            FROM alpine
+            COPY --from=build /out/app /app
+            """;
+
+    @TempDir
+    Path context;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+        Files.writeString(context.resolve("go.mod"), "module example.com/app\n");
+        Files.writeString(context.resolve("go.sum"), "");
+        Files.writeString(context.resolve("main.go"), "package main\n");
+        Files.writeString(context.resolve("util.go"), "package main\n");
+        Files.createDirectories(context.resolve("cmd/app"));
+        Files.writeString(context.resolve("cmd/app/main.go"), "package main\n");
+        Files.writeString(context.resolve("cmd/app/main_test.go"), "package main\n");
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testKeysOfContextInstructions() throws Exception {
+        List<CacheKey> keys = calculator(new FileDigestCache()).calculate(parse(DOCKERFILE));
+
+        assertEquals(5, keys.size());
+        assertEquals(List.of("go.mod", "go.sum"), keys.get(0).getFiles());
+        assertEquals(List.of("cmd", "cmd/app", "cmd/app/main.go"), keys.get(1).getFiles());
+        assertEquals(List.of("main.go", "util.go"), keys.get(2).getFiles());
+        assertTrue(keys.get(2).getDigest().matches("sha256:[0-9a-f]{64}"));
+        assertFalse(keys.get(3).isComplete());
+        assertTrue(keys.get(4).isComplete());
+    }
+
+    @Test
+    void testKeysAreDeterministicAndTrackContent() throws Exception {
+        FileDigestCache cache = new FileDigestCache();
+        List<DockerInstruction> instructions = parse(DOCKERFILE);
+        List<CacheKey> first = calculator(cache).calculate(instructions);
+        long misses = cache.getMissCount();
+
+        List<CacheKey> second = calculator(cache).calculate(instructions);
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).getDigest(), second.get(i).getDigest());
+        }
+        // unchanged files are served from the cache
+        assertEquals(misses, cache.getMissCount());
+
+        Files.writeString(context.resolve("util.go"), "package main\n\nfunc util() {}\n");
+        List<CacheKey> third = calculator(cache).calculate(instructions);
+        assertEquals(first.get(0).getDigest(), third.get(0).getDigest());
+        assertEquals(first.get(1).getDigest(), third.get(1).getDigest());
+        assertNotEquals(first.get(2).getDigest(), third.get(2).getDigest());
+
+        // excluded files don't affect the key
+        Files.writeString(context.resolve("cmd/app/main_test.go"), "package main // changed\n");
+        assertEquals(first.get(1).getDigest(), calculator(cache).calculate(instructions).get(1).getDigest());
+    }
+
+    @Test
+    void testOptionsArePartOfTheKey() throws Exception {
+        CacheKeyCalculator calculator = calculator(new FileDigestCache());
+        String plain = calculator.calculate(parse("COPY go.mod /a/").get(0)).getDigest();
+
+        assertEquals(plain, calculator.calculate(parse("COPY ./go.mod /a/").get(0)).getDigest());
+        assertNotEquals(plain, calculator.calculate(parse("COPY go.mod /b/").get(0)).getDigest());
+        assertNotEquals(plain, calculator.calculate(parse("COPY --chown=app go.mod /a/").get(0)).getDigest());
+        assertNull(calculator.calculate(parse("COPY --from=build go.mod /a/").get(0)));
+    }
+
+    @Test
+    void testSourcesStayWithinTheContext() throws Exception {
+        CacheKeyCalculator calculator = calculator(new FileDigestCache());
+
+        assertEquals(List.of("go.mod"), calculator.calculate(parse("COPY ../../go.mod /a/").get(0)).getFiles());
+        assertThrows(NoSuchFileException.class, () -> calculator.calculate(parse("COPY missing.txt /a/").get(0)));
+        assertThrows(NoSuchFileException.class, () -> calculator.calculate(parse("COPY *.rs /a/").get(0)));
+    }
+
+    @Test
+    void testDockerIgnoreAndExcludePatterns() throws Exception {
+        Files.writeString(context.resolve(DockerIgnore.FILE_NAME), "*.sum\ncmd/app/main.go\n");
+        CacheKeyCalculator calculator = calculator(new FileDigestCache());
+
+        assertEquals(List.of("", ".dockerignore", "cmd", "cmd/app", "cmd/app/main_test.go", "go.mod", "main.go", "util.go"),
+                calculator.calculate(parse("COPY . /src/").get(0)).getFiles());
+        assertEquals(List.of("", "cmd", "cmd/app", "go.mod"),
+                calculator.calculate(parse("COPY --exclude=**/*.go --exclude=.* . /src/").get(0)).getFiles());
+        assertEquals(List.of("go.mod"), calculator.calculate(parse("COPY go.* /src/").get(0)).getFiles());
+        // a source excluded by .dockerignore isn't in the context
+        assertThrows(NoSuchFileException.class, () -> calculator.calculate(parse("COPY go.sum /src/").get(0)));
+    }
+
+    @Test
+    void testHeredocSourcesAreKeyedByTheirBody() throws Exception {
+        CacheKeyCalculator calculator = calculator(new FileDigestCache());
+        CacheKey key = calculator.calculate(parse("COPY <<EOF go.mod /a/\nlevel=debug\nEOF\n").get(0));
+
+        assertEquals(List.of("go.mod"), key.getFiles());
+        assertEquals(key.getDigest(), calculator.calculate(parse("COPY <<EOF go.mod /a/\nlevel=debug\nEOF\n").get(0)).getDigest());
+        assertNotEquals(key.getDigest(), calculator.calculate(parse("COPY <<EOF go.mod /a/\nlevel=info\nEOF\n").get(0)).getDigest());
+    }
+
+    @Test
+    void testNormalize() {
+        assertEquals("a/b", CacheKeyCalculator.normalize("./a//b/"));
+        assertEquals("b", CacheKeyCalculator.normalize("/../a/../b"));
+        assertEquals("", CacheKeyCalculator.normalize("."));
+    }
+
+    private CacheKeyCalculator calculator(FileDigestCache cache) {
+        return new CacheKeyCalculator(context, cache, executor);
+    }
+
+    private static List<DockerInstruction> parse(String dockerfile) throws Exception {
+        try (InputStream inputStream = new ByteArrayInputStream(dockerfile.getBytes(StandardCharsets.UTF_8))) {
+            return new DockerfileParser().parseDockerfile(inputStream);
+        }
+    }
+}
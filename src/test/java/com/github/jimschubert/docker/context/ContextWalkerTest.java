@@ -0,0 +1,62 @@
+package com.github.jimschubert.docker.context;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextWalkerTest {
+
+    @TempDir
+    Path context;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        for (String file : List.of("Dockerfile", "src/main.go", "src/main_test.go", "node_modules/a/index.js",
+                "node_modules/b/index.js", "vendor/drop/x.go", "vendor/keep/y.go", "debug.log", "src/debug.log")) {
+            Path path = context.resolve(file);
+            Files.createDirectories(path.getParent());
+            Files.writeString(path, file);
+        }
+    }
+
+    @Test
+    void testWalkPrunesExcludedDirectories() throws Exception {
+        ContextWalker walker = new ContextWalker(context,
+                IgnoreMatcher.compile(List.of("node_modules", "**/*.log", "vendor", "!vendor/keep")));
+
+        assertEquals(List.of("", "Dockerfile", "src", "src/main.go", "src/main_test.go", "vendor/keep", "vendor/keep/y.go"),
+                walk(walker, ""));
+        // node_modules and vendor/drop are skipped without being listed, but vendor is listed, as a negated pattern
+        // reaches into it
+        assertEquals(2, walker.getPrunedCount());
+    }
+
+    @Test
+    void testWalkFromRoot() throws Exception {
+        ContextWalker walker = new ContextWalker(context, IgnoreMatcher.compile(List.of("src/*_test.go", "node_modules")));
+
+        assertEquals(List.of("src", "src/debug.log", "src/main.go"), walk(walker, "src"));
+        assertEquals(List.of("src/main.go"), walk(walker, "./src/main.go"));
+        assertEquals(List.of(), walk(walker, "src/main_test.go"));
+        assertEquals(List.of(), walk(walker, "node_modules/a"));
+    }
+
+    @Test
+    void testWalkWithoutPatterns() throws Exception {
+        assertEquals(17, walk(new ContextWalker(context, IgnoreMatcher.EMPTY), "").size());
+    }
+
+    private static List<String> walk(ContextWalker walker, String root) throws Exception {
+        List<String> paths = new ArrayList<>();
+        walker.walk(root, (path, relativePath, attributes) -> paths.add(relativePath.toString()));
+        paths.sort(null);
+        return paths;
+    }
+}
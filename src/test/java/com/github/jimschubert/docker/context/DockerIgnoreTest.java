@@ -0,0 +1,41 @@
+package com.github.jimschubert.docker.context;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DockerIgnoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testParse() {
+        List<String> patterns = DockerIgnore.parse("""
+                ﻿# comment
+                   # indented lines aren't comments
+                node_modules/
+                /build
+                ./src/../dist//out
+
+                ! docs/README.md
+                **/*.log
+                """);
+
+        assertEquals(List.of("# indented lines aren't comments", "node_modules", "build", "dist/out", "!docs/README.md",
+                "**/*.log"), patterns);
+    }
+
+    @Test
+    void testRead() throws Exception {
+        assertEquals(List.of(), DockerIgnore.read(tempDir));
+
+        Files.writeString(tempDir.resolve(DockerIgnore.FILE_NAME), ".git\n*.tmp\n");
+        assertEquals(List.of(".git", "*.tmp"), DockerIgnore.read(tempDir));
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.jimschubert.docker.context;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileDigestCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testUnchangedFilesAreNotRehashed() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("a.txt"), "hello");
+        FileDigestCache cache = new FileDigestCache();
+
+        byte[] first = cache.digest(file);
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest("hello".getBytes()), first);
+        assertArrayEquals(first, cache.digest(file));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+
+        // a change of contents with the same size and modification time goes unnoticed
+        FileTime modified = Files.getLastModifiedTime(file);
+        Files.writeString(file, "HELLO");
+        Files.setLastModifiedTime(file, modified);
+        assertArrayEquals(first, cache.digest(file));
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified.toMillis() + 1000));
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest("HELLO".getBytes()), cache.digest(file));
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testLargeFilesAreMapped() throws Exception {
+        byte[] content = new byte[(int) FileDigestCache.MAPPED_READ_THRESHOLD * 3 + 17];
+        new Random(7).nextBytes(content);
+        Path file = Files.write(tempDir.resolve("large.bin"), content);
+
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content), new FileDigestCache().digest(file));
+    }
+
+    @Test
+    void testEmptyFile() throws Exception {
+        Path file = Files.createFile(tempDir.resolve("empty"));
+
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(new byte[0]), new FileDigestCache().digest(file));
+    }
+}
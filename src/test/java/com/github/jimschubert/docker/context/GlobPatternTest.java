@@ -0,0 +1,49 @@
+package com.github.jimschubert.docker.context;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GlobPatternTest {
+
+    @Test
+    void testMatches() {
+        assertTrue(GlobPattern.compile("*.go").matches("main.go"));
+        assertFalse(GlobPattern.compile("*.go").matches("cmd/main.go"));
+        assertTrue(GlobPattern.compile("cmd/*/main.go").matches("cmd/app/main.go"));
+        assertFalse(GlobPattern.compile("cmd/*").matches("cmd/app/main.go"));
+        assertTrue(GlobPattern.compile("a*b*c").matches("aXbYbZc"));
+        assertFalse(GlobPattern.compile("a*b*c").matches("aXbY/bZc"));
+        assertTrue(GlobPattern.compile("file?.txt").matches("file1.txt"));
+        assertFalse(GlobPattern.compile("file?.txt").matches("file10.txt"));
+        assertTrue(GlobPattern.compile("*").matches(""));
+        assertTrue(GlobPattern.compile("").matches(""));
+        assertFalse(GlobPattern.compile("").matches("a"));
+    }
+
+    @Test
+    void testClassesAndEscapes() {
+        GlobPattern digits = GlobPattern.compile("log[0-9].txt");
+        assertTrue(digits.matches("log7.txt"));
+        assertFalse(digits.matches("logx.txt"));
+        assertTrue(GlobPattern.compile("log[^0-9].txt").matches("logx.txt"));
+        assertFalse(GlobPattern.compile("log[^0-9].txt").matches("log7.txt"));
+        assertFalse(GlobPattern.compile("a[^x]b").matches("a/b"));
+        assertTrue(GlobPattern.compile("[]a]").matches("]"));
+        assertTrue(GlobPattern.compile("\\*.txt").matches("*.txt"));
+        assertFalse(GlobPattern.compile("\\*.txt").matches("a.txt"));
+    }
+
+    @Test
+    void testMalformedPatterns() {
+        assertThrows(IllegalArgumentException.class, () -> GlobPattern.compile("log[0-9.txt"));
+        assertThrows(IllegalArgumentException.class, () -> GlobPattern.compile("trailing\\"));
+    }
+
+    @Test
+    void testHasMeta() {
+        assertTrue(GlobPattern.hasMeta("src/*.go"));
+        assertTrue(GlobPattern.hasMeta("file?"));
+        assertFalse(GlobPattern.hasMeta("src/main.go"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.jimschubert.docker.context;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IgnoreMatcherTest {
+
+    @Test
+    void testParentDirectoriesExcludeTheirContents() {
+        IgnoreMatcher matcher = IgnoreMatcher.compile(List.of("node_modules", "*.log", "build/*/tmp"));
+
+        assertTrue(matcher.isExcluded("node_modules"));
+        assertTrue(matcher.isExcluded("node_modules/left-pad/index.js"));
+        assertFalse(matcher.isExcluded("src/node_modules"));
+        assertTrue(matcher.isExcluded("debug.log"));
+        assertFalse(matcher.isExcluded("logs/debug.log"));
+        assertTrue(matcher.isExcluded("build/linux/tmp/x.o"));
+        assertFalse(matcher.isExcluded("build/tmp"));
+        assertFalse(matcher.isExcluded(""));
+    }
+
+    @Test
+    void testDoubleStar() {
+        IgnoreMatcher matcher = IgnoreMatcher.compile(List.of("**/*.md", "docs/**", "a/**/z"));
+
+        assertTrue(matcher.isExcluded("README.md"));
+        assertTrue(matcher.isExcluded("src/pkg/NOTES.md"));
+        assertTrue(matcher.isExcluded("docs/guide/index.html"));
+        // a trailing ** matches below the directory, not the directory itself
+        assertFalse(matcher.isExcluded("docs"));
+        assertTrue(matcher.isExcluded("a/z"));
+        assertTrue(matcher.isExcluded("a/b/c/z"));
+        assertFalse(matcher.isExcluded("a/b/c/y"));
+    }
+
+    @Test
+    void testLastMatchingPatternWins() {
+        IgnoreMatcher matcher = IgnoreMatcher.compile(List.of("*.md", "!README.md", "README.md", "!CHANGELOG.md"));
+
+        assertTrue(matcher.isExcluded("NOTES.md"));
+        assertTrue(matcher.isExcluded("README.md"));
+        assertFalse(matcher.isExcluded("CHANGELOG.md"));
+
+        matcher = IgnoreMatcher.compile(List.of("vendor", "!vendor/keep/**"));
+        assertTrue(matcher.isExcluded("vendor/drop/a.go"));
+        assertFalse(matcher.isExcluded("vendor/keep/a.go"));
+    }
+
+    @Test
+    void testEscape() {
+        IgnoreMatcher matcher = IgnoreMatcher.compile(List.of(IgnoreMatcher.escape("odd[1]") + "/*.tmp"));
+
+        assertTrue(matcher.isExcluded("odd[1]/a.tmp"));
+        assertFalse(matcher.isExcluded("odd1/a.tmp"));
+    }
+}
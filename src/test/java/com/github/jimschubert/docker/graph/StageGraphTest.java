@@ -0,0 +1,104 @@
+package com.github.jimschubert.docker.graph;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.parser.DockerfileParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StageGraphTest {
+    private static final String DOCKERFILE = """
+            ARG GO_VERSION=1.23
+            FROM golang:${GO_VERSION} AS deps
+            RUN go mod download
+            FROM deps AS build
+            RUN --mount=type=bind,from=assets,source=/out,target=/assets go build -o /out/app
+            FROM node:20 AS assets
+            RUN npm run build
+            FROM alpine AS lint
+            ONBUILD COPY --from=build /out/app /app
+            FROM scratch
+            COPY --from=BUILD /out/app /app
+            COPY --from=3 /etc/passwd /etc/passwd
+            COPY --from=nginx:latest /etc/nginx /etc/nginx
+            """;
+
+    @Test
+    void testDependencies() throws Exception {
+        StageGraph graph = StageGraph.of(parse(DOCKERFILE));
+        List<Stage> stages = graph.getStages();
+
+        assertEquals(5, stages.size());
+        assertEquals("deps", stages.get(0).getName());
+        assertNull(stages.get(4).getName());
+        assertEquals(2, stages.get(0).getInstructions().size());
+        assertEquals(List.of(stages.get(0), stages.get(2)), stages.get(1).getDependencies());
+        assertEquals(List.of(), stages.get(3).getDependencies());
+        assertEquals(List.of(stages.get(1), stages.get(3)), stages.get(4).getDependencies());
+        assertEquals(List.of(stages.get(1)), stages.get(2).getDependents());
+        assertSame(stages.get(1), graph.getStage("Build"));
+        assertSame(stages.get(4), graph.getStage("4"));
+        assertNull(graph.getStage("5"));
+    }
+
+    @Test
+    void testOrderingAndParallelism() throws Exception {
+        StageGraph graph = StageGraph.of(parse(DOCKERFILE));
+        List<Stage> stages = graph.getStages();
+
+        assertEquals(List.of(stages.get(0), stages.get(2), stages.get(1), stages.get(3), stages.get(4)), graph.getTopologicalOrder());
+        assertEquals(List.of(
+                List.of(stages.get(0), stages.get(2), stages.get(3)),
+                List.of(stages.get(1)),
+                List.of(stages.get(4))), graph.getParallelGroups());
+        assertEquals(List.of(stages.get(0), stages.get(1), stages.get(4)), graph.getCriticalPath());
+        // a slow assets stage moves the critical path
+        assertEquals(List.of(stages.get(2), stages.get(1), stages.get(4)),
+                graph.getCriticalPath(stage -> stage == stages.get(2) ? 10 : 1));
+    }
+
+    @Test
+    void testCyclesAreRejected() throws Exception {
+        String dockerfile = """
+                FROM alpine AS a
+                COPY --from=b /x /x
+                FROM alpine AS b
+                COPY --from=a /y /y
+                """;
+        assertThrows(IllegalArgumentException.class, () -> StageGraph.of(parse(dockerfile)));
+    }
+
+    @Test
+    void testNoStages() throws Exception {
+        StageGraph graph = StageGraph.of(parse("# no stages\nARG A=1\n"));
+
+        assertTrue(graph.getStages().isEmpty());
+        assertTrue(graph.getParallelGroups().isEmpty());
+        assertTrue(graph.getCriticalPath().isEmpty());
+    }
+
+    @Test
+    void testMountSources() throws Exception {
+        String dockerfile = """
+                FROM alpine AS build
+                FROM alpine AS cache
+                FROM alpine AS unused
+                FROM alpine
+                RUN --mount=type=bind,from=build,target=/x --mount=type=cache,from=CACHE,target=/y make
+                RUN --mount=type=cache,target=/x,from= echo --mount=from=unused
+                """;
+        List<Stage> stages = StageGraph.of(parse(dockerfile)).getStages();
+
+        assertEquals(List.of(stages.get(0), stages.get(1)), stages.get(3).getDependencies());
+    }
+
+    private static List<DockerInstruction> parse(String dockerfile) throws Exception {
+        try (InputStream inputStream = new ByteArrayInputStream(dockerfile.getBytes())) {
+            return new DockerfileParser().parseDockerfile(inputStream);
+        }
+    }
+}
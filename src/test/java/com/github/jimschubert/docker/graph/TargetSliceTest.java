@@ -0,0 +1,101 @@
+package com.github.jimschubert.docker.graph;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.parser.DockerfileParser;
+import com.github.jimschubert.docker.parser.ParsedDockerfile;
+import com.github.jimschubert.docker.printer.LosslessPrinter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TargetSliceTest {
+    private static final String DOCKERFILE = """
+            # syntax=docker/dockerfile:1
+            ARG GO_VERSION=1.23
+            ARG NODE_VERSION=20
+            ARG BUILDER=golang:${GO_VERSION}
+            ARG REVISION
+            # the Go toolchain
+            FROM ${BUILDER} AS build
+            ARG REVISION
+            RUN go build -ldflags "-X main.revision=$REVISION" -o /out/app
+            # the web assets
+            FROM node:${NODE_VERSION} AS assets
+            RUN npm run build
+            # the image
+            FROM alpine AS image
+            COPY --from=build /out/app /app
+            """;
+
+    @Test
+    void testSliceKeepsOnlyDependencies() throws Exception {
+        List<DockerInstruction> instructions = new DockerfileParser().parseDockerfile(new ByteArrayInputStream(DOCKERFILE.getBytes()));
+        TargetSlice slice = TargetSlice.of(instructions, "image");
+
+        assertEquals("image", slice.getTarget().getName());
+        assertEquals(List.of("build", "image"), slice.getStages().stream().map(Stage::getName).toList());
+        assertEquals(3, slice.getGlobalArgs().size());
+        assertEquals("""
+                # syntax=docker/dockerfile:1
+                ARG GO_VERSION=1.23
+                ARG BUILDER=golang:${GO_VERSION}
+                ARG REVISION
+                # the Go toolchain
+                FROM ${BUILDER} AS build
+                ARG REVISION
+                RUN go build -ldflags "-X main.revision=$REVISION" -o /out/app
+                # the image
+                FROM alpine AS image
+                COPY --from=build /out/app /app
+                """, slice.print());
+    }
+
+    @Test
+    void testDefaultTargetIsTheLastStage() throws Exception {
+        List<DockerInstruction> instructions = new DockerfileParser().parseDockerfile(new ByteArrayInputStream(DOCKERFILE.getBytes()));
+
+        assertEquals("image", TargetSlice.of(instructions, null).getTarget().getName());
+        assertEquals(List.of("assets"), TargetSlice.of(instructions, "1").getStages().stream().map(Stage::getName).toList());
+        assertThrows(IllegalArgumentException.class, () -> TargetSlice.of(instructions, "missing"));
+    }
+
+    @Test
+    void testSliceCanBePrintedLosslessly() throws Exception {
+        ParsedDockerfile parsed = new DockerfileParser().parseText(DOCKERFILE);
+        TargetSlice slice = TargetSlice.of(parsed.getInstructions(), "assets");
+
+        assertEquals("""
+                # syntax=docker/dockerfile:1
+                ARG NODE_VERSION=20
+                # the web assets
+                FROM node:${NODE_VERSION} AS assets
+                RUN npm run build
+                """, new LosslessPrinter(parsed, slice.getInstructions()).print());
+    }
+
+    @Test
+    void testSliceOfExpandedDockerfileFindsGlobalArgsInText() throws Exception {
+        String dockerfile = """
+                ARG TAG=3.19
+                ARG BASE=alpine:${TAG}
+                ARG PLATFORM=linux/amd64
+                ARG UNUSED=1
+                FROM --platform=$PLATFORM ${BASE} AS build
+                FROM build AS final
+                """;
+        ParsedDockerfile parsed = new DockerfileParser(true).parseText(dockerfile);
+        TargetSlice slice = TargetSlice.of(parsed, "final");
+
+        assertEquals(3, slice.getGlobalArgs().size());
+        assertEquals("""
+                ARG TAG=3.19
+                ARG BASE=alpine:${TAG}
+                ARG PLATFORM=linux/amd64
+                FROM --platform=$PLATFORM ${BASE} AS build
+                FROM build AS final
+                """, new LosslessPrinter(parsed, slice.getInstructions()).print());
+    }
+}
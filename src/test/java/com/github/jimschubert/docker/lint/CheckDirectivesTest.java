@@ -0,0 +1,49 @@
+package com.github.jimschubert.docker.lint;
+
+import com.github.jimschubert.docker.ast.CommentInstruction;
+import com.github.jimschubert.docker.ast.DirectiveInstruction;
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.ast.FromInstruction;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckDirectivesTest {
+
+    @Test
+    void testSkipAndError() {
+        CheckDirectives checks = CheckDirectives.of(List.of(
+                new DirectiveInstruction("syntax=docker/dockerfile:1"),
+                new DirectiveInstruction("check=skip=JSONArgsRecommended,StageNameCasing;error=true"),
+                new DirectiveInstruction("check=skip=MaintainerDeprecated")));
+
+        assertEquals(Set.of("jsonargsrecommended", "stagenamecasing", "maintainerdeprecated"), checks.getSkipped());
+        assertTrue(checks.isSkipped("StageNameCasing"));
+        assertFalse(checks.isSkipped("UndefinedVar"));
+        assertFalse(checks.isSkipAll());
+        assertTrue(checks.isError());
+    }
+
+    @Test
+    void testSkipAll() {
+        CheckDirectives checks = CheckDirectives.of(List.of(new DirectiveInstruction("check=skip=all")));
+
+        assertTrue(checks.isSkipAll());
+        assertTrue(checks.isSkipped("UndefinedVar"));
+        assertFalse(checks.isError());
+    }
+
+    @Test
+    void testOnlyLeadingDirectivesApply() {
+        List<DockerInstruction> instructions = List.of(
+                new CommentInstruction("a comment"),
+                new DirectiveInstruction("check=skip=all;error=true"));
+        assertSame(CheckDirectives.NONE, CheckDirectives.of(instructions));
+
+        FromInstruction from = new FromInstruction(null, "alpine", null, null);
+        assertSame(CheckDirectives.NONE, CheckDirectives.of(List.of(from, new DirectiveInstruction("check=error=true"))));
+    }
+}
@@ -0,0 +1,192 @@
+package com.github.jimschubert.docker.lint;
+
+import com.github.jimschubert.docker.ast.*;
+import com.github.jimschubert.docker.parser.DockerfileParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleEngineTest {
+    private static final Rule STAGE_NAME_CASING = Rule.of("StageNameCasing", EnumSet.of(InstructionKind.FROM), (instruction, context) -> {
+        String alias = ((FromInstruction) instruction).getAlias();
+        if (alias != null && !alias.equals(alias.toLowerCase())) {
+            context.report(instruction, "Stage name '" + alias + "' should be lowercase");
+        }
+    });
+
+    private static final Rule JSON_ARGS_RECOMMENDED = Rule.of("JSONArgsRecommended",
+            EnumSet.of(InstructionKind.CMD, InstructionKind.ENTRYPOINT), (instruction, context) -> {
+                if (((CommandInstruction) instruction).getForm() == CommandInstruction.Form.SHELL) {
+                    context.report(instruction, "JSON arguments recommended for " + instruction.getInstruction());
+                }
+            });
+
+    private static final Rule DUPLICATE_STAGE_NAME = new Rule() {
+        @Override
+        public String getName() {
+            return "DuplicateStageName";
+        }
+
+        @Override
+        public Set<InstructionKind> getKinds() {
+            return EnumSet.of(InstructionKind.FROM);
+        }
+
+        @Override
+        public void check(DockerInstruction instruction, RuleContext context) {
+            String alias = ((FromInstruction) instruction).getAlias();
+            if (alias != null && !context.<Set<String>>getState(HashSet::new).add(alias.toLowerCase())) {
+                context.report(instruction, "Duplicate stage name '" + alias + "'");
+            }
+        }
+    };
+
+    private static final Rule NO_DEFAULT_COMMAND = new Rule() {
+        @Override
+        public String getName() {
+            return "NoDefaultCommand";
+        }
+
+        @Override
+        public Set<InstructionKind> getKinds() {
+            return EnumSet.of(InstructionKind.CMD, InstructionKind.ENTRYPOINT);
+        }
+
+        @Override
+        public void check(DockerInstruction instruction, RuleContext context) {
+            if (!context.isDeferred() && context.getFrom() != null) {
+                context.getState(() -> new int[1])[0] = context.getStageIndex() + 1;
+            }
+        }
+
+        @Override
+        public void finish(RuleContext context) {
+            if (context.getState(() -> new int[1])[0] != context.getStageIndex() + 1) {
+                context.report("The final stage has no CMD or ENTRYPOINT");
+            }
+        }
+    };
+
+    private static final List<Rule> RULES = List.of(STAGE_NAME_CASING, JSON_ARGS_RECOMMENDED, DUPLICATE_STAGE_NAME, NO_DEFAULT_COMMAND);
+
+    private static final String DOCKERFILE = """
+            FROM golang:1.23 AS Build
+            CMD go run .
+            FROM alpine AS build
+            ONBUILD ENTRYPOINT /app
+            """;
+
+    @Test
+    void testRulesRunForTheirKinds() throws Exception {
+        LintReport report = new RuleEngine(RULES).check(parse(DOCKERFILE));
+
+        assertEquals(List.of(
+                "1: StageNameCasing: Stage name 'Build' should be lowercase",
+                "2: JSONArgsRecommended: JSON arguments recommended for CMD",
+                "3: DuplicateStageName: Duplicate stage name 'build'",
+                "4: JSONArgsRecommended: JSON arguments recommended for ENTRYPOINT",
+                "NoDefaultCommand: The final stage has no CMD or ENTRYPOINT"),
+                report.getFindings().stream().map(Finding::toString).toList());
+        assertInstanceOf(EntrypointInstruction.class, report.getFindings().get(3).getInstruction());
+        assertFalse(report.isError());
+    }
+
+    @Test
+    void testCheckDirectivesSkipRules() throws Exception {
+        RuleEngine engine = new RuleEngine(RULES);
+
+        LintReport report = engine.check(parse("# check=skip=jsonargsrecommended,StageNameCasing;error=true\n" + DOCKERFILE));
+        assertEquals(List.of("DuplicateStageName", "NoDefaultCommand"),
+                report.getFindings().stream().map(Finding::getRule).toList());
+        assertTrue(report.isError());
+
+        report = engine.check(parse("# check=skip=all\n" + DOCKERFILE));
+        assertTrue(report.getFindings().isEmpty());
+        assertFalse(report.isError());
+
+        // a check directive after an instruction is ignored
+        report = engine.check(parse("FROM alpine\n# check=skip=all\nCMD run\n"));
+        assertEquals(List.of("JSONArgsRecommended"), report.getFindings().stream().map(Finding::getRule).toList());
+    }
+
+    @Test
+    void testTimings() throws Exception {
+        RuleEngine engine = new RuleEngine(RULES);
+        engine.check(parse(DOCKERFILE));
+        engine.check(parse("# check=skip=StageNameCasing\n" + DOCKERFILE));
+
+        List<RuleTiming> timings = engine.getTimings();
+        assertEquals(List.of("StageNameCasing", "JSONArgsRecommended", "DuplicateStageName", "NoDefaultCommand"),
+                timings.stream().map(RuleTiming::getRule).toList());
+        // two FROM instructions and finish, in one file only
+        assertEquals(3, timings.get(0).getInvocations());
+        assertEquals(1, timings.get(0).getFindings());
+        // CMD, the deferred ENTRYPOINT and finish, in both files
+        assertEquals(6, timings.get(1).getInvocations());
+        assertEquals(4, timings.get(1).getFindings());
+        assertTrue(timings.get(1).getNanos() > 0);
+
+        engine.resetTimings();
+        assertEquals(0, engine.getTimings().get(1).getInvocations());
+    }
+
+    @Test
+    void testCheckAllInParallel() throws Exception {
+        List<List<DockerInstruction>> files = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            files.add(parse(i % 2 == 0 ? DOCKERFILE : "FROM alpine AS stage" + i + "\nCMD [\"sh\"]\n"));
+        }
+        RuleEngine engine = new RuleEngine(RULES);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<LintReport> reports = engine.checkAll(files, executor);
+
+            assertEquals(50, reports.size());
+            for (int i = 0; i < 50; i++) {
+                assertEquals(i % 2 == 0 ? 5 : 0, reports.get(i).getFindings().size());
+            }
+            assertEquals(25, engine.getTimings().get(2).getFindings());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFailingRule() throws Exception {
+        RuleEngine engine = new RuleEngine(List.of(Rule.of("Broken", EnumSet.of(InstructionKind.FROM), (instruction, context) -> {
+            throw new IllegalStateException("broken");
+        })));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            IllegalStateException e = assertThrows(IllegalStateException.class,
+                    () -> engine.checkAll(List.of(parse(DOCKERFILE)), executor));
+            assertEquals("broken", e.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testDuplicateRuleNames() {
+        assertThrows(IllegalArgumentException.class, () -> new RuleEngine(List.of(STAGE_NAME_CASING,
+                Rule.of("stagenamecasing", EnumSet.of(InstructionKind.FROM), (instruction, context) -> {
+                }))));
+    }
+
+    private static List<DockerInstruction> parse(String dockerfile) throws Exception {
+        try (InputStream inputStream = new ByteArrayInputStream(dockerfile.getBytes(StandardCharsets.UTF_8))) {
+            return new DockerfileParser().parseDockerfile(inputStream);
+        }
+    }
+}
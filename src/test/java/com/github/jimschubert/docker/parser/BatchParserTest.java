@@ -0,0 +1,105 @@
+package com.github.jimschubert.docker.parser;
+
+import com.github.jimschubert.docker.ast.FromInstruction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchParserTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testParsePathsReportsFailuresPerFile() throws Exception {
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Path path = tempDir.resolve("Dockerfile." + i);
+            Files.writeString(path, i == 7 ? "FROM scratch\nCOPY onlyone\n" : "FROM alpine:" + i + " AS stage" + i + "\n");
+            paths.add(path);
+        }
+        paths.add(tempDir.resolve("missing"));
+
+        ExecutorService executor = BatchParser.newDefaultExecutor();
+        try {
+            List<ParseResult<Path>> results = new BatchParser(new DockerfileParser(), executor, 4).parsePaths(paths);
+
+            assertEquals(21, results.size());
+            for (int i = 0; i < 20; i++) {
+                ParseResult<Path> result = results.get(i);
+                assertEquals(paths.get(i), result.getSource());
+                if (i == 7) {
+                    assertFalse(result.isSuccess());
+                    assertEquals("COPY instruction requires at least one source and a destination", result.getError().getMessage());
+                } else {
+                    assertTrue(result.isSuccess());
+                    assertEquals("stage" + i, ((FromInstruction) result.getInstructions().get(0)).getAlias());
+                }
+            }
+            assertFalse(results.get(20).isSuccess());
+            assertNotNull(results.get(20).getError().getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testParseBoundsInFlightWork() throws Exception {
+        AtomicInteger open = new AtomicInteger();
+        AtomicInteger maxOpen = new AtomicInteger();
+        AtomicInteger parsed = new AtomicInteger();
+        List<Integer> sources = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            sources.add(i);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            new BatchParser(new DockerfileParser(), executor, 3).parse(sources, source -> {
+                maxOpen.accumulateAndGet(open.incrementAndGet(), Math::max);
+                return new ByteArrayInputStream(("FROM alpine:" + source + "\n").getBytes()) {
+                    @Override
+                    public void close() {
+                        open.decrementAndGet();
+                    }
+                };
+            }, result -> {
+                assertTrue(result.isSuccess());
+                parsed.incrementAndGet();
+            });
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(100, parsed.get());
+        assertTrue(maxOpen.get() <= 3, "at most 3 sources should be open at once, saw " + maxOpen.get());
+    }
+
+    @Test
+    void testParseStreams() throws Exception {
+        List<InputStream> streams = List.of(
+                new ByteArrayInputStream("FROM alpine AS a\n".getBytes()),
+                new ByteArrayInputStream("FROM alpine AS b\n".getBytes()));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<ParseResult<InputStream>> results = new BatchParser(new DockerfileParser(), executor, 1).parseStreams(streams);
+
+            assertEquals("a", ((FromInstruction) results.get(0).getInstructions().get(0)).getAlias());
+            assertEquals("b", ((FromInstruction) results.get(1).getInstructions().get(0)).getAlias());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.jimschubert.docker.parser;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.ast.OnBuildInstruction;
+import com.github.jimschubert.docker.printer.ASTPrinter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiskParseCacheTest {
+    private static final byte[] DOCKERFILE = ("# syntax=docker/dockerfile:1\n"
+            + "FROM --platform=linux/amd64 golang:1.23 AS build\n"
+            + "ARG VERSION=\"1.0\"\n"
+            + "ENV A=1 B \"two\"\n"
+            + "LABEL a=\"b c\" d e\n"
+            + "# a comment\n"
+            + "COPY --from=build --chown=app --link a.txt b.txt /dst/\n"
+            + "ADD --keep-git-dir=true https://example.com/repo.git /src\n"
+            + "RUN --mount=type=cache,target=/root/.cache,id=go \\\n"
+            + "    go build ./... \n"
+            + "RUN <<EOT\n"
+            + "echo ünïcode\n"
+            + "EOT\n"
+            + "EXPOSE 80/udp 443\n"
+            + "HEALTHCHECK --interval=5s CMD curl -f http://localhost/\n"
+            + "ONBUILD COPY . /app\n"
+            + "SHELL [\"/bin/bash\", \"-c\"]\n"
+            + "USER app:app\n"
+            + "WORKDIR /app\n"
+            + "VOLUME /data\n"
+            + "STOPSIGNAL SIGTERM\n"
+            + "MAINTAINER someone\n"
+            + "FOO bar baz\n"
+            + "ENTRYPOINT [\"/app\"]\n"
+            + "CMD run\n").getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testEntriesRoundTripAcrossInstances() throws Exception {
+        DockerfileParser parser = new DockerfileParser();
+        List<DockerInstruction> parsed = new DiskParseCache(directory).parseDockerfile(parser, DOCKERFILE);
+
+        DiskParseCache cache = new DiskParseCache(directory);
+        List<DockerInstruction> cached = cache.parseDockerfile(parser, DOCKERFILE);
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+        assertSameInstructions(parsed, cached);
+    }
+
+    @Test
+    void testExampleDockerfilesRoundTrip() throws Exception {
+        DockerfileParser parser = new DockerfileParser(true, true);
+        DiskParseCache cache = new DiskParseCache(directory);
+        try (InputStream inputStream = getClass().getResourceAsStream("/examples/hugo/Dockerfile")) {
+            byte[] content = inputStream.readAllBytes();
+            List<DockerInstruction> parsed = cache.parseDockerfile(parser, content);
+            assertSameInstructions(parsed, cache.parseDockerfile(parser, content));
+        }
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void testCorruptEntriesAreReparsedAndRewritten() throws Exception {
+        DockerfileParser parser = new DockerfileParser();
+        DiskParseCache cache = new DiskParseCache(directory);
+        List<DockerInstruction> parsed = cache.parseDockerfile(parser, DOCKERFILE);
+
+        Path entry = singleEntry();
+        byte[] bytes = Files.readAllBytes(entry);
+        bytes[bytes.length - 1] ^= 0x5A;
+        Files.write(entry, bytes);
+
+        assertSameInstructions(parsed, cache.parseDockerfile(parser, DOCKERFILE));
+        assertEquals(1, cache.getInvalidCount());
+        assertEquals(2, cache.getMissCount());
+
+        assertSameInstructions(parsed, cache.parseDockerfile(parser, DOCKERFILE));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void testEntriesFromOtherFormatVersionsAreIgnored() throws Exception {
+        DockerfileParser parser = new DockerfileParser();
+        DiskParseCache cache = new DiskParseCache(directory);
+        cache.parseDockerfile(parser, DOCKERFILE);
+
+        Path entry = singleEntry();
+        byte[] bytes = Files.readAllBytes(entry);
+        bytes[7]++;
+        Files.write(entry, bytes);
+
+        cache.parseDockerfile(parser, DOCKERFILE);
+        assertEquals(1, cache.getInvalidCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    void testTruncatedEntriesAreIgnored() throws Exception {
+        DockerfileParser parser = new DockerfileParser();
+        DiskParseCache cache = new DiskParseCache(directory);
+        cache.parseDockerfile(parser, DOCKERFILE);
+
+        Path entry = singleEntry();
+        byte[] bytes = Files.readAllBytes(entry);
+        Files.write(entry, Arrays.copyOf(bytes, bytes.length / 2));
+
+        cache.parseDockerfile(parser, DOCKERFILE);
+        assertEquals(1, cache.getInvalidCount());
+    }
+
+    @Test
+    void testParserOptionsArePartOfTheKey() throws Exception {
+        DiskParseCache cache = new DiskParseCache(directory);
+
+        cache.parseDockerfile(new DockerfileParser(), DOCKERFILE);
+        cache.parseDockerfile(new DockerfileParser(true), DOCKERFILE);
+        cache.parseDockerfile(new DockerfileParser(true, false, Map.of("VERSION", "2")), DOCKERFILE);
+        // build arguments only matter when expanding
+        cache.parseDockerfile(new DockerfileParser(false, false, Map.of("VERSION", "2")), DOCKERFILE);
+
+        assertEquals(3, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        try (Stream<Path> entries = Files.list(directory)) {
+            assertEquals(3, entries.count());
+        }
+    }
+
+    private Path singleEntry() throws Exception {
+        try (Stream<Path> entries = Files.list(directory)) {
+            List<Path> paths = entries.toList();
+            assertEquals(1, paths.size());
+            return paths.get(0);
+        }
+    }
+
+    private static void assertSameInstructions(List<DockerInstruction> expected, List<DockerInstruction> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameInstruction(expected.get(i), actual.get(i));
+        }
+    }
+
+    private static void assertSameInstruction(DockerInstruction expected, DockerInstruction actual) {
+        assertEquals(expected.getClass(), actual.getClass());
+        assertEquals(expected.toCanonicalForm(), actual.toCanonicalForm());
+        assertEquals(expected.getSourceSpan(), actual.getSourceSpan());
+        if (expected instanceof OnBuildInstruction onBuild) {
+            assertSameInstruction(onBuild.getDeferredInstruction(), ((OnBuildInstruction) actual).getDeferredInstruction());
+        } else {
+            assertEquals(ASTPrinter.toASTString(expected), ASTPrinter.toASTString(actual));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.jimschubert.docker.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DockerfileLexerTest {
+
+    @Test
+    void testSplitWhitespaceMatchesStringSplit() {
+        for (String input : List.of("a b", "  a\t b  ", "", "   ", "a", "\ta\n\nb\f")) {
+            assertEquals(List.of(input.split("\\s+")), DockerfileLexer.splitWhitespace(input), input);
+        }
+    }
+
+    @Test
+    void testSplitCommasMatchesStringSplit() {
+        for (String input : List.of("\"a\", \"b\"", "a ,b , c", "", ",", "a,,", ",a")) {
+            assertEquals(List.of(input.split("\\s*,\\s*")), DockerfileLexer.splitCommas(input), input);
+        }
+    }
+
+    @Test
+    void testScanFlags() {
+        DockerfileLexer.FlagScan scan = DockerfileLexer.scanFlags("--from=build --link /src /dst", "from", "link");
+
+        assertEquals(2, scan.flags().size());
+        assertEquals(new DockerfileLexer.Flag("from", "build"), scan.flags().get(0));
+        assertEquals(new DockerfileLexer.Flag("link", ""), scan.flags().get(1));
+        assertEquals("/src /dst", scan.remainder());
+    }
+
+    @Test
+    void testScanLeadingFlags() {
+        DockerfileLexer.FlagScan scan = DockerfileLexer.scanLeadingFlags("--network=none --mount=\"target=/a b\"  make --mount=x", "mount", "network");
+
+        assertEquals(List.of(new DockerfileLexer.Flag("network", "none"), new DockerfileLexer.Flag("mount", "target=/a b")), scan.flags());
+        assertEquals("make --mount=x", scan.remainder());
+        assertEquals("--other=1 make", DockerfileLexer.scanLeadingFlags("--other=1 make", "mount").remainder());
+        assertEquals("-- --mount=x", DockerfileLexer.scanLeadingFlags(" -- --mount=x", "mount").remainder());
+    }
+
+    @Test
+    void testSplitCsv() {
+        assertEquals(List.of("a", "b=\"c,d\"", "", "e"), DockerfileLexer.splitCsv("a,\"b=\"\"c,d\"\"\",,e"));
+        assertEquals(List.of(""), DockerfileLexer.splitCsv(""));
+    }
+
+    @Test
+    void testFindSeparatorWord() {
+        String from = "golang:1.23 AS build";
+        int[] as = DockerfileLexer.findSeparatorWord(from, "AS");
+
+        assertNotNull(as);
+        assertEquals("golang:1.23", from.substring(0, as[0]));
+        assertEquals("build", from.substring(as[1]));
+        assertNull(DockerfileLexer.findSeparatorWord("golang:1.23 as build", "AS"));
+    }
+
+    @Test
+    void testFindHeredocs() {
+        String line = "RUN --mount=target=. cat <<EOT <<-\"end\" 3<<'x y' > out";
+        List<DockerfileLexer.HeredocToken> heredocs = DockerfileLexer.findHeredocs(line, 3);
+        assertEquals(List.of(
+                new DockerfileLexer.HeredocToken("EOT", false, true, 0),
+                new DockerfileLexer.HeredocToken("end", true, false, 0),
+                new DockerfileLexer.HeredocToken("x y", false, false, 3)), heredocs);
+
+        assertEquals(List.of(), DockerfileLexer.findHeredocs("RUN cat <<<EOF", 3));
+        assertEquals(List.of(), DockerfileLexer.findHeredocs("RUN echo '<<EOF' <<", 3));
+        assertTrue(DockerfileLexer.allowsHeredocs("copy <<EOF /a", 4));
+        assertFalse(DockerfileLexer.allowsHeredocs("ENV A=<<EOF", 3));
+    }
+
+    @Test
+    void testScanLabelPairs() {
+        List<DockerfileLexer.KeyValueToken> tokens = DockerfileLexer.scanLabelPairs("a=\"b c\" d e f='g'");
+
+        assertEquals(3, tokens.size());
+        assertEquals(new DockerfileLexer.KeyValueToken("a", '=', "\"b c\""), tokens.get(0));
+        assertEquals(new DockerfileLexer.KeyValueToken("d", ' ', "e"), tokens.get(1));
+        assertEquals(new DockerfileLexer.KeyValueToken("f", '=', "'g'"), tokens.get(2));
+    }
+
+    @Test
+    void testScanArgPairs() {
+        List<DockerfileLexer.KeyValueToken> tokens = DockerfileLexer.scanArgPairs("VERSION=\"1.0\" TARGETARCH");
+
+        assertEquals(2, tokens.size());
+        assertEquals(new DockerfileLexer.KeyValueToken("VERSION", '=', "\"1.0\""), tokens.get(0));
+        assertEquals(new DockerfileLexer.KeyValueToken("TARGETARCH", (char) 0, null), tokens.get(1));
+    }
+}
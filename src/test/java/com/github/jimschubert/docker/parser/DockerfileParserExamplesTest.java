@@ -154,10 +154,9 @@ public class DockerfileParserExamplesTest {
         // RUN
         assertInstanceOf(RunInstruction.class, instructions.get(22));
 
-        // TODO: solve this initial indent on set -ex which is currently dropped
         assertEquals("RUN --mount=target=. --mount=type=cache,target=/go/pkg/mod " +
                 "--mount=type=cache,target=/root/.cache/go-build,id=go-build-$TARGETPLATFORM <<EOT\n" +
-                "set -ex\n" +
+                "    set -ex\n" +
                 "    xx-go build -tags \"$HUGO_BUILD_TAGS\" -ldflags \"-s -w -X github.com/gohugoio/hugo/common/hugo.vendorInfo=docker\" -o /usr/bin/hugo\n" +
                 "    xx-verify /usr/bin/hugo\n" +
                 "EOT", instructions.get(22).toCanonicalForm());
@@ -4,8 +4,22 @@ import org.junit.jupiter.api.Test;
 import com.github.jimschubert.docker.ast.*;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.StringWriter;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -128,6 +142,116 @@ class DockerfileParserTest {
         assertEquals("mkdir -p /app/logs && chown -R 1001:1001 /app", runInstruction.getCommands().get(0));
     }
 
+    @Test
+    void testParseRunFlags() throws Exception {
+        String dockerfileContent = """
+            FROM alpine
+            RUN --mount=type=cache,id=go,target=/root/.cache,sharing=locked,mode=0755,uid=1000,gid=1000 \\
+                --mount=type=bind,from=build,src=/out,dst=/in,rw \\
+                --mount=type=secret,id=token,env=TOKEN,required \\
+                --mount=type=tmpfs,destination=/tmp,size=64m \\
+                --mount=type=ssh,ro \\
+                --network=bridge --security=sandbox make --mount=type=cache,target=/x
+            RUN --mount="type=bind,\\"source=a,b\\",target=/c d" ls
+            """;
+        for (DockerfileParser parser : List.of(new DockerfileParser(), new DockerfileParser(false, true))) {
+            List<DockerInstruction> instructions = parser.parseDockerfile(new ByteArrayInputStream(dockerfileContent.getBytes()));
+            RunInstruction run = (RunInstruction) instructions.get(1);
+            List<RunInstruction.Mount> mounts = run.getMounts();
+
+            assertEquals(5, mounts.size());
+            RunInstruction.Mount cache = mounts.get(0);
+            assertEquals(RunInstruction.MountType.CACHE, cache.getMountType());
+            assertEquals("go", cache.getId());
+            assertEquals("/root/.cache", cache.getTarget());
+            assertEquals("locked", cache.getSharing());
+            assertEquals("0755", cache.getMode());
+            assertEquals("1000", cache.getUid());
+            assertEquals("1000", cache.getGid());
+            RunInstruction.Mount bind = mounts.get(1);
+            assertEquals("build", bind.getFrom());
+            assertEquals("/out", bind.getSource());
+            assertEquals("/in", bind.getTarget());
+            assertEquals(Boolean.FALSE, bind.getReadOnly());
+            assertEquals("TOKEN", mounts.get(2).getEnv());
+            assertEquals(Boolean.TRUE, mounts.get(2).getRequired());
+            assertNull(mounts.get(2).getReadOnly());
+            assertEquals("64m", mounts.get(3).getSize());
+            assertEquals("/tmp", mounts.get(3).getTarget());
+            assertEquals(Boolean.TRUE, mounts.get(4).getReadOnly());
+            // an unknown network or security option is kept rather than rejected
+            assertEquals("bridge", run.getNetwork());
+            assertNull(run.getNetworkOption());
+            assertEquals(RunInstruction.SecurityOption.SANDBOX, run.getSecurityOption());
+            // flags following the command belong to it
+            assertEquals(List.of("make --mount=type=cache,target=/x"), run.getCommands());
+
+            RunInstruction quoted = (RunInstruction) instructions.get(2);
+            assertEquals("a,b", quoted.getMounts().get(0).getSource());
+            assertEquals("/c d", quoted.getMounts().get(0).getTarget());
+            assertEquals("RUN --mount='type=bind,\"source=a,b\",target=/c d' ls", quoted.toCanonicalForm());
+            for (DockerInstruction instruction : instructions) {
+                String canonical = instruction.toCanonicalForm();
+                assertEquals(canonical, parser.parseText(canonical).getInstructions().get(0).toCanonicalForm());
+            }
+        }
+    }
+
+    @Test
+    void testShellScripts() throws Exception {
+        String dockerfileContent = """
+            FROM alpine
+            RUN --mount=type=cache,target=/var/cache/apk apk add curl && \\
+                curl -fsSL "$URL" | sh
+            RUN ["echo", "exec"]
+            CMD exec "$APP" --port=${PORT}
+            ENTRYPOINT ["/entrypoint"]
+            """;
+        for (DockerfileParser parser : List.of(new DockerfileParser(), new DockerfileParser(false, true))) {
+            List<DockerInstruction> instructions = parser.parseDockerfile(new ByteArrayInputStream(dockerfileContent.getBytes()));
+            RunInstruction run = (RunInstruction) instructions.get(1);
+            ShellScript script = run.getShellScript();
+
+            assertEquals(List.of("apk", "curl", "sh"), script.getCommands().stream().map(ShellCommand::getName).toList());
+            assertEquals(List.of("URL"), script.getVariables().stream().map(ShellVariable::getName).toList());
+            assertSame(script, run.getShellScript());
+            assertNull(((RunInstruction) instructions.get(2)).getShellScript());
+
+            CmdInstruction cmd = (CmdInstruction) instructions.get(3);
+            assertEquals(List.of("APP", "PORT"), cmd.getShellScript().getVariables().stream().map(ShellVariable::getName).toList());
+            assertSame(cmd.getShellScript(), cmd.getShellScript());
+            cmd.setCommand(List.of("true"));
+            assertEquals("true", cmd.getShellScript().getCommands().get(0).getName());
+            assertNull(((EntrypointInstruction) instructions.get(4)).getShellScript());
+        }
+    }
+
+    @Test
+    void testShellScriptsKeepWhitespaceWithinQuotes() throws Exception {
+        String dockerfileContent = """
+            FROM alpine
+            RUN echo "a    b" && \\
+                printf '%s\\n'   'x  y'
+            CMD echo "a    b"
+            """;
+        List<DockerInstruction> parsed = new DockerfileParser().parseDockerfile(new ByteArrayInputStream(dockerfileContent.getBytes()));
+        // the codec keeps the text the scripts are tokenized from
+        List<DockerInstruction> decoded = BinaryAstCodec.decode(ByteBuffer.wrap(BinaryAstCodec.encode(parsed)));
+        for (List<DockerInstruction> instructions : List.of(parsed, decoded)) {
+            RunInstruction run = (RunInstruction) instructions.get(1);
+            assertEquals(List.of("echo \"a b\" && printf '%s\\n' 'x y'"), run.getCommands());
+            ShellScript script = run.getShellScript();
+            List<ShellWord> echo = script.getCommands().get(0).getArguments();
+            List<ShellWord> printf = script.getCommands().get(1).getArguments();
+            assertEquals("a    b", echo.get(0).getValue());
+            assertEquals("x  y", printf.get(1).getValue());
+            assertEquals("'x  y'", script.getText().substring(printf.get(1).getStart(), printf.get(1).getEnd()));
+
+            CmdInstruction cmd = (CmdInstruction) instructions.get(2);
+            assertEquals("a    b", cmd.getShellScript().getCommands().get(0).getArguments().get(0).getValue());
+        }
+    }
+
     @Test
     void testParseDockerfileWithEnvInstruction() throws Exception {
         String dockerfileContent = """
@@ -145,4 +269,343 @@ class DockerfileParserTest {
         assertEquals("APP_HOME", envInstruction.getVariables().get(0).getKey());
         assertEquals("/app", envInstruction.getVariables().get(0).getValue());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testStreamDockerfileMatchesParseDockerfile() throws Exception {
+        String dockerfileContent = """
+            # This is a comment
+            FROM openjdk:17 AS base
+            ENV APP_HOME=/app
+            RUN mkdir -p /app/logs && \\
+                chown -R 1001:1001 /app
+            CMD ["java", "-jar", "app.jar"]
+            """;
+        List<DockerInstruction> expected = new DockerfileParser().parseDockerfile(new ByteArrayInputStream(dockerfileContent.getBytes()));
+
+        try (Stream<DockerInstruction> stream = new DockerfileParser().streamDockerfile(new ByteArrayInputStream(dockerfileContent.getBytes()))) {
+            List<String> actual = stream.map(DockerInstruction::toCanonicalForm).toList();
+            assertEquals(expected.stream().map(DockerInstruction::toCanonicalForm).toList(), actual);
+        }
+    }
+
+    @Test
+    void testStreamDockerfileStopsReadingAndCloses() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean(false);
+        InputStream head = new ByteArrayInputStream("# base image\nFROM openjdk:17 AS base\n".getBytes());
+        InputStream tail = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("read past the first FROM");
+            }
+
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        try (Stream<DockerInstruction> stream = new DockerfileParser().streamDockerfile(new SequenceInputStream(head, tail))) {
+            FromInstruction from = (FromInstruction) stream.filter(FromInstruction.class::isInstance).findFirst().orElseThrow();
+            assertEquals("base", from.getAlias());
+        }
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void testEscapeDirectiveDoesNotLeakBetweenParses() throws Exception {
+        DockerfileParser parser = new DockerfileParser();
+        parser.parseDockerfile(new ByteArrayInputStream("# escape=`\nFROM openjdk:17\n".getBytes()));
+
+        String dockerfileContent = """
+            FROM openjdk:17
+            RUN mkdir -p \\
+                /app/logs
+            """;
+        List<DockerInstruction> instructions = parser.parseDockerfile(new ByteArrayInputStream(dockerfileContent.getBytes()));
+
+        assertEquals(2, instructions.size());
+        assertEquals("mkdir -p /app/logs", ((RunInstruction) instructions.get(1)).getCommands().get(0));
+    }
+
+    @Test
+    void testConcurrentParsesShareOneParser() throws Exception {
+        DockerfileParser parser = new DockerfileParser(true);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                int n = i;
+                futures.add(executor.submit(() -> {
+                    String escape = n % 2 == 0 ? "`" : "\\";
+                    String dockerfileContent = "# escape=" + escape + "\n" +
+                            "FROM openjdk:17\n" +
+                            "ENV APP_HOME=/app" + n + "\n" +
+                            "ENV LOGS=${APP_HOME}/logs\n" +
+                            "RUN mkdir -p " + escape + "\n" +
+                            "    /app/logs\n";
+                    List<DockerInstruction> instructions = parser.parseDockerfile(new ByteArrayInputStream(dockerfileContent.getBytes()));
+                    assertEquals("mkdir -p /app/logs", ((RunInstruction) instructions.get(4)).getCommands().get(0));
+                    return ((EnvInstruction) instructions.get(3)).getVariables().get(0).getValue();
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals("/app" + i + "/logs", futures.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testSourceSpans() throws Exception {
+        String dockerfileContent = "# syntax=docker/dockerfile:1\r\n" +
+                "# build stage\r\n" +
+                "  FROM --platform=linux/amd64 golang:1.23 AS build\r\n" +
+                "COPY --from=build \\\r\n" +
+                "    /src/é /other /dst\r\n" +
+                "ONBUILD COPY [\"a\", \"b\"]\r\n";
+        List<DockerInstruction> instructions = new DockerfileParser().parseDockerfile(new ByteArrayInputStream(dockerfileContent.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(5, instructions.size());
+        assertEquals("1:1-1:29", instructions.get(0).getSourceSpan().toString());
+        assertEquals("2:1-2:14", instructions.get(1).getSourceSpan().toString());
+
+        SourceSpan from = instructions.get(2).getSourceSpan();
+        assertEquals("3:3-3:51", from.toString());
+        assertEquals(dockerfileContent.indexOf("FROM"), from.getStartOffset());
+        assertEquals(4, from.getPartCount());
+        assertEquals(SourceSpan.PartKind.FLAG, from.getPartKind(1));
+        assertEquals(3, from.getPartStartLine(1));
+        assertEquals(8, from.getPartStartColumn(1));
+        int alias = from.indexOfPart(SourceSpan.PartKind.ALIAS);
+        assertEquals("build", dockerfileContent.substring(from.getPartStartOffset(alias), from.getPartEndOffset(alias)));
+        int image = from.indexOfPart(SourceSpan.PartKind.IMAGE);
+        assertEquals("golang:1.23", dockerfileContent.substring(from.getPartStartOffset(image), from.getPartEndOffset(image)));
+
+        SourceSpan copy = instructions.get(3).getSourceSpan();
+        assertEquals("4:1-5:23", copy.toString());
+        int source = copy.indexOfPart(SourceSpan.PartKind.SOURCE);
+        assertEquals(5, copy.getPartStartLine(source));
+        assertEquals(5, copy.getPartStartColumn(source));
+        assertEquals("/src/é", dockerfileContent.substring(copy.getPartStartOffset(source), copy.getPartEndOffset(source)));
+        int destination = copy.indexOfPart(SourceSpan.PartKind.DESTINATION);
+        byte[] bytes = dockerfileContent.getBytes(StandardCharsets.UTF_8);
+        assertEquals("/dst", new String(bytes, copy.getPartStartByteOffset(destination),
+                copy.getPartEndByteOffset(destination) - copy.getPartStartByteOffset(destination), StandardCharsets.UTF_8));
+
+        OnBuildInstruction onBuild = (OnBuildInstruction) instructions.get(4);
+        SourceSpan deferred = onBuild.getDeferredInstruction().getSourceSpan();
+        assertEquals("6:9-6:24", deferred.toString());
+        int deferredDestination = deferred.indexOfPart(SourceSpan.PartKind.DESTINATION);
+        assertEquals("\"b\"", dockerfileContent.substring(deferred.getPartStartOffset(deferredDestination), deferred.getPartEndOffset(deferredDestination)));
+    }
+
+    @Test
+    void testHeredocSourceSpan() throws Exception {
+        String dockerfileContent = """
+            FROM alpine
+            RUN <<EOF
+              echo hello
+            EOF
+            """;
+        List<DockerInstruction> instructions = new DockerfileParser().parseDockerfile(new ByteArrayInputStream(dockerfileContent.getBytes()));
+
+        SourceSpan run = instructions.get(1).getSourceSpan();
+        assertEquals("2:1-4:4", run.toString());
+        assertEquals(dockerfileContent.indexOf("RUN"), run.getStartOffset());
+        assertEquals(dockerfileContent.lastIndexOf("EOF") + 3, run.getEndOffset());
+    }
+
+    @Test
+    void testHeredocs() throws Exception {
+        String dockerfileContent = "FROM alpine\n"
+                + "RUN <<-\"eot\" cat >/a && python3 3<<py\n"
+                + "\t\techo $HOME\n"
+                + "\n"
+                + "\teot\n"
+                + "print(1)\n"
+                + "py\n"
+                + "COPY <<one <<two /etc/\n"
+                + "1\n"
+                + "one\n"
+                + "two\n"
+                + "ENV A=<<b\n";
+        for (DockerfileParser parser : List.of(new DockerfileParser(), new DockerfileParser(false, true))) {
+            List<DockerInstruction> instructions = parser.parseDockerfile(new ByteArrayInputStream(dockerfileContent.getBytes()));
+            assertEquals(4, instructions.size());
+
+            RunInstruction run = (RunInstruction) instructions.get(1);
+            assertEquals(List.of("<<-\"eot\" cat >/a && python3 3<<py"), run.getCommands());
+            assertEquals("2:1-7:3", run.getSourceSpan().toString());
+            Heredoc script = run.getHeredocs().get(0);
+            assertEquals("eot", script.getName());
+            assertTrue(script.isChomp());
+            assertFalse(script.isExpand());
+            // the body is a view of the parsed text until it's asked for as a string
+            assertFalse(script.getBody() instanceof String);
+            assertFalse(script.getBody() instanceof Buffer);
+            assertEquals("$HOME", script.getBody().subSequence(5, 10).toString());
+            try (Reader reader = script.openReader()) {
+                StringWriter body = new StringWriter();
+                reader.transferTo(body);
+                assertEquals("echo $HOME\n\n", body.toString());
+            }
+            assertEquals("echo $HOME\n\n", script.getText());
+            Heredoc python = run.getHeredocs().get(1);
+            assertEquals("py", python.getName());
+            assertEquals("print(1)\n", python.getBody().toString());
+            assertEquals(3, python.getFileDescriptor());
+            assertTrue(python.isExpand());
+            assertEquals("echo $HOME\n\n", run.getHeredoc());
+            assertEquals("eot", run.getHeredocName());
+            StringBuilder mutable = new StringBuilder("a\n");
+            Heredoc copied = new Heredoc("EOF", mutable);
+            mutable.setLength(0);
+            assertEquals("a\n", copied.getBody().toString());
+
+            CopyInstruction copy = (CopyInstruction) instructions.get(2);
+            assertEquals(List.of("<<one", "<<two"), copy.getSources());
+            assertEquals("/etc/", copy.getDestination());
+            assertEquals("1\n", copy.getHeredocs().get(0).getBody().toString());
+            assertEquals("", copy.getHeredocs().get(1).getBody().toString());
+            assertEquals("COPY <<one <<two /etc/\n1\none\ntwo", copy.toCanonicalForm());
+
+            // only RUN, COPY and ADD start heredocs
+            assertEquals("<<b", ((EnvInstruction) instructions.get(3)).getVariables().get(0).getValue());
+
+            String canonical = run.toCanonicalForm();
+            RunInstruction reparsed = (RunInstruction) parser.parseDockerfile(new ByteArrayInputStream(canonical.getBytes())).get(0);
+            assertEquals(canonical, reparsed.toCanonicalForm());
+        }
+    }
+
+    @Test
+    void testLazyArgumentsMatchEagerParsing() throws Exception {
+        List<DockerInstruction> eager;
+        List<DockerInstruction> lazy;
+        try (InputStream eagerStream = getClass().getClassLoader().getResourceAsStream("examples/hugo/Dockerfile");
+             InputStream lazyStream = getClass().getClassLoader().getResourceAsStream("examples/hugo/Dockerfile")) {
+            eager = new DockerfileParser().parseDockerfile(eagerStream);
+            lazy = new DockerfileParser(false, true).parseDockerfile(lazyStream);
+        }
+        assertEquals(eager.size(), lazy.size());
+        for (int i = 0; i < eager.size(); i++) {
+            assertEquals(eager.get(i).getClass(), lazy.get(i).getClass());
+            assertEquals(eager.get(i).toCanonicalForm(), lazy.get(i).toCanonicalForm());
+        }
+
+        String dockerfileContent = "FROM alpine\nRUN --mount=type=cache,target=/root/.cache go build\nCOPY --from=build [\"/out\", \"/bin/\"]\n";
+        List<DockerInstruction> instructions = new DockerfileParser(false, true).parseDockerfile(new ByteArrayInputStream(dockerfileContent.getBytes()));
+        assertEquals("/root/.cache", ((RunInstruction) instructions.get(1)).getMounts().get(0).getTarget());
+        assertEquals("build", ((CopyInstruction) instructions.get(2)).getFrom());
+        assertEquals("/bin/", ((CopyInstruction) instructions.get(2)).getDestination());
+    }
+
+    @Test
+    void testLazyArgumentsReportErrorsWhileParsing() {
+        DockerfileParser parser = new DockerfileParser(false, true);
+        assertThrows(ParserError.class, () -> parser.parseDockerfile(new ByteArrayInputStream("COPY --from=build /src\n".getBytes())));
+        assertThrows(ParserError.class, () -> parser.parseDockerfile(new ByteArrayInputStream("ADD [\"/src\", ]\n".getBytes())));
+    }
+
+    @Test
+    void testVariableScoping() throws Exception {
+        String dockerfileContent = """
+            ARG TAG=1.0
+            ARG BASE=alpine
+            FROM ${BASE}:${TAG} AS build
+            ENV HOME=/build
+            ENV TAG_SEEN=${TAG:-none}
+            ARG TAG
+            ENV TAG_DECLARED=$TAG
+            ONBUILD ENV HOME=/onbuild
+            ENV AFTER_ONBUILD=$HOME
+            FROM build
+            ENV INHERITED=$HOME
+            ENV ARG_SEEN=${TAG:-none}
+            FROM scratch
+            ENV FRESH=${HOME:-none}
+            """;
+        List<DockerInstruction> instructions = new DockerfileParser(true).parseDockerfile(new ByteArrayInputStream(dockerfileContent.getBytes()));
+
+        assertEquals("alpine:1.0", ((FromInstruction) instructions.get(2)).getImage());
+        assertEquals("none", envValue(instructions.get(4)));
+        assertEquals("1.0", envValue(instructions.get(6)));
+        assertEquals("/build", envValue(instructions.get(8)));
+        assertEquals("/build", envValue(instructions.get(10)));
+        assertEquals("none", envValue(instructions.get(11)));
+        assertEquals("none", envValue(instructions.get(13)));
+    }
+
+    @Test
+    void testBuildArgsOverrideDeclaredArgs() throws Exception {
+        String dockerfileContent = """
+            ARG VERSION=1
+            FROM alpine:$VERSION
+            ARG VERSION
+            ARG MODE=debug
+            ENV VERSION=$VERSION
+            ENV MODE=$MODE
+            ENV UNDECLARED=${SECRET:-unset}
+            """;
+        DockerfileParser parser = new DockerfileParser(true, false, Map.of("VERSION", "2", "MODE", "release", "SECRET", "s"));
+        List<DockerInstruction> instructions = parser.parseDockerfile(new ByteArrayInputStream(dockerfileContent.getBytes()));
+
+        assertEquals("alpine:2", ((FromInstruction) instructions.get(1)).getImage());
+        // the AST keeps the defaults as written; only the values seen by expansion are overridden
+        assertEquals("debug", ((ArgInstruction) instructions.get(3)).getArgs().get(0).getValue());
+        assertEquals("2", envValue(instructions.get(4)));
+        assertEquals("release", envValue(instructions.get(5)));
+        assertEquals("unset", envValue(instructions.get(6)));
+    }
+
+    @Test
+    void testFromKeepsUnsetPlatformArgs() throws Exception {
+        String dockerfileContent = """
+            ARG BASE=alpine
+            FROM --platform=$BUILDPLATFORM ${BASE}:${TAG:-3.19} AS build
+            FROM --platform=${TARGETPLATFORM} $UNDECLARED
+            """;
+        List<DockerInstruction> instructions = new DockerfileParser(true).parseDockerfile(new ByteArrayInputStream(dockerfileContent.getBytes()));
+
+        assertEquals("FROM --platform=$BUILDPLATFORM alpine:3.19 AS build", instructions.get(1).toCanonicalForm());
+        assertEquals("FROM --platform=${TARGETPLATFORM} $UNDECLARED", instructions.get(2).toCanonicalForm());
+
+        // build arguments are only visible when declared, except for the platform arguments
+        DockerfileParser parser = new DockerfileParser(true, false, Map.of("BUILDPLATFORM", "linux/amd64", "TAG", "3.20"));
+        instructions = parser.parseDockerfile(new ByteArrayInputStream(dockerfileContent.getBytes()));
+        assertEquals("FROM --platform=linux/amd64 alpine:3.19 AS build", instructions.get(1).toCanonicalForm());
+    }
+
+    @Test
+    void testInstructionKinds() throws Exception {
+        String dockerfileContent = """
+            # syntax=docker/dockerfile:1
+            FROM alpine
+            CMD ["sh"]
+            ONBUILD RUN make
+            FETCH https://example.com/archive.tgz
+            """;
+        List<DockerInstruction> instructions = new DockerfileParser().parseDockerfile(
+                new ByteArrayInputStream(dockerfileContent.getBytes(StandardCharsets.UTF_8)));
+
+        List<InstructionKind> kinds = instructions.stream().map(DockerInstruction::getKind).toList();
+        assertEquals(List.of(InstructionKind.DIRECTIVE, InstructionKind.FROM, InstructionKind.CMD, InstructionKind.ONBUILD,
+                InstructionKind.UNKNOWN), kinds);
+        assertEquals(InstructionKind.RUN, ((OnBuildInstruction) instructions.get(3)).getDeferredInstruction().getKind());
+
+        UnknownInstruction unknown = assertInstanceOf(UnknownInstruction.class, instructions.get(4));
+        assertEquals("FETCH", unknown.getInstruction());
+        assertEquals("https://example.com/archive.tgz", unknown.getArguments());
+        assertEquals("FETCH https://example.com/archive.tgz", unknown.toCanonicalForm());
+
+        unknown = (UnknownInstruction) new DockerfileParser().parseDockerfile(
+                new ByteArrayInputStream("fetch archive.tgz".getBytes(StandardCharsets.UTF_8))).get(0);
+        assertEquals("FETCH", unknown.getInstruction());
+        assertEquals("FETCH archive.tgz", unknown.toCanonicalForm());
+    }
+
+    private static String envValue(DockerInstruction instruction) {
+        return ((EnvInstruction) instruction).getVariables().get(0).getValue();
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.jimschubert.docker.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpansionTemplateTest {
+    private static final Map<String, String> VARIABLES = Map.of("A", "a", "EMPTY", "", "PATH_1", "/usr/bin");
+    private static final Function<String, String> LOOKUP = VARIABLES::get;
+
+    @Test
+    void testReferences() throws Exception {
+        assertEquals("a/a/a", expand("$A/${A}/$A"));
+        assertEquals("/usr/bin:x", expand("$PATH_1:x"));
+        assertEquals("-", expand("$UNSET-"));
+        assertEquals("1$", expand("1$"));
+        assertEquals("$1 $-", expand("$1 $-"));
+    }
+
+    @Test
+    void testOperators() throws Exception {
+        assertEquals("a", expand("${A:-d}"));
+        assertEquals("d", expand("${UNSET:-d}"));
+        assertEquals("d", expand("${EMPTY:-d}"));
+        assertEquals("", expand("${EMPTY-d}"));
+        assertEquals("d", expand("${UNSET-d}"));
+        assertEquals("alt", expand("${A:+alt}"));
+        assertEquals("", expand("${EMPTY:+alt}"));
+        assertEquals("alt", expand("${EMPTY+alt}"));
+        assertEquals("", expand("${UNSET+alt}"));
+        assertEquals("a/usr/bin", expand("${UNSET:-${A}$PATH_1}"));
+        assertEquals("a", expand("${A:?required}"));
+
+        ParserError error = assertThrows(ParserError.class, () -> expand("${UNSET:?must be set}"));
+        assertEquals("UNSET: must be set", error.getMessage());
+        assertThrows(ParserError.class, () -> expand("${EMPTY:?}"));
+    }
+
+    @Test
+    void testUnsetReferencesCanBeKept() throws Exception {
+        ExpansionTemplate template = ExpansionTemplate.of("$UNSET ${UNSET} ${UNSET:-$A} ${UNSET+alt} ${A:-$UNSET} $A", '\\');
+
+        assertEquals("$UNSET ${UNSET} a  a a", template.expand(LOOKUP, true));
+        assertEquals("  a  a a", template.expand(LOOKUP));
+    }
+
+    @Test
+    void testQuotingAndEscaping() throws Exception {
+        assertEquals("'$A' \"a\"", expand("'$A' \"$A\""));
+        assertEquals("$A a", expand("\\$A $A"));
+        assertEquals("\\n a", expand("\\n $A"));
+        assertEquals("$A a", ExpansionTemplate.expand("`$A $A", '`', LOOKUP));
+    }
+
+    @Test
+    void testMalformedReferencesAreKept() throws Exception {
+        assertEquals("${}", expand("${}"));
+        assertEquals("${A", expand("${A"));
+        assertEquals("${A:-d", expand("${A:-d"));
+        assertEquals("${A/x/y}", expand("${A/x/y}"));
+    }
+
+    @Test
+    void testTemplatesAreCached() {
+        ExpansionTemplate template = ExpansionTemplate.of("${A:-$B}/x", '\\');
+
+        assertSame(template, ExpansionTemplate.of("${A:-$B}/x", '\\'));
+        assertNotSame(template, ExpansionTemplate.of("${A:-$B}/x", '`'));
+        assertEquals(List.of("A", "B"), template.getVariableNames());
+        assertTrue(template.hasVariables());
+        assertFalse(ExpansionTemplate.of("no variables", '\\').hasVariables());
+    }
+
+    @Test
+    void testTextWithoutVariablesIsReturnedAsIs() throws Exception {
+        String text = "plain text";
+        assertSame(text, ExpansionTemplate.expand(text, '\\', LOOKUP));
+    }
+
+    private static String expand(String text) throws ParserError {
+        return ExpansionTemplate.expand(text, '\\', LOOKUP);
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.jimschubert.docker.parser;
+
+import com.github.jimschubert.docker.ast.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexedDockerfileTest {
+    private static final String DOCKERFILE = """
+            # syntax=docker/dockerfile:1
+            ARG VERSION=1
+            FROM golang AS build
+            COPY go.mod go.sum ./
+            RUN go mod download
+            COPY . .
+            EXPOSE 8080
+            FROM alpine AS Final
+            COPY --from=build /out/app /app
+            EXPOSE 80 443
+            ONBUILD COPY . /src
+            FROM scratch
+            """;
+
+    @Test
+    void testIndexByKindAndStage() throws Exception {
+        IndexedDockerfile index = new DockerfileParser().parseIndexed(new ByteArrayInputStream(DOCKERFILE.getBytes()));
+
+        assertEquals(12, index.getInstructions().size());
+        assertEquals(3, index.getStageCount());
+        assertEquals(3, index.getInstructions(InstructionKind.COPY).size());
+        assertEquals(2, index.getInstructions(InstructionKind.EXPOSE).size());
+        assertEquals(1, index.getInstructions(InstructionKind.ONBUILD).size());
+        assertTrue(index.getInstructions(InstructionKind.USER).isEmpty());
+
+        List<DockerInstruction> copies = index.getInstructions(InstructionKind.COPY, 0);
+        assertEquals(2, copies.size());
+        assertEquals("./", ((CopyInstruction) copies.get(0)).getDestination());
+        assertEquals("/app", ((CopyInstruction) index.getInstructions(InstructionKind.COPY, 1).get(0)).getDestination());
+        assertTrue(index.getInstructions(InstructionKind.COPY, 2).isEmpty());
+        assertThrows(IndexOutOfBoundsException.class, () -> index.getInstructions(InstructionKind.COPY, 3));
+    }
+
+    @Test
+    void testStages() throws Exception {
+        IndexedDockerfile index = new DockerfileParser().parseIndexed(new ByteArrayInputStream(DOCKERFILE.getBytes()));
+
+        assertEquals(2, index.getGlobalInstructions().size());
+        assertEquals(5, index.getStageInstructions(0).size());
+        assertEquals(1, index.getStageInstructions(2).size());
+        assertEquals("alpine", index.getFrom("final").getImage());
+        assertEquals(1, index.getStageIndex("FINAL"));
+        assertEquals(-1, index.getStageIndex("missing"));
+        assertNull(index.getFrom("missing"));
+        assertEquals("scratch", index.getFrom(2).getImage());
+        assertEquals(-1, index.getStageOf(1));
+        assertEquals(0, index.getStageOf(2));
+        assertEquals(1, index.getStageOf(10));
+        assertEquals(2, index.getStageOf(11));
+    }
+
+    @Test
+    void testIndexMatchesParsedList() throws Exception {
+        List<DockerInstruction> instructions = new DockerfileParser().parseDockerfile(new ByteArrayInputStream(DOCKERFILE.getBytes()));
+        IndexedDockerfile index = IndexedDockerfile.of(instructions);
+
+        assertEquals(instructions, index.getInstructions());
+        for (InstructionKind kind : InstructionKind.values()) {
+            List<DockerInstruction> expected = instructions.stream().filter(i -> i.getKind() == kind).toList();
+            assertEquals(expected, index.getInstructions(kind));
+        }
+        assertEquals(InstructionKind.DIRECTIVE, instructions.get(0).getKind());
+    }
+}
@@ -0,0 +1,129 @@
+package com.github.jimschubert.docker.parser;
+
+import com.github.jimschubert.docker.ast.DockerInstruction;
+import com.github.jimschubert.docker.ast.FromInstruction;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Field;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParseCacheTest {
+    private static final byte[] FIRST = "FROM alpine\nENV A=1\nRUN echo ${A}\n".getBytes();
+    private static final byte[] SECOND = "FROM busybox\nCMD [\"sh\"]\n".getBytes();
+
+    @Test
+    void testHitsCopyTheParsedInstructions() throws Exception {
+        ParseCache cache = new ParseCache(10);
+        DockerfileParser parser = new DockerfileParser();
+
+        List<DockerInstruction> first = cache.parseDockerfile(parser, new ByteArrayInputStream(FIRST));
+        List<DockerInstruction> second = cache.parseDockerfile(new DockerfileParser(), FIRST.clone());
+
+        assertNotSame(first.get(0), second.get(0));
+        assertEquals(first.stream().map(DockerInstruction::toCanonicalForm).toList(),
+                second.stream().map(DockerInstruction::toCanonicalForm).toList());
+        assertEquals(first.get(2).getSourceSpan(), second.get(2).getSourceSpan());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertThrows(UnsupportedOperationException.class, () -> first.add(null));
+    }
+
+    @Test
+    void testChangesToReturnedInstructionsAreNotCached() throws Exception {
+        ParseCache cache = new ParseCache(10);
+        DockerfileParser parser = new DockerfileParser();
+
+        ((FromInstruction) cache.parseDockerfile(parser, FIRST).get(0)).setImage("busybox");
+        ((FromInstruction) cache.parseDockerfile(parser, FIRST).get(0)).setImage("debian");
+        FromInstruction from = (FromInstruction) cache.parseDockerfile(parser, FIRST).get(0);
+
+        assertEquals("alpine", from.getImage());
+        assertFalse(from.isModified());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    void testMissesLeaveLazyArgumentsUndecoded() throws Exception {
+        ParseCache cache = new ParseCache(10);
+        DockerfileParser parser = new DockerfileParser(false, true);
+
+        List<DockerInstruction> first = cache.parseDockerfile(parser, FIRST);
+        assertFalse(isDecoded(first.get(2)));
+        List<DockerInstruction> second = cache.parseDockerfile(parser, FIRST);
+        List<DockerInstruction> third = cache.parseDockerfile(parser, FIRST);
+
+        assertFalse(isDecoded(first.get(2)));
+        assertNotSame(second.get(2), third.get(2));
+        assertEquals("RUN echo ${A}", first.get(2).toCanonicalForm());
+        assertEquals(first.get(2).toCanonicalForm(), second.get(2).toCanonicalForm());
+        assertEquals(first.get(2).toCanonicalForm(), third.get(2).toCanonicalForm());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void testParserOptionsArePartOfTheKey() throws Exception {
+        ParseCache cache = new ParseCache(10);
+
+        List<DockerInstruction> plain = cache.parseDockerfile(new DockerfileParser(), FIRST);
+        List<DockerInstruction> expanded = cache.parseDockerfile(new DockerfileParser(true), FIRST);
+        List<DockerInstruction> lazy = cache.parseDockerfile(new DockerfileParser(false, true), FIRST);
+
+        assertNotSame(plain, expanded);
+        assertNotSame(plain, lazy);
+        assertEquals(3, cache.getMissCount());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsedEntries() throws Exception {
+        ParseCache cache = new ParseCache(2);
+        DockerfileParser parser = new DockerfileParser();
+        byte[] third = "FROM scratch\n".getBytes();
+
+        cache.parseDockerfile(parser, FIRST);
+        cache.parseDockerfile(parser, SECOND);
+        cache.parseDockerfile(parser, FIRST);
+        cache.parseDockerfile(parser, third);
+
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(FIRST.length + third.length, cache.getWeight());
+        cache.parseDockerfile(parser, FIRST);
+        assertEquals(2, cache.getHitCount());
+        cache.parseDockerfile(parser, SECOND);
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    void testEvictsByWeight() throws Exception {
+        ParseCache cache = new ParseCache(100, FIRST.length + SECOND.length - 1);
+        DockerfileParser parser = new DockerfileParser();
+
+        cache.parseDockerfile(parser, FIRST);
+        cache.parseDockerfile(parser, SECOND);
+
+        assertEquals(1, cache.size());
+        assertEquals(SECOND.length, cache.getWeight());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    void testFailuresAreNotCached() {
+        ParseCache cache = new ParseCache(10);
+        byte[] invalid = "COPY onlyone\n".getBytes();
+
+        assertThrows(ParserError.class, () -> cache.parseDockerfile(new DockerfileParser(), invalid));
+        assertThrows(ParserError.class, () -> cache.parseDockerfile(new DockerfileParser(), invalid));
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    private static boolean isDecoded(DockerInstruction instruction) throws ReflectiveOperationException {
+        Field pendingDecode = DockerInstruction.class.getDeclaredField("pendingDecode");
+        pendingDecode.setAccessible(true);
+        return pendingDecode.get(instruction) == null;
+    }
+}
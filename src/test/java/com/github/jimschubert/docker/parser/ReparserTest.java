@@ -0,0 +1,153 @@
+package com.github.jimschubert.docker.parser;
+
+import com.github.jimschubert.docker.ast.*;
+import com.github.jimschubert.docker.printer.LosslessPrinter;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReparserTest {
+    private static final String DOCKERFILE = """
+            # syntax=docker/dockerfile:1
+            # base image
+            FROM golang:1.23 AS build
+            ENV APP_HOME=/app
+            ENV LOGS=${APP_HOME}/logs
+            RUN go mod download && \\
+                go build -o /out/app
+            # copy sources
+            COPY --from=build /out/app /usr/bin/app
+            RUN <<EOF
+              echo héllo
+            EOF
+            ONBUILD ENV LOGS=/onbuild
+            CMD ["app"]
+            """;
+
+    @Test
+    void testReparseReusesUntouchedInstructions() throws Exception {
+        DockerfileParser parser = new DockerfileParser();
+        ParsedDockerfile previous = parser.parseText(DOCKERFILE);
+        int offset = DOCKERFILE.indexOf("/app\n");
+
+        ParsedDockerfile next = parser.reparse(previous, new TextEdit(offset, 4, "/srv\n# note"));
+
+        BitSet expected = new BitSet();
+        expected.set(3, 6);
+        assertEquals(expected, next.getChangedIndices());
+        assertEquals(previous.getInstructions().size() + 1, next.getInstructions().size());
+        assertSame(previous.getInstructions().get(2), next.getInstructions().get(2));
+        assertSame(previous.getInstructions().get(5), next.getInstructions().get(6));
+        assertEquals(6, previous.getSourceSpan(5).getStartLine());
+        assertEquals("/srv", ((EnvInstruction) next.getInstructions().get(3)).getVariables().get(0).getValue());
+        assertEquals(7, next.getSourceSpan(6).getStartLine());
+        assertParsedLikeFullParse(parser, next);
+    }
+
+    @Test
+    void testReparseIntoContinuationAndHeredoc() throws Exception {
+        DockerfileParser parser = new DockerfileParser();
+        ParsedDockerfile parsed = parser.parseText(DOCKERFILE);
+
+        parsed = parser.reparse(parsed, new TextEdit(DOCKERFILE.indexOf("\nCMD"), 0, " \\"));
+        assertParsedLikeFullParse(parser, parsed);
+        assertEquals("ONBUILD", parsed.getInstructions().get(parsed.getInstructions().size() - 1).getInstruction());
+
+        parsed = parser.reparse(parsed, new TextEdit(parsed.getText().indexOf("\nEOF"), 4, ""));
+        assertParsedLikeFullParse(parser, parsed);
+    }
+
+    @Test
+    void testReparseAppendingToLastLine() throws Exception {
+        DockerfileParser parser = new DockerfileParser();
+        String text = "FROM alpine\nRUN echo ";
+        ParsedDockerfile parsed = parser.reparse(parser.parseText(text), new TextEdit(text.length(), 0, "hi"));
+
+        assertEquals("RUN echo hi", parsed.getInstructions().get(1).toCanonicalForm());
+        assertEquals(2, parsed.getInstructions().size());
+        assertParsedLikeFullParse(parser, parsed);
+    }
+
+    @Test
+    void testReparseKeepsPreviousParseIntact() throws Exception {
+        DockerfileParser parser = new DockerfileParser();
+        ParsedDockerfile previous = parser.parseText(DOCKERFILE);
+        List<String> before = describe(previous);
+
+        ParsedDockerfile next = parser.reparse(previous, new TextEdit(DOCKERFILE.indexOf("ENV"), 0, "# note\n"));
+
+        assertEquals(before, describe(previous));
+        assertParsedLikeFullParse(parser, next);
+    }
+
+    @Test
+    void testReparseFromCheckpoints() throws Exception {
+        StringBuilder text = new StringBuilder("ARG N=0\nFROM alpine\n");
+        for (int i = 0; i < 5 * Reparser.CHECKPOINT_INTERVAL; i++) {
+            text.append("ENV V").append(i).append("=${N}-").append(i).append('\n');
+        }
+        DockerfileParser parser = new DockerfileParser(true);
+        ParsedDockerfile parsed = parser.parseText(text.toString());
+        assertEquals(5, parsed.getCheckpoints().size());
+        Random random = new Random(7);
+        for (int i = 0; i < 50; i++) {
+            int offset = parsed.getText().indexOf("\nENV", random.nextInt(parsed.getText().length())) + 1;
+            parsed = parser.reparse(parsed, new TextEdit(offset, 0, random.nextBoolean() ? "ENV N=" + i + "\n" : "# " + i + "\n"));
+            assertParsedLikeFullParse(parser, parsed);
+        }
+    }
+
+    @Test
+    void testRandomEditsMatchFullParse() throws Exception {
+        String[] insertions = {"\n", "\\", " ", "#", "# escape=`\n", "EOF", "\nRUN <<EOF\n", "ENV A=b\n", "${APP_HOME}", "\r\n", "é", "COPY a b\n", "`\n",
+                "ARG TAG=${APP_HOME:-1}\n", "FROM build AS $TAG\n", "$TAG"};
+        for (int mode = 0; mode < 3; mode++) {
+            DockerfileParser parser = new DockerfileParser(mode > 0, false, mode > 1 ? Map.of("TAG", "2") : Map.of());
+            Random random = new Random(42);
+            for (int run = 0; run < 200; run++) {
+                ParsedDockerfile parsed = parser.parseText(DOCKERFILE);
+                for (int i = 0; i < 10; i++) {
+                    String text = parsed.getText();
+                    int offset = random.nextInt(text.length() + 1);
+                    int removed = random.nextInt(Math.min(8, text.length() - offset) + 1);
+                    String inserted = random.nextBoolean() ? insertions[random.nextInt(insertions.length)] : "";
+                    try {
+                        parsed = parser.reparse(parsed, new TextEdit(offset, removed, inserted));
+                    } catch (ParserError | RuntimeException e) {
+                        // malformed input must fail the same way as a full parse
+                        assertThrows(e.getClass(), () -> parser.parseText(new TextEdit(offset, removed, inserted).apply(text)));
+                        break;
+                    }
+                    assertParsedLikeFullParse(parser, parsed);
+                }
+            }
+        }
+    }
+
+    private static void assertParsedLikeFullParse(DockerfileParser parser, ParsedDockerfile parsed) throws ParserError {
+        ParsedDockerfile full = parser.parseText(parsed.getText());
+        assertEquals(describe(full), describe(parsed), parsed.getText());
+        assertEquals(parsed.getText(), new LosslessPrinter(parsed, parsed.getInstructions()).print());
+    }
+
+    private static List<String> describe(ParsedDockerfile parsed) {
+        List<String> descriptions = new ArrayList<>();
+        for (int i = 0; i < parsed.getInstructions().size(); i++) {
+            DockerInstruction instruction = parsed.getInstructions().get(i);
+            SourceSpan span = parsed.getSourceSpan(i);
+            String description = instruction.toCanonicalForm() + " @ " + span + " " + span.getStartOffset() + "-"
+                    + span.getEndByteOffset();
+            if (instruction instanceof OnBuildInstruction onBuild) {
+                description += " / " + parsed.locate(i, onBuild.getDeferredInstruction().getSourceSpan());
+            }
+            descriptions.add(description);
+        }
+        return descriptions;
+    }
+}
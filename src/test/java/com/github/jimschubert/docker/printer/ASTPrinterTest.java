@@ -3,6 +3,8 @@ package com.github.jimschubert.docker.printer;
 import com.github.jimschubert.docker.ast.*;
 import org.junit.jupiter.api.Test;
 
+import java.io.StringWriter;
+import java.nio.CharBuffer;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -32,4 +34,21 @@ class ASTPrinterTest {
         String actual = ASTPrinter.toASTString(cmd);
         assertEquals(expected, actual);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testToASTStringWithNestedFields() {
+        RunInstruction run = new RunInstruction(List.of("echo", "hi"), List.of(new RunInstruction.Mount("cache", "/root/.cache", null)), RunInstruction.NetworkOption.DEFAULT, null, List.of(new Heredoc("EOF", CharBuffer.wrap("hi\n"))));
+        String expected = "RunInstruction {\n  commands: [\n    \"echo\"\n    \"hi\"\n  ]\n  commandText: null\n  mounts: [\n    Mount {\n      options: {\n        type: \"cache\"\n        target: \"/root/.cache\"\n      }\n    }\n  ]\n"
+                + "  network: \"default\"\n  security: null\n"
+                + "  heredocs: [\n    Heredoc {\n      name: \"EOF\"\n      body: \"hi\n\"\n      chomp: false\n      expand: true\n      fileDescriptor: 0\n    }\n  ]\n}";
+        assertEquals(expected, ASTPrinter.toASTString(run));
+    }
+
+    @Test
+    void testPrintStreamsTheSameText() throws Exception {
+        LabelInstruction label = new LabelInstruction(List.of(new KeyValuePair("a", "b", true, Quoting.UNQUOTED)));
+        StringWriter writer = new StringWriter();
+        ASTPrinter.print(label, writer);
+        assertEquals(ASTPrinter.toASTString(label), writer.toString());
+    }
+}
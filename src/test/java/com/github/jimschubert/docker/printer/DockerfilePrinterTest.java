@@ -1,11 +1,16 @@
 package com.github.jimschubert.docker.printer;
 
+import com.github.jimschubert.docker.ast.CommentInstruction;
 import com.github.jimschubert.docker.ast.CopyInstruction;
 import com.github.jimschubert.docker.ast.DockerInstruction;
 import com.github.jimschubert.docker.ast.FromInstruction;
+import com.github.jimschubert.docker.ast.OnBuildInstruction;
 import com.github.jimschubert.docker.ast.RunInstruction;
+import com.github.jimschubert.docker.parser.DockerfileParser;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -26,4 +31,33 @@ class DockerfilePrinterTest {
 
         assertEquals(expectedOutput, actualOutput);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testPrintToAppendable() throws Exception {
+        List<DockerInstruction> instructions = List.of(
+                new FromInstruction("linux/arm64", "alpine", "", "base"),
+                new OnBuildInstruction(new RunInstruction(List.of("make"))),
+                new CommentInstruction("first\nsecond"));
+        StringWriter writer = new StringWriter();
+
+        new DockerfilePrinter(instructions).print(writer);
+
+        assertEquals("FROM --platform=linux/arm64 alpine AS base\nONBUILD RUN make\n# first\n# second\n", writer.toString());
+        assertEquals(writer.toString(), new DockerfilePrinter(instructions).print());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void testPrintRunWithSingleHeredoc() throws Exception {
+        RunInstruction run = new RunInstruction(List.of("bash"), List.of(), null, null, "echo hi", "EOF");
+
+        assertEquals("RUN bash <<EOF\necho hi\nEOF\n", new DockerfilePrinter(List.of(run)).print());
+        assertEquals("EOF", run.getHeredocName());
+        RunInstruction parsed = (RunInstruction) new DockerfileParser().parseDockerfile(
+                new ByteArrayInputStream(new DockerfilePrinter(List.of(run)).print().getBytes())).get(0);
+        assertEquals(run.getCommands(), parsed.getCommands());
+        assertEquals("echo hi\n", parsed.getHeredoc());
+        assertEquals("RUN <<EOF\necho hi\nEOF", new RunInstruction(List.of(), List.of(), null, null, "echo hi", "EOF").toCanonicalForm());
+        assertEquals(List.of(), new RunInstruction(List.of("make"), List.of(), null, null, null, null).getHeredocs());
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.jimschubert.docker.printer;
+
+import com.github.jimschubert.docker.ast.*;
+import com.github.jimschubert.docker.parser.DockerfileParser;
+import com.github.jimschubert.docker.parser.ParsedDockerfile;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LosslessPrinterTest {
+    private static final String DOCKERFILE = "# top\n\nFROM alpine AS x\n\n# c\nCOPY  a   b\nRUN a \\\n  # inner\n  b\n\nWORKDIR /w\n";
+
+    @Test
+    void testUneditedInstructionsReproduceTheText() throws Exception {
+        String text;
+        try (InputStream inputStream = getClass().getResourceAsStream("/examples/hugo/Dockerfile")) {
+            text = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        ParsedDockerfile parsed = new DockerfileParser().parseText(text);
+
+        assertEquals(text, new LosslessPrinter(parsed, parsed.getInstructions()).print());
+
+        ParsedDockerfile small = new DockerfileParser().parseText(DOCKERFILE);
+        assertEquals(DOCKERFILE, new LosslessPrinter(small, small.getInstructions()).print());
+    }
+
+    @Test
+    void testOnlyModifiedInstructionsAreRendered() throws Exception {
+        ParsedDockerfile parsed = new DockerfileParser().parseText(DOCKERFILE);
+        List<DockerInstruction> instructions = parsed.getInstructions();
+        CopyInstruction copy = (CopyInstruction) instructions.get(3);
+
+        assertFalse(copy.isModified());
+        copy.setDestination("/dst");
+        assertTrue(copy.isModified());
+
+        assertEquals("# top\n\nFROM alpine AS x\n\n# c\nCOPY a /dst\nRUN a \\\n  # inner\n  b\n\nWORKDIR /w\n", new LosslessPrinter(parsed, instructions).print());
+    }
+
+    @Test
+    void testAddedAndRemovedInstructions() throws Exception {
+        ParsedDockerfile parsed = new DockerfileParser().parseText(DOCKERFILE);
+        List<DockerInstruction> instructions = new ArrayList<>(parsed.getInstructions());
+        instructions.add(4, new UserInstruction("app"));
+        instructions.remove(1);
+        instructions.remove(instructions.size() - 1);
+
+        StringWriter writer = new StringWriter();
+        new LosslessPrinter(parsed, instructions).print(writer);
+
+        assertEquals("# top\n\n# c\nCOPY  a   b\nUSER app\nRUN a \\\n  # inner\n  b\n", writer.toString());
+    }
+
+    @Test
+    void testModifiedCommentWithinContinuation() throws Exception {
+        ParsedDockerfile parsed = new DockerfileParser().parseText(DOCKERFILE);
+        List<DockerInstruction> instructions = parsed.getInstructions();
+        ((CommentInstruction) instructions.get(4)).setComment("changed");
+
+        assertEquals("# top\n\nFROM alpine AS x\n\n# c\nCOPY  a   b\n# changed\nRUN a b\n\nWORKDIR /w\n", new LosslessPrinter(parsed, instructions).print());
+    }
+
+    @Test
+    void testNestedModificationsAreTracked() throws Exception {
+        ParsedDockerfile parsed = new DockerfileParser().parseText("ONBUILD COPY  a b\n");
+        OnBuildInstruction onBuild = (OnBuildInstruction) parsed.getInstructions().get(0);
+
+        ((CopyInstruction) onBuild.getDeferredInstruction()).setSources(List.of("c"));
+
+        assertTrue(onBuild.isModified());
+        assertEquals("ONBUILD COPY c b\n", new LosslessPrinter(parsed, parsed.getInstructions()).print());
+    }
+
+    @Test
+    void testInstructionsWithoutSpansAreNeverModified() {
+        CopyInstruction copy = new CopyInstruction(List.of("a"), "b");
+        copy.setDestination("c");
+        assertFalse(copy.isModified());
+    }
+}